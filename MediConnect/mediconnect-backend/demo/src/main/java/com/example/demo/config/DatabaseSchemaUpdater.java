@@ -2,15 +2,24 @@ package com.example.demo.config;
 
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
 @Component
 public class DatabaseSchemaUpdater {
 
+    private static final String[] SEQUENCE_TABLES = {
+            "medicine_orders", "order_items", "prescriptions", "prescription_medicines", "order_payments", "delivery_tracking",
+            "doctor_slot"
+    };
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Value("${ids.sequence.allocation-size:" + PooledSequenceGenerator.DEFAULT_ALLOCATION_SIZE + "}")
+    private int allocationSize;
+
     	@PostConstruct
 	public void updateSchema() {
 		try {
@@ -99,6 +108,55 @@ public class DatabaseSchemaUpdater {
 				System.out.println("ℹ️ specialization_hint column already exists or failed: " + e.getMessage());
 			}
 			
+			// Hibernate only creates the enum check constraint with the table, so new statuses would be rejected
+			try {
+				jdbcTemplate.execute("ALTER TABLE medicine_orders DROP CONSTRAINT IF EXISTS medicine_orders_status_check");
+				System.out.println("✅ Dropped status check constraint on medicine_orders");
+			} catch (Exception e) {
+				System.out.println("ℹ️ medicine_orders status constraint update failed: " + e.getMessage());
+			}
+			
+			// Existing orders need a version before optimistic locking can load and save them
+			try {
+				jdbcTemplate.execute("ALTER TABLE medicine_orders ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0");
+				int backfilled = jdbcTemplate.update("UPDATE medicine_orders SET version = 0 WHERE version IS NULL");
+				System.out.println("✅ Ensured version column on medicine_orders (" + backfilled + " rows backfilled)");
+			} catch (Exception e) {
+				System.out.println("ℹ️ medicine_orders version column update failed: " + e.getMessage());
+			}
+			
+			// Orders delivered before delivered_at existed get their last update time, the best record of the delivery
+			try {
+				jdbcTemplate.execute("ALTER TABLE medicine_orders ADD COLUMN IF NOT EXISTS delivered_at TIMESTAMP");
+				int backfilled = jdbcTemplate.update("UPDATE medicine_orders SET delivered_at = updated_at WHERE status = 'DELIVERED' AND delivered_at IS NULL");
+				System.out.println("✅ Ensured delivered_at column on medicine_orders (" + backfilled + " rows backfilled)");
+			} catch (Exception e) {
+				System.out.println("ℹ️ medicine_orders delivered_at column update failed: " + e.getMessage());
+			}
+			
+			// Stock lines created before holds existed have nothing held
+			try {
+				jdbcTemplate.execute("ALTER TABLE pharmacy_inventory ADD COLUMN IF NOT EXISTS reserved_quantity INTEGER NOT NULL DEFAULT 0");
+				System.out.println("✅ Ensured reserved_quantity column on pharmacy_inventory");
+			} catch (Exception e) {
+				System.out.println("ℹ️ pharmacy_inventory reserved_quantity column update failed: " + e.getMessage());
+			}
+			
+			// Tables that moved from IDENTITY to pooled sequences: each sequence must step by the
+			// allocation size and start above the ids already in use
+			for (String table : SEQUENCE_TABLES) {
+				String sequence = table + "_seq";
+				try {
+					jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + sequence + " INCREMENT BY " + allocationSize);
+					jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " INCREMENT BY " + allocationSize);
+					jdbcTemplate.queryForObject("SELECT setval('" + sequence + "', GREATEST((SELECT COALESCE(MAX(id), 0) FROM " + table + ") + " +
+							allocationSize + ", (SELECT last_value FROM " + sequence + ")))", Long.class);
+					System.out.println("✅ Synced " + sequence + " with " + table + " ids");
+				} catch (Exception e) {
+					System.out.println("ℹ️ " + sequence + " sync failed: " + e.getMessage());
+				}
+			}
+			
 		} catch (Exception e) {
 			System.out.println("⚠️ Schema update failed: " + e.getMessage());
 		}
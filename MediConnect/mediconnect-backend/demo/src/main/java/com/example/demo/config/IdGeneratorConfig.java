@@ -0,0 +1,38 @@
+package com.example.demo.config;
+
+import com.example.demo.utils.SnowflakeIdGenerator;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.InetAddress;
+
+/**
+ * Gives the shared {@link SnowflakeIdGenerator} this node's id. Every instance behind the
+ * same database needs its own {@code ids.node-id} (0-1023); without one a value is derived
+ * from the host name and process id, which is fine for a single node but may clash in a cluster.
+ */
+@Configuration
+public class IdGeneratorConfig {
+
+    @Value("${ids.node-id:-1}")
+    private long nodeId;
+
+    @PostConstruct
+    public void configure() {
+        long resolved = nodeId >= 0 ? nodeId : derivedNodeId();
+        SnowflakeIdGenerator.configureShared(resolved);
+        System.out.println("✅ Id generator node id: " + resolved + (nodeId >= 0 ? "" : " (derived, set ids.node-id for clusters)"));
+    }
+
+    private static long derivedNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "localhost";
+        }
+        long seed = host.hashCode() * 31L + ProcessHandle.current().pid();
+        return Math.floorMod(seed, SnowflakeIdGenerator.MAX_NODE_ID + 1);
+    }
+}
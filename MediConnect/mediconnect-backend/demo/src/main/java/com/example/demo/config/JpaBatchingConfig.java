@@ -0,0 +1,30 @@
+package com.example.demo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Hibernate settings for batched writes: inserts and updates are grouped per table and
+ * sent as JDBC batches, and sequence ids are allocated in blocks of {@code ids.sequence.allocation-size}.
+ */
+@Configuration
+public class JpaBatchingConfig {
+
+    @Bean
+    public HibernatePropertiesCustomizer batchingHibernateProperties(
+            @Value("${jpa.batch-size:50}") int batchSize,
+            @Value("${ids.sequence.allocation-size:" + PooledSequenceGenerator.DEFAULT_ALLOCATION_SIZE + "}") int allocationSize) {
+        return properties -> {
+            properties.putIfAbsent("hibernate.jdbc.batch_size", batchSize);
+            properties.putIfAbsent("hibernate.order_inserts", true);
+            properties.putIfAbsent("hibernate.order_updates", true);
+            properties.putIfAbsent("hibernate.jdbc.batch_versioned_data", true);
+            properties.put(PooledSequenceGenerator.ALLOCATION_SIZE_SETTING, allocationSize);
+            // After a change of allocation size, use the increment the sequence really has until
+            // DatabaseSchemaUpdater has altered it, rather than failing at startup
+            properties.putIfAbsent("hibernate.id.sequence.increment_size_mismatch_strategy", "fix");
+        };
+    }
+}
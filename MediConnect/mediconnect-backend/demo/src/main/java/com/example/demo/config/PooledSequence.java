@@ -0,0 +1,23 @@
+package com.example.demo.config;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Id from a database sequence handed out in blocks ({@link PooledSequenceGenerator}).
+ * Unlike IDENTITY columns this lets Hibernate batch the inserts.
+ */
+@IdGeneratorType(PooledSequenceGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface PooledSequence {
+
+    /**
+     * Sequence name, conventionally {@code <table>_seq}
+     */
+    String value();
+}
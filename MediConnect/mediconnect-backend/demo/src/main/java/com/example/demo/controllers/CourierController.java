@@ -0,0 +1,92 @@
+package com.example.demo.controllers;
+
+import com.example.demo.model.Courier;
+import com.example.demo.service.CourierDispatchService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/couriers")
+@CrossOrigin(origins = "*")
+public class CourierController {
+
+    @Autowired
+    private CourierDispatchService courierDispatchService;
+
+    @PostMapping
+    public ResponseEntity<?> registerCourier(@RequestBody Courier courier) {
+        try {
+            Courier saved = courierDispatchService.register(courier);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Courier registered successfully");
+            response.put("courier", saved);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            return error("Failed to register courier: " + e.getMessage());
+        }
+    }
+
+    // Also how a courier comes online: the first location after going offline makes them dispatchable
+    @PostMapping("/{courierId}/location")
+    public ResponseEntity<?> updateLocation(@PathVariable Long courierId, @RequestBody Map<String, Double> location) {
+        try {
+            Double latitude = location.get("latitude");
+            Double longitude = location.get("longitude");
+            if (latitude == null || longitude == null) {
+                throw new RuntimeException("latitude and longitude are required");
+            }
+            courierDispatchService.updateLocation(courierId, latitude, longitude);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            return error("Failed to update location: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/{courierId}/offline")
+    public ResponseEntity<?> goOffline(@PathVariable Long courierId) {
+        try {
+            courierDispatchService.goOffline(courierId);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Courier is offline");
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            return error("Failed to go offline: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/{courierId}/complete")
+    public ResponseEntity<?> completeRun(@PathVariable Long courierId) {
+        try {
+            courierDispatchService.completeRun(courierId);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Run completed");
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            return error("Failed to complete run: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/metrics")
+    public ResponseEntity<?> getMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", courierDispatchService.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    private ResponseEntity<?> error(String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", message);
+        return ResponseEntity.badRequest().body(response);
+    }
+}
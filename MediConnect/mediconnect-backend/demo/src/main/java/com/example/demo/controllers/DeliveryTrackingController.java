@@ -0,0 +1,105 @@
+package com.example.demo.controllers;
+
+import com.example.demo.model.CourierPosition;
+import com.example.demo.model.DeliveryPing;
+import com.example.demo.service.DeliveryEtaService;
+import com.example.demo.service.DeliveryHistoryCompactionService;
+import com.example.demo.service.DeliveryLocationStreamService;
+import com.example.demo.service.DeliveryTrackingService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/delivery-tracking")
+@CrossOrigin(origins = "*")
+public class DeliveryTrackingController {
+
+    @Autowired
+    private DeliveryTrackingService deliveryTrackingService;
+
+    @Autowired
+    private DeliveryLocationStreamService deliveryLocationStreamService;
+
+    @Autowired
+    private DeliveryEtaService deliveryEtaService;
+
+    @Autowired
+    private DeliveryHistoryCompactionService deliveryHistoryCompactionService;
+
+    // Courier apps send the fixes gathered since their last call in one request
+    @PostMapping("/positions")
+    public ResponseEntity<?> ingestPositions(@RequestBody List<DeliveryPing> pings) {
+        try {
+            Map<String, Object> response = new HashMap<>(deliveryTrackingService.ingest(pings));
+            response.put("success", true);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Failed to record positions: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    @GetMapping("/{trackingNumber}/position")
+    public ResponseEntity<?> getCurrentPosition(@PathVariable String trackingNumber) {
+        CourierPosition position = deliveryTrackingService.getCurrentPosition(trackingNumber);
+        Map<String, Object> response = new HashMap<>();
+        if (position == null) {
+            response.put("success", false);
+            response.put("message", "No position known for tracking number: " + trackingNumber);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+        response.put("success", true);
+        response.put("position", position);
+        response.put("eta", deliveryEtaService.getEta(trackingNumber));
+        return ResponseEntity.ok(response);
+    }
+
+    // Route the courier took, for replay; compacted deliveries return their simplified track
+    @GetMapping("/{trackingNumber}/track")
+    public ResponseEntity<?> getTrack(@PathVariable String trackingNumber) {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("points", deliveryHistoryCompactionService.getTrack(trackingNumber));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Failed to get track: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    // Patients watching a delivery get position changes pushed at most once per intervalMs
+    @GetMapping(value = "/{trackingNumber}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamPosition(@PathVariable String trackingNumber,
+                                                     @RequestParam(required = false) Long intervalMs) {
+        try {
+            return ResponseEntity.ok(deliveryLocationStreamService.subscribe(trackingNumber, intervalMs));
+        } catch (Exception e) {
+            System.err.println("Failed to open tracking stream for " + trackingNumber + ": " + e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/metrics")
+    public ResponseEntity<?> getMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", deliveryTrackingService.getMetrics());
+        response.put("streams", deliveryLocationStreamService.getMetrics());
+        response.put("eta", deliveryEtaService.getMetrics());
+        response.put("compaction", deliveryHistoryCompactionService.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+}
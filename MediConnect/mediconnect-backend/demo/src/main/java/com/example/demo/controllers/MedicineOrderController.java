@@ -1,12 +1,32 @@
 package com.example.demo.controllers;
 
 import com.example.demo.model.*;
+import com.example.demo.service.BulkOrderStatusService;
+import com.example.demo.service.DeliveryRunService;
+import com.example.demo.service.GeocodingService;
 import com.example.demo.service.MedicineOrderService;
+import com.example.demo.service.OrderAssignmentPipeline;
+import com.example.demo.service.OrderExportService;
+import com.example.demo.service.OrderOutboxDispatcher;
+import com.example.demo.service.OrderSlaService;
+import com.example.demo.service.OrderStateConflictException;
+import com.example.demo.service.PharmacyAssignmentEngine;
 import com.example.demo.service.PharmacyMatchingService;
+import com.example.demo.service.PharmacyOrderStreamService;
+import com.example.demo.service.PharmacyRevenueRollupService;
+import com.example.demo.service.StockReservationExpiryJob;
+import com.example.demo.service.StockReservationService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +43,42 @@ public class MedicineOrderController {
     @Autowired
     private PharmacyMatchingService pharmacyMatchingService;
 
+    @Autowired
+    private GeocodingService geocodingService;
+
+    @Autowired
+    private PharmacyAssignmentEngine pharmacyAssignmentEngine;
+
+    @Autowired
+    private OrderAssignmentPipeline orderAssignmentPipeline;
+
+    @Autowired
+    private BulkOrderStatusService bulkOrderStatusService;
+
+    @Autowired
+    private PharmacyOrderStreamService pharmacyOrderStreamService;
+
+    @Autowired
+    private OrderOutboxDispatcher orderOutboxDispatcher;
+
+    @Autowired
+    private PharmacyRevenueRollupService pharmacyRevenueRollupService;
+
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    @Autowired
+    private StockReservationExpiryJob stockReservationExpiryJob;
+
+    @Autowired
+    private OrderSlaService orderSlaService;
+
+    @Autowired
+    private OrderExportService orderExportService;
+
+    @Autowired
+    private DeliveryRunService deliveryRunService;
+
     @PostMapping("/create")
     public ResponseEntity<?> createOrder(@RequestBody CreateOrderRequest request) {
         try {
@@ -41,6 +97,7 @@ public class MedicineOrderController {
             response.put("message", "Medicine order created successfully");
             response.put("order", orderDto);
             response.put("orderNumber", order.getOrderNumber());
+            response.put("assignmentStatusUrl", "/api/medicine-orders/" + order.getId() + "/assignment-status");
 
             return ResponseEntity.ok(response);
 
@@ -53,14 +110,14 @@ public class MedicineOrderController {
     }
 
     @GetMapping("/patient/{patientId}")
-    public ResponseEntity<?> getPatientOrders(@PathVariable Long patientId) {
+    public ResponseEntity<?> getPatientOrders(@PathVariable Long patientId,
+                                              @RequestParam(required = false) List<MedicineOrder.OrderStatus> status,
+                                              @RequestParam(required = false) String cursor,
+                                              @RequestParam(required = false) Integer limit) {
         try {
-            List<MedicineOrderDto> orders = medicineOrderService.getPatientOrdersAsDto(patientId);
+            MedicineOrderPageDto page = medicineOrderService.getPatientOrdersPage(patientId, status, cursor, limit);
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("orders", orders);
-            response.put("count", orders.size());
+            Map<String, Object> response = pageResponse(page);
 
             return ResponseEntity.ok(response);
 
@@ -73,14 +130,14 @@ public class MedicineOrderController {
     }
 
     @GetMapping("/pharmacy/{pharmacyUserId}")
-    public ResponseEntity<?> getPharmacyOrders(@PathVariable Long pharmacyUserId) {
+    public ResponseEntity<?> getPharmacyOrders(@PathVariable Long pharmacyUserId,
+                                               @RequestParam(required = false) List<MedicineOrder.OrderStatus> status,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(required = false) Integer limit) {
         try {
-            List<MedicineOrderDto> orders = medicineOrderService.getPharmacyOrdersByUserIdAsDto(pharmacyUserId);
+            MedicineOrderPageDto page = medicineOrderService.getPharmacyOrdersPageByUserId(pharmacyUserId, status, cursor, limit);
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("orders", orders);
-            response.put("count", orders.size());
+            Map<String, Object> response = pageResponse(page);
 
             return ResponseEntity.ok(response);
 
@@ -95,44 +152,85 @@ public class MedicineOrderController {
     @GetMapping("/pharmacy/{pharmacyUserId}/statistics")
     public ResponseEntity<?> getPharmacyOrderStatistics(@PathVariable Long pharmacyUserId) {
         try {
-            List<MedicineOrderDto> orders = medicineOrderService.getPharmacyOrdersByUserIdAsDto(pharmacyUserId);
+            Map<MedicineOrder.OrderStatus, Long> counts = medicineOrderService.getPharmacyStatusCountsByUserId(pharmacyUserId);
             Map<String, Object> stats = new HashMap<>();
-            stats.put("totalOrders", orders.size());
-            stats.put("pendingOrders", orders.stream().filter(o -> o.getStatus() == MedicineOrder.OrderStatus.PENDING || o.getStatus() == MedicineOrder.OrderStatus.PHARMACY_ASSIGNED).count());
-            stats.put("acceptedOrders", orders.stream().filter(o -> o.getStatus() == MedicineOrder.OrderStatus.ACCEPTED).count());
-            stats.put("preparingOrders", orders.stream().filter(o -> o.getStatus() == MedicineOrder.OrderStatus.PREPARING).count());
-            stats.put("readyOrders", orders.stream().filter(o -> o.getStatus() == MedicineOrder.OrderStatus.READY_FOR_PICKUP).count());
-            stats.put("deliveredOrders", orders.stream().filter(o -> o.getStatus() == MedicineOrder.OrderStatus.DELIVERED).count());
+            stats.put("totalOrders", counts.values().stream().mapToLong(Long::longValue).sum());
+            stats.put("pendingOrders", counts.get(MedicineOrder.OrderStatus.PENDING) + counts.get(MedicineOrder.OrderStatus.PHARMACY_ASSIGNED));
+            stats.put("acceptedOrders", counts.get(MedicineOrder.OrderStatus.ACCEPTED));
+            stats.put("preparingOrders", counts.get(MedicineOrder.OrderStatus.PREPARING));
+            stats.put("readyOrders", counts.get(MedicineOrder.OrderStatus.READY_FOR_PICKUP));
+            stats.put("deliveredOrders", counts.get(MedicineOrder.OrderStatus.DELIVERED));
+            stats.put("byStatus", counts);
             return ResponseEntity.ok(stats);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Failed to get statistics: " + e.getMessage());
         }
     }
 
+    // Answered from the daily rollups, so any range costs one row per day
+    @GetMapping("/pharmacy/{pharmacyUserId}/revenue")
+    public ResponseEntity<?> getPharmacyRevenue(@PathVariable Long pharmacyUserId,
+                                                @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                @RequestParam(defaultValue = "false") boolean daily) {
+        try {
+            Map<String, Object> response = new HashMap<>(medicineOrderService.getPharmacyRevenueByUserId(pharmacyUserId, from, to, daily));
+            response.put("success", true);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Failed to get revenue: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    // Live inbox for pharmacy dashboards: an "order" event whenever an order is assigned, accepted,
+    // rejected or changes status. Clients reload the order list once after (re)connecting.
+    @GetMapping(value = "/pharmacy/{pharmacyUserId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamPharmacyOrders(@PathVariable Long pharmacyUserId) {
+        try {
+            return ResponseEntity.ok(pharmacyOrderStreamService.subscribeByUserId(pharmacyUserId));
+        } catch (Exception e) {
+            System.err.println("Failed to open order stream: " + e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @GetMapping("/pharmacy/{pharmacyUserId}/recent")
     public ResponseEntity<?> getRecentOrders(@PathVariable Long pharmacyUserId, @RequestParam(defaultValue = "10") int limit) {
         try {
-            List<MedicineOrderDto> orders = medicineOrderService.getPharmacyOrdersByUserIdAsDto(pharmacyUserId);
-            // Sort by creation date and limit results
-            List<MedicineOrderDto> recentOrders = orders.stream()
-                .sorted((o1, o2) -> o2.getCreatedAt().compareTo(o1.getCreatedAt()))
-                .limit(limit)
-                .collect(java.util.stream.Collectors.toList());
-            return ResponseEntity.ok(recentOrders);
+            // First page of the newest-first listing
+            MedicineOrderPageDto page = medicineOrderService.getPharmacyOrdersPageByUserId(pharmacyUserId, null, null, limit);
+            return ResponseEntity.ok(page.getOrders());
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Failed to get recent orders: " + e.getMessage());
         }
     }
 
+    // Group the pharmacy's ready orders into courier runs now instead of waiting for the batch window
+    @PostMapping("/pharmacy/{pharmacyUserId}/delivery-runs")
+    public ResponseEntity<?> planDeliveryRuns(@PathVariable Long pharmacyUserId) {
+        try {
+            Map<String, Object> response = new HashMap<>(deliveryRunService.planRunsForUser(pharmacyUserId));
+            response.put("success", true);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Failed to plan delivery runs: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     @GetMapping("/pending")
-    public ResponseEntity<?> getPendingOrders() {
+    public ResponseEntity<?> getPendingOrders(@RequestParam(required = false) List<MedicineOrder.OrderStatus> status,
+                                              @RequestParam(required = false) String cursor,
+                                              @RequestParam(required = false) Integer limit) {
         try {
-            List<MedicineOrderDto> orders = medicineOrderService.getPendingOrdersAsDto();
+            MedicineOrderPageDto page = medicineOrderService.getPendingOrdersPage(status, cursor, limit);
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("orders", orders);
-            response.put("count", orders.size());
+            Map<String, Object> response = pageResponse(page);
 
             return ResponseEntity.ok(response);
 
@@ -144,6 +242,56 @@ public class MedicineOrderController {
         }
     }
 
+    // Streams every matching order; format is ndjson (default) or csv
+    @GetMapping("/pending/export")
+    public ResponseEntity<?> exportPendingOrders(@RequestParam(required = false) List<MedicineOrder.OrderStatus> status,
+                                                 @RequestParam(required = false) String format,
+                                                 HttpServletResponse response) throws IOException {
+        OrderExportService.Format exportFormat;
+        try {
+            exportFormat = OrderExportService.Format.parse(format);
+        } catch (Exception e) {
+            return exportFailure(e);
+        }
+        startExport(response, exportFormat, "pending-orders");
+        orderExportService.exportPendingOrders(status, exportFormat, response.getOutputStream());
+        return null; // Written straight to the response
+    }
+
+    @GetMapping("/pharmacy/{pharmacyUserId}/export")
+    public ResponseEntity<?> exportPharmacyOrders(@PathVariable Long pharmacyUserId,
+                                                  @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                  @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                  @RequestParam(required = false) String format,
+                                                  HttpServletResponse response) throws IOException {
+        OrderExportService.Format exportFormat;
+        Long pharmacyId;
+        try {
+            exportFormat = OrderExportService.Format.parse(format);
+            pharmacyId = orderExportService.validatePharmacyExport(pharmacyUserId, from, to);
+        } catch (Exception e) {
+            return exportFailure(e);
+        }
+        startExport(response, exportFormat, "pharmacy-" + pharmacyUserId + "-orders-" + from + "-" + to);
+        orderExportService.exportPharmacyOrders(pharmacyId, from, to, exportFormat, response.getOutputStream());
+        return null; // Written straight to the response
+    }
+
+    // Once rows are being written an error can only cut the download short, so requests are checked first
+    private static void startExport(HttpServletResponse response, OrderExportService.Format format, String name) {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(format.getContentType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + name + "." + format.getExtension() + "\"");
+    }
+
+    private static ResponseEntity<?> exportFailure(Exception e) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("success", false);
+        body.put("message", "Failed to export orders: " + e.getMessage());
+        return ResponseEntity.badRequest().body(body);
+    }
+
     @GetMapping("/{orderId}")
     public ResponseEntity<?> getOrderById(@PathVariable Long orderId) {
         try {
@@ -163,6 +311,40 @@ public class MedicineOrderController {
         }
     }
 
+    @GetMapping("/{orderId}/assignment-status")
+    public ResponseEntity<?> getAssignmentStatus(@PathVariable Long orderId) {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("assignment", orderAssignmentPipeline.getAssignmentStatus(orderId));
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Failed to get assignment status: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    @PostMapping("/{orderId}/assignment/retry")
+    public ResponseEntity<?> retryAssignment(@PathVariable Long orderId) {
+        try {
+            boolean requeued = orderAssignmentPipeline.retry(orderId);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", requeued);
+            response.put("message", requeued ? "Order queued for assignment" : "Order is not waiting for a manual retry");
+            return requeued ? ResponseEntity.ok(response) : ResponseEntity.badRequest().body(response);
+
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Failed to retry assignment: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     @GetMapping("/number/{orderNumber}")
     public ResponseEntity<?> getOrderByNumber(@PathVariable String orderNumber) {
         try {
@@ -196,6 +378,8 @@ public class MedicineOrderController {
 
             return ResponseEntity.ok(response);
 
+        } catch (OrderStateConflictException e) {
+            return conflictResponse(e);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
@@ -224,6 +408,8 @@ public class MedicineOrderController {
 
             return ResponseEntity.ok(response);
 
+        } catch (OrderStateConflictException e) {
+            return conflictResponse(e);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
@@ -246,6 +432,8 @@ public class MedicineOrderController {
 
             return ResponseEntity.ok(response);
 
+        } catch (OrderStateConflictException e) {
+            return conflictResponse(e);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
@@ -254,6 +442,34 @@ public class MedicineOrderController {
         }
     }
 
+    @PostMapping("/bulk/status")
+    public ResponseEntity<?> bulkUpdateOrderStatus(@RequestBody BulkStatusRequest request) {
+        try {
+            List<BulkOrderStatusResult> results = bulkOrderStatusService.updateStatuses(
+                request.getPharmacyId(),
+                request.getOrderIds(),
+                request.getStatus()
+            );
+
+            long updatedCount = results.stream().filter(BulkOrderStatusResult::isSuccess).count();
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", updatedCount + " of " + results.size() + " orders updated");
+            response.put("results", results);
+            response.put("updatedCount", updatedCount);
+            response.put("failedCount", results.size() - updatedCount);
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Failed to update orders: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     @GetMapping("/nearby-pharmacies")
     public ResponseEntity<?> getNearbyPharmacies(
             @RequestParam String pincode,
@@ -308,6 +524,120 @@ public class MedicineOrderController {
         }
     }
 
+    @GetMapping("/geocoding/cache-stats")
+    public ResponseEntity<?> getGeocodingCacheStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("stats", geocodingService.getCacheStats());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/assignment/metrics")
+    public ResponseEntity<?> getAssignmentMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", pharmacyAssignmentEngine.getMetrics());
+        response.put("pipeline", orderAssignmentPipeline.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/stream/metrics")
+    public ResponseEntity<?> getStreamMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", pharmacyOrderStreamService.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/outbox/metrics")
+    public ResponseEntity<?> getOutboxMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", orderOutboxDispatcher.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/reservations/metrics")
+    public ResponseEntity<?> getReservationMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", stockReservationService.getMetrics());
+        response.put("expiry", stockReservationExpiryJob.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/sla/metrics")
+    public ResponseEntity<?> getSlaMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", orderSlaService.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/delivery-runs/metrics")
+    public ResponseEntity<?> getDeliveryRunMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", deliveryRunService.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    // Recompute the revenue rollups of orders created in a date range, e.g. after a data fix
+    @PostMapping("/revenue/rollups/rebuild")
+    public ResponseEntity<?> rebuildRevenueRollups(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            int rows = pharmacyRevenueRollupService.rebuild(from, to);
+            response.put("success", true);
+            response.put("message", "Rebuilt " + rows + " rollup rows");
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "Failed to rebuild rollups: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    @PostMapping("/assignment/run")
+    public ResponseEntity<?> runAssignment() {
+        try {
+            int assigned = pharmacyAssignmentEngine.processBacklog();
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", assigned >= 0);
+            response.put("message", assigned >= 0 ? "Assigned " + assigned + " orders" : "An assignment run is already in progress");
+            response.put("metrics", pharmacyAssignmentEngine.getMetrics());
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Failed to run pharmacy assignment: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    // 409 so clients can tell "someone else changed this order" apart from bad input
+    private ResponseEntity<?> conflictResponse(OrderStateConflictException e) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", e.getMessage());
+        response.put("currentStatus", e.getCurrentStatus());
+        response.put("requestedStatus", e.getRequestedStatus());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+    }
+
+    private Map<String, Object> pageResponse(MedicineOrderPageDto page) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("orders", page.getOrders());
+        response.put("count", page.getOrders().size());
+        response.put("nextCursor", page.getNextCursor());
+        response.put("hasMore", page.isHasMore());
+        return response;
+    }
+
     // DTOs
     public static class CreateOrderRequest {
         private Long prescriptionId;
@@ -357,4 +687,19 @@ public class MedicineOrderController {
         public MedicineOrder.OrderStatus getStatus() { return status; }
         public void setStatus(MedicineOrder.OrderStatus status) { this.status = status; }
     }
+
+    public static class BulkStatusRequest {
+        private Long pharmacyId;
+        private List<Long> orderIds;
+        private MedicineOrder.OrderStatus status;
+
+        public Long getPharmacyId() { return pharmacyId; }
+        public void setPharmacyId(Long pharmacyId) { this.pharmacyId = pharmacyId; }
+
+        public List<Long> getOrderIds() { return orderIds; }
+        public void setOrderIds(List<Long> orderIds) { this.orderIds = orderIds; }
+
+        public MedicineOrder.OrderStatus getStatus() { return status; }
+        public void setStatus(MedicineOrder.OrderStatus status) { this.status = status; }
+    }
 }
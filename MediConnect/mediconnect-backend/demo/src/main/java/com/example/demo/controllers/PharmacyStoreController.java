@@ -4,12 +4,16 @@ package com.example.demo.controllers;
 import com.example.demo.model.User;
 import com.example.demo.service.UserService;
 import com.example.demo.model.PharmacyStoreDto;
+import com.example.demo.model.PharmacyInventoryItem;
 import com.example.demo.model.PharmacyStore;
+import com.example.demo.service.PharmacyInventoryService;
 import com.example.demo.service.PharmacyStoreService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Map;
@@ -25,6 +29,9 @@ public class PharmacyStoreController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private PharmacyInventoryService inventoryService;
+
     @PostMapping("/create-profile")
     public ResponseEntity<?> createPharmacyProfile(@RequestBody PharmacyStoreDto dto) {
         try {
@@ -128,4 +135,65 @@ public class PharmacyStoreController {
     public ResponseEntity<List<PharmacyStore>> getStores() {
         return ResponseEntity.ok(service.getAllStores());
     }
+
+    @GetMapping("/{userId}/inventory")
+    public ResponseEntity<?> getInventory(@PathVariable Long userId) {
+        try {
+            return ResponseEntity.ok(inventoryService.getInventoryByUserId(userId));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Add or update stock lines; a quantity of 0 keeps the line but takes it out of matching
+    @PutMapping("/{userId}/inventory")
+    public ResponseEntity<?> updateInventory(@PathVariable Long userId, @RequestBody List<InventoryItemRequest> items) {
+        try {
+            List<PharmacyInventoryItem> lines = new ArrayList<>();
+            for (InventoryItemRequest item : items) {
+                PharmacyInventoryItem line = new PharmacyInventoryItem();
+                line.setMedicineName(item.getMedicineName());
+                line.setQuantity(item.getQuantity());
+                line.setUnitPrice(item.getUnitPrice());
+                lines.add(line);
+            }
+            List<PharmacyInventoryItem> saved = inventoryService.updateInventoryByUserId(userId, lines);
+            return ResponseEntity.ok(Map.of(
+                    "message", "Inventory updated successfully",
+                    "items", saved
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Error updating inventory: " + e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/{userId}/inventory/{itemId}")
+    public ResponseEntity<?> removeInventoryItem(@PathVariable Long userId, @PathVariable Long itemId) {
+        try {
+            inventoryService.removeItemByUserId(userId, itemId);
+            return ResponseEntity.ok(Map.of("message", "Inventory item removed"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/inventory/index-stats")
+    public ResponseEntity<?> getInventoryIndexStats() {
+        return ResponseEntity.ok(inventoryService.getIndexStats());
+    }
+
+    public static class InventoryItemRequest {
+        private String medicineName;
+        private Integer quantity;
+        private BigDecimal unitPrice;
+
+        public String getMedicineName() { return medicineName; }
+        public void setMedicineName(String medicineName) { this.medicineName = medicineName; }
+
+        public Integer getQuantity() { return quantity; }
+        public void setQuantity(Integer quantity) { this.quantity = quantity; }
+
+        public BigDecimal getUnitPrice() { return unitPrice; }
+        public void setUnitPrice(BigDecimal unitPrice) { this.unitPrice = unitPrice; }
+    }
 }
\ No newline at end of file
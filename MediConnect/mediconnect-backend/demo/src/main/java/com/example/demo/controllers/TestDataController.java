@@ -18,6 +18,8 @@ import com.example.demo.repository.AppointmentRepository;
 import com.example.demo.repository.MedicineOrderRepository;
 import com.example.demo.repository.PrescriptionRepository;
 import com.example.demo.repository.PharmacyStoreRepository;
+import com.example.demo.service.PharmacyOrderStatsService;
+import com.example.demo.service.PharmacySpatialIndex;
 import com.example.demo.utils.Role;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -60,6 +62,12 @@ public class TestDataController {
     @Autowired
     private PharmacyStoreRepository pharmacyStoreRepository;
 
+    @Autowired
+    private PharmacySpatialIndex pharmacySpatialIndex;
+
+    @Autowired
+    private PharmacyOrderStatsService pharmacyOrderStatsService;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
@@ -96,24 +104,7 @@ public class TestDataController {
             }
             
             // Create slots for the next 7 days for all existing doctors
-            LocalDate today = LocalDate.now();
-            for (int i = 0; i < 7; i++) {
-                LocalDate slotDate = today.plusDays(i);
-                
-                // Morning slots (9 AM - 12 PM)
-                for (int hour = 9; hour < 12; hour++) {
-                    for (Doctor doctor : doctors) {
-                        createSlot(doctor, slotDate, LocalTime.of(hour, 0), LocalTime.of(hour + 1, 0));
-                    }
-                }
-                
-                // Afternoon slots (2 PM - 5 PM)
-                for (int hour = 14; hour < 17; hour++) {
-                    for (Doctor doctor : doctors) {
-                        createSlot(doctor, slotDate, LocalTime.of(hour, 0), LocalTime.of(hour + 1, 0));
-                    }
-                }
-            }
+            createWeekOfSlots(doctors);
             
             return ResponseEntity.ok("Slots initialized successfully for " + doctors.size() + " doctors!");
         } catch (Exception e) {
@@ -227,33 +218,40 @@ public class TestDataController {
         doctorRepository.save(doctor3);
 
         // Create slots for the next 7 days
+        createWeekOfSlots(List.of(doctor1, doctor2, doctor3));
+    }
+
+    // Saved with one saveAll so the inserts go out as JDBC batches in a single transaction
+    private void createWeekOfSlots(List<Doctor> doctors) {
+        List<DoctorSlot> slots = new ArrayList<>();
         LocalDate today = LocalDate.now();
         for (int i = 0; i < 7; i++) {
             LocalDate slotDate = today.plusDays(i);
             
             // Morning slots (9 AM - 12 PM)
             for (int hour = 9; hour < 12; hour++) {
-                createSlot(doctor1, slotDate, LocalTime.of(hour, 0), LocalTime.of(hour + 1, 0));
-                createSlot(doctor2, slotDate, LocalTime.of(hour, 0), LocalTime.of(hour + 1, 0));
-                createSlot(doctor3, slotDate, LocalTime.of(hour, 0), LocalTime.of(hour + 1, 0));
+                for (Doctor doctor : doctors) {
+                    slots.add(newSlot(doctor, slotDate, LocalTime.of(hour, 0), LocalTime.of(hour + 1, 0)));
+                }
             }
             
             // Afternoon slots (2 PM - 5 PM)
             for (int hour = 14; hour < 17; hour++) {
-                createSlot(doctor1, slotDate, LocalTime.of(hour, 0), LocalTime.of(hour + 1, 0));
-                createSlot(doctor2, slotDate, LocalTime.of(hour, 0), LocalTime.of(hour + 1, 0));
-                createSlot(doctor3, slotDate, LocalTime.of(hour, 0), LocalTime.of(hour + 1, 0));
+                for (Doctor doctor : doctors) {
+                    slots.add(newSlot(doctor, slotDate, LocalTime.of(hour, 0), LocalTime.of(hour + 1, 0)));
+                }
             }
         }
+        doctorSlotRepository.saveAll(slots);
     }
 
-    private void createSlot(Doctor doctor, LocalDate date, LocalTime startTime, LocalTime endTime) {
+    private DoctorSlot newSlot(Doctor doctor, LocalDate date, LocalTime startTime, LocalTime endTime) {
         DoctorSlot slot = new DoctorSlot();
         slot.setDoctor(doctor);
         slot.setStartTime(date.atTime(startTime));
         slot.setEndTime(date.atTime(endTime));
         slot.setAvailable(true);
-        doctorSlotRepository.save(slot);
+        return slot;
     }
 
     private void createTestAppointments() {
@@ -378,6 +376,7 @@ public class TestDataController {
         
         order.setOrderItems(orderItems);
         medicineOrderRepository.save(order);
+        pharmacyOrderStatsService.recordTransition(null, null, pharmacy.getId(), order.getStatus());
     }
 
     private void createTestPharmacyStores() {
@@ -412,7 +411,7 @@ public class TestDataController {
         pharmacy1.setLatitude(40.7128);
         pharmacy1.setLongitude(-74.0060);
         pharmacy1.setUser(pharmacyUser1);
-        pharmacyStoreRepository.save(pharmacy1);
+        pharmacySpatialIndex.index(pharmacyStoreRepository.save(pharmacy1));
 
         PharmacyStore pharmacy2 = new PharmacyStore();
         pharmacy2.setName("Health Plus Pharmacy");
@@ -425,7 +424,7 @@ public class TestDataController {
         pharmacy2.setLatitude(40.7589);
         pharmacy2.setLongitude(-73.9851);
         pharmacy2.setUser(pharmacyUser2);
-        pharmacyStoreRepository.save(pharmacy2);
+        pharmacySpatialIndex.index(pharmacyStoreRepository.save(pharmacy2));
 
         System.out.println("Created test pharmacy stores successfully!");
     }
@@ -0,0 +1,23 @@
+package com.example.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkOrderStatusResult {
+    private Long orderId;
+    private Outcome outcome;
+    private MedicineOrder.OrderStatus status; // Status after the batch: the new one if updated, otherwise the current one
+    private String message;
+
+    public enum Outcome {
+        UPDATED, NOT_FOUND, NOT_AUTHORIZED, CONFLICT
+    }
+
+    public boolean isSuccess() {
+        return outcome == Outcome.UPDATED;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.demo.model;
+
+import com.example.demo.config.PooledSequence;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A delivery partner who can be dispatched on delivery runs. Live location and availability
+ * are held in memory by {@link com.example.demo.service.CourierDispatchService}; the row keeps
+ * the status the dispatch guards rely on and the last position reported at a status change.
+ */
+@Entity
+@Table(name = "couriers", indexes = @Index(name = "idx_couriers_phone", columnList = "phone", unique = true))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Courier {
+
+    @Id
+    @PooledSequence("couriers_seq")
+    private Long id;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Column(nullable = false)
+    private String phone;
+
+    @Column(nullable = true)
+    private String vehicleNumber;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private CourierStatus status = CourierStatus.OFFLINE;
+
+    @Column(nullable = true)
+    private String currentRunId; // Delivery run being carried while ASSIGNED
+
+    @Column(nullable = true)
+    private Double lastLatitude;
+
+    @Column(nullable = true)
+    private Double lastLongitude;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    public enum CourierStatus {
+        OFFLINE,   // Not taking runs
+        IDLE,      // Online and free
+        ASSIGNED   // Carrying a delivery run
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Latest known position of a delivery. Instances are replaced, never changed, once published.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CourierPosition {
+    private String trackingNumber;
+    private Long orderId;
+    private double latitude;
+    private double longitude;
+    private Double speedKmh;
+    private Double heading;
+    private LocalDateTime recordedAt;
+    private LocalDateTime receivedAt;
+}
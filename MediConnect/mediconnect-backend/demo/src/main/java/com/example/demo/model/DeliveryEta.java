@@ -0,0 +1,22 @@
+package com.example.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Estimated arrival of a delivery as of its latest position. Instances are replaced, never changed, once published.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeliveryEta {
+    private String trackingNumber;
+    private double distanceKm; // Estimated road distance left
+    private int minutes;
+    private double speedKmh; // Speed the estimate assumes
+    private LocalDateTime estimatedArrival;
+    private LocalDateTime computedAt; // Fix time of the position it was computed from
+}
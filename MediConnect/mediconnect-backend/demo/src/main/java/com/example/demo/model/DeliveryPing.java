@@ -0,0 +1,22 @@
+package com.example.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One GPS fix reported by a courier app for a delivery
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeliveryPing {
+    private String trackingNumber;
+    private Double latitude;
+    private Double longitude;
+    private LocalDateTime recordedAt; // Device time of the fix; receive time when absent
+    private Double speedKmh;
+    private Double heading; // Degrees clockwise from north
+}
@@ -0,0 +1,46 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Position history of a finished delivery, simplified and encoded into one row once its
+ * {@code LOCATION_UPDATE} rows in {@code delivery_updates} are compacted away. Decoded with
+ * {@link com.example.demo.utils.TrackPolyline#decode} from the epoch second of {@code startedAt}.
+ */
+@Entity
+@Table(name = "delivery_track_archives")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeliveryTrackArchive {
+
+    @Id
+    @Column(name = "delivery_tracking_id")
+    private Long deliveryTrackingId;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String polyline; // Latitude, longitude and seconds since the previous point
+
+    @Column(nullable = false)
+    private LocalDateTime startedAt; // Time of the first point
+
+    @Column(nullable = false)
+    private LocalDateTime endedAt;
+
+    @Column(nullable = false)
+    private Integer rawPoints; // Location updates folded in
+
+    @Column(nullable = false)
+    private Integer keptPoints;
+
+    @Column(nullable = false)
+    private Double toleranceMeters;
+
+    @Column(nullable = false)
+    private LocalDateTime compactedAt;
+}
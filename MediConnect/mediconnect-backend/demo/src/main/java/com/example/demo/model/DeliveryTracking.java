@@ -1,16 +1,27 @@
 package com.example.demo.model;
 
+import com.example.demo.config.PooledSequence;
+import com.example.demo.utils.SnowflakeIdGenerator;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 @Entity
-@Table(name = "delivery_tracking")
+@Table(name = "delivery_tracking", indexes = {
+        @Index(name = "idx_delivery_tracking_number", columnList = "tracking_number"),
+        @Index(name = "idx_delivery_tracking_run", columnList = "run_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -18,7 +29,7 @@ import java.util.List;
 public class DeliveryTracking {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @PooledSequence("delivery_tracking_seq")
     private Long id;
 
     @OneToOne(fetch = FetchType.LAZY)
@@ -33,6 +44,9 @@ public class DeliveryTracking {
     @Column(nullable = false)
     private DeliveryStatus deliveryStatus = DeliveryStatus.PENDING;
 
+    @Column(nullable = true)
+    private Long courierId; // Courier carrying the run, set by the dispatcher
+
     @Column(nullable = true)
     private String deliveryPartnerName; // Name of delivery person
 
@@ -42,6 +56,12 @@ public class DeliveryTracking {
     @Column(nullable = true)
     private String vehicleNumber; // Delivery vehicle number
 
+    @Column(nullable = true)
+    private String runId; // Delivery run shared with other orders from the same pharmacy
+
+    @Column(nullable = true)
+    private Integer runSequence; // Position of this stop in its run, from 1
+
     @Column(nullable = true)
     private Double currentLatitude; // Real-time location
 
@@ -78,7 +98,11 @@ public class DeliveryTracking {
     @Column(nullable = true)
     private String recipientSignature; // Digital signature if applicable
 
+    // Never serialized or printed, so reading a tracking record does not load its position history
     @OneToMany(mappedBy = "deliveryTracking", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private List<DeliveryUpdate> deliveryUpdates;
 
     @Column(nullable = false)
@@ -102,7 +126,7 @@ public class DeliveryTracking {
     }
 
     private String generateTrackingNumber() {
-        return "TRK" + System.currentTimeMillis() + "-" + (int)(Math.random() * 10000);
+        return SnowflakeIdGenerator.nextNumber("TRK");
     }
 
     public enum DeliveryStatus {
@@ -114,6 +138,27 @@ public class DeliveryTracking {
         DELIVERED,         // Successfully delivered
         FAILED_DELIVERY,   // Delivery attempt failed
         RETURNED_TO_PHARMACY, // Returned to pharmacy
-        CANCELLED          // Delivery cancelled
+        CANCELLED;         // Delivery cancelled
+
+        private static final Set<DeliveryStatus> ACTIVE = Collections.unmodifiableSet(
+                EnumSet.of(PENDING, ASSIGNED, PICKED_UP, IN_TRANSIT, NEARBY));
+
+        /**
+         * Statuses of a delivery that is still on its way
+         */
+        public static Set<DeliveryStatus> active() {
+            return ACTIVE;
+        }
+
+        /**
+         * Status a delivery is closed with when its order reaches the given status
+         * @return null if the order status does not end the delivery
+         */
+        public static DeliveryStatus closingFor(MedicineOrder.OrderStatus orderStatus) {
+            if (orderStatus == MedicineOrder.OrderStatus.DELIVERED) {
+                return DELIVERED;
+            }
+            return orderStatus == MedicineOrder.OrderStatus.CANCELLED ? CANCELLED : null;
+        }
     }
 }
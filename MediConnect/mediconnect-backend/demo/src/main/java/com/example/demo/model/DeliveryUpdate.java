@@ -9,7 +9,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "delivery_updates")
+@Table(name = "delivery_updates", indexes = @Index(name = "idx_delivery_updates_tracking", columnList = "delivery_tracking_id, timestamp"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -1,5 +1,6 @@
 package com.example.demo.model;
 
+import com.example.demo.config.PooledSequence;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
@@ -9,7 +10,7 @@ import lombok.Data;
 @Data
 public class DoctorSlot {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @PooledSequence("doctor_slot_seq")
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
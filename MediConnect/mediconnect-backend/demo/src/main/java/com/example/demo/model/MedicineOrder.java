@@ -1,5 +1,7 @@
 package com.example.demo.model;
 
+import com.example.demo.config.PooledSequence;
+import com.example.demo.utils.SnowflakeIdGenerator;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -9,10 +11,30 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Entity
-@Table(name = "medicine_orders")
+@Table(name = "medicine_orders", indexes = {
+        // Keyset pagination: (owner or status, created_at, id)
+        @Index(name = "idx_medicine_orders_pharmacy_created", columnList = "pharmacy_id, created_at, id"),
+        @Index(name = "idx_medicine_orders_patient_created", columnList = "patient_id, created_at, id"),
+        @Index(name = "idx_medicine_orders_status_created", columnList = "status, created_at, id")
+})
+// Everything MedicineOrderDtoMapper reads except the items; users are included because they load eagerly
+@NamedEntityGraph(name = "MedicineOrder.detail",
+        attributeNodes = {
+                @NamedAttributeNode(value = "patient", subgraph = "withUser"),
+                @NamedAttributeNode("prescription"),
+                @NamedAttributeNode(value = "pharmacy", subgraph = "withUser"),
+                @NamedAttributeNode("deliveryTracking"),
+                @NamedAttributeNode("payment")
+        },
+        subgraphs = @NamedSubgraph(name = "withUser", attributeNodes = @NamedAttributeNode("user")))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -20,7 +42,7 @@ import java.util.List;
 public class MedicineOrder {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @PooledSequence("medicine_orders_seq")
     private Long id;
 
     @Column(nullable = false, unique = true)
@@ -76,6 +98,12 @@ public class MedicineOrder {
     @Column(nullable = true)
     private String rejectionReason; // Reason if rejected by pharmacy
 
+    @Column(nullable = true)
+    private Integer assignmentAttempts = 0; // Failed automatic pharmacy assignment attempts
+
+    @Column(nullable = true, length = 500)
+    private String assignmentError; // Last automatic assignment failure
+
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<OrderItem> orderItems;
 
@@ -97,6 +125,18 @@ public class MedicineOrder {
     @Column(nullable = true)
     private LocalDateTime expectedDeliveryTime;
 
+    @Column(nullable = true)
+    private LocalDateTime deliveredAt; // Set by the transition to DELIVERED
+
+    @Column(nullable = true)
+    private LocalDateTime slaBreachedAt; // Set when the pharmacy overran the preparation deadline
+
+    @Column(nullable = true)
+    private LocalDateTime deliveryUnlocatedAt; // Set when the delivery pincode could not be located for a run
+
+    @Version
+    private Long version = 0L; // Bumped by every write, including the conditional status updates
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -112,11 +152,12 @@ public class MedicineOrder {
     }
 
     private String generateOrderNumber() {
-        return "ORD" + System.currentTimeMillis() + "-" + (int)(Math.random() * 10000);
+        return SnowflakeIdGenerator.nextNumber("ORD");
     }
 
     public enum OrderStatus {
         PENDING,           // Order created, waiting for pharmacy assignment
+        ASSIGNMENT_FAILED, // Automatic assignment gave up after retries, needs manual retry
         PHARMACY_ASSIGNED, // Pharmacy assigned, waiting for acceptance
         ACCEPTED,          // Pharmacy accepted the order
         REJECTED,          // Pharmacy rejected the order
@@ -125,7 +166,40 @@ public class MedicineOrder {
         OUT_FOR_DELIVERY,  // Delivery partner picked up, on the way
         DELIVERED,         // Successfully delivered to patient
         CANCELLED,         // Order cancelled by patient or system
-        REFUNDED           // Order refunded
+        REFUNDED;          // Order refunded
+
+        private static final Map<OrderStatus, Set<OrderStatus>> TRANSITIONS = new EnumMap<>(OrderStatus.class);
+
+        static {
+            TRANSITIONS.put(PENDING, EnumSet.of(PHARMACY_ASSIGNED, ASSIGNMENT_FAILED, CANCELLED));
+            TRANSITIONS.put(ASSIGNMENT_FAILED, EnumSet.of(PENDING, CANCELLED));
+            TRANSITIONS.put(PHARMACY_ASSIGNED, EnumSet.of(ACCEPTED, REJECTED, CANCELLED));
+            TRANSITIONS.put(REJECTED, EnumSet.of(PHARMACY_ASSIGNED, ASSIGNMENT_FAILED, CANCELLED));
+            TRANSITIONS.put(ACCEPTED, EnumSet.of(PREPARING, READY_FOR_PICKUP, CANCELLED));
+            TRANSITIONS.put(PREPARING, EnumSet.of(READY_FOR_PICKUP, CANCELLED));
+            TRANSITIONS.put(READY_FOR_PICKUP, EnumSet.of(OUT_FOR_DELIVERY, DELIVERED, CANCELLED));
+            TRANSITIONS.put(OUT_FOR_DELIVERY, EnumSet.of(DELIVERED, CANCELLED));
+            TRANSITIONS.put(DELIVERED, EnumSet.of(REFUNDED));
+            TRANSITIONS.put(CANCELLED, EnumSet.of(REFUNDED));
+            TRANSITIONS.put(REFUNDED, EnumSet.noneOf(OrderStatus.class));
+        }
+
+        public boolean canTransitionTo(OrderStatus target) {
+            return TRANSITIONS.get(this).contains(target);
+        }
+
+        /**
+         * Statuses an order may be in to move to the given status
+         */
+        public static List<OrderStatus> sourcesOf(OrderStatus target) {
+            List<OrderStatus> sources = new ArrayList<>();
+            for (Map.Entry<OrderStatus, Set<OrderStatus>> entry : TRANSITIONS.entrySet()) {
+                if (entry.getValue().contains(target)) {
+                    sources.add(entry.getKey());
+                }
+            }
+            return sources;
+        }
     }
 
     public enum OrderType {
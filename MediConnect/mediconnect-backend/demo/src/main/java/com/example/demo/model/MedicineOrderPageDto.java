@@ -0,0 +1,16 @@
+package com.example.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MedicineOrderPageDto {
+    private List<MedicineOrderDto> orders;
+    private String nextCursor; // Pass back as ?cursor= for the next page, null on the last page
+    private boolean hasMore;
+}
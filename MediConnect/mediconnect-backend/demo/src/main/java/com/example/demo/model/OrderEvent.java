@@ -0,0 +1,33 @@
+package com.example.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Order lifecycle change. Recorded in the order outbox in the same transaction as the
+ * change and delivered to {@code OrderEventListener}s once it has committed.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderEvent {
+    private Type type;
+    private Long orderId;
+    private Long pharmacyId; // null while the order has no pharmacy
+    // Statuses go from previous to new here, in of() and in the outbox row alike
+    private MedicineOrder.OrderStatus previousStatus; // null when not known, e.g. for assignments
+    private MedicineOrder.OrderStatus status;
+    private LocalDateTime occurredAt;
+
+    public enum Type {
+        CREATED, ASSIGNED, ACCEPTED, REJECTED, STATUS_CHANGED, ESCALATED
+    }
+
+    public static OrderEvent of(Type type, Long orderId, Long pharmacyId,
+                                MedicineOrder.OrderStatus previousStatus, MedicineOrder.OrderStatus status) {
+        return new OrderEvent(type, orderId, pharmacyId, previousStatus, status, LocalDateTime.now());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "order_outbox_events", indexes = {
+        // Dispatcher claim: pending rows in id order, and the "earlier event for this order" check
+        @Index(name = "idx_order_outbox_state_id", columnList = "delivery_state, id"),
+        @Index(name = "idx_order_outbox_order_id", columnList = "order_id, id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderOutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY) // Not pooled: ids must follow insert order across nodes
+    private Long id; // Delivery order within an order
+
+    @Column(name = "order_id", nullable = false)
+    private Long orderId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 32)
+    private OrderEvent.Type eventType;
+
+    @Column(name = "pharmacy_id")
+    private Long pharmacyId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "previous_status", length = 32)
+    private MedicineOrder.OrderStatus previousStatus;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 32)
+    private MedicineOrder.OrderStatus status;
+
+    @Column(name = "occurred_at", nullable = false)
+    private LocalDateTime occurredAt;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "delivery_state", nullable = false, length = 16)
+    private DeliveryState deliveryState = DeliveryState.PENDING;
+
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    public enum DeliveryState {
+        PENDING, DELIVERED, FAILED
+    }
+
+    public static OrderOutboxEvent from(OrderEvent event) {
+        OrderOutboxEvent row = new OrderOutboxEvent();
+        row.setOrderId(event.getOrderId());
+        row.setEventType(event.getType());
+        row.setPharmacyId(event.getPharmacyId());
+        row.setPreviousStatus(event.getPreviousStatus());
+        row.setStatus(event.getStatus());
+        row.setOccurredAt(event.getOccurredAt());
+        row.setNextAttemptAt(event.getOccurredAt());
+        return row;
+    }
+
+    public OrderEvent toEvent() {
+        return new OrderEvent(eventType, orderId, pharmacyId, previousStatus, status, occurredAt);
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.demo.model;
 
+import com.example.demo.config.PooledSequence;
+import com.example.demo.utils.SnowflakeIdGenerator;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -18,7 +20,7 @@ import java.time.LocalDateTime;
 public class OrderPayment {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @PooledSequence("order_payments_seq")
     private Long id;
 
     @OneToOne(fetch = FetchType.LAZY)
@@ -76,7 +78,7 @@ public class OrderPayment {
     }
 
     private String generatePaymentId() {
-        return "PAY" + System.currentTimeMillis() + "-" + (int)(Math.random() * 10000);
+        return SnowflakeIdGenerator.nextNumber("PAY");
     }
 
     public enum PaymentMethod {
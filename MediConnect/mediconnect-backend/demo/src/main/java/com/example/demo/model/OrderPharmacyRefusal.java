@@ -0,0 +1,57 @@
+package com.example.demo.model;
+
+import com.example.demo.config.PooledSequence;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A pharmacy that gave an order back, by rejecting it or by letting it sit unaccepted.
+ * The assignment engine does not offer the order to that pharmacy again, so an order
+ * cannot bounce back to the store that refused or ignored it.
+ */
+@Entity
+@Table(name = "order_pharmacy_refusals", indexes = {
+        @Index(name = "idx_order_pharmacy_refusals_order", columnList = "order_id, pharmacy_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderPharmacyRefusal {
+
+    @Id
+    @PooledSequence("order_pharmacy_refusals_seq")
+    private Long id;
+
+    @Column(name = "order_id", nullable = false)
+    private Long orderId;
+
+    @Column(name = "pharmacy_id", nullable = false)
+    private Long pharmacyId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Reason reason;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    public OrderPharmacyRefusal(Long orderId, Long pharmacyId, Reason reason) {
+        this.orderId = orderId;
+        this.pharmacyId = pharmacyId;
+        this.reason = reason;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    public enum Reason {
+        REJECTED,   // Pharmacy turned the order down
+        TIMED_OUT   // Pharmacy did not accept the order in time
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Outcome of one pharmacy's orders created on one day: revenue and count of orders that are
+ * delivered, cancelled or refunded, plus the total time from order to delivery. Kept in step
+ * with terminal status changes so revenue reports sum a few rows per day instead of scanning
+ * the order history.
+ */
+@Entity
+@Table(name = "pharmacy_daily_rollups")
+@IdClass(PharmacyDailyRollup.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PharmacyDailyRollup {
+
+    @Id
+    @Column(name = "pharmacy_id")
+    private Long pharmacyId;
+
+    @Id
+    @Column(name = "rollup_date")
+    private LocalDate rollupDate; // Day the orders were created
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal revenue = BigDecimal.ZERO; // Final amount of orders currently delivered
+
+    @Column(nullable = false)
+    private Long deliveredCount = 0L;
+
+    @Column(nullable = false)
+    private Long cancelledCount = 0L;
+
+    @Column(nullable = false)
+    private Long refundedCount = 0L;
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal refundedAmount = BigDecimal.ZERO;
+
+    @Column(nullable = false)
+    private Long fulfilmentSeconds = 0L; // Order to delivery, summed over every order that was delivered
+
+    @Column(nullable = false)
+    private Long fulfilledCount = 0L;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long pharmacyId;
+        private LocalDate rollupDate;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.demo.model;
+
+import com.example.demo.config.PooledSequence;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * One medicine a pharmacy carries, with the quantity on hand, how much of it is held for
+ * orders awaiting acceptance, and its price.
+ * Medicines are matched on {@code medicineKey}, the normalised name, so "Paracetamol 500"
+ * and "paracetamol  500" are the same stock line.
+ */
+@Entity
+@Table(name = "pharmacy_inventory",
+        uniqueConstraints = @UniqueConstraint(name = "uk_pharmacy_inventory_medicine", columnNames = {"pharmacy_id", "medicine_key"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PharmacyInventoryItem {
+
+    @Id
+    @PooledSequence("pharmacy_inventory_seq")
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "pharmacy_id", nullable = false)
+    @JsonIgnore
+    private PharmacyStore pharmacy;
+
+    @Column(nullable = false)
+    private String medicineName; // As entered by the pharmacy
+
+    @Column(name = "medicine_key", nullable = false)
+    private String medicineKey; // Lower case, single spaces; see MedicineStockIndex.normalize
+
+    @Column(nullable = false)
+    private Integer quantity = 0; // On hand, including stock held for assigned orders
+
+    // Only changed by the conditional updates in PharmacyInventoryRepository, never by saving the entity
+    @Column(nullable = false, updatable = false)
+    private Integer reservedQuantity = 0;
+
+    @Column(nullable = true, precision = 10, scale = 2)
+    private BigDecimal unitPrice;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Running number of orders per pharmacy and status, kept in step with order status changes
+ * so dashboards read one row per status instead of scanning the pharmacy's order history.
+ */
+@Entity
+@Table(name = "pharmacy_order_status_counts")
+@IdClass(PharmacyOrderStatusCount.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PharmacyOrderStatusCount {
+
+    @Id
+    @Column(name = "pharmacy_id")
+    private Long pharmacyId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 32)
+    private MedicineOrder.OrderStatus status;
+
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount = 0L;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long pharmacyId;
+        private MedicineOrder.OrderStatus status;
+    }
+}
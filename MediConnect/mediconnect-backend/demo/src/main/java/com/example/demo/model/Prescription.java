@@ -1,5 +1,7 @@
 package com.example.demo.model;
 
+import com.example.demo.config.PooledSequence;
+import com.example.demo.utils.SnowflakeIdGenerator;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -19,7 +21,7 @@ import java.util.List;
 public class Prescription {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @PooledSequence("prescriptions_seq")
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -97,7 +99,7 @@ public class Prescription {
     }
 
     private String generatePrescriptionNumber() {
-        return "RX" + System.currentTimeMillis() + "-" + (int)(Math.random() * 1000);
+        return SnowflakeIdGenerator.nextNumber("RX");
     }
 
     public enum PrescriptionStatus {
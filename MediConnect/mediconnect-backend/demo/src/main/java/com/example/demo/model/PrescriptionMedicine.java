@@ -1,5 +1,6 @@
 package com.example.demo.model;
 
+import com.example.demo.config.PooledSequence;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -18,7 +19,7 @@ import java.time.LocalDateTime;
 public class PrescriptionMedicine {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @PooledSequence("prescription_medicines_seq")
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,67 @@
+package com.example.demo.model;
+
+import com.example.demo.config.PooledSequence;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Stock held at a pharmacy for one line of an assigned order. The held quantity is also
+ * counted in the stock line's reserved quantity until the hold is confirmed by acceptance,
+ * released by rejection or cancellation, or expires.
+ */
+@Entity
+@Table(name = "stock_reservations", indexes = {
+        @Index(name = "idx_stock_reservations_order", columnList = "order_id, state"),
+        // Expiry sweep: held rows past their deadline
+        @Index(name = "idx_stock_reservations_state_expires", columnList = "state, expires_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockReservation {
+
+    @Id
+    @PooledSequence("stock_reservations_seq")
+    private Long id;
+
+    @Column(name = "order_id", nullable = false)
+    private Long orderId;
+
+    @Column(name = "pharmacy_id", nullable = false)
+    private Long pharmacyId;
+
+    @Column(name = "medicine_key", nullable = false)
+    private String medicineKey;
+
+    @Column(nullable = false)
+    private Integer quantity;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private State state = State.HELD;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt; // Pharmacy must accept the order before this
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = true)
+    private LocalDateTime resolvedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    public enum State {
+        HELD,       // Counted in the stock line's reserved quantity
+        CONFIRMED,  // Order accepted; the stock left the shelf
+        RELEASED,   // Order rejected or cancelled before acceptance
+        EXPIRED     // Not accepted in time
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.Courier;
+import com.example.demo.model.Courier.CourierStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface CourierRepository extends JpaRepository<Courier, Long> {
+
+    Optional<Courier> findByPhone(String phone);
+
+    /**
+     * Take an idle courier for a run. Guards against another node having taken the courier first.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Courier c SET c.status = :assigned, c.currentRunId = :runId, c.updatedAt = :now " +
+           "WHERE c.id = :courierId AND c.status = :idle")
+    int claimForRun(@Param("courierId") Long courierId,
+                    @Param("runId") String runId,
+                    @Param("idle") CourierStatus idle,
+                    @Param("assigned") CourierStatus assigned,
+                    @Param("now") LocalDateTime now);
+
+    /**
+     * Free a courier from the run it was carrying
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Courier c SET c.status = :idle, c.currentRunId = NULL, c.lastLatitude = :latitude, c.lastLongitude = :longitude, " +
+           "c.updatedAt = :now WHERE c.id = :courierId AND c.currentRunId = :runId")
+    int releaseFromRun(@Param("courierId") Long courierId,
+                       @Param("runId") String runId,
+                       @Param("idle") CourierStatus idle,
+                       @Param("latitude") Double latitude,
+                       @Param("longitude") Double longitude,
+                       @Param("now") LocalDateTime now);
+
+    /**
+     * Go online or offline; a courier carrying a run keeps its status
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Courier c SET c.status = :status, c.lastLatitude = :latitude, c.lastLongitude = :longitude, c.updatedAt = :now " +
+           "WHERE c.id = :courierId AND c.status <> :assigned")
+    int updatePresence(@Param("courierId") Long courierId,
+                       @Param("status") CourierStatus status,
+                       @Param("assigned") CourierStatus assigned,
+                       @Param("latitude") Double latitude,
+                       @Param("longitude") Double longitude,
+                       @Param("now") LocalDateTime now);
+}
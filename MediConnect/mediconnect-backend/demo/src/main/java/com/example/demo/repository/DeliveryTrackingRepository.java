@@ -0,0 +1,95 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.DeliveryTracking;
+import com.example.demo.model.DeliveryTracking.DeliveryStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface DeliveryTrackingRepository extends JpaRepository<DeliveryTracking, Long> {
+
+    /**
+     * {id, order id, delivery status, delivery pincode} of a tracking number
+     */
+    @Query("SELECT t.id, t.order.id, t.deliveryStatus, t.order.deliveryPincode FROM DeliveryTracking t WHERE t.trackingNumber = :trackingNumber")
+    List<Object[]> findRefByTrackingNumber(@Param("trackingNumber") String trackingNumber);
+
+    /**
+     * Last stored position of deliveries in the given statuses, as
+     * {id, order id, tracking number, latitude, longitude, updated at, delivery pincode}
+     */
+    @Query("SELECT t.id, t.order.id, t.trackingNumber, t.currentLatitude, t.currentLongitude, t.updatedAt, t.order.deliveryPincode FROM DeliveryTracking t " +
+           "WHERE t.currentLatitude IS NOT NULL AND t.currentLongitude IS NOT NULL AND t.deliveryStatus IN :statuses")
+    List<Object[]> findPositionsByStatusIn(@Param("statuses") Collection<DeliveryStatus> statuses);
+
+    /**
+     * Hand every stop of a run to a courier, unless the run already has one
+     * @return Number of stops assigned; 0 when the run was dispatched or cancelled meanwhile
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE DeliveryTracking t SET t.courierId = :courierId, t.deliveryPartnerName = :name, t.deliveryPartnerPhone = :phone, " +
+           "t.vehicleNumber = :vehicleNumber, t.deliveryStatus = :assigned, t.updatedAt = :now " +
+           "WHERE t.runId = :runId AND t.courierId IS NULL AND t.deliveryStatus = :pending")
+    int assignRun(@Param("runId") String runId,
+                  @Param("courierId") Long courierId,
+                  @Param("name") String name,
+                  @Param("phone") String phone,
+                  @Param("vehicleNumber") String vehicleNumber,
+                  @Param("pending") DeliveryStatus pending,
+                  @Param("assigned") DeliveryStatus assigned,
+                  @Param("now") LocalDateTime now);
+
+    /**
+     * Orders carried by a run, as {order id, pharmacy id}
+     */
+    @Query("SELECT t.order.id, t.order.pharmacy.id FROM DeliveryTracking t WHERE t.runId = :runId ORDER BY t.runSequence")
+    List<Object[]> findOrdersOfRun(@Param("runId") String runId);
+
+    @Query("SELECT t.order.id FROM DeliveryTracking t WHERE t.order.id IN :orderIds")
+    List<Long> findTrackedOrderIds(@Param("orderIds") Collection<Long> orderIds);
+
+    /**
+     * Close the open stops of a run its courier has finished
+     * @return Number of stops closed
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE DeliveryTracking t SET t.deliveryStatus = :delivered, t.deliveryTime = :now, t.updatedAt = :now " +
+           "WHERE t.runId = :runId AND t.courierId = :courierId AND t.deliveryStatus IN :active")
+    int finishRun(@Param("runId") String runId,
+                  @Param("courierId") Long courierId,
+                  @Param("active") Collection<DeliveryStatus> active,
+                  @Param("delivered") DeliveryStatus delivered,
+                  @Param("now") LocalDateTime now);
+
+    /**
+     * Close the open deliveries of orders that were delivered or cancelled
+     * @return Number of deliveries closed
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE DeliveryTracking t SET t.deliveryStatus = :closed, t.deliveryTime = :deliveredAt, t.updatedAt = :now " +
+           "WHERE t.order.id IN :orderIds AND t.deliveryStatus IN :active")
+    int closeForOrders(@Param("orderIds") Collection<Long> orderIds,
+                       @Param("active") Collection<DeliveryStatus> active,
+                       @Param("closed") DeliveryStatus closed,
+                       @Param("deliveredAt") LocalDateTime deliveredAt,
+                       @Param("now") LocalDateTime now);
+
+    /**
+     * Runs still waiting for a courier, as {run id, pharmacy id}, oldest first
+     */
+    @Query("SELECT t.runId, MIN(t.order.pharmacy.id) FROM DeliveryTracking t WHERE t.runId IS NOT NULL AND t.courierId IS NULL " +
+           "AND t.deliveryStatus = :pending GROUP BY t.runId ORDER BY MIN(t.createdAt)")
+    List<Object[]> findUndispatchedRuns(@Param("pending") DeliveryStatus pending, Pageable pageable);
+}
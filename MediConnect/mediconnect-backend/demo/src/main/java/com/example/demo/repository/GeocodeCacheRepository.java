@@ -0,0 +1,24 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.GeocodeCacheEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface GeocodeCacheRepository extends JpaRepository<GeocodeCacheEntry, String> {
+
+    List<GeocodeCacheEntry> findByResolvedAtAfterOrderByResolvedAtDesc(LocalDateTime cutoff, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM GeocodeCacheEntry e WHERE e.resolvedAt < :cutoff")
+    int deleteByResolvedAtBefore(@Param("cutoff") LocalDateTime cutoff);
+}
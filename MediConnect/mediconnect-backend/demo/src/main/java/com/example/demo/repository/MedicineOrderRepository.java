@@ -4,12 +4,17 @@ import com.example.demo.model.MedicineOrder;
 import com.example.demo.model.Patient;
 import com.example.demo.model.PharmacyStore;
 import com.example.demo.model.MedicineOrder.OrderStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -43,24 +48,221 @@ public interface MedicineOrderRepository extends JpaRepository<MedicineOrder, Lo
     @Query("SELECT o FROM MedicineOrder o WHERE o.status IN :statuses AND o.pharmacy IS NULL ORDER BY o.createdAt ASC")
     List<MedicineOrder> findUnassignedOrders(@Param("statuses") List<OrderStatus> statuses);
     
+    @Query("SELECT o FROM MedicineOrder o WHERE o.status IN :statuses AND o.pharmacy IS NULL AND o.id > :afterId " +
+           "AND o.updatedAt < :updatedBefore ORDER BY o.id ASC")
+    List<MedicineOrder> findUnassignedOrdersAfter(@Param("statuses") List<OrderStatus> statuses,
+                                                  @Param("afterId") Long afterId,
+                                                  @Param("updatedBefore") LocalDateTime updatedBefore,
+                                                  Pageable pageable);
+    
+    @Query("SELECT COUNT(o) FROM MedicineOrder o WHERE o.status IN :statuses AND o.pharmacy IS NULL")
+    long countUnassignedOrders(@Param("statuses") List<OrderStatus> statuses);
+    
+    @Query("SELECT o.status, COUNT(o) FROM MedicineOrder o WHERE o.pharmacy.id = :pharmacyId GROUP BY o.status")
+    List<Object[]> countByStatusForPharmacy(@Param("pharmacyId") Long pharmacyId);
+    
+    @Query("SELECT o.pharmacy.id, COUNT(o) FROM MedicineOrder o WHERE o.pharmacy IS NOT NULL AND o.status IN :statuses GROUP BY o.pharmacy.id")
+    List<Object[]> countOrdersPerPharmacy(@Param("statuses") List<OrderStatus> statuses);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE MedicineOrder o SET o.pharmacy = :pharmacy, o.status = :assignedStatus, o.assignmentError = NULL, o.updatedAt = :now, " +
+           "o.version = o.version + 1 WHERE o.id = :orderId AND o.pharmacy IS NULL AND o.status IN :statuses")
+    int assignPharmacyIfUnassigned(@Param("orderId") Long orderId,
+                                   @Param("pharmacy") PharmacyStore pharmacy,
+                                   @Param("assignedStatus") OrderStatus assignedStatus,
+                                   @Param("statuses") List<OrderStatus> statuses,
+                                   @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE MedicineOrder o SET o.assignmentAttempts = COALESCE(o.assignmentAttempts, 0) + 1, " +
+           "o.assignmentError = :error, o.updatedAt = :now, o.version = o.version + 1 WHERE o.id = :orderId")
+    int recordAssignmentFailure(@Param("orderId") Long orderId,
+                                @Param("error") String error,
+                                @Param("now") LocalDateTime now);
+    
+    /**
+     * Park an order without a pharmacy in a failed status if it is still in one of the given statuses
+     * @return The status it was parked from, or nothing if it had moved on
+     */
+    @Transactional
+    @Query(value = "UPDATE medicine_orders o SET status = :failedStatus, updated_at = :now, version = o.version + 1 " +
+                   "FROM (SELECT id, status AS previous_status FROM medicine_orders WHERE id = :orderId FOR UPDATE) prev " +
+                   "WHERE o.id = prev.id AND o.pharmacy_id IS NULL AND prev.previous_status IN (:statuses) " +
+                   "RETURNING prev.previous_status",
+           nativeQuery = true)
+    List<String> markAssignmentFailed(@Param("orderId") Long orderId,
+                                      @Param("failedStatus") String failedStatus,
+                                      @Param("statuses") List<String> statuses,
+                                      @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE MedicineOrder o SET o.status = :pendingStatus, o.assignmentAttempts = 0, o.assignmentError = NULL, " +
+           "o.updatedAt = :now, o.version = o.version + 1 WHERE o.id = :orderId AND o.status = :failedStatus")
+    int requeueFailedAssignment(@Param("orderId") Long orderId,
+                                @Param("failedStatus") OrderStatus failedStatus,
+                                @Param("pendingStatus") OrderStatus pendingStatus,
+                                @Param("now") LocalDateTime now);
+    
+    // State machine transitions: each is one conditional UPDATE; 0 rows means the order was not in an allowed state
+    @Modifying
+    @Transactional
+    @Query("UPDATE MedicineOrder o SET o.status = :acceptedStatus, o.acceptedAt = :now, o.expectedDeliveryTime = :expectedDelivery, " +
+           "o.updatedAt = :now, o.version = o.version + 1 " +
+           "WHERE o.id = :orderId AND o.pharmacy.id = :pharmacyId AND o.status IN :fromStatuses")
+    int acceptIfAssigned(@Param("orderId") Long orderId,
+                         @Param("pharmacyId") Long pharmacyId,
+                         @Param("acceptedStatus") OrderStatus acceptedStatus,
+                         @Param("fromStatuses") List<OrderStatus> fromStatuses,
+                         @Param("now") LocalDateTime now,
+                         @Param("expectedDelivery") LocalDateTime expectedDelivery);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE MedicineOrder o SET o.status = :rejectedStatus, o.rejectionReason = :reason, o.pharmacy = NULL, " +
+           "o.updatedAt = :now, o.version = o.version + 1 " +
+           "WHERE o.id = :orderId AND o.pharmacy.id = :pharmacyId AND o.status IN :fromStatuses")
+    int rejectIfAssigned(@Param("orderId") Long orderId,
+                         @Param("pharmacyId") Long pharmacyId,
+                         @Param("rejectedStatus") OrderStatus rejectedStatus,
+                         @Param("fromStatuses") List<OrderStatus> fromStatuses,
+                         @Param("reason") String reason,
+                         @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE MedicineOrder o SET o.slaBreachedAt = :now, o.updatedAt = :now, o.version = o.version + 1 " +
+           "WHERE o.id = :orderId AND o.pharmacy.id = :pharmacyId AND o.status IN :statuses AND o.slaBreachedAt IS NULL")
+    int markSlaBreached(@Param("orderId") Long orderId,
+                        @Param("pharmacyId") Long pharmacyId,
+                        @Param("statuses") List<OrderStatus> statuses,
+                        @Param("now") LocalDateTime now);
+    
+    /**
+     * Orders with a running deadline, as {id, pharmacy id, status, updated at, accepted at}, in id order
+     */
+    @Query("SELECT o.id, o.pharmacy.id, o.status, o.updatedAt, o.acceptedAt FROM MedicineOrder o " +
+           "WHERE o.status IN :statuses AND o.pharmacy IS NOT NULL AND o.slaBreachedAt IS NULL AND o.id > :afterId ORDER BY o.id ASC")
+    List<Object[]> findDeadlinesAfter(@Param("statuses") List<OrderStatus> statuses,
+                                      @Param("afterId") Long afterId,
+                                      Pageable pageable);
+    
+    /**
+     * Delivery orders of a pharmacy in the given status that are not on a delivery run yet, oldest first.
+     * Orders that could not be located are left out until {@code retryBefore} has passed their last attempt.
+     */
+    @Query("SELECT o FROM MedicineOrder o WHERE o.pharmacy.id = :pharmacyId AND o.status = :status AND o.orderType = :orderType " +
+           "AND (o.deliveryUnlocatedAt IS NULL OR o.deliveryUnlocatedAt < :retryBefore) " +
+           "AND NOT EXISTS (SELECT t.id FROM DeliveryTracking t WHERE t.order = o) ORDER BY o.updatedAt ASC")
+    List<MedicineOrder> findUnroutedOrders(@Param("pharmacyId") Long pharmacyId,
+                                           @Param("status") OrderStatus status,
+                                           @Param("orderType") MedicineOrder.OrderType orderType,
+                                           @Param("retryBefore") LocalDateTime retryBefore,
+                                           Pageable pageable);
+
+    /**
+     * Pharmacies with delivery orders in the given status not on a run yet, as {pharmacy id, order count, oldest updated at}.
+     * Orders that could not be located are left out as in {@link #findUnroutedOrders}.
+     */
+    @Query("SELECT o.pharmacy.id, COUNT(o), MIN(o.updatedAt) FROM MedicineOrder o WHERE o.status = :status AND o.orderType = :orderType " +
+           "AND o.pharmacy IS NOT NULL AND (o.deliveryUnlocatedAt IS NULL OR o.deliveryUnlocatedAt < :retryBefore) " +
+           "AND NOT EXISTS (SELECT t.id FROM DeliveryTracking t WHERE t.order = o) GROUP BY o.pharmacy.id")
+    List<Object[]> countUnroutedOrdersPerPharmacy(@Param("status") OrderStatus status,
+                                                  @Param("orderType") MedicineOrder.OrderType orderType,
+                                                  @Param("retryBefore") LocalDateTime retryBefore);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE MedicineOrder o SET o.deliveryUnlocatedAt = :now WHERE o.id IN :orderIds")
+    int markDeliveryUnlocated(@Param("orderIds") Collection<Long> orderIds, @Param("now") LocalDateTime now);
+
+    /**
+     * Lock the orders still in a status for putting them on a run. Orders another planner or
+     * writer holds are skipped rather than waited for; they come up again in a later pass.
+     * @return Ids of the orders locked
+     */
+    @Query(value = "SELECT id FROM medicine_orders WHERE id IN (:orderIds) AND status = :status ORDER BY id FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<Long> lockForRouting(@Param("orderIds") Collection<Long> orderIds, @Param("status") String status);
+
+    /**
+     * Lock a set of orders for a bulk status change. Rows are locked in id order so two
+     * overlapping batches cannot deadlock each other.
+     * @return {id, status, pharmacy id, created at, final amount} for each order that exists
+     */
+    @Query(value = "SELECT id, status, pharmacy_id, created_at, final_amount FROM medicine_orders WHERE id IN (:orderIds) ORDER BY id FOR UPDATE",
+           nativeQuery = true)
+    List<Object[]> lockStatusesForUpdate(@Param("orderIds") Collection<Long> orderIds);
+
+    /**
+     * Move an order to a new status if it is currently in one of the given statuses.
+     * The row lock in the subquery makes the returned previous status and pharmacy exact.
+     * @return One row of {previous status, previous pharmacy id, created at, final amount, delivered at},
+     *         or nothing if the transition was not allowed
+     */
+    @Transactional
+    @Query(value = "UPDATE medicine_orders o SET status = :toStatus, updated_at = :now, version = o.version + 1, " +
+                   "delivered_at = CASE WHEN :toStatus = 'DELIVERED' THEN :now ELSE o.delivered_at END " +
+                   "FROM (SELECT id, status AS previous_status, pharmacy_id AS previous_pharmacy_id " +
+                   "      FROM medicine_orders WHERE id = :orderId FOR UPDATE) prev " +
+                   "WHERE o.id = prev.id AND prev.previous_status IN (:fromStatuses) " +
+                   "RETURNING prev.previous_status, prev.previous_pharmacy_id, o.created_at, o.final_amount, o.delivered_at",
+           nativeQuery = true)
+    List<Object[]> transitionStatus(@Param("orderId") Long orderId,
+                                    @Param("fromStatuses") List<String> fromStatuses,
+                                    @Param("toStatus") String toStatus,
+                                    @Param("now") LocalDateTime now);
+    
+    // Scans the pharmacy's orders; revenue reports read PharmacyDailyRollup instead
     @Query("SELECT SUM(o.finalAmount) FROM MedicineOrder o WHERE o.pharmacy = :pharmacy AND o.status = :status AND o.createdAt BETWEEN :startDate AND :endDate")
     Double getTotalRevenueByPharmacyAndDateRange(@Param("pharmacy") PharmacyStore pharmacy, 
                                                @Param("status") OrderStatus status,
                                                @Param("startDate") LocalDateTime startDate, 
                                                @Param("endDate") LocalDateTime endDate);
     
-    @Query("SELECT o FROM MedicineOrder o JOIN FETCH o.patient JOIN FETCH o.prescription WHERE o.pharmacy = :pharmacy ORDER BY o.createdAt DESC")
-    List<MedicineOrder> findByPharmacyWithPatientAndPrescriptionOrderByCreatedAtDesc(@Param("pharmacy") PharmacyStore pharmacy);
+    @Query("SELECT MIN(o.createdAt) FROM MedicineOrder o")
+    LocalDateTime findEarliestCreatedAt();
     
-    @Query("SELECT o FROM MedicineOrder o JOIN FETCH o.patient JOIN FETCH o.prescription WHERE o.patient = :patient ORDER BY o.createdAt DESC")
-    List<MedicineOrder> findByPatientWithPatientAndPrescriptionOrderByCreatedAtDesc(@Param("patient") Patient patient);
-    
-    @Query("SELECT o FROM MedicineOrder o JOIN FETCH o.patient JOIN FETCH o.prescription WHERE o.status = :status ORDER BY o.createdAt ASC")
-    List<MedicineOrder> findByStatusWithPatientAndPrescriptionOrderByCreatedAtAsc(@Param("status") OrderStatus status);
-    
-    @Query("SELECT o FROM MedicineOrder o JOIN FETCH o.patient JOIN FETCH o.prescription WHERE o.id = :orderId")
+    @EntityGraph("MedicineOrder.detail")
+    @Query("SELECT o FROM MedicineOrder o WHERE o.id = :orderId")
     Optional<MedicineOrder> findByIdWithPatientAndPrescription(@Param("orderId") Long orderId);
     
-    @Query("SELECT o FROM MedicineOrder o JOIN FETCH o.patient JOIN FETCH o.prescription WHERE o.orderNumber = :orderNumber")
+    @EntityGraph("MedicineOrder.detail")
+    @Query("SELECT o FROM MedicineOrder o WHERE o.orderNumber = :orderNumber")
     Optional<MedicineOrder> findByOrderNumberWithPatientAndPrescription(@Param("orderNumber") String orderNumber);
+    
+    // Keyset pages: the leading createdAt bound lets the index seek straight to the cursor
+    @EntityGraph("MedicineOrder.detail")
+    @Query("SELECT o FROM MedicineOrder o " +
+           "WHERE o.pharmacy = :pharmacy AND o.status IN :statuses " +
+           "AND o.createdAt <= :createdAt AND (o.createdAt < :createdAt OR o.id < :id) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<MedicineOrder> findPharmacyOrdersBefore(@Param("pharmacy") PharmacyStore pharmacy,
+                                                 @Param("statuses") List<OrderStatus> statuses,
+                                                 @Param("createdAt") LocalDateTime createdAt,
+                                                 @Param("id") Long id,
+                                                 Pageable pageable);
+    
+    @EntityGraph("MedicineOrder.detail")
+    @Query("SELECT o FROM MedicineOrder o " +
+           "WHERE o.patient = :patient AND o.status IN :statuses " +
+           "AND o.createdAt <= :createdAt AND (o.createdAt < :createdAt OR o.id < :id) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<MedicineOrder> findPatientOrdersBefore(@Param("patient") Patient patient,
+                                                @Param("statuses") List<OrderStatus> statuses,
+                                                @Param("createdAt") LocalDateTime createdAt,
+                                                @Param("id") Long id,
+                                                Pageable pageable);
+    
+    @EntityGraph("MedicineOrder.detail")
+    @Query("SELECT o FROM MedicineOrder o " +
+           "WHERE o.status IN :statuses " +
+           "AND o.createdAt >= :createdAt AND (o.createdAt > :createdAt OR o.id > :id) " +
+           "ORDER BY o.createdAt ASC, o.id ASC")
+    List<MedicineOrder> findOrdersByStatusAfter(@Param("statuses") List<OrderStatus> statuses,
+                                                @Param("createdAt") LocalDateTime createdAt,
+                                                @Param("id") Long id,
+                                                Pageable pageable);
 }
@@ -0,0 +1,24 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.OrderItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
+
+    @Query("SELECT i FROM OrderItem i WHERE i.order.id IN :orderIds ORDER BY i.id")
+    List<OrderItem> findByOrderIdIn(@Param("orderIds") Collection<Long> orderIds);
+
+    /**
+     * What the orders need from a pharmacy, as {order id, medicine name, generic name, quantity}
+     */
+    @Query("SELECT i.order.id, i.medicineName, m.genericName, i.quantityRequested FROM OrderItem i " +
+           "JOIN i.prescriptionMedicine m WHERE i.order.id IN :orderIds")
+    List<Object[]> findRequirementsByOrderIdIn(@Param("orderIds") Collection<Long> orderIds);
+}
@@ -0,0 +1,44 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.OrderOutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OrderOutboxRepository extends JpaRepository<OrderOutboxEvent, Long> {
+
+    /**
+     * Claim due events for delivery. An event is only eligible when no earlier event of the same
+     * order is still pending, which keeps per-order ordering even with several dispatchers;
+     * SKIP LOCKED lets those dispatchers take disjoint batches. Must run inside a transaction.
+     */
+    @Query(value = "SELECT * FROM order_outbox_events e " +
+                   "WHERE e.delivery_state = 'PENDING' AND e.next_attempt_at <= :now " +
+                   "AND NOT EXISTS (SELECT 1 FROM order_outbox_events p " +
+                   "                WHERE p.order_id = e.order_id AND p.delivery_state = 'PENDING' AND p.id < e.id) " +
+                   "ORDER BY e.id LIMIT :limit FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<OrderOutboxEvent> claimDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE OrderOutboxEvent e SET e.deliveryState = com.example.demo.model.OrderOutboxEvent.DeliveryState.DELIVERED, " +
+           "e.processedAt = :now, e.attempts = e.attempts + 1 WHERE e.id IN :ids")
+    int markDelivered(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    @Query("SELECT COUNT(e) FROM OrderOutboxEvent e WHERE e.deliveryState = :state")
+    long countByDeliveryState(@Param("state") OrderOutboxEvent.DeliveryState state);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM OrderOutboxEvent e WHERE e.deliveryState = com.example.demo.model.OrderOutboxEvent.DeliveryState.DELIVERED " +
+           "AND e.processedAt < :cutoff")
+    int deleteDeliveredBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,22 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.OrderPharmacyRefusal;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OrderPharmacyRefusalRepository extends JpaRepository<OrderPharmacyRefusal, Long> {
+
+    /**
+     * Pharmacies that gave back any of the orders, as {order id, pharmacy id}
+     */
+    @Query("SELECT DISTINCT r.orderId, r.pharmacyId FROM OrderPharmacyRefusal r WHERE r.orderId IN :orderIds")
+    List<Object[]> findPharmacyIdsByOrderIds(@Param("orderIds") Collection<Long> orderIds);
+
+    long countByOrderIdAndReason(Long orderId, OrderPharmacyRefusal.Reason reason);
+}
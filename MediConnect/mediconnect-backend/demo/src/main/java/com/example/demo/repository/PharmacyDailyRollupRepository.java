@@ -0,0 +1,82 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.PharmacyDailyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface PharmacyDailyRollupRepository extends JpaRepository<PharmacyDailyRollup, PharmacyDailyRollup.Key> {
+
+    List<PharmacyDailyRollup> findByPharmacyIdAndRollupDateBetweenOrderByRollupDate(Long pharmacyId, LocalDate from, LocalDate to);
+
+    /**
+     * Totals over a date range: revenue, delivered, cancelled, refunded, refunded amount, fulfilment seconds, fulfilled.
+     * Reads at most one row per day from the primary key.
+     */
+    @Query("SELECT COALESCE(SUM(r.revenue), 0), COALESCE(SUM(r.deliveredCount), 0), COALESCE(SUM(r.cancelledCount), 0), " +
+           "COALESCE(SUM(r.refundedCount), 0), COALESCE(SUM(r.refundedAmount), 0), COALESCE(SUM(r.fulfilmentSeconds), 0), " +
+           "COALESCE(SUM(r.fulfilledCount), 0) " +
+           "FROM PharmacyDailyRollup r WHERE r.pharmacyId = :pharmacyId AND r.rollupDate BETWEEN :from AND :to")
+    List<Object[]> sumByPharmacyAndDateRange(@Param("pharmacyId") Long pharmacyId,
+                                             @Param("from") LocalDate from,
+                                             @Param("to") LocalDate to);
+
+    // Callers run this in the same transaction as the order change it accounts for
+    @Modifying
+    @Query(value = "INSERT INTO pharmacy_daily_rollups (pharmacy_id, rollup_date, revenue, delivered_count, cancelled_count, " +
+                   "refunded_count, refunded_amount, fulfilment_seconds, fulfilled_count) " +
+                   "VALUES (:pharmacyId, :day, :revenue, :delivered, :cancelled, :refunded, :refundedAmount, :fulfilmentSeconds, :fulfilled) " +
+                   "ON CONFLICT (pharmacy_id, rollup_date) DO UPDATE SET " +
+                   "revenue = pharmacy_daily_rollups.revenue + EXCLUDED.revenue, " +
+                   "delivered_count = pharmacy_daily_rollups.delivered_count + EXCLUDED.delivered_count, " +
+                   "cancelled_count = pharmacy_daily_rollups.cancelled_count + EXCLUDED.cancelled_count, " +
+                   "refunded_count = pharmacy_daily_rollups.refunded_count + EXCLUDED.refunded_count, " +
+                   "refunded_amount = pharmacy_daily_rollups.refunded_amount + EXCLUDED.refunded_amount, " +
+                   "fulfilment_seconds = pharmacy_daily_rollups.fulfilment_seconds + EXCLUDED.fulfilment_seconds, " +
+                   "fulfilled_count = pharmacy_daily_rollups.fulfilled_count + EXCLUDED.fulfilled_count",
+           nativeQuery = true)
+    int addToRollup(@Param("pharmacyId") Long pharmacyId,
+                    @Param("day") LocalDate day,
+                    @Param("revenue") BigDecimal revenue,
+                    @Param("delivered") long delivered,
+                    @Param("cancelled") long cancelled,
+                    @Param("refunded") long refunded,
+                    @Param("refundedAmount") BigDecimal refundedAmount,
+                    @Param("fulfilmentSeconds") long fulfilmentSeconds,
+                    @Param("fulfilled") long fulfilled);
+
+    // Blocks rollup updates until the rebuilt chunk commits, so no delta is lost or applied twice
+    @Modifying
+    @Query(value = "LOCK TABLE pharmacy_daily_rollups IN EXCLUSIVE MODE", nativeQuery = true)
+    void lockForRebuild();
+
+    @Modifying
+    @Query(value = "DELETE FROM pharmacy_daily_rollups WHERE rollup_date >= :from AND rollup_date < :to", nativeQuery = true)
+    int deleteRange(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Modifying
+    @Query(value = "INSERT INTO pharmacy_daily_rollups (pharmacy_id, rollup_date, revenue, delivered_count, cancelled_count, " +
+                   "refunded_count, refunded_amount, fulfilment_seconds, fulfilled_count) " +
+                   "SELECT pharmacy_id, CAST(created_at AS date), " +
+                   "SUM(CASE WHEN status = 'DELIVERED' THEN final_amount ELSE 0 END), " +
+                   "SUM(CASE WHEN status = 'DELIVERED' THEN 1 ELSE 0 END), " +
+                   "SUM(CASE WHEN status = 'CANCELLED' THEN 1 ELSE 0 END), " +
+                   "SUM(CASE WHEN status = 'REFUNDED' THEN 1 ELSE 0 END), " +
+                   "SUM(CASE WHEN status = 'REFUNDED' THEN final_amount ELSE 0 END), " +
+                   "COALESCE(SUM(CAST(EXTRACT(EPOCH FROM (delivered_at - created_at)) AS BIGINT)), 0), " +
+                   "COUNT(delivered_at) " +
+                   "FROM medicine_orders " +
+                   "WHERE pharmacy_id IS NOT NULL AND status IN ('DELIVERED', 'CANCELLED', 'REFUNDED') " +
+                   "AND created_at >= :from AND created_at < :to " +
+                   "GROUP BY pharmacy_id, CAST(created_at AS date)",
+           nativeQuery = true)
+    int insertFromOrders(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+}
@@ -0,0 +1,54 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.PharmacyInventoryItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PharmacyInventoryRepository extends JpaRepository<PharmacyInventoryItem, Long> {
+
+    @Query("SELECT i FROM PharmacyInventoryItem i WHERE i.pharmacy.id = :pharmacyId ORDER BY i.medicineName")
+    List<PharmacyInventoryItem> findByPharmacyId(@Param("pharmacyId") Long pharmacyId);
+
+    @Query("SELECT i FROM PharmacyInventoryItem i WHERE i.pharmacy.id = :pharmacyId AND i.medicineKey IN :medicineKeys")
+    List<PharmacyInventoryItem> findByPharmacyIdAndMedicineKeyIn(@Param("pharmacyId") Long pharmacyId,
+                                                                @Param("medicineKeys") Collection<String> medicineKeys);
+
+    /**
+     * Everything available, as {pharmacy id, medicine key, quantity not held for orders}, for rebuilding the stock index
+     */
+    @Query("SELECT i.pharmacy.id, i.medicineKey, i.quantity - i.reservedQuantity FROM PharmacyInventoryItem i " +
+           "WHERE i.quantity > i.reservedQuantity")
+    List<Object[]> findStockLevels();
+
+    @Query("SELECT i.quantity - i.reservedQuantity FROM PharmacyInventoryItem i WHERE i.pharmacy.id = :pharmacyId AND i.medicineKey = :medicineKey")
+    Integer findAvailable(@Param("pharmacyId") Long pharmacyId, @Param("medicineKey") String medicineKey);
+
+    // Stock holds: each is one conditional UPDATE that locks only the stock line it changes
+    @Modifying
+    @Transactional
+    @Query("UPDATE PharmacyInventoryItem i SET i.reservedQuantity = i.reservedQuantity + :quantity " +
+           "WHERE i.pharmacy.id = :pharmacyId AND i.medicineKey = :medicineKey AND i.quantity - i.reservedQuantity >= :quantity")
+    int reserve(@Param("pharmacyId") Long pharmacyId, @Param("medicineKey") String medicineKey, @Param("quantity") int quantity);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PharmacyInventoryItem i SET i.reservedQuantity = CASE WHEN i.reservedQuantity > :quantity THEN i.reservedQuantity - :quantity ELSE 0 END " +
+           "WHERE i.pharmacy.id = :pharmacyId AND i.medicineKey = :medicineKey")
+    int unreserve(@Param("pharmacyId") Long pharmacyId, @Param("medicineKey") String medicineKey, @Param("quantity") int quantity);
+
+    // The held stock leaves the shelf: both on-hand and held go down
+    @Modifying
+    @Transactional
+    @Query("UPDATE PharmacyInventoryItem i SET i.quantity = CASE WHEN i.quantity > :quantity THEN i.quantity - :quantity ELSE 0 END, " +
+           "i.reservedQuantity = CASE WHEN i.reservedQuantity > :quantity THEN i.reservedQuantity - :quantity ELSE 0 END " +
+           "WHERE i.pharmacy.id = :pharmacyId AND i.medicineKey = :medicineKey")
+    int consumeReserved(@Param("pharmacyId") Long pharmacyId, @Param("medicineKey") String medicineKey, @Param("quantity") int quantity);
+}
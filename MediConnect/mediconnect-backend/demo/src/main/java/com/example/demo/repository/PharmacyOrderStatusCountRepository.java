@@ -0,0 +1,46 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.PharmacyOrderStatusCount;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface PharmacyOrderStatusCountRepository extends JpaRepository<PharmacyOrderStatusCount, PharmacyOrderStatusCount.Key> {
+
+    List<PharmacyOrderStatusCount> findByPharmacyId(Long pharmacyId);
+
+    // Callers run this in the same transaction as the order change it accounts for
+    @Modifying
+    @Query(value = "INSERT INTO pharmacy_order_status_counts (pharmacy_id, status, order_count) VALUES (:pharmacyId, :status, :delta) " +
+                   "ON CONFLICT (pharmacy_id, status) DO UPDATE SET order_count = pharmacy_order_status_counts.order_count + EXCLUDED.order_count",
+           nativeQuery = true)
+    int addToCount(@Param("pharmacyId") Long pharmacyId, @Param("status") String status, @Param("delta") long delta);
+
+    @Query(value = "SELECT pharmacy_id FROM medicine_orders WHERE pharmacy_id IS NOT NULL " +
+                   "UNION SELECT pharmacy_id FROM pharmacy_order_status_counts ORDER BY pharmacy_id",
+           nativeQuery = true)
+    List<Long> findCountedPharmacyIds();
+
+    // A zero row for the reconcile to lock; a row another transaction created first is kept as it is
+    @Modifying
+    @Query(value = "INSERT INTO pharmacy_order_status_counts (pharmacy_id, status, order_count) VALUES (:pharmacyId, :status, 0) " +
+                   "ON CONFLICT (pharmacy_id, status) DO NOTHING",
+           nativeQuery = true)
+    int openCount(@Param("pharmacyId") Long pharmacyId, @Param("status") String status);
+
+    // Holds back the pharmacy's counter updates until the reconcile commits, so no delta is lost or applied twice
+    @Query(value = "SELECT status, order_count FROM pharmacy_order_status_counts WHERE pharmacy_id = :pharmacyId " +
+                   "ORDER BY status FOR UPDATE",
+           nativeQuery = true)
+    List<Object[]> lockCounts(@Param("pharmacyId") Long pharmacyId);
+
+    @Modifying
+    @Query(value = "UPDATE pharmacy_order_status_counts SET order_count = :count WHERE pharmacy_id = :pharmacyId AND status = :status",
+           nativeQuery = true)
+    int setCount(@Param("pharmacyId") Long pharmacyId, @Param("status") String status, @Param("count") long count);
+}
@@ -0,0 +1,52 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.StockReservation;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface StockReservationRepository extends JpaRepository<StockReservation, Long> {
+
+    /**
+     * Lock the holds of some orders that are still in a state, in stock line order so concurrent
+     * resolvers cannot deadlock. A hold resolved by another transaction while waiting drops out.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM StockReservation r WHERE r.orderId IN :orderIds AND r.state = :state " +
+           "ORDER BY r.pharmacyId, r.medicineKey, r.id")
+    List<StockReservation> lockByOrderIdsAndState(@Param("orderIds") Collection<Long> orderIds,
+                                                  @Param("state") StockReservation.State state);
+
+    /**
+     * Orders with holds past their deadline, as {order id, pharmacy id}, leaving out orders
+     * still waiting in a status at the pharmacy the holds are at
+     */
+    @Query("SELECT DISTINCT r.orderId, r.pharmacyId FROM StockReservation r WHERE r.state = :state AND r.expiresAt < :now " +
+           "AND NOT EXISTS (SELECT o.id FROM MedicineOrder o WHERE o.id = r.orderId AND o.pharmacy.id = r.pharmacyId " +
+           "AND o.status = :waiting)")
+    List<Object[]> findExpiredOrders(@Param("state") StockReservation.State state,
+                                     @Param("now") LocalDateTime now,
+                                     @Param("waiting") MedicineOrder.OrderStatus waiting,
+                                     Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE StockReservation r SET r.state = :state, r.resolvedAt = :now WHERE r.id IN :ids")
+    int resolve(@Param("ids") Collection<Long> ids,
+                @Param("state") StockReservation.State state,
+                @Param("now") LocalDateTime now);
+
+    long countByState(StockReservation.State state);
+}
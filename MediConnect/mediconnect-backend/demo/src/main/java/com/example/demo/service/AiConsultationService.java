@@ -4,6 +4,7 @@ import com.example.demo.model.AiConsultation;
 import com.example.demo.model.Patient;
 import com.example.demo.repository.AiConsultationRepository;
 import com.example.demo.repository.PatientRepository;
+import com.example.demo.utils.SnowflakeIdGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
@@ -168,11 +169,11 @@ public class AiConsultationService {
 	}
 	
 	private String generateConversationId() {
-		return "conv_" + System.currentTimeMillis() + "_" + (int)(Math.random() * 1000);
+		return SnowflakeIdGenerator.nextNumber("conv_");
 	}
 	
 	private String generateSessionId() {
-		return "session_" + System.currentTimeMillis() + "_" + (int)(Math.random() * 1000);
+		return SnowflakeIdGenerator.nextNumber("session_");
 	}
 
 	private Map<String, Object> generateAdviceWithGemini(String question) {
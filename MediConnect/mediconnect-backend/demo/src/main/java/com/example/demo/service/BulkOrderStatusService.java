@@ -0,0 +1,185 @@
+package com.example.demo.service;
+
+import com.example.demo.model.BulkOrderStatusResult;
+import com.example.demo.model.BulkOrderStatusResult.Outcome;
+import com.example.demo.model.DeliveryTracking;
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.OrderEvent;
+import com.example.demo.model.StockReservation;
+import com.example.demo.repository.DeliveryTrackingRepository;
+import com.example.demo.repository.MedicineOrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies one status transition to many orders of a pharmacy in a single transaction.
+ *
+ * The orders are locked up front in id order, every order is checked against the
+ * transition table and the pharmacy, and the allowed ones are written with one JDBC
+ * batch. Orders that cannot move are reported individually instead of failing the batch.
+ */
+@Service
+public class BulkOrderStatusService {
+
+    private static final String UPDATE_STATUS_SQL =
+            "UPDATE medicine_orders SET status = ?, updated_at = ?, version = version + 1 WHERE id = ?";
+
+    private static final String DELIVER_SQL =
+            "UPDATE medicine_orders SET status = ?, delivered_at = ?, updated_at = ?, version = version + 1 WHERE id = ?";
+
+    private static final String ACCEPT_SQL =
+            "UPDATE medicine_orders SET status = ?, accepted_at = ?, expected_delivery_time = ?, updated_at = ?, " +
+            "version = version + 1 WHERE id = ?";
+
+    @Autowired
+    private MedicineOrderRepository medicineOrderRepository;
+
+    @Autowired
+    private PharmacyOrderStatsService pharmacyOrderStatsService;
+
+    @Autowired
+    private PharmacyRevenueRollupService pharmacyRevenueRollupService;
+
+    @Autowired
+    private OrderOutbox orderOutbox;
+
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    @Autowired
+    private DeliveryTrackingRepository deliveryTrackingRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${orders.bulk.max-size:100}")
+    private int maxBatchSize;
+
+    /**
+     * Move the given orders of a pharmacy to a new status
+     * @param pharmacyId Pharmacy the orders must be assigned to
+     * @param orderIds Orders to update; duplicates are ignored
+     * @param target Status to move to. Rejection is not supported here since it needs a reason and triggers reassignment
+     * @return One result per distinct order id, in request order
+     */
+    @Transactional
+    public List<BulkOrderStatusResult> updateStatuses(Long pharmacyId, List<Long> orderIds, MedicineOrder.OrderStatus target) {
+        if (pharmacyId == null) {
+            throw new RuntimeException("Pharmacy id is required");
+        }
+        if (target == null) {
+            throw new RuntimeException("Status is required");
+        }
+        if (target == MedicineOrder.OrderStatus.REJECTED) {
+            throw new RuntimeException("Orders must be rejected individually");
+        }
+        if (orderIds == null || orderIds.isEmpty()) {
+            throw new RuntimeException("No orders given");
+        }
+        Set<Long> ids = new LinkedHashSet<>(orderIds);
+        if (ids.size() > maxBatchSize) {
+            throw new RuntimeException("At most " + maxBatchSize + " orders can be updated at once");
+        }
+
+        Map<Long, Object[]> current = new HashMap<>();
+        for (Object[] row : medicineOrderRepository.lockStatusesForUpdate(ids)) {
+            current.put(((Number) row[0]).longValue(), row);
+        }
+
+        List<BulkOrderStatusResult> results = new ArrayList<>();
+        List<OrderEvent> events = new ArrayList<>();
+        Map<MedicineOrder.OrderStatus, Long> deltas = new EnumMap<>(MedicineOrder.OrderStatus.class);
+        PharmacyRevenueRollupService.Changes rollupChanges = new PharmacyRevenueRollupService.Changes();
+        List<Long> holding = new ArrayList<>(); // Orders that may have stock held for them
+        LocalDateTime now = LocalDateTime.now();
+        for (Long orderId : ids) {
+            Object[] row = current.get(orderId);
+            if (row == null) {
+                results.add(new BulkOrderStatusResult(orderId, Outcome.NOT_FOUND, null, "Order not found with id: " + orderId));
+                continue;
+            }
+            MedicineOrder.OrderStatus status = MedicineOrder.OrderStatus.valueOf((String) row[1]);
+            Long orderPharmacyId = row[2] == null ? null : ((Number) row[2]).longValue();
+            if (!pharmacyId.equals(orderPharmacyId)) {
+                results.add(new BulkOrderStatusResult(orderId, Outcome.NOT_AUTHORIZED, status,
+                        "Pharmacy not authorized to update this order"));
+            } else if (!status.canTransitionTo(target)) {
+                results.add(new BulkOrderStatusResult(orderId, Outcome.CONFLICT, status,
+                        "Order is " + status + " and cannot move to " + target));
+            } else {
+                results.add(new BulkOrderStatusResult(orderId, Outcome.UPDATED, target, null));
+                OrderEvent.Type type = target == MedicineOrder.OrderStatus.ACCEPTED
+                        ? OrderEvent.Type.ACCEPTED : OrderEvent.Type.STATUS_CHANGED;
+                events.add(OrderEvent.of(type, orderId, pharmacyId, status, target));
+                deltas.merge(status, -1L, Long::sum);
+                deltas.merge(target, 1L, Long::sum);
+                rollupChanges.add(status, target, PharmacyRevenueRollupService.toDateTime(row[3]), (BigDecimal) row[4],
+                        target == MedicineOrder.OrderStatus.DELIVERED ? now : null);
+                if (status == MedicineOrder.OrderStatus.PHARMACY_ASSIGNED) {
+                    holding.add(orderId);
+                }
+            }
+        }
+
+        if (!events.isEmpty()) {
+            jdbcTemplate.batchUpdate(updateSql(target), batchArgs(events, target, now));
+            pharmacyOrderStatsService.recordTransitions(pharmacyId, deltas);
+            if (!rollupChanges.isEmpty()) {
+                pharmacyRevenueRollupService.record(pharmacyId, rollupChanges);
+            }
+            events.forEach(orderOutbox::record);
+            DeliveryTracking.DeliveryStatus closed = DeliveryTracking.DeliveryStatus.closingFor(target);
+            if (closed != null) {
+                deliveryTrackingRepository.closeForOrders(events.stream().map(OrderEvent::getOrderId).toList(),
+                        DeliveryTracking.DeliveryStatus.active(), closed,
+                        closed == DeliveryTracking.DeliveryStatus.DELIVERED ? now : null, now);
+            }
+        }
+        if (!holding.isEmpty()) {
+            if (target == MedicineOrder.OrderStatus.ACCEPTED) {
+                stockReservationService.confirm(holding);
+            } else {
+                stockReservationService.release(holding, StockReservation.State.RELEASED);
+            }
+        }
+        return results;
+    }
+
+    private static String updateSql(MedicineOrder.OrderStatus target) {
+        if (target == MedicineOrder.OrderStatus.ACCEPTED) {
+            return ACCEPT_SQL;
+        }
+        return target == MedicineOrder.OrderStatus.DELIVERED ? DELIVER_SQL : UPDATE_STATUS_SQL;
+    }
+
+    // The rows are locked, so the batch cannot lose a race with another writer
+    private static List<Object[]> batchArgs(List<OrderEvent> events, MedicineOrder.OrderStatus target, LocalDateTime now) {
+        Timestamp updatedAt = Timestamp.valueOf(now);
+        List<Object[]> args = new ArrayList<>(events.size());
+        for (OrderEvent event : events) {
+            Long orderId = event.getOrderId();
+            if (target == MedicineOrder.OrderStatus.ACCEPTED) {
+                args.add(new Object[]{target.name(), updatedAt, Timestamp.valueOf(now.plusHours(2)), updatedAt, orderId}); // Default 2 hours
+            } else if (target == MedicineOrder.OrderStatus.DELIVERED) {
+                args.add(new Object[]{target.name(), updatedAt, updatedAt, orderId});
+            } else {
+                args.add(new Object[]{target.name(), updatedAt, orderId});
+            }
+        }
+        return args;
+    }
+}
@@ -0,0 +1,354 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Courier;
+import com.example.demo.model.Courier.CourierStatus;
+import com.example.demo.model.DeliveryTracking.DeliveryStatus;
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.PharmacyStore;
+import com.example.demo.repository.CourierRepository;
+import com.example.demo.repository.DeliveryTrackingRepository;
+import com.example.demo.utils.GeoGridIndex;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Courier registry and dispatcher for delivery runs.
+ *
+ * Online couriers live in memory with their last reported location; the free ones are also in
+ * a {@link GeoGridIndex}. A run is dispatched by walking the index outwards from its pharmacy
+ * and claiming the first free courier with a compare-and-set on the courier's current run, so
+ * two dispatches can never take the same courier and neither waits on a lock. The claim is then
+ * made durable with guarded updates of the courier and the run, which also stops another node
+ * from taking the same courier or run; if those lose, the in-memory claim is undone.
+ *
+ * The run's orders follow it through the order lifecycle in the same transactions: they go
+ * out for delivery when a courier takes the run and are delivered when the courier completes it.
+ */
+@Service
+public class CourierDispatchService {
+
+    private static final String OFFLINE = "";  // Claim marker of a courier going offline
+
+    @Autowired
+    private CourierRepository courierRepository;
+
+    @Autowired
+    private DeliveryTrackingRepository deliveryTrackingRepository;
+
+    @Autowired
+    private PharmacySpatialIndex pharmacySpatialIndex;
+
+    @Autowired
+    private BulkOrderStatusService bulkOrderStatusService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${couriers.index.cell-size-deg:0.02}")
+    private double cellSizeDeg;
+
+    @Value("${couriers.max-pickup-km:15}")
+    private double maxPickupKm;
+
+    @Value("${couriers.stale-seconds:120}")
+    private long staleSeconds; // Couriers silent for longer are not dispatched
+
+    @Value("${couriers.max-claim-attempts:5}")
+    private int maxClaimAttempts;
+
+    @Value("${couriers.retry-batch-size:200}")
+    private int retryBatchSize;
+
+    private final Map<Long, CourierState> online = new ConcurrentHashMap<>();
+    private GeoGridIndex<CourierState> free;
+
+    private final AtomicLong runsDispatched = new AtomicLong();
+    private final AtomicLong noCourier = new AtomicLong();
+    private final AtomicLong claimConflicts = new AtomicLong();
+    private final AtomicLong remoteConflicts = new AtomicLong();
+    private final AtomicLong claimFailures = new AtomicLong();
+    private final AtomicLong dispatchNanos = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        free = new GeoGridIndex<>(cellSizeDeg);
+    }
+
+    public Courier register(Courier courier) {
+        if (courier.getName() == null || courier.getName().isBlank() || courier.getPhone() == null || courier.getPhone().isBlank()) {
+            throw new RuntimeException("Courier name and phone are required");
+        }
+        if (courierRepository.findByPhone(courier.getPhone()).isPresent()) {
+            throw new RuntimeException("A courier with this phone number is already registered");
+        }
+        courier.setId(null);
+        courier.setStatus(CourierStatus.OFFLINE);
+        courier.setCurrentRunId(null);
+        return courierRepository.save(courier);
+    }
+
+    /**
+     * Report a courier's location. The first report after startup or going offline brings the courier online.
+     */
+    public void updateLocation(Long courierId, double latitude, double longitude) {
+        if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+            throw new RuntimeException("Location is off the map");
+        }
+        CourierState state = online.get(courierId);
+        if (state == null) {
+            state = goOnline(courierId, latitude, longitude);
+        }
+        state.latitude = latitude;
+        state.longitude = longitude;
+        state.lastSeenMillis = System.currentTimeMillis();
+        if (state.run.get() == null) {
+            free.put(courierId, latitude, longitude, state);
+            // A dispatch may have claimed the courier since the check; the claim wins
+            if (state.run.get() != null) {
+                free.remove(courierId);
+            }
+        }
+    }
+
+    /**
+     * Stop taking runs. A courier carrying a run has to finish it first.
+     */
+    public void goOffline(Long courierId) {
+        CourierState state = online.get(courierId);
+        if (state != null) {
+            if (!state.run.compareAndSet(null, OFFLINE) && !OFFLINE.equals(state.run.get())) {
+                throw new RuntimeException("Courier is carrying run " + state.run.get());
+            }
+            free.remove(courierId);
+            online.remove(courierId);
+        }
+        courierRepository.updatePresence(courierId, CourierStatus.OFFLINE, CourierStatus.ASSIGNED,
+                state == null ? null : state.latitude, state == null ? null : state.longitude, LocalDateTime.now());
+    }
+
+    /**
+     * Finish the courier's current run: its open stops are marked delivered in the same
+     * transaction that releases the courier, and the courier is free again where it is
+     */
+    public void completeRun(Long courierId) {
+        CourierState state = online.get(courierId);
+        String runId = state == null ? null : state.run.get();
+        if (runId == null || OFFLINE.equals(runId)) {
+            throw new RuntimeException("Courier is not carrying a run");
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Boolean released = transaction.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            if (courierRepository.releaseFromRun(courierId, runId, CourierStatus.IDLE, state.latitude, state.longitude, now) == 0) {
+                return false;
+            }
+            deliveryTrackingRepository.finishRun(runId, courierId, DeliveryStatus.active(), DeliveryStatus.DELIVERED, now);
+            advanceOrders(runId, MedicineOrder.OrderStatus.DELIVERED);
+            return true;
+        });
+        if (!Boolean.TRUE.equals(released)) {
+            // The stored courier is not on this run; forget it until it reports again and is reloaded
+            remoteConflicts.incrementAndGet();
+            online.remove(courierId);
+            free.remove(courierId);
+            throw new RuntimeException("Courier is no longer carrying run " + runId);
+        }
+        if (state.run.compareAndSet(runId, null)) {
+            free.put(courierId, state.latitude, state.longitude, state);
+        }
+    }
+
+    /**
+     * Give a run to the nearest free courier around its pharmacy
+     * @return Id of the courier now carrying the run, or null if none could be found; the run is retried later
+     */
+    public Long dispatchRun(String runId, double latitude, double longitude) {
+        long started = System.nanoTime();
+        try {
+            for (int attempt = 0; attempt < maxClaimAttempts; attempt++) {
+                CourierState courier = claimNearest(runId, latitude, longitude);
+                if (courier == null) {
+                    noCourier.incrementAndGet();
+                    return null;
+                }
+                Boolean assigned;
+                try {
+                    assigned = persistClaim(courier, runId);
+                } catch (Exception e) {
+                    // Nothing was stored; the courier goes back to being free and the run is retried later
+                    unclaim(courier);
+                    claimFailures.incrementAndGet();
+                    System.err.println("Failed to give run " + runId + " to courier " + courier.id + ": " + e.getMessage());
+                    return null;
+                }
+                if (Boolean.TRUE.equals(assigned)) {
+                    runsDispatched.incrementAndGet();
+                    return courier.id;
+                }
+                if (assigned == null) {
+                    // The run was taken meanwhile; the courier goes back to being free
+                    unclaim(courier);
+                    return null;
+                }
+                // Another node holds this courier; forget it until it reports again
+                remoteConflicts.incrementAndGet();
+                online.remove(courier.id);
+            }
+            return null;
+        } finally {
+            dispatchNanos.addAndGet(System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Retry runs that found no courier when they were planned
+     */
+    @Scheduled(fixedDelayString = "${couriers.dispatch-retry-ms:10000}", initialDelayString = "${couriers.dispatch-retry-ms:10000}")
+    public void dispatchWaitingRuns() {
+        try {
+            for (Object[] row : deliveryTrackingRepository.findUndispatchedRuns(DeliveryStatus.PENDING, PageRequest.of(0, retryBatchSize))) {
+                PharmacyStore pharmacy = pharmacySpatialIndex.get((Long) row[1]);
+                if (pharmacy != null) {
+                    dispatchRun((String) row[0], pharmacy.getLatitude(), pharmacy.getLongitude());
+                }
+            }
+            evictSilent();
+        } catch (Exception e) {
+            System.err.println("Courier dispatch retry failed: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        long dispatched = runsDispatched.get();
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("onlineCouriers", online.size());
+        metrics.put("freeCouriers", free.size());
+        metrics.put("runsDispatched", dispatched);
+        metrics.put("noCourier", noCourier.get());
+        metrics.put("claimConflicts", claimConflicts.get());
+        metrics.put("remoteConflicts", remoteConflicts.get());
+        metrics.put("claimFailures", claimFailures.get());
+        long attempts = dispatched + noCourier.get();
+        metrics.put("avgDispatchMicros", attempts == 0 ? 0 : dispatchNanos.get() / attempts / 1000);
+        return metrics;
+    }
+
+    private CourierState claimNearest(String runId, double latitude, double longitude) {
+        long freshAfter = System.currentTimeMillis() - staleSeconds * 1000;
+        CourierState[] claimed = new CourierState[1];
+        free.forEachNearest(latitude, longitude, maxPickupKm, hit -> {
+            CourierState courier = hit.getValue();
+            if (courier.lastSeenMillis < freshAfter) {
+                return false;
+            }
+            if (!courier.run.compareAndSet(null, runId)) {
+                claimConflicts.incrementAndGet(); // Taken by a concurrent dispatch since the index was read
+                return false;
+            }
+            claimed[0] = courier;
+            return true;
+        });
+        if (claimed[0] != null) {
+            free.remove(claimed[0].id);
+        }
+        return claimed[0];
+    }
+
+    // Through the bulk path, so counters, rollups and events follow; orders that moved on, e.g. were cancelled, are left alone
+    private void advanceOrders(String runId, MedicineOrder.OrderStatus target) {
+        Map<Long, List<Long>> byPharmacy = new HashMap<>();
+        for (Object[] row : deliveryTrackingRepository.findOrdersOfRun(runId)) {
+            if (row[1] != null) {
+                byPharmacy.computeIfAbsent((Long) row[1], id -> new ArrayList<>()).add((Long) row[0]);
+            }
+        }
+        byPharmacy.forEach((pharmacyId, orderIds) -> bulkOrderStatusService.updateStatuses(pharmacyId, orderIds, target));
+    }
+
+    private void unclaim(CourierState courier) {
+        courier.run.set(null);
+        free.put(courier.id, courier.latitude, courier.longitude, courier);
+    }
+
+    // True when assigned, false when the courier was taken elsewhere, null when the run no longer needs one
+    private Boolean persistClaim(CourierState courier, String runId) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        return transaction.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            if (courierRepository.claimForRun(courier.id, runId, CourierStatus.IDLE, CourierStatus.ASSIGNED, now) == 0) {
+                return false;
+            }
+            if (deliveryTrackingRepository.assignRun(runId, courier.id, courier.name, courier.phone, courier.vehicleNumber,
+                    DeliveryStatus.PENDING, DeliveryStatus.ASSIGNED, now) == 0) {
+                status.setRollbackOnly();
+                return null;
+            }
+            advanceOrders(runId, MedicineOrder.OrderStatus.OUT_FOR_DELIVERY);
+            return true;
+        });
+    }
+
+    private CourierState goOnline(Long courierId, double latitude, double longitude) {
+        Optional<Courier> courierOpt = courierRepository.findById(courierId);
+        if (!courierOpt.isPresent()) {
+            throw new RuntimeException("Courier not found with id: " + courierId);
+        }
+        Courier courier = courierOpt.get();
+        courierRepository.updatePresence(courierId, CourierStatus.IDLE, CourierStatus.ASSIGNED, latitude, longitude, LocalDateTime.now());
+        CourierState state = new CourierState(courier);
+        // A courier carrying a run before a restart is still carrying it
+        if (courier.getStatus() == CourierStatus.ASSIGNED) {
+            state.run.set(courier.getCurrentRunId());
+        }
+        CourierState existing = online.putIfAbsent(courierId, state);
+        return existing != null ? existing : state;
+    }
+
+    // Couriers silent for five stale windows are taken to have gone offline without saying so
+    private void evictSilent() {
+        long cutoff = System.currentTimeMillis() - staleSeconds * 1000 * 5;
+        online.values().removeIf(courier -> {
+            if (courier.lastSeenMillis >= cutoff || !courier.run.compareAndSet(null, OFFLINE)) {
+                return false;
+            }
+            free.remove(courier.id);
+            courierRepository.updatePresence(courier.id, CourierStatus.OFFLINE, CourierStatus.ASSIGNED,
+                    courier.latitude, courier.longitude, LocalDateTime.now());
+            return true;
+        });
+    }
+
+    private static final class CourierState {
+        private final long id;
+        private final String name;
+        private final String phone;
+        private final String vehicleNumber;
+        private final AtomicReference<String> run = new AtomicReference<>(); // Run being carried, null when free
+        private volatile double latitude;
+        private volatile double longitude;
+        private volatile long lastSeenMillis;
+
+        private CourierState(Courier courier) {
+            this.id = courier.getId();
+            this.name = courier.getName();
+            this.phone = courier.getPhone();
+            this.vehicleNumber = courier.getVehicleNumber();
+        }
+    }
+}
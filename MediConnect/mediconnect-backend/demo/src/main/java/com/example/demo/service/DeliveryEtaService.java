@@ -0,0 +1,286 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CourierPosition;
+import com.example.demo.model.DeliveryEta;
+import com.example.demo.model.DeliveryUpdate;
+import com.example.demo.utils.GeoUtils;
+import com.example.demo.utils.TravelSpeedGrid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Arrival estimates for deliveries on the road, recomputed on every accepted position.
+ *
+ * Each delivery keeps its destination, resolved once from the order's delivery pincode, and a
+ * time-weighted moving average of its speed. A new position costs one distance computation and
+ * one lookup in a {@link TravelSpeedGrid} of typical speeds by area and hour, rebuilt in the
+ * background from {@code delivery_updates}; nothing is read from the database per ping. The
+ * estimate leans on the grid until the courier has a few speed samples of its own.
+ */
+@Service
+public class DeliveryEtaService {
+
+    private static final long GEOCODE_RETRY_MS = 5 * 60 * 1000L;
+    private static final double MAX_OBSERVED_KMH = 150.0; // Faster means a GPS jump, not travel
+
+    // Consecutive location updates of the same delivery, as {lat, lng, time, previous lat, previous lng, previous time}
+    private static final String HISTORY_LEGS_SQL =
+            "SELECT latitude, longitude, timestamp, prev_latitude, prev_longitude, prev_timestamp FROM (" +
+            "SELECT latitude, longitude, timestamp, " +
+            "LAG(latitude) OVER w AS prev_latitude, LAG(longitude) OVER w AS prev_longitude, LAG(timestamp) OVER w AS prev_timestamp " +
+            "FROM delivery_updates WHERE update_type = ? AND timestamp >= ? AND latitude IS NOT NULL AND longitude IS NOT NULL " +
+            "WINDOW w AS (PARTITION BY delivery_tracking_id ORDER BY timestamp)) legs WHERE prev_timestamp IS NOT NULL";
+
+    @Autowired
+    private GeocodingService geocodingService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${tracking.eta.road-factor:1.3}")
+    private double roadFactor; // Road distance over straight-line distance
+
+    @Value("${tracking.eta.default-speed-kmh:20}")
+    private double defaultSpeedKmh;
+
+    @Value("${tracking.eta.min-speed-kmh:5}")
+    private double minSpeedKmh;
+
+    @Value("${tracking.eta.max-speed-kmh:60}")
+    private double maxSpeedKmh;
+
+    @Value("${tracking.eta.smoothing-seconds:60}")
+    private double smoothingSeconds;
+
+    @Value("${tracking.eta.courier-weight:0.6}")
+    private double courierWeight; // Share of the courier's own speed once it has enough samples
+
+    @Value("${tracking.eta.min-courier-samples:3}")
+    private int minCourierSamples;
+
+    @Value("${tracking.eta.grid-cell-deg:0.01}")
+    private double gridCellDeg;
+
+    @Value("${tracking.eta.grid-min-samples:5}")
+    private int gridMinSamples;
+
+    @Value("${tracking.eta.grid-days:28}")
+    private int gridDays;
+
+    @Value("${tracking.eta.grid-fetch-size:5000}")
+    private int gridFetchSize;
+
+    private final Map<String, Trip> trips = new ConcurrentHashMap<>();
+    private final Map<String, DeliveryEta> etas = new ConcurrentHashMap<>();
+    private volatile TravelSpeedGrid grid;
+
+    private final AtomicLong computed = new AtomicLong();
+    private final AtomicLong gridHits = new AtomicLong();
+    private final AtomicLong noDestination = new AtomicLong();
+    private volatile long gridBuiltAt;
+
+    /**
+     * Fold a new position into a delivery's estimate. Positions older than the last one seen only
+     * skip; they neither move the estimate back nor count as speed samples.
+     * @param destinationPincode Delivery pincode of the order, resolved on the first call only
+     * @return The new estimate, or null when the destination cannot be resolved
+     */
+    public DeliveryEta update(String destinationPincode, CourierPosition position) {
+        Trip trip = trips.computeIfAbsent(position.getTrackingNumber(), key -> new Trip());
+        synchronized (trip) {
+            if (trip.destination == null && System.currentTimeMillis() >= trip.retryAt) {
+                trip.destination = resolve(destinationPincode);
+                trip.retryAt = System.currentTimeMillis() + GEOCODE_RETRY_MS;
+            }
+            if (trip.lastAt != null && !position.getRecordedAt().isAfter(trip.lastAt)) {
+                return etas.get(position.getTrackingNumber());
+            }
+            observeSpeed(trip, position);
+            trip.lastLat = position.getLatitude();
+            trip.lastLng = position.getLongitude();
+            trip.lastAt = position.getRecordedAt();
+            if (trip.destination == null) {
+                noDestination.incrementAndGet();
+                return null;
+            }
+
+            double distanceKm = GeoUtils.distanceKm(position.getLatitude(), position.getLongitude(),
+                    trip.destination[0], trip.destination[1]) * roadFactor;
+            double speedKmh = expectedSpeed(trip, position);
+            int minutes = (int) Math.ceil(distanceKm / speedKmh * 60);
+            DeliveryEta eta = new DeliveryEta(position.getTrackingNumber(), distanceKm, minutes, speedKmh,
+                    position.getRecordedAt().plusMinutes(minutes), position.getRecordedAt());
+            etas.put(position.getTrackingNumber(), eta);
+            computed.incrementAndGet();
+            return eta;
+        }
+    }
+
+    /**
+     * Latest estimate of a delivery, from memory only
+     * @return null if none has been computed
+     */
+    public DeliveryEta getEta(String trackingNumber) {
+        return etas.get(trackingNumber);
+    }
+
+    /**
+     * Drop state of deliveries no longer tracked
+     */
+    public void retain(Collection<String> trackingNumbers) {
+        trips.keySet().retainAll(trackingNumbers);
+        etas.keySet().retainAll(trackingNumbers);
+    }
+
+    /**
+     * Relearn typical speeds from recent location history. Runs in the background; estimates
+     * use the default speed until the first grid is built. The history is read through a
+     * forward-only cursor of {@code tracking.eta.grid-fetch-size} rows (PostgreSQL only uses
+     * one inside a transaction), so weeks of pings are never held in memory at once.
+     */
+    @Scheduled(fixedDelayString = "${tracking.eta.grid-rebuild-ms:21600000}", initialDelayString = "${tracking.eta.grid-initial-delay-ms:30000}")
+    public void rebuildGrid() {
+        try {
+            long started = System.currentTimeMillis();
+            TravelSpeedGrid.Builder builder = TravelSpeedGrid.builder(gridCellDeg, gridMinSamples);
+            Object[] args = {DeliveryUpdate.UpdateType.LOCATION_UPDATE.name(), Timestamp.valueOf(LocalDateTime.now().minusDays(gridDays))};
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setReadOnly(true);
+            transaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(HISTORY_LEGS_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(gridFetchSize);
+                new ArgumentPreparedStatementSetter(args).setValues(statement);
+                return statement;
+            }, (RowCallbackHandler) rs -> {
+                LocalDateTime at = rs.getTimestamp(3).toLocalDateTime();
+                LocalDateTime previousAt = rs.getTimestamp(6).toLocalDateTime();
+                double lat = rs.getDouble(1);
+                double lng = rs.getDouble(2);
+                double previousLat = rs.getDouble(4);
+                double previousLng = rs.getDouble(5);
+                double seconds = Duration.between(previousAt, at).toMillis() / 1000.0;
+                // Long gaps are stops or lost signal, not travel
+                if (seconds < 5 || seconds > 600) {
+                    return;
+                }
+                double speedKmh = GeoUtils.distanceKm(previousLat, previousLng, lat, lng) * roadFactor / seconds * 3600;
+                if (speedKmh <= MAX_OBSERVED_KMH) {
+                    builder.add((lat + previousLat) / 2, (lng + previousLng) / 2, previousAt.getHour(), speedKmh);
+                }
+            }));
+            TravelSpeedGrid built = builder.build();
+            grid = built;
+            gridBuiltAt = System.currentTimeMillis();
+            System.out.println("Built travel speed grid: " + built.cells() + " cells from " + built.samples()
+                    + " legs in " + (gridBuiltAt - started) + " ms");
+        } catch (Exception e) {
+            System.err.println("Travel speed grid rebuild failed: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        TravelSpeedGrid current = grid;
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("deliveriesEstimated", etas.size());
+        metrics.put("etasComputed", computed.get());
+        metrics.put("gridHits", gridHits.get());
+        metrics.put("withoutDestination", noDestination.get());
+        metrics.put("gridCells", current == null ? 0 : current.cells());
+        metrics.put("gridSamples", current == null ? 0 : current.samples());
+        metrics.put("gridBuiltAt", gridBuiltAt);
+        return metrics;
+    }
+
+    void setGrid(TravelSpeedGrid grid) {
+        this.grid = grid;
+    }
+
+    // Time-weighted, so a courier pinging every second and one pinging every minute smooth over the same horizon
+    private void observeSpeed(Trip trip, CourierPosition position) {
+        if (trip.lastAt == null) {
+            if (position.getSpeedKmh() != null && position.getSpeedKmh() >= 0) {
+                trip.smoothedKmh = position.getSpeedKmh();
+                trip.samples = 1;
+            }
+            return;
+        }
+        double seconds = Duration.between(trip.lastAt, position.getRecordedAt()).toMillis() / 1000.0;
+        double sample;
+        if (position.getSpeedKmh() != null && position.getSpeedKmh() >= 0) {
+            sample = position.getSpeedKmh();
+        } else if (seconds >= 5) {
+            sample = GeoUtils.distanceKm(trip.lastLat, trip.lastLng, position.getLatitude(), position.getLongitude())
+                    * roadFactor / seconds * 3600;
+        } else {
+            return;
+        }
+        if (sample > MAX_OBSERVED_KMH) {
+            return;
+        }
+        if (trip.samples == 0) {
+            trip.smoothedKmh = sample;
+        } else {
+            double alpha = 1 - Math.exp(-seconds / smoothingSeconds);
+            trip.smoothedKmh += alpha * (sample - trip.smoothedKmh);
+        }
+        trip.samples++;
+    }
+
+    private double expectedSpeed(Trip trip, CourierPosition position) {
+        TravelSpeedGrid current = grid;
+        double typical = current == null ? Double.NaN
+                : current.speedAt(position.getLatitude(), position.getLongitude(), position.getRecordedAt().getHour());
+        if (Double.isNaN(typical)) {
+            typical = defaultSpeedKmh;
+        } else {
+            gridHits.incrementAndGet();
+        }
+        double speed = trip.samples >= minCourierSamples
+                ? courierWeight * trip.smoothedKmh + (1 - courierWeight) * typical
+                : typical;
+        return Math.min(maxSpeedKmh, Math.max(minSpeedKmh, speed));
+    }
+
+    private double[] resolve(String pincode) {
+        if (pincode == null || pincode.isBlank()) {
+            return null;
+        }
+        try {
+            return geocodingService.getCoordinates(pincode);
+        } catch (Exception e) {
+            System.err.println("Could not resolve delivery destination " + pincode + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static final class Trip {
+        private double[] destination;
+        private long retryAt;
+        private double lastLat;
+        private double lastLng;
+        private LocalDateTime lastAt;
+        private double smoothedKmh;
+        private int samples;
+    }
+}
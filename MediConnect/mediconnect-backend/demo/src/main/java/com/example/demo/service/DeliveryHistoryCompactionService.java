@@ -0,0 +1,201 @@
+package com.example.demo.service;
+
+import com.example.demo.model.DeliveryTrackArchive;
+import com.example.demo.model.DeliveryTracking.DeliveryStatus;
+import com.example.demo.model.DeliveryUpdate;
+import com.example.demo.repository.DeliveryTrackArchiveRepository;
+import com.example.demo.repository.DeliveryTrackingRepository;
+import com.example.demo.utils.TrackPolyline;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Compacts the GPS history of finished deliveries.
+ *
+ * A delivery is finished once it has left the active statuses, which happens when its
+ * courier completes the run or its order is delivered or cancelled. A finished delivery's {@code LOCATION_UPDATE} rows are simplified with
+ * {@link TrackPolyline#simplify} and stored as one encoded {@link DeliveryTrackArchive} row,
+ * then the raw rows are deleted in chunks, each in its own short transaction. The archive is
+ * committed before anything is deleted; if a pass stops half way, the next one folds the rows
+ * left over into the existing archive. Other update types are kept as they are.
+ */
+@Service
+public class DeliveryHistoryCompactionService {
+
+    private static final String LOCATION_UPDATE = DeliveryUpdate.UpdateType.LOCATION_UPDATE.name();
+
+    private static final String FIND_DUE_SQL =
+            "SELECT t.id FROM delivery_tracking t WHERE t.delivery_status IN (" +
+            EnumSet.complementOf(EnumSet.copyOf(DeliveryStatus.active())).stream()
+                    .map(status -> "'" + status.name() + "'").collect(Collectors.joining(", ")) + ") " +
+            "AND t.updated_at < ? AND EXISTS (SELECT 1 FROM delivery_updates u WHERE u.delivery_tracking_id = t.id AND u.update_type = ? " +
+            "AND u.latitude IS NOT NULL AND u.longitude IS NOT NULL) " +
+            "ORDER BY t.id LIMIT ?";
+
+    private static final String SELECT_POINTS_SQL =
+            "SELECT latitude, longitude, timestamp, id FROM delivery_updates WHERE delivery_tracking_id = ? AND update_type = ? " +
+            "AND latitude IS NOT NULL AND longitude IS NOT NULL ORDER BY timestamp, id";
+
+    // Bounded by the highest id read, so a row written after the read is never lost, even with the same timestamp
+    private static final String DELETE_CHUNK_SQL =
+            "DELETE FROM delivery_updates WHERE id IN (SELECT id FROM delivery_updates " +
+            "WHERE delivery_tracking_id = ? AND update_type = ? AND id <= ? LIMIT ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DeliveryTrackArchiveRepository deliveryTrackArchiveRepository;
+
+    @Autowired
+    private DeliveryTrackingRepository deliveryTrackingRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${tracking.compaction.tolerance-meters:10}")
+    private double toleranceMeters;
+
+    @Value("${tracking.compaction.min-age-days:30}")
+    private long minAgeDays; // Kept above tracking.eta.grid-days so the speed grid still sees raw history
+
+    @Value("${tracking.compaction.batch-size:50}")
+    private int batchSize;
+
+    @Value("${tracking.compaction.delete-chunk:5000}")
+    private int deleteChunk;
+
+    private final AtomicLong deliveriesCompacted = new AtomicLong();
+    private final AtomicLong rowsDeleted = new AtomicLong();
+    private final AtomicLong pointsKept = new AtomicLong();
+    private final AtomicLong encodedBytes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    @Scheduled(fixedDelayString = "${tracking.compaction.poll-ms:600000}", initialDelayString = "${tracking.compaction.poll-ms:600000}")
+    public void compactFinished() {
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minusDays(minAgeDays);
+            List<Long> due = jdbcTemplate.queryForList(FIND_DUE_SQL, Long.class,
+                    Timestamp.valueOf(cutoff), LOCATION_UPDATE, batchSize);
+            for (Long trackingId : due) {
+                try {
+                    compact(trackingId);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    System.err.println("Failed to compact position history of delivery " + trackingId + ": " + e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Delivery history compaction failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fold the raw position rows of one delivery into its archive and delete them
+     * @return Number of raw rows deleted
+     */
+    public int compact(long trackingId) {
+        long[] through = new long[1];
+        List<TrackPolyline.Point> raw = readRawPoints(trackingId, through);
+        if (raw.isEmpty()) {
+            return 0;
+        }
+        Optional<DeliveryTrackArchive> existing = deliveryTrackArchiveRepository.findById(trackingId);
+        List<TrackPolyline.Point> points = new ArrayList<>(raw.size());
+        existing.ifPresent(archive -> points.addAll(decode(archive)));
+        points.addAll(raw);
+        points.sort(Comparator.comparingLong(TrackPolyline.Point::getEpochSecond));
+
+        List<TrackPolyline.Point> kept = TrackPolyline.simplify(points, toleranceMeters);
+        long start = kept.get(0).getEpochSecond();
+        DeliveryTrackArchive archive = existing.orElseGet(DeliveryTrackArchive::new);
+        archive.setDeliveryTrackingId(trackingId);
+        archive.setPolyline(TrackPolyline.encode(kept, start));
+        archive.setStartedAt(toDateTime(start));
+        archive.setEndedAt(toDateTime(kept.get(kept.size() - 1).getEpochSecond()));
+        archive.setRawPoints((archive.getRawPoints() == null ? 0 : archive.getRawPoints()) + raw.size());
+        archive.setKeptPoints(kept.size());
+        archive.setToleranceMeters(toleranceMeters);
+        archive.setCompactedAt(LocalDateTime.now());
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> deliveryTrackArchiveRepository.save(archive));
+
+        int deleted = 0;
+        while (true) {
+            Integer chunk = transaction.execute(status ->
+                    jdbcTemplate.update(DELETE_CHUNK_SQL, trackingId, LOCATION_UPDATE, through[0], deleteChunk));
+            deleted += chunk == null ? 0 : chunk;
+            if (chunk == null || chunk < deleteChunk) {
+                break;
+            }
+        }
+
+        deliveriesCompacted.incrementAndGet();
+        rowsDeleted.addAndGet(deleted);
+        pointsKept.addAndGet(kept.size());
+        encodedBytes.addAndGet(archive.getPolyline().length());
+        return deleted;
+    }
+
+    /**
+     * Full position history of a delivery for replay: the archived track plus any rows not compacted yet, in time order
+     */
+    public List<TrackPolyline.Point> getTrack(String trackingNumber) {
+        List<Object[]> refs = deliveryTrackingRepository.findRefByTrackingNumber(trackingNumber);
+        if (refs.isEmpty()) {
+            throw new RuntimeException("Delivery not found with tracking number: " + trackingNumber);
+        }
+        long trackingId = (Long) refs.get(0)[0];
+        List<TrackPolyline.Point> points = new ArrayList<>();
+        deliveryTrackArchiveRepository.findById(trackingId).ifPresent(archive -> points.addAll(decode(archive)));
+        points.addAll(readRawPoints(trackingId, new long[1]));
+        points.sort(Comparator.comparingLong(TrackPolyline.Point::getEpochSecond));
+        return points;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("deliveriesCompacted", deliveriesCompacted.get());
+        metrics.put("rowsDeleted", rowsDeleted.get());
+        metrics.put("pointsKept", pointsKept.get());
+        metrics.put("encodedBytes", encodedBytes.get());
+        metrics.put("failures", failures.get());
+        return metrics;
+    }
+
+    // Points come in time order, which need not be id order, so the highest id is tracked separately
+    private List<TrackPolyline.Point> readRawPoints(long trackingId, long[] maxId) {
+        return jdbcTemplate.query(SELECT_POINTS_SQL, (rs, rowNum) -> {
+            maxId[0] = Math.max(maxId[0], rs.getLong(4));
+            return new TrackPolyline.Point(rs.getDouble(1), rs.getDouble(2),
+                    rs.getTimestamp(3).toLocalDateTime().toEpochSecond(ZoneOffset.UTC));
+        }, trackingId, LOCATION_UPDATE);
+    }
+
+    private static List<TrackPolyline.Point> decode(DeliveryTrackArchive archive) {
+        return TrackPolyline.decode(archive.getPolyline(), archive.getStartedAt().toEpochSecond(ZoneOffset.UTC));
+    }
+
+    private static LocalDateTime toDateTime(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+}
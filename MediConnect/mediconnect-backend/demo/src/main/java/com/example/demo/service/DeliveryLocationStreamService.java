@@ -0,0 +1,296 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CourierPosition;
+import com.example.demo.model.DeliveryEta;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes courier movement to patients watching a delivery, over server-sent events.
+ *
+ * Nothing is pushed per ping. A ticker compares each watched delivery's latest position in
+ * {@link DeliveryTrackingService} with what each watcher was last sent, and a watcher gets at
+ * most one update per its interval carrying only the fields that changed, the arrival estimate
+ * from {@link DeliveryEtaService} included, so a courier
+ * pinging every second costs a slow watcher nothing extra. A watcher whose previous send is
+ * still in progress is skipped and catches up on a later tick. Sends run on a small pool and
+ * idle streams hold no request thread, which is what lets one node carry tens of thousands
+ * of watchers.
+ */
+@Service
+public class DeliveryLocationStreamService {
+
+    @Autowired
+    private DeliveryTrackingService deliveryTrackingService;
+
+    @Autowired
+    private DeliveryEtaService deliveryEtaService;
+
+    @Value("${tracking.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${tracking.stream.tick-ms:500}")
+    private long tickMs;
+
+    @Value("${tracking.stream.min-interval-ms:2000}")
+    private long minIntervalMs; // Fastest a watcher may be updated
+
+    @Value("${tracking.stream.heartbeat-ms:25000}")
+    private long heartbeatMs;
+
+    @Value("${tracking.stream.max-connections:50000}")
+    private int maxConnections;
+
+    @Value("${tracking.stream.senders:4}")
+    private int senders;
+
+    @Value("${tracking.stream.queue-capacity:20000}")
+    private int queueCapacity;
+
+    private final Map<String, Set<Watcher>> watchers = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private ThreadPoolExecutor sender;
+    private ScheduledExecutorService ticker;
+
+    private final AtomicLong updatesSent = new AtomicLong();
+    private final AtomicLong updatesCoalesced = new AtomicLong();
+    private final AtomicLong ticksBehind = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        sender = new ThreadPoolExecutor(senders, senders, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "tracking-stream-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tracking-stream-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+        sender.shutdownNow();
+        watchers.values().forEach(set -> set.forEach(watcher -> watcher.emitter.complete()));
+        watchers.clear();
+    }
+
+    /**
+     * Watch a delivery. The first event carries the full latest position, if one is known.
+     * @param intervalMs Requested gap between updates; raised to {@code tracking.stream.min-interval-ms}
+     * @throws RuntimeException when the tracking number is unknown or the node is serving the maximum number of streams
+     */
+    public SseEmitter subscribe(String trackingNumber, Long intervalMs) {
+        if (!deliveryTrackingService.isTracked(trackingNumber)) {
+            throw new RuntimeException("Delivery not found with tracking number: " + trackingNumber);
+        }
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            throw new RuntimeException("Too many open tracking streams, try again later");
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Watcher watcher = new Watcher(emitter, Math.max(intervalMs == null ? 0 : intervalMs, minIntervalMs));
+        watchers.compute(trackingNumber, (key, targets) -> {
+            Set<Watcher> set = targets == null ? ConcurrentHashMap.newKeySet() : targets;
+            set.add(watcher);
+            return set;
+        });
+        emitter.onCompletion(() -> remove(trackingNumber, watcher));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> remove(trackingNumber, watcher));
+
+        Map<String, Object> connected = new HashMap<>();
+        connected.put("trackingNumber", trackingNumber);
+        connected.put("intervalMs", watcher.intervalMs);
+        if (watcher.busy.compareAndSet(false, true)) {
+            try {
+                if (send(trackingNumber, watcher, SseEmitter.event().name("connected").data(connected))) {
+                    push(trackingNumber, watcher, deliveryTrackingService.getCurrentPosition(trackingNumber));
+                }
+            } finally {
+                watcher.busy.set(false);
+            }
+        }
+        return emitter;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("openStreams", connections.get());
+        metrics.put("deliveriesWatched", watchers.size());
+        metrics.put("updatesSent", updatesSent.get());
+        metrics.put("updatesCoalesced", updatesCoalesced.get());
+        metrics.put("ticksBehind", ticksBehind.get());
+        metrics.put("queueDepth", sender.getQueue().size());
+        return metrics;
+    }
+
+    /**
+     * Fields of {@code current} that differ from {@code previous}; everything when there is no previous.
+     * The fix time is always included so clients can tell how fresh the position is.
+     */
+    static Map<String, Object> delta(CourierPosition previous, CourierPosition current) {
+        Map<String, Object> delta = new LinkedHashMap<>();
+        if (previous == null || previous.getLatitude() != current.getLatitude() || previous.getLongitude() != current.getLongitude()) {
+            delta.put("latitude", current.getLatitude());
+            delta.put("longitude", current.getLongitude());
+        }
+        if (previous == null || !Objects.equals(previous.getSpeedKmh(), current.getSpeedKmh())) {
+            delta.put("speedKmh", current.getSpeedKmh());
+        }
+        if (previous == null || !Objects.equals(previous.getHeading(), current.getHeading())) {
+            delta.put("heading", current.getHeading());
+        }
+        delta.put("recordedAt", current.getRecordedAt());
+        return delta;
+    }
+
+    /**
+     * Arrival fields of {@code current} when its minute count differs from {@code previous}
+     */
+    static void putEta(Map<String, Object> delta, DeliveryEta previous, DeliveryEta current) {
+        if (current == null || (previous != null && previous.getMinutes() == current.getMinutes())) {
+            return;
+        }
+        delta.put("etaMinutes", current.getMinutes());
+        delta.put("estimatedArrival", current.getEstimatedArrival());
+        delta.put("distanceKm", Math.round(current.getDistanceKm() * 10) / 10.0);
+    }
+
+    void tick() {
+        long now = System.currentTimeMillis();
+        watchers.forEach((trackingNumber, targets) -> {
+            CourierPosition position = deliveryTrackingService.getCurrentPosition(trackingNumber);
+            List<Watcher> due = new ArrayList<>();
+            for (Watcher watcher : targets) {
+                boolean moved = position != null && watcher.lastSent != position;
+                boolean quiet = now - watcher.lastWriteAt >= heartbeatMs;
+                if (!moved && !quiet) {
+                    continue;
+                }
+                if (moved && now - watcher.lastPushAt < watcher.intervalMs && !quiet) {
+                    updatesCoalesced.incrementAndGet();
+                    continue;
+                }
+                // A watcher still busy with its last send is left for a later tick
+                if (watcher.busy.compareAndSet(false, true)) {
+                    due.add(watcher);
+                }
+            }
+            if (due.isEmpty()) {
+                return;
+            }
+            try {
+                sender.execute(() -> {
+                    for (Watcher watcher : due) {
+                        try {
+                            if (position != null && watcher.lastSent != position) {
+                                push(trackingNumber, watcher, position);
+                            } else {
+                                send(trackingNumber, watcher, SseEmitter.event().comment("heartbeat"));
+                            }
+                        } finally {
+                            watcher.busy.set(false);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Senders are behind; the same positions are picked up again next tick
+                due.forEach(watcher -> watcher.busy.set(false));
+                ticksBehind.incrementAndGet();
+            }
+        });
+    }
+
+    private void push(String trackingNumber, Watcher watcher, CourierPosition position) {
+        if (position == null) {
+            return;
+        }
+        DeliveryEta eta = deliveryEtaService.getEta(trackingNumber);
+        Map<String, Object> delta = delta(watcher.lastSent, position);
+        putEta(delta, watcher.lastEta, eta);
+        if (send(trackingNumber, watcher, SseEmitter.event()
+                .name("position")
+                .data(delta, MediaType.APPLICATION_JSON))) {
+            watcher.lastSent = position;
+            if (eta != null) {
+                watcher.lastEta = eta;
+            }
+            watcher.lastPushAt = watcher.lastWriteAt;
+            updatesSent.incrementAndGet();
+        }
+    }
+
+    private boolean send(String trackingNumber, Watcher watcher, SseEmitter.SseEventBuilder event) {
+        try {
+            watcher.emitter.send(event);
+            watcher.lastWriteAt = System.currentTimeMillis();
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // Client went away; drop the stream so it stops costing anything
+            remove(trackingNumber, watcher);
+            watcher.emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    // Add and remove both go through compute so an emptied set is never dropped while a new watcher joins it
+    private void remove(String trackingNumber, Watcher watcher) {
+        boolean[] removed = new boolean[1];
+        watchers.computeIfPresent(trackingNumber, (key, targets) -> {
+            removed[0] = targets.remove(watcher);
+            return targets.isEmpty() ? null : targets;
+        });
+        if (removed[0]) {
+            connections.decrementAndGet();
+        }
+    }
+
+    private static final class Watcher {
+        private final SseEmitter emitter;
+        private final long intervalMs;
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private volatile CourierPosition lastSent;
+        private volatile DeliveryEta lastEta;
+        private volatile long lastWriteAt = System.currentTimeMillis();
+        private volatile long lastPushAt;
+
+        private Watcher(SseEmitter emitter, long intervalMs) {
+            this.emitter = emitter;
+            this.intervalMs = intervalMs;
+        }
+    }
+}
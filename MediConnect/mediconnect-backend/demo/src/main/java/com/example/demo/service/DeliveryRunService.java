@@ -0,0 +1,380 @@
+package com.example.demo.service;
+
+import com.example.demo.model.DeliveryTracking;
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.MedicineOrder.OrderStatus;
+import com.example.demo.model.OrderEvent;
+import com.example.demo.model.PharmacyStore;
+import com.example.demo.repository.DeliveryTrackingRepository;
+import com.example.demo.repository.MedicineOrderRepository;
+import com.example.demo.repository.PharmacyStoreRepository;
+import com.example.demo.utils.RoutePlanner;
+import com.example.demo.utils.SnowflakeIdGenerator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Batches a pharmacy's orders that are ready for pickup into delivery runs, so one courier
+ * carries several nearby orders instead of one courier per order.
+ *
+ * Runs are planned by {@link RoutePlanner} under a stop limit per run and each order's delivery
+ * deadline, then saved as one {@link DeliveryTracking} per order sharing a run id, with the
+ * planned stop sequence, distance and arrival. A pharmacy is planned when its oldest unrouted
+ * order has waited {@code delivery.runs.batch-window-minutes} or it has a full run's worth of
+ * orders, whichever comes first, and at any time on request; with a window of zero, as soon as
+ * an order is ready. New runs are handed to {@link CourierDispatchService} straight away.
+ * An order whose pincode cannot be located is flagged and left out of planning for
+ * {@code delivery.runs.unlocated-retry-minutes}, so it does not keep its pharmacy due.
+ *
+ * Orders are locked with SKIP LOCKED and checked for a run once more in the transaction that
+ * saves the runs, so two nodes planning the same pharmacy never put an order on two runs.
+ *
+ * Planning for a ready order runs on a single background thread once the transaction that
+ * delivered the event commits, so geocoding and dispatch never hold the outbox batch open and
+ * a failure cannot roll it back. When that queue is full the scheduled pass plans the pharmacy.
+ */
+@Service
+public class DeliveryRunService implements OrderEventListener {
+
+    @Autowired
+    private MedicineOrderRepository medicineOrderRepository;
+
+    @Autowired
+    private PharmacyStoreRepository pharmacyStoreRepository;
+
+    @Autowired
+    private DeliveryTrackingRepository deliveryTrackingRepository;
+
+    @Autowired
+    private GeocodingService geocodingService;
+
+    @Autowired
+    private CourierDispatchService courierDispatchService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${delivery.runs.max-stops:6}")
+    private int maxStops;
+
+    @Value("${delivery.runs.max-run-minutes:120}")
+    private double maxRunMinutes;
+
+    @Value("${delivery.runs.service-minutes:4}")
+    private double serviceMinutes;
+
+    @Value("${delivery.runs.delivery-minutes:120}")
+    private long deliveryMinutes; // Deadline of orders without an expected delivery time, from when they became ready
+
+    @Value("${delivery.runs.batch-window-minutes:10}")
+    private long batchWindowMinutes;
+
+    @Value("${delivery.runs.max-orders:1000}")
+    private int maxOrders; // Per pharmacy and pass
+
+    @Value("${delivery.runs.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${delivery.runs.unlocated-retry-minutes:60}")
+    private long unlocatedRetryMinutes;
+
+    @Value("${tracking.eta.default-speed-kmh:20}")
+    private double speedKmh;
+
+    @Value("${tracking.eta.road-factor:1.3}")
+    private double roadFactor;
+
+    private final Set<Long> planning = ConcurrentHashMap.newKeySet(); // Pharmacies being planned on this node; saves duplicate work only
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet(); // Pharmacies waiting for the planner thread
+    private ThreadPoolExecutor executor;
+
+    private final AtomicLong runsPlanned = new AtomicLong();
+    private final AtomicLong ordersRouted = new AtomicLong();
+    private final AtomicLong ordersUnlocated = new AtomicLong();
+    private final AtomicLong lateRuns = new AtomicLong();
+    private final AtomicLong planFailures = new AtomicLong();
+    private volatile long lastPlanMillis;
+
+    @PostConstruct
+    public void start() {
+        executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "delivery-run-plan");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Plan runs for the pharmacy of a pharmacy user
+     * @return Summary of the runs created
+     */
+    public Map<String, Object> planRunsForUser(Long pharmacyUserId) {
+        Optional<PharmacyStore> pharmacyOpt = pharmacyStoreRepository.findByUserId(pharmacyUserId);
+        if (!pharmacyOpt.isPresent()) {
+            throw new RuntimeException("Pharmacy not found for user id: " + pharmacyUserId);
+        }
+        return planRuns(pharmacyOpt.get());
+    }
+
+    /**
+     * With no batch window, plan the pharmacy of an order that became ready. Inside a
+     * transaction the work is queued once it commits.
+     */
+    @Override
+    public void onOrderEvent(OrderEvent event) {
+        if (batchWindowMinutes > 0 || event.getType() != OrderEvent.Type.STATUS_CHANGED
+                || event.getStatus() != OrderStatus.READY_FOR_PICKUP || event.getPharmacyId() == null) {
+            return;
+        }
+        Long pharmacyId = event.getPharmacyId();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(pharmacyId);
+                }
+            });
+        } else {
+            enqueue(pharmacyId);
+        }
+    }
+
+    /**
+     * Plan runs for every pharmacy whose ready orders have waited long enough or fill a run
+     */
+    @Scheduled(fixedDelayString = "${delivery.runs.plan-ms:60000}", initialDelayString = "${delivery.runs.plan-ms:60000}")
+    public void planDueRuns() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime cutoff = now.minusMinutes(batchWindowMinutes);
+            for (Object[] row : medicineOrderRepository.countUnroutedOrdersPerPharmacy(OrderStatus.READY_FOR_PICKUP,
+                    MedicineOrder.OrderType.DELIVERY, now.minusMinutes(unlocatedRetryMinutes))) {
+                Long pharmacyId = (Long) row[0];
+                long count = (Long) row[1];
+                LocalDateTime oldest = (LocalDateTime) row[2];
+                if (count < maxStops && oldest.isAfter(cutoff)) {
+                    continue;
+                }
+                try {
+                    pharmacyStoreRepository.findById(pharmacyId).ifPresent(this::planRuns);
+                } catch (Exception e) {
+                    System.err.println("Failed to plan delivery runs for pharmacy " + pharmacyId + ": " + e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Delivery run planning failed: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("runsPlanned", runsPlanned.get());
+        metrics.put("ordersRouted", ordersRouted.get());
+        metrics.put("ordersUnlocated", ordersUnlocated.get());
+        metrics.put("lateRuns", lateRuns.get());
+        metrics.put("planFailures", planFailures.get());
+        metrics.put("planQueue", executor.getQueue().size());
+        metrics.put("lastPlanMillis", lastPlanMillis);
+        return metrics;
+    }
+
+    // A pharmacy already waiting is not queued again; its pass will see the new order too
+    private void enqueue(Long pharmacyId) {
+        if (!queued.add(pharmacyId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                queued.remove(pharmacyId);
+                try {
+                    pharmacyStoreRepository.findById(pharmacyId).ifPresent(this::planRuns);
+                } catch (Exception e) {
+                    planFailures.incrementAndGet();
+                    System.err.println("Failed to plan delivery runs for pharmacy " + pharmacyId + ": " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException full) {
+            // Left to the scheduled pass, which plans every pharmacy with a ready order when there is no window
+            queued.remove(pharmacyId);
+        }
+    }
+
+    private Map<String, Object> planRuns(PharmacyStore pharmacy) {
+        if (!planning.add(pharmacy.getId())) {
+            throw new RuntimeException("Delivery runs are already being planned for this pharmacy");
+        }
+        try {
+            double[] origin = locate(pharmacy);
+            LocalDateTime departure = LocalDateTime.now();
+            List<MedicineOrder> orders = medicineOrderRepository.findUnroutedOrders(pharmacy.getId(),
+                    OrderStatus.READY_FOR_PICKUP, MedicineOrder.OrderType.DELIVERY,
+                    departure.minusMinutes(unlocatedRetryMinutes), PageRequest.of(0, maxOrders));
+
+            Map<Long, MedicineOrder> byId = new HashMap<>();
+            Map<String, double[]> destinations = new HashMap<>(); // Pincodes that cannot be located are kept as null too
+            Map<Long, RoutePlanner.Stop> candidates = new LinkedHashMap<>();
+            List<Long> unlocated = new ArrayList<>();
+            for (MedicineOrder order : orders) {
+                String pincode = order.getDeliveryPincode();
+                if (!destinations.containsKey(pincode)) {
+                    destinations.put(pincode, resolve(pincode));
+                }
+                double[] destination = destinations.get(pincode);
+                if (destination == null) {
+                    unlocated.add(order.getId());
+                    continue;
+                }
+                LocalDateTime deadline = order.getExpectedDeliveryTime() != null
+                        ? order.getExpectedDeliveryTime() : order.getUpdatedAt().plusMinutes(deliveryMinutes);
+                byId.put(order.getId(), order);
+                candidates.put(order.getId(), new RoutePlanner.Stop(order.getId(), destination[0], destination[1],
+                        Duration.between(departure, deadline).toSeconds() / 60.0));
+            }
+            if (!unlocated.isEmpty()) {
+                medicineOrderRepository.markDeliveryUnlocated(unlocated, departure);
+            }
+
+            RoutePlanner planner = new RoutePlanner(speedKmh, roadFactor, serviceMinutes, maxStops, maxRunMinutes);
+            List<Map<String, Object>> summaries = new ArrayList<>();
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            List<RoutePlanner.Run> runs = transaction.execute(status -> {
+                Set<Long> locked = lockUnrouted(candidates.keySet());
+                List<RoutePlanner.Stop> stops = new ArrayList<>();
+                for (Map.Entry<Long, RoutePlanner.Stop> candidate : candidates.entrySet()) {
+                    if (locked.contains(candidate.getKey())) {
+                        stops.add(candidate.getValue());
+                    }
+                }
+                long started = System.currentTimeMillis();
+                List<RoutePlanner.Run> planned = planner.plan(origin[0], origin[1], stops);
+                lastPlanMillis = System.currentTimeMillis() - started;
+                for (RoutePlanner.Run run : planned) {
+                    summaries.add(saveRun(run, byId, departure));
+                }
+                return planned;
+            });
+            int routed = runs.stream().mapToInt(run -> run.getStops().size()).sum();
+
+            // Runs nobody can take yet are picked up again by the dispatcher's retry
+            for (Map<String, Object> summary : summaries) {
+                summary.put("courierId", courierDispatchService.dispatchRun((String) summary.get("runId"), origin[0], origin[1]));
+            }
+
+            runsPlanned.addAndGet(runs.size());
+            ordersRouted.addAndGet(routed);
+            ordersUnlocated.addAndGet(unlocated.size());
+            lateRuns.addAndGet(runs.stream().filter(RoutePlanner.Run::isLate).count());
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("runs", summaries);
+            result.put("ordersRouted", routed);
+            result.put("ordersUnlocated", unlocated.size());
+            result.put("planningMillis", lastPlanMillis);
+            return result;
+        } finally {
+            planning.remove(pharmacy.getId());
+        }
+    }
+
+    // Locked first, so a run saved by another planner after this pass read its orders is seen by the check that follows
+    private Set<Long> lockUnrouted(Set<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return Set.of();
+        }
+        Set<Long> locked = new HashSet<>(medicineOrderRepository.lockForRouting(orderIds, OrderStatus.READY_FOR_PICKUP.name()));
+        if (!locked.isEmpty()) {
+            locked.removeAll(deliveryTrackingRepository.findTrackedOrderIds(locked));
+        }
+        return locked;
+    }
+
+    private Map<String, Object> saveRun(RoutePlanner.Run run, Map<Long, MedicineOrder> byId, LocalDateTime departure) {
+        String runId = SnowflakeIdGenerator.nextNumber("RUN");
+        List<DeliveryTracking> trackings = new ArrayList<>();
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < run.getStops().size(); i++) {
+            MedicineOrder order = byId.get(run.getStops().get(i).getId());
+            int minutes = (int) Math.ceil(run.getArrivalMinutes(i));
+            DeliveryTracking tracking = new DeliveryTracking();
+            tracking.setOrder(order);
+            tracking.setRunId(runId);
+            tracking.setRunSequence(i + 1);
+            tracking.setDeliveryStatus(DeliveryTracking.DeliveryStatus.PENDING);
+            tracking.setEstimatedDistance(run.getDistanceKm(i));
+            tracking.setEstimatedTimeMinutes(minutes);
+            tracking.setEstimatedDeliveryTime(departure.plusMinutes(minutes));
+            tracking.setDeliveryInstructions(order.getSpecialInstructions());
+            trackings.add(tracking);
+            orderIds.add(order.getId());
+        }
+        deliveryTrackingRepository.saveAll(trackings);
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("runId", runId);
+        summary.put("orderIds", orderIds);
+        summary.put("distanceKm", Math.round(run.getTotalKm() * 10) / 10.0);
+        summary.put("durationMinutes", (int) Math.ceil(run.getTotalMinutes()));
+        summary.put("late", run.isLate());
+        return summary;
+    }
+
+    private double[] locate(PharmacyStore pharmacy) {
+        if (pharmacy.getLatitude() != null && pharmacy.getLongitude() != null) {
+            return new double[]{pharmacy.getLatitude(), pharmacy.getLongitude()};
+        }
+        double[] coordinates = resolve(pharmacy.getAddress());
+        if (coordinates == null) {
+            throw new RuntimeException("Location of pharmacy " + pharmacy.getId() + " is unknown");
+        }
+        return coordinates;
+    }
+
+    private double[] resolve(String address) {
+        if (address == null || address.isBlank()) {
+            return null;
+        }
+        try {
+            return geocodingService.getCoordinates(address);
+        } catch (Exception e) {
+            System.err.println("Could not locate " + address + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CourierPosition;
+import com.example.demo.model.DeliveryEta;
+import com.example.demo.model.DeliveryPing;
+import com.example.demo.model.DeliveryTracking.DeliveryStatus;
+import com.example.demo.model.DeliveryUpdate;
+import com.example.demo.repository.DeliveryTrackingRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Courier GPS ingestion for deliveries.
+ *
+ * The latest position of each delivery lives in a concurrent map, so reading where a delivery
+ * is never touches the database. Every accepted ping also goes on a bounded queue that is
+ * written to {@code delivery_updates} in JDBC batches every {@code tracking.flush-ms}; the
+ * current position columns of {@code delivery_tracking} are written in the same pass, once per
+ * delivery however many pings it sent, together with its latest arrival estimate from
+ * {@link DeliveryEtaService}. When the queue is full the history of a ping is dropped but its
+ * position is still taken.
+ *
+ * The position update only applies while the delivery is still active. A delivery another
+ * request has finished since its first ping is found that way, and from then on its pings are
+ * rejected and its queued history is not written.
+ */
+@Service
+public class DeliveryTrackingService {
+
+    private static final Set<DeliveryStatus> ACTIVE_STATUSES = DeliveryStatus.active();
+
+    private static final String INSERT_UPDATE_SQL =
+            "INSERT INTO delivery_updates (delivery_tracking_id, update_type, title, latitude, longitude, timestamp, updated_by) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_POSITION_SQL =
+            "UPDATE delivery_tracking SET current_latitude = ?, current_longitude = ?, updated_at = ?, " +
+            "estimated_distance = COALESCE(?, estimated_distance), estimated_time_minutes = COALESCE(?, estimated_time_minutes), " +
+            "estimated_delivery_time = COALESCE(?, estimated_delivery_time) WHERE id = ? AND delivery_status IN (" +
+            ACTIVE_STATUSES.stream().map(status -> "'" + status.name() + "'").collect(Collectors.joining(", ")) + ")";
+
+    @Autowired
+    private DeliveryTrackingRepository deliveryTrackingRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DeliveryEtaService deliveryEtaService;
+
+    @Value("${tracking.max-pings-per-request:500}")
+    private int maxPingsPerRequest;
+
+    @Value("${tracking.queue-capacity:100000}")
+    private int queueCapacity;
+
+    @Value("${tracking.flush-batch-size:1000}")
+    private int flushBatchSize;
+
+    @Value("${tracking.position-ttl-minutes:240}")
+    private long positionTtlMinutes;
+
+    private final Map<String, CourierPosition> latest = new ConcurrentHashMap<>();
+    private final Map<String, TrackingRef> refs = new ConcurrentHashMap<>();
+    private final Set<String> moved = ConcurrentHashMap.newKeySet(); // Positions not yet written to delivery_tracking
+    private BlockingQueue<PendingUpdate> history;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong historyWritten = new AtomicLong();
+    private final AtomicLong historyDropped = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+    private final AtomicLong finishedDeliveries = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        history = new ArrayBlockingQueue<>(queueCapacity);
+        for (Object[] row : deliveryTrackingRepository.findPositionsByStatusIn(ACTIVE_STATUSES)) {
+            String trackingNumber = (String) row[2];
+            refs.put(trackingNumber, new TrackingRef((Long) row[0], (Long) row[1], true, (String) row[6]));
+            LocalDateTime updatedAt = (LocalDateTime) row[5];
+            latest.put(trackingNumber, new CourierPosition(trackingNumber, (Long) row[1],
+                    (Double) row[3], (Double) row[4], null, null, updatedAt, updatedAt));
+        }
+        System.out.println("Loaded last positions of " + latest.size() + " active deliveries");
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    /**
+     * Take a batch of pings. Pings for unknown or finished deliveries and fixes off the map are
+     * skipped; an older fix arriving after a newer one goes into the history only.
+     * @return Counts of accepted and rejected pings
+     */
+    public Map<String, Object> ingest(List<DeliveryPing> pings) {
+        if (pings == null || pings.isEmpty()) {
+            throw new RuntimeException("No positions given");
+        }
+        if (pings.size() > maxPingsPerRequest) {
+            throw new RuntimeException("At most " + maxPingsPerRequest + " positions can be sent at once");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        int acceptedCount = 0;
+        for (DeliveryPing ping : pings) {
+            TrackingRef ref = isValid(ping) ? refOf(ping.getTrackingNumber()) : null;
+            if (ref == null || !ref.active) {
+                continue;
+            }
+            // Device clocks can be off; a fix from the future is stamped with the receive time
+            LocalDateTime recordedAt = ping.getRecordedAt() == null || ping.getRecordedAt().isAfter(now)
+                    ? now : ping.getRecordedAt();
+            CourierPosition position = new CourierPosition(ping.getTrackingNumber(), ref.orderId,
+                    ping.getLatitude(), ping.getLongitude(), ping.getSpeedKmh(), ping.getHeading(), recordedAt, now);
+            latest.merge(ping.getTrackingNumber(), position,
+                    (current, update) -> update.getRecordedAt().isBefore(current.getRecordedAt()) ? current : update);
+            deliveryEtaService.update(ref.destinationPincode, position);
+            moved.add(ping.getTrackingNumber());
+            if (!history.offer(new PendingUpdate(ref.id, position))) {
+                historyDropped.incrementAndGet();
+            }
+            acceptedCount++;
+        }
+        accepted.addAndGet(acceptedCount);
+        rejected.addAndGet(pings.size() - acceptedCount);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("accepted", acceptedCount);
+        result.put("rejected", pings.size() - acceptedCount);
+        return result;
+    }
+
+    /**
+     * Latest position of a delivery, from memory only
+     * @return null if no position is known
+     */
+    public CourierPosition getCurrentPosition(String trackingNumber) {
+        return latest.get(trackingNumber);
+    }
+
+    /**
+     * Whether the tracking number belongs to a delivery; reads the database the first time only
+     */
+    public boolean isTracked(String trackingNumber) {
+        return trackingNumber != null && refOf(trackingNumber) != null;
+    }
+
+    /**
+     * Write moved positions and queued history. Runs on a fixed delay and at shutdown.
+     * Positions go first, so the history of deliveries found finished can be left out.
+     */
+    @Scheduled(fixedDelayString = "${tracking.flush-ms:1000}", initialDelayString = "${tracking.flush-ms:1000}")
+    public synchronized void flush() {
+        try {
+            Set<Long> finished = writePositions();
+            List<PendingUpdate> batch = new ArrayList<>(flushBatchSize);
+            while (history.drainTo(batch, flushBatchSize) > 0) {
+                batch.removeIf(update -> finished.contains(update.trackingId));
+                if (!batch.isEmpty()) {
+                    writeHistory(batch);
+                }
+                batch.clear();
+            }
+        } catch (Exception e) {
+            System.err.println("Delivery position flush failed: " + e.getMessage());
+        }
+    }
+
+    // Deliveries that stopped sending are dropped, so the maps only hold what is on the road
+    @Scheduled(fixedDelayString = "${tracking.evict-interval-ms:300000}", initialDelayString = "${tracking.evict-interval-ms:300000}")
+    public void evictIdle() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(positionTtlMinutes);
+        latest.values().removeIf(position -> position.getReceivedAt().isBefore(cutoff) && !moved.contains(position.getTrackingNumber()));
+        refs.keySet().retainAll(latest.keySet());
+        deliveryEtaService.retain(latest.keySet());
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("trackedDeliveries", latest.size());
+        metrics.put("pingsAccepted", accepted.get());
+        metrics.put("pingsRejected", rejected.get());
+        metrics.put("historyQueued", history.size());
+        metrics.put("historyWritten", historyWritten.get());
+        metrics.put("historyDropped", historyDropped.get());
+        metrics.put("writeFailures", writeFailures.get());
+        metrics.put("finishedDeliveries", finishedDeliveries.get());
+        return metrics;
+    }
+
+    private void writeHistory(List<PendingUpdate> batch) {
+        List<Object[]> args = new ArrayList<>(batch.size());
+        for (PendingUpdate update : batch) {
+            CourierPosition position = update.position;
+            args.add(new Object[]{update.trackingId, DeliveryUpdate.UpdateType.LOCATION_UPDATE.name(), "Location update",
+                    position.getLatitude(), position.getLongitude(), Timestamp.valueOf(position.getRecordedAt()), "courier"});
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT_UPDATE_SQL, args);
+            historyWritten.addAndGet(batch.size());
+        } catch (Exception e) {
+            // History is best effort; the batch is given up rather than growing the queue
+            writeFailures.incrementAndGet();
+            historyDropped.addAndGet(batch.size());
+            System.err.println("Failed to write " + batch.size() + " delivery updates: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return Ids of deliveries that turned out to be finished; their refs are marked inactive
+     */
+    private Set<Long> writePositions() {
+        Set<Long> finished = new HashSet<>();
+        List<String> trackingNumbers = new ArrayList<>();
+        List<Object[]> args = new ArrayList<>();
+        for (Iterator<String> it = moved.iterator(); it.hasNext(); ) {
+            String trackingNumber = it.next();
+            it.remove();
+            CourierPosition position = latest.get(trackingNumber);
+            TrackingRef ref = refs.get(trackingNumber);
+            if (position == null || ref == null) {
+                continue;
+            }
+            DeliveryEta eta = deliveryEtaService.getEta(trackingNumber);
+            trackingNumbers.add(trackingNumber);
+            args.add(new Object[]{position.getLatitude(), position.getLongitude(), Timestamp.valueOf(position.getReceivedAt()),
+                    eta == null ? null : eta.getDistanceKm(), eta == null ? null : eta.getMinutes(),
+                    eta == null ? null : Timestamp.valueOf(eta.getEstimatedArrival()), ref.id});
+        }
+        if (args.isEmpty()) {
+            return finished;
+        }
+        try {
+            int[] updated = jdbcTemplate.batchUpdate(UPDATE_POSITION_SQL, args);
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    // Not active any more; the ref stays so later pings are rejected without a query
+                    String trackingNumber = trackingNumbers.get(i);
+                    TrackingRef ref = refs.get(trackingNumber);
+                    if (ref != null) {
+                        refs.put(trackingNumber, ref.inactive());
+                        finished.add(ref.id);
+                        finishedDeliveries.incrementAndGet();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            writeFailures.incrementAndGet();
+            moved.addAll(trackingNumbers); // Retried on the next flush
+            System.err.println("Failed to write positions of " + args.size() + " deliveries: " + e.getMessage());
+        }
+        return finished;
+    }
+
+    // Only the first ping of a delivery reads the database
+    private TrackingRef refOf(String trackingNumber) {
+        TrackingRef ref = refs.get(trackingNumber);
+        if (ref != null) {
+            return ref;
+        }
+        List<Object[]> rows = deliveryTrackingRepository.findRefByTrackingNumber(trackingNumber);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Object[] row = rows.get(0);
+        ref = new TrackingRef((Long) row[0], (Long) row[1], ACTIVE_STATUSES.contains((DeliveryStatus) row[2]), (String) row[3]);
+        refs.put(trackingNumber, ref);
+        return ref;
+    }
+
+    private static boolean isValid(DeliveryPing ping) {
+        return ping != null && ping.getTrackingNumber() != null && !ping.getTrackingNumber().isBlank()
+                && ping.getLatitude() != null && ping.getLongitude() != null
+                && ping.getLatitude() >= -90 && ping.getLatitude() <= 90
+                && ping.getLongitude() >= -180 && ping.getLongitude() <= 180;
+    }
+
+    private static final class TrackingRef {
+        private final long id;
+        private final Long orderId;
+        private final boolean active;
+        private final String destinationPincode;
+
+        private TrackingRef(long id, Long orderId, boolean active, String destinationPincode) {
+            this.id = id;
+            this.orderId = orderId;
+            this.active = active;
+            this.destinationPincode = destinationPincode;
+        }
+
+        private TrackingRef inactive() {
+            return new TrackingRef(id, orderId, false, destinationPincode);
+        }
+    }
+
+    private static final class PendingUpdate {
+        private final long trackingId;
+        private final CourierPosition position;
+
+        private PendingUpdate(long trackingId, CourierPosition position) {
+            this.trackingId = trackingId;
+            this.position = position;
+        }
+    }
+}
@@ -1,34 +1,175 @@
 package com.example.demo.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.demo.model.GeocodeCacheEntry;
+import com.example.demo.repository.GeocodeCacheRepository;
+import jakarta.annotation.PostConstruct;
 import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 @Service
 public class GeocodingService {
 
+    private static final Pattern PINCODE = Pattern.compile("\\d{6}");
+
     @Value("${geocoding.api.key}")
     private String apiKey;
 
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    @Value("${geocoding.cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${geocoding.cache.ttl-hours:720}")
+    private long ttlHours;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private GeocodeCacheRepository geocodeCacheRepository;
+
+    @Autowired
+    private PincodeGeocoder pincodeGeocoder;
+
+    // Access-ordered so the least recently used entry is evicted first
+    private final Map<String, GeocodeCacheEntry> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, CompletableFuture<double[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong remoteCalls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    @PostConstruct
+    public void loadPersistedCache() {
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minusHours(ttlHours);
+            int purged = geocodeCacheRepository.deleteByResolvedAtBefore(cutoff);
+            List<GeocodeCacheEntry> entries = geocodeCacheRepository
+                    .findByResolvedAtAfterOrderByResolvedAtDesc(cutoff, PageRequest.of(0, maxEntries));
+            synchronized (cache) {
+                // Insert oldest first so the newest entries end up most recently used
+                for (int i = entries.size() - 1; i >= 0; i--) {
+                    putLocal(entries.get(i));
+                }
+            }
+            System.out.println("Loaded " + entries.size() + " geocode cache entries (purged " + purged + " expired)");
+        } catch (Exception e) {
+            System.err.println("Failed to load geocode cache: " + e.getMessage());
+        }
+    }
 
     public double[] getCoordinates(String address) {
+        String key = normalizeKey(address);
+
+        // Known pincodes resolve from the local reference file without touching the network
+        if (key.startsWith("pin:")) {
+            double[] local = pincodeGeocoder.lookup(key.substring(4));
+            if (local != null) {
+                return local;
+            }
+        }
+
+        GeocodeCacheEntry cached = getLocal(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return new double[]{cached.getLatitude(), cached.getLongitude()};
+        }
+        misses.incrementAndGet();
+
+        // Concurrent misses for the same key share a single upstream request
+        CompletableFuture<double[]> call = new CompletableFuture<>();
+        CompletableFuture<double[]> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return awaitShared(existing, address);
+        }
+
+        try {
+            // The previous call for this key may have stored its result and left between our miss and putIfAbsent
+            cached = getLocal(key);
+            if (cached != null) {
+                double[] coordinates = {cached.getLatitude(), cached.getLongitude()};
+                call.complete(coordinates);
+                return coordinates.clone();
+            }
+            double[] coordinates = fetchCoordinates(address);
+            store(key, coordinates);
+            call.complete(coordinates);
+            return coordinates.clone();
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    public Map<String, Object> getCacheStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long lookups = hitCount + missCount;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("coalescedMisses", coalesced.get());
+        stats.put("remoteCalls", remoteCalls.get());
+        stats.put("failures", failures.get());
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        stats.put("inFlight", inFlight.size());
+        synchronized (cache) {
+            stats.put("size", cache.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("offlineAvailable", pincodeGeocoder.isAvailable());
+        stats.put("offlinePincodes", pincodeGeocoder.size());
+        stats.put("offlineHits", pincodeGeocoder.getHits());
+        stats.put("offlineMisses", pincodeGeocoder.getMisses());
+        stats.put("ttlHours", ttlHours);
+        return stats;
+    }
+
+    /**
+     * Build the cache key for an address. Bare pincodes (with or without spaces) share one key,
+     * other addresses are compared case- and whitespace-insensitively.
+     */
+    static String normalizeKey(String address) {
+        if (address == null) {
+            throw new IllegalArgumentException("Address is required for geocoding");
+        }
+        String collapsed = address.trim().replaceAll("\\s+", " ").toLowerCase();
+        String digits = collapsed.replace(" ", "");
+        if (PINCODE.matcher(digits).matches()) {
+            return "pin:" + digits;
+        }
+        return "addr:" + collapsed;
+    }
+
+    private double[] fetchCoordinates(String address) {
         String url = "https://api.opencagedata.com/geocode/v1/json?q=" +
                 URLEncoder.encode(address, StandardCharsets.UTF_8) +
                 "&key=" + apiKey;
 
-        RestTemplate restTemplate = new RestTemplate();
+        remoteCalls.incrementAndGet();
         ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
 
         try {
@@ -46,5 +187,50 @@ public class GeocodingService {
         }
     }
 
+    private double[] awaitShared(CompletableFuture<double[]> call, String address) {
+        try {
+            return call.join().clone();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to get coordinates for address: " + address, e.getCause());
+        }
+    }
+
+    private void store(String key, double[] coordinates) {
+        GeocodeCacheEntry entry = new GeocodeCacheEntry(key, coordinates[0], coordinates[1], LocalDateTime.now());
+        synchronized (cache) {
+            putLocal(entry);
+        }
+        try {
+            geocodeCacheRepository.save(entry);
+        } catch (Exception e) {
+            // The in-memory entry still serves this node; it just won't survive a restart
+            System.err.println("Failed to persist geocode cache entry " + key + ": " + e.getMessage());
+        }
+    }
 
+    private GeocodeCacheEntry getLocal(String key) {
+        synchronized (cache) {
+            GeocodeCacheEntry entry = cache.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.getResolvedAt().isBefore(LocalDateTime.now().minusHours(ttlHours))) {
+                cache.remove(key);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    // Caller must hold the cache lock
+    private void putLocal(GeocodeCacheEntry entry) {
+        cache.put(entry.getCacheKey(), entry);
+        if (cache.size() > maxEntries) {
+            String eldest = cache.keySet().iterator().next();
+            cache.remove(eldest);
+        }
+    }
 }
@@ -0,0 +1,164 @@
+package com.example.demo.service;
+
+import com.example.demo.model.*;
+import com.example.demo.repository.OrderItemRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Builds order DTOs for API responses.
+ *
+ * List reads should load orders through the {@code MedicineOrder.detail} entity graph, which
+ * joins every to-one association the DTO needs, and convert them with {@link #toDtos(List)},
+ * which loads the items of all orders in one query. A page of N orders then costs two
+ * statements instead of several per order.
+ */
+@Service
+public class MedicineOrderDtoMapper {
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    /**
+     * Convert a page of orders, fetching all of their items with a single query
+     */
+    public List<MedicineOrderDto> toDtos(List<MedicineOrder> orders) {
+        if (orders.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> orderIds = orders.stream().map(MedicineOrder::getId).collect(Collectors.toList());
+        Map<Long, List<OrderItem>> itemsByOrder = new HashMap<>();
+        for (OrderItem item : orderItemRepository.findByOrderIdIn(orderIds)) {
+            itemsByOrder.computeIfAbsent(item.getOrder().getId(), id -> new ArrayList<>()).add(item);
+        }
+        return orders.stream()
+                .map(order -> toDto(order, itemsByOrder.getOrDefault(order.getId(), new ArrayList<>())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Convert a single order, reading its items through the order's own collection
+     */
+    public MedicineOrderDto toDto(MedicineOrder order) {
+        return toDto(order, order.getOrderItems());
+    }
+
+    private MedicineOrderDto toDto(MedicineOrder order, List<OrderItem> items) {
+
+        MedicineOrderDto dto = new MedicineOrderDto();
+        dto.setId(order.getId());
+        dto.setOrderNumber(order.getOrderNumber());
+        dto.setStatus(order.getStatus());
+        dto.setOrderType(order.getOrderType());
+        dto.setTotalAmount(order.getTotalAmount());
+        dto.setDeliveryFee(order.getDeliveryFee());
+        dto.setFinalAmount(order.getFinalAmount());
+        dto.setDeliveryAddress(order.getDeliveryAddress());
+        dto.setDeliveryPincode(order.getDeliveryPincode());
+        dto.setPatientPhoneNumber(order.getPatientPhoneNumber());
+        dto.setSpecialInstructions(order.getSpecialInstructions());
+        dto.setPharmacyNotes(order.getPharmacyNotes());
+        dto.setRejectionReason(order.getRejectionReason());
+        dto.setCreatedAt(order.getCreatedAt());
+        dto.setUpdatedAt(order.getUpdatedAt());
+        dto.setAcceptedAt(order.getAcceptedAt());
+        dto.setExpectedDeliveryTime(order.getExpectedDeliveryTime());
+
+        // Convert patient to DTO (excluding sensitive user data)
+        if (order.getPatient() != null) {
+            PatientDto patientDto = new PatientDto();
+            patientDto.setId(order.getPatient().getId());
+            patientDto.setFirstName(order.getPatient().getFirstName());
+            patientDto.setLastName(order.getPatient().getLastName());
+            patientDto.setPhoneNumber(order.getPatient().getPhoneNumber());
+            patientDto.setEmail(order.getPatient().getEmail());
+            patientDto.setDateOfBirth(order.getPatient().getDateOfBirth());
+            patientDto.setGender(order.getPatient().getGender());
+            patientDto.setAddress(order.getPatient().getAddress());
+            patientDto.setEmergencyContact(order.getPatient().getEmergencyContact());
+            patientDto.setMedicalHistory(order.getPatient().getMedicalHistory());
+            dto.setPatient(patientDto);
+        }
+
+        // Convert pharmacy to DTO (excluding sensitive user data)
+        if (order.getPharmacy() != null) {
+            PharmacyStoreDto pharmacyDto = new PharmacyStoreDto();
+            pharmacyDto.setId(order.getPharmacy().getId());
+            pharmacyDto.setName(order.getPharmacy().getName());
+            pharmacyDto.setOwnerName(order.getPharmacy().getOwnerName());
+            pharmacyDto.setLicenseNumber(order.getPharmacy().getLicenseNumber());
+            pharmacyDto.setPhoneNumber(order.getPharmacy().getPhoneNumber());
+            pharmacyDto.setEmail(order.getPharmacy().getEmail());
+            pharmacyDto.setAddress(order.getPharmacy().getAddress());
+            pharmacyDto.setDescription(order.getPharmacy().getDescription());
+            pharmacyDto.setLatitude(order.getPharmacy().getLatitude());
+            pharmacyDto.setLongitude(order.getPharmacy().getLongitude());
+            dto.setPharmacy(pharmacyDto);
+        }
+
+        // Convert prescription to DTO (excluding sensitive data)
+        if (order.getPrescription() != null) {
+            PrescriptionDto prescriptionDto = new PrescriptionDto();
+            prescriptionDto.setId(order.getPrescription().getId());
+            prescriptionDto.setPrescriptionNumber(order.getPrescription().getPrescriptionNumber());
+            prescriptionDto.setPrescribedDate(order.getPrescription().getIssuedDate());
+            prescriptionDto.setDiagnosis(order.getPrescription().getDiagnosis());
+            prescriptionDto.setNotes(order.getPrescription().getDoctorNotes());
+            prescriptionDto.setStatus(order.getPrescription().getStatus().toString());
+            dto.setPrescription(prescriptionDto);
+        }
+
+        // Convert order items to DTOs
+        if (items != null) {
+            List<OrderItemDto> orderItemDtos = items.stream()
+                    .map(item -> {
+                        OrderItemDto itemDto = new OrderItemDto();
+                        itemDto.setId(item.getId());
+                        itemDto.setMedicineName(item.getMedicineName());
+                        itemDto.setDosage(item.getDosage());
+                        itemDto.setQuantity(item.getQuantityRequested());
+                        itemDto.setUnitPrice(item.getUnitPrice());
+                        itemDto.setTotalPrice(item.getTotalPrice());
+                        itemDto.setInstructions(item.getSubstitutionNote());
+                        return itemDto;
+                    })
+                    .collect(Collectors.toList());
+            dto.setOrderItems(orderItemDtos);
+        }
+
+        // Convert delivery tracking to DTO
+        if (order.getDeliveryTracking() != null) {
+            DeliveryTrackingDto trackingDto = new DeliveryTrackingDto();
+            trackingDto.setId(order.getDeliveryTracking().getId());
+            trackingDto.setStatus(order.getDeliveryTracking().getDeliveryStatus().toString());
+            trackingDto.setCurrentLocation(order.getDeliveryTracking().getCurrentLatitude() + "," + order.getDeliveryTracking().getCurrentLongitude());
+            if (order.getDeliveryTracking().getEstimatedDeliveryTime() != null) {
+                trackingDto.setEstimatedDeliveryTime(order.getDeliveryTracking().getEstimatedDeliveryTime().toString());
+            }
+            trackingDto.setLastUpdated(order.getDeliveryTracking().getUpdatedAt());
+            trackingDto.setDeliveryPartnerName(order.getDeliveryTracking().getDeliveryPartnerName());
+            trackingDto.setDeliveryPartnerPhone(order.getDeliveryTracking().getDeliveryPartnerPhone());
+            dto.setDeliveryTracking(trackingDto);
+        }
+
+        // Convert payment to DTO
+        if (order.getPayment() != null) {
+            OrderPaymentDto paymentDto = new OrderPaymentDto();
+            paymentDto.setId(order.getPayment().getId());
+            paymentDto.setPaymentMethod(order.getPayment().getPaymentMethod().toString());
+            paymentDto.setTransactionId(order.getPayment().getTransactionId());
+            paymentDto.setAmount(order.getPayment().getAmount());
+            paymentDto.setStatus(order.getPayment().getPaymentStatus().toString());
+            paymentDto.setPaymentDate(order.getPayment().getPaidAt());
+            dto.setPayment(paymentDto);
+        }
+
+        return dto;
+    }
+}
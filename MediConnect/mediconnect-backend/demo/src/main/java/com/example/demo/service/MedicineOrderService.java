@@ -2,18 +2,35 @@ package com.example.demo.service;
 
 import com.example.demo.model.*;
 import com.example.demo.repository.*;
+import com.example.demo.utils.OrderCursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.ArrayList;
+import java.util.stream.Collectors;
 
 @Service
 public class MedicineOrderService {
 
+    // Statuses only reachable through their own flows, which set the pharmacy, deadlines and holds that go with them
+    private static final Set<MedicineOrder.OrderStatus> DEDICATED_TARGETS = EnumSet.of(
+            MedicineOrder.OrderStatus.PHARMACY_ASSIGNED,
+            MedicineOrder.OrderStatus.ACCEPTED,
+            MedicineOrder.OrderStatus.REJECTED,
+            MedicineOrder.OrderStatus.ASSIGNMENT_FAILED);
+
     @Autowired
     private MedicineOrderRepository medicineOrderRepository;
 
@@ -27,8 +44,36 @@ public class MedicineOrderService {
     private PatientRepository patientRepository;
 
     @Autowired
-    private PharmacyMatchingService pharmacyMatchingService;
+    private PharmacyOrderStatsService pharmacyOrderStatsService;
+
+    @Autowired
+    private PharmacyRevenueRollupService pharmacyRevenueRollupService;
+
+    @Autowired
+    private MedicineOrderDtoMapper medicineOrderDtoMapper;
+
+    @Autowired
+    private OrderOutbox orderOutbox;
+
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    @Autowired
+    private OrderPharmacyRefusalRepository orderPharmacyRefusalRepository;
+
+    @Autowired
+    private DeliveryTrackingRepository deliveryTrackingRepository;
+
+    @Value("${orders.page.default-size:20}")
+    private int defaultPageSize;
 
+    @Value("${orders.page.max-size:100}")
+    private int maxPageSize;
+
+    @Value("${sla.max-accept-timeouts:3}")
+    private int maxAcceptTimeouts;
+
+    @Transactional
     public MedicineOrder createOrder(Long prescriptionId, Long patientId, String deliveryAddress, 
                                    String deliveryPincode, String specialInstructions) {
         
@@ -94,111 +139,167 @@ public class MedicineOrderService {
 
         MedicineOrder savedOrder = medicineOrderRepository.save(order);
 
-        // Try to find and assign a pharmacy
-        try {
-            MedicineOrder assignedOrder = assignPharmacy(savedOrder.getId(), deliveryPincode);
-            return assignedOrder; // Return the updated order with pharmacy assigned
-        } catch (Exception e) {
-            // Log error but don't fail the order creation
-            System.err.println("Failed to auto-assign pharmacy: " + e.getMessage());
-            // Return the order without pharmacy - it will be assigned later
-            return savedOrder;
-        }
+        // Pharmacy assignment happens in the background once the CREATED event is dispatched;
+        // clients follow it via the assignment status endpoint
+        orderOutbox.record(OrderEvent.of(OrderEvent.Type.CREATED, savedOrder.getId(), null,
+                null, MedicineOrder.OrderStatus.PENDING));
+        return savedOrder;
     }
 
-    public MedicineOrder assignPharmacy(Long orderId, String pincode) {
-        Optional<MedicineOrder> orderOpt = medicineOrderRepository.findById(orderId);
-        if (!orderOpt.isPresent()) {
-            throw new RuntimeException("Order not found with id: " + orderId);
-        }
-
-        MedicineOrder order = orderOpt.get();
-        
-        // First try to find nearby pharmacies by pincode
-        List<PharmacyStore> nearbyPharmacies = pharmacyMatchingService.findNearbyPharmacies(pincode, 10.0); // 10km radius
-        
-        if (nearbyPharmacies.isEmpty()) {
-            // Fallback: get any available pharmacy
-            List<PharmacyStore> allPharmacies = pharmacyStoreRepository.findAll();
-            if (allPharmacies.isEmpty()) {
-                throw new RuntimeException("No pharmacies available in the system");
-            }
-            // Assign to the first available pharmacy
-            PharmacyStore assignedPharmacy = allPharmacies.get(0);
-            order.setPharmacy(assignedPharmacy);
-            order.setStatus(MedicineOrder.OrderStatus.PHARMACY_ASSIGNED);
-            System.out.println("Assigned order " + orderId + " to pharmacy: " + assignedPharmacy.getName());
-        } else {
-            // Assign to the nearest pharmacy
-            PharmacyStore assignedPharmacy = nearbyPharmacies.get(0);
-            order.setPharmacy(assignedPharmacy);
-            order.setStatus(MedicineOrder.OrderStatus.PHARMACY_ASSIGNED);
-            System.out.println("Assigned order " + orderId + " to nearby pharmacy: " + assignedPharmacy.getName());
+    @Transactional
+    public MedicineOrder acceptOrder(Long orderId, Long pharmacyId) {
+        LocalDateTime now = LocalDateTime.now();
+        int updated = medicineOrderRepository.acceptIfAssigned(orderId, pharmacyId, MedicineOrder.OrderStatus.ACCEPTED,
+                MedicineOrder.OrderStatus.sourcesOf(MedicineOrder.OrderStatus.ACCEPTED), now, now.plusHours(2)); // Default 2 hours
+        if (updated == 0) {
+            throw transitionFailure(orderId, pharmacyId, MedicineOrder.OrderStatus.ACCEPTED, "accept");
         }
 
-        return medicineOrderRepository.save(order);
+        pharmacyOrderStatsService.recordTransition(pharmacyId, MedicineOrder.OrderStatus.PHARMACY_ASSIGNED,
+                pharmacyId, MedicineOrder.OrderStatus.ACCEPTED);
+        orderOutbox.record(OrderEvent.of(OrderEvent.Type.ACCEPTED, orderId, pharmacyId,
+                MedicineOrder.OrderStatus.PHARMACY_ASSIGNED, MedicineOrder.OrderStatus.ACCEPTED));
+        stockReservationService.confirm(List.of(orderId));
+        return reload(orderId);
     }
 
-    public MedicineOrder acceptOrder(Long orderId, Long pharmacyId) {
-        Optional<MedicineOrder> orderOpt = medicineOrderRepository.findById(orderId);
-        if (!orderOpt.isPresent()) {
-            throw new RuntimeException("Order not found with id: " + orderId);
-        }
-
-        MedicineOrder order = orderOpt.get();
-        
-        // Verify pharmacy ownership
-        if (!order.getPharmacy().getId().equals(pharmacyId)) {
-            throw new RuntimeException("Pharmacy not authorized to accept this order");
+    @Transactional
+    public MedicineOrder rejectOrder(Long orderId, Long pharmacyId, String rejectionReason) {
+        int updated = medicineOrderRepository.rejectIfAssigned(orderId, pharmacyId, MedicineOrder.OrderStatus.REJECTED,
+                MedicineOrder.OrderStatus.sourcesOf(MedicineOrder.OrderStatus.REJECTED), rejectionReason, LocalDateTime.now());
+        if (updated == 0) {
+            throw transitionFailure(orderId, pharmacyId, MedicineOrder.OrderStatus.REJECTED, "reject");
         }
 
-        order.setStatus(MedicineOrder.OrderStatus.ACCEPTED);
-        order.setAcceptedAt(LocalDateTime.now());
-        order.setExpectedDeliveryTime(LocalDateTime.now().plusHours(2)); // Default 2 hours
+        // The pharmacy assignment is removed along with the status change, and the order is not offered to it again
+        orderPharmacyRefusalRepository.save(new OrderPharmacyRefusal(orderId, pharmacyId, OrderPharmacyRefusal.Reason.REJECTED));
+        pharmacyOrderStatsService.recordTransition(pharmacyId, MedicineOrder.OrderStatus.PHARMACY_ASSIGNED,
+                null, MedicineOrder.OrderStatus.REJECTED);
+        // Reassignment to another pharmacy is triggered by the REJECTED event
+        orderOutbox.record(OrderEvent.of(OrderEvent.Type.REJECTED, orderId, pharmacyId,
+                MedicineOrder.OrderStatus.PHARMACY_ASSIGNED, MedicineOrder.OrderStatus.REJECTED));
+        stockReservationService.release(List.of(orderId), StockReservation.State.RELEASED);
 
-        return medicineOrderRepository.save(order);
+        return reload(orderId);
     }
 
-    public MedicineOrder rejectOrder(Long orderId, Long pharmacyId, String rejectionReason) {
-        Optional<MedicineOrder> orderOpt = medicineOrderRepository.findById(orderId);
-        if (!orderOpt.isPresent()) {
-            throw new RuntimeException("Order not found with id: " + orderId);
+    /**
+     * Take an order back from a pharmacy that did not accept it within {@code sla.accept-minutes}
+     * and give back the stock held for it there.
+     * The order goes through the same path as a rejection, so it is offered to another pharmacy
+     * but never again to this one. After {@code sla.max-accept-timeouts} pharmacies have let it
+     * sit, it is parked in ASSIGNMENT_FAILED and escalated instead.
+     * @return false if the order had already moved on from the pharmacy
+     */
+    @Transactional
+    public boolean expireAssignment(Long orderId, Long pharmacyId) {
+        long timeouts = orderPharmacyRefusalRepository.countByOrderIdAndReason(orderId,
+                OrderPharmacyRefusal.Reason.TIMED_OUT) + 1;
+        MedicineOrder.OrderStatus target = timeouts >= maxAcceptTimeouts
+                ? MedicineOrder.OrderStatus.ASSIGNMENT_FAILED : MedicineOrder.OrderStatus.REJECTED;
+        int updated = medicineOrderRepository.rejectIfAssigned(orderId, pharmacyId, target,
+                List.of(MedicineOrder.OrderStatus.PHARMACY_ASSIGNED), "Not accepted in time", LocalDateTime.now());
+        if (updated == 0) {
+            return false;
         }
-
-        MedicineOrder order = orderOpt.get();
-        
-        // Verify pharmacy ownership
-        if (!order.getPharmacy().getId().equals(pharmacyId)) {
-            throw new RuntimeException("Pharmacy not authorized to reject this order");
+        orderPharmacyRefusalRepository.save(new OrderPharmacyRefusal(orderId, pharmacyId, OrderPharmacyRefusal.Reason.TIMED_OUT));
+        pharmacyOrderStatsService.recordTransition(pharmacyId, MedicineOrder.OrderStatus.PHARMACY_ASSIGNED,
+                null, target);
+        if (target == MedicineOrder.OrderStatus.REJECTED) {
+            orderOutbox.record(OrderEvent.of(OrderEvent.Type.REJECTED, orderId, pharmacyId,
+                    MedicineOrder.OrderStatus.PHARMACY_ASSIGNED, MedicineOrder.OrderStatus.REJECTED));
+        } else {
+            orderOutbox.record(OrderEvent.of(OrderEvent.Type.STATUS_CHANGED, orderId, pharmacyId,
+                    MedicineOrder.OrderStatus.PHARMACY_ASSIGNED, MedicineOrder.OrderStatus.ASSIGNMENT_FAILED));
+            orderOutbox.record(OrderEvent.of(OrderEvent.Type.ESCALATED, orderId, pharmacyId,
+                    MedicineOrder.OrderStatus.PHARMACY_ASSIGNED, MedicineOrder.OrderStatus.ASSIGNMENT_FAILED));
         }
+        stockReservationService.release(List.of(orderId), StockReservation.State.EXPIRED);
+        return true;
+    }
 
-        order.setStatus(MedicineOrder.OrderStatus.REJECTED);
-        order.setRejectionReason(rejectionReason);
-        order.setPharmacy(null); // Remove pharmacy assignment
+    /**
+     * Flag an order its pharmacy has not got ready in time and tell listeners about it
+     * @return false if the order was ready, cancelled or already flagged
+     */
+    @Transactional
+    public boolean escalateOrder(Long orderId, Long pharmacyId) {
+        int updated = medicineOrderRepository.markSlaBreached(orderId, pharmacyId,
+                List.of(MedicineOrder.OrderStatus.ACCEPTED, MedicineOrder.OrderStatus.PREPARING), LocalDateTime.now());
+        if (updated == 0) {
+            return false;
+        }
+        MedicineOrder.OrderStatus status = reload(orderId).getStatus();
+        orderOutbox.record(OrderEvent.of(OrderEvent.Type.ESCALATED, orderId, pharmacyId, status, status));
+        return true;
+    }
 
-        MedicineOrder savedOrder = medicineOrderRepository.save(order);
+    /**
+     * Move an order along its lifecycle. Assignment, acceptance and rejection have their own
+     * methods and are refused here with a conflict.
+     */
+    @Transactional
+    public MedicineOrder updateOrderStatus(Long orderId, MedicineOrder.OrderStatus status) {
+        if (status == null) {
+            throw new RuntimeException("Status is required");
+        }
+        if (DEDICATED_TARGETS.contains(status)) {
+            MedicineOrder order = medicineOrderRepository.findById(orderId)
+                    .orElseThrow(() -> new RuntimeException("Order not found with id: " + orderId));
+            throw new OrderStateConflictException(orderId, order.getStatus(), status,
+                    "Order " + orderId + " cannot be moved to " + status + " by a status update");
+        }
+        List<String> sources = MedicineOrder.OrderStatus.sourcesOf(status).stream()
+                .map(Enum::name)
+                .collect(Collectors.toList());
+        List<Object[]> previous = sources.isEmpty() ? List.of()
+                : medicineOrderRepository.transitionStatus(orderId, sources, status.name(), LocalDateTime.now());
+        if (previous.isEmpty()) {
+            throw transitionFailure(orderId, null, status, "update");
+        }
 
-        // Try to reassign to another pharmacy
-        try {
-            assignPharmacy(savedOrder.getId(), savedOrder.getDeliveryPincode());
-        } catch (Exception e) {
-            // If no other pharmacy available, keep as rejected
-            System.err.println("Failed to reassign pharmacy: " + e.getMessage());
+        Object[] row = previous.get(0);
+        MedicineOrder.OrderStatus previousStatus = MedicineOrder.OrderStatus.valueOf((String) row[0]);
+        Long pharmacyId = row[1] == null ? null : ((Number) row[1]).longValue();
+        pharmacyOrderStatsService.recordTransition(pharmacyId, previousStatus, pharmacyId, status);
+        pharmacyRevenueRollupService.recordTransition(pharmacyId, previousStatus, status,
+                PharmacyRevenueRollupService.toDateTime(row[2]), (BigDecimal) row[3],
+                PharmacyRevenueRollupService.toDateTime(row[4]));
+        orderOutbox.record(OrderEvent.of(OrderEvent.Type.STATUS_CHANGED, orderId, pharmacyId,
+                previousStatus, status));
+        if (previousStatus == MedicineOrder.OrderStatus.PHARMACY_ASSIGNED) {
+            stockReservationService.release(List.of(orderId), StockReservation.State.RELEASED);
         }
+        closeDelivery(List.of(orderId), status);
+        return reload(orderId);
+    }
 
-        return savedOrder;
+    // A delivered or cancelled order takes its open delivery with it, so tracking stops
+    private void closeDelivery(List<Long> orderIds, MedicineOrder.OrderStatus status) {
+        DeliveryTracking.DeliveryStatus closed = DeliveryTracking.DeliveryStatus.closingFor(status);
+        if (closed != null) {
+            LocalDateTime now = LocalDateTime.now();
+            deliveryTrackingRepository.closeForOrders(orderIds, DeliveryTracking.DeliveryStatus.active(), closed,
+                    closed == DeliveryTracking.DeliveryStatus.DELIVERED ? now : null, now);
+        }
     }
 
-    public MedicineOrder updateOrderStatus(Long orderId, MedicineOrder.OrderStatus status) {
+    // Work out why a conditional update matched nothing; only runs on the failure path
+    private RuntimeException transitionFailure(Long orderId, Long pharmacyId, MedicineOrder.OrderStatus target, String action) {
         Optional<MedicineOrder> orderOpt = medicineOrderRepository.findById(orderId);
         if (!orderOpt.isPresent()) {
-            throw new RuntimeException("Order not found with id: " + orderId);
+            return new RuntimeException("Order not found with id: " + orderId);
         }
-
         MedicineOrder order = orderOpt.get();
-        order.setStatus(status);
-        
-        return medicineOrderRepository.save(order);
+        if (pharmacyId != null && !pharmacyId.equals(pharmacyIdOf(order))) {
+            return new RuntimeException("Pharmacy not authorized to " + action + " this order");
+        }
+        return new OrderStateConflictException(orderId, order.getStatus(), target);
+    }
+
+    private MedicineOrder reload(Long orderId) {
+        return medicineOrderRepository.findByIdWithPatientAndPrescription(orderId)
+                .orElseThrow(() -> new RuntimeException("Order not found with id: " + orderId));
     }
 
     public List<MedicineOrder> getPatientOrders(Long patientId) {
@@ -258,65 +359,108 @@ public class MedicineOrderService {
         return medicineOrderRepository.countByPatientAndStatus(patientOpt.get(), status);
     }
 
-    // New methods for pharmacy order management
-    public MedicineOrder acceptOrder(Long orderId) {
-        Optional<MedicineOrder> orderOpt = medicineOrderRepository.findById(orderId);
-        if (!orderOpt.isPresent()) {
-            throw new RuntimeException("Order not found with id: " + orderId);
+    /**
+     * Order counts by status for the pharmacy owned by a user, read from the status counter table
+     */
+    public Map<MedicineOrder.OrderStatus, Long> getPharmacyStatusCountsByUserId(Long pharmacyUserId) {
+        Optional<PharmacyStore> pharmacyOpt = pharmacyStoreRepository.findByUserId(pharmacyUserId);
+        if (!pharmacyOpt.isPresent()) {
+            throw new RuntimeException("Pharmacy not found for user id: " + pharmacyUserId);
         }
-
-        MedicineOrder order = orderOpt.get();
-        order.setStatus(MedicineOrder.OrderStatus.ACCEPTED);
-        order.setAcceptedAt(LocalDateTime.now());
-        order.setExpectedDeliveryTime(LocalDateTime.now().plusHours(2)); // Default 2 hours
-
-        return medicineOrderRepository.save(order);
+        return pharmacyOrderStatsService.getStatusCounts(pharmacyOpt.get().getId());
     }
 
-    public MedicineOrder rejectOrder(Long orderId, String rejectionReason) {
-        Optional<MedicineOrder> orderOpt = medicineOrderRepository.findById(orderId);
-        if (!orderOpt.isPresent()) {
-            throw new RuntimeException("Order not found with id: " + orderId);
+    /**
+     * Revenue of a pharmacy's orders created between two days, both inclusive, read from the daily rollups
+     * @param daily Also return one row per day that has orders
+     */
+    public Map<String, Object> getPharmacyRevenueByUserId(Long pharmacyUserId, LocalDate from, LocalDate to, boolean daily) {
+        Optional<PharmacyStore> pharmacyOpt = pharmacyStoreRepository.findByUserId(pharmacyUserId);
+        if (!pharmacyOpt.isPresent()) {
+            throw new RuntimeException("Pharmacy not found for user id: " + pharmacyUserId);
         }
+        Long pharmacyId = pharmacyOpt.get().getId();
+        Map<String, Object> revenue = pharmacyRevenueRollupService.getRevenue(pharmacyId, from, to);
+        if (daily) {
+            revenue.put("daily", pharmacyRevenueRollupService.getDailyRollups(pharmacyId, from, to));
+        }
+        return revenue;
+    }
 
-        MedicineOrder order = orderOpt.get();
-        order.setStatus(MedicineOrder.OrderStatus.REJECTED);
-        order.setRejectionReason(rejectionReason);
-
-        return medicineOrderRepository.save(order);
+    private static Long pharmacyIdOf(MedicineOrder order) {
+        return order.getPharmacy() == null ? null : order.getPharmacy().getId();
     }
 
-    public List<MedicineOrderDto> getPharmacyOrdersByUserIdAsDto(Long pharmacyUserId) {
+    @Transactional(readOnly = true)
+    public MedicineOrderPageDto getPharmacyOrdersPageByUserId(Long pharmacyUserId, List<MedicineOrder.OrderStatus> statuses,
+                                                             String cursor, Integer limit) {
         Optional<PharmacyStore> pharmacyOpt = pharmacyStoreRepository.findByUserId(pharmacyUserId);
         if (!pharmacyOpt.isPresent()) {
             throw new RuntimeException("Pharmacy not found for user id: " + pharmacyUserId);
         }
-        
-        List<MedicineOrder> orders = medicineOrderRepository.findByPharmacyWithPatientAndPrescriptionOrderByCreatedAtDesc(pharmacyOpt.get());
-        return orders.stream()
-                .map(this::convertToDto)
-                .collect(java.util.stream.Collectors.toList());
+
+        OrderCursor position = OrderCursor.decode(cursor, OrderCursor.NEWEST);
+        int size = pageSize(limit);
+        List<MedicineOrder> orders = medicineOrderRepository.findPharmacyOrdersBefore(pharmacyOpt.get(),
+                statusFilter(statuses), position.getCreatedAt(), position.getId(), PageRequest.of(0, size + 1));
+        return toPage(orders, size);
     }
 
-    public List<MedicineOrderDto> getPatientOrdersAsDto(Long patientId) {
+    @Transactional(readOnly = true)
+    public MedicineOrderPageDto getPatientOrdersPage(Long patientId, List<MedicineOrder.OrderStatus> statuses,
+                                                     String cursor, Integer limit) {
         Optional<Patient> patientOpt = patientRepository.findById(patientId);
         if (!patientOpt.isPresent()) {
             throw new RuntimeException("Patient not found with id: " + patientId);
         }
-        
-        List<MedicineOrder> orders = medicineOrderRepository.findByPatientWithPatientAndPrescriptionOrderByCreatedAtDesc(patientOpt.get());
-        return orders.stream()
-                .map(this::convertToDto)
-                .collect(java.util.stream.Collectors.toList());
+
+        OrderCursor position = OrderCursor.decode(cursor, OrderCursor.NEWEST);
+        int size = pageSize(limit);
+        List<MedicineOrder> orders = medicineOrderRepository.findPatientOrdersBefore(patientOpt.get(),
+                statusFilter(statuses), position.getCreatedAt(), position.getId(), PageRequest.of(0, size + 1));
+        return toPage(orders, size);
+    }
+
+    /**
+     * Oldest first, so a pharmacy working through the queue sees the longest waiting orders on page one.
+     * Defaults to PENDING when no status filter is given.
+     */
+    @Transactional(readOnly = true)
+    public MedicineOrderPageDto getPendingOrdersPage(List<MedicineOrder.OrderStatus> statuses, String cursor, Integer limit) {
+        List<MedicineOrder.OrderStatus> filter = statuses == null || statuses.isEmpty()
+                ? List.of(MedicineOrder.OrderStatus.PENDING) : statuses;
+
+        OrderCursor position = OrderCursor.decode(cursor, OrderCursor.OLDEST);
+        int size = pageSize(limit);
+        List<MedicineOrder> orders = medicineOrderRepository.findOrdersByStatusAfter(filter,
+                position.getCreatedAt(), position.getId(), PageRequest.of(0, size + 1));
+        return toPage(orders, size);
+    }
+
+    private int pageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return defaultPageSize;
+        }
+        return Math.min(limit, maxPageSize);
+    }
+
+    private static List<MedicineOrder.OrderStatus> statusFilter(List<MedicineOrder.OrderStatus> statuses) {
+        return statuses == null || statuses.isEmpty() ? Arrays.asList(MedicineOrder.OrderStatus.values()) : statuses;
     }
 
-    public List<MedicineOrderDto> getPendingOrdersAsDto() {
-        List<MedicineOrder> orders = medicineOrderRepository.findByStatusWithPatientAndPrescriptionOrderByCreatedAtAsc(MedicineOrder.OrderStatus.PENDING);
-        return orders.stream()
-                .map(this::convertToDto)
-                .collect(java.util.stream.Collectors.toList());
+    // Rows are fetched with one extra to tell whether another page exists
+    private MedicineOrderPageDto toPage(List<MedicineOrder> orders, int size) {
+        boolean hasMore = orders.size() > size;
+        List<MedicineOrder> page = hasMore ? orders.subList(0, size) : orders;
+        String nextCursor = null;
+        if (hasMore) {
+            MedicineOrder last = page.get(page.size() - 1);
+            nextCursor = new OrderCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new MedicineOrderPageDto(medicineOrderDtoMapper.toDtos(page), nextCursor, hasMore);
     }
 
+    @Transactional(readOnly = true)
     public MedicineOrderDto getOrderByIdAsDto(Long orderId) {
         Optional<MedicineOrder> orderOpt = medicineOrderRepository.findByIdWithPatientAndPrescription(orderId);
         if (!orderOpt.isPresent()) {
@@ -325,6 +469,7 @@ public class MedicineOrderService {
         return convertToDto(orderOpt.get());
     }
 
+    @Transactional(readOnly = true)
     public MedicineOrderDto getOrderByNumberAsDto(String orderNumber) {
         Optional<MedicineOrder> orderOpt = medicineOrderRepository.findByOrderNumberWithPatientAndPrescription(orderNumber);
         if (!orderOpt.isPresent()) {
@@ -334,112 +479,6 @@ public class MedicineOrderService {
     }
 
     public MedicineOrderDto convertToDto(MedicineOrder order) {
-        MedicineOrderDto dto = new MedicineOrderDto();
-        dto.setId(order.getId());
-        dto.setOrderNumber(order.getOrderNumber());
-        dto.setStatus(order.getStatus());
-        dto.setOrderType(order.getOrderType());
-        dto.setTotalAmount(order.getTotalAmount());
-        dto.setDeliveryFee(order.getDeliveryFee());
-        dto.setFinalAmount(order.getFinalAmount());
-        dto.setDeliveryAddress(order.getDeliveryAddress());
-        dto.setDeliveryPincode(order.getDeliveryPincode());
-        dto.setPatientPhoneNumber(order.getPatientPhoneNumber());
-        dto.setSpecialInstructions(order.getSpecialInstructions());
-        dto.setPharmacyNotes(order.getPharmacyNotes());
-        dto.setRejectionReason(order.getRejectionReason());
-        dto.setCreatedAt(order.getCreatedAt());
-        dto.setUpdatedAt(order.getUpdatedAt());
-        dto.setAcceptedAt(order.getAcceptedAt());
-        dto.setExpectedDeliveryTime(order.getExpectedDeliveryTime());
-
-        // Convert patient to DTO (excluding sensitive user data)
-        if (order.getPatient() != null) {
-            PatientDto patientDto = new PatientDto();
-            patientDto.setId(order.getPatient().getId());
-            patientDto.setFirstName(order.getPatient().getFirstName());
-            patientDto.setLastName(order.getPatient().getLastName());
-            patientDto.setPhoneNumber(order.getPatient().getPhoneNumber());
-            patientDto.setEmail(order.getPatient().getEmail());
-            patientDto.setDateOfBirth(order.getPatient().getDateOfBirth());
-            patientDto.setGender(order.getPatient().getGender());
-            patientDto.setAddress(order.getPatient().getAddress());
-            patientDto.setEmergencyContact(order.getPatient().getEmergencyContact());
-            patientDto.setMedicalHistory(order.getPatient().getMedicalHistory());
-            dto.setPatient(patientDto);
-        }
-
-        // Convert pharmacy to DTO (excluding sensitive user data)
-        if (order.getPharmacy() != null) {
-            PharmacyStoreDto pharmacyDto = new PharmacyStoreDto();
-            pharmacyDto.setId(order.getPharmacy().getId());
-            pharmacyDto.setName(order.getPharmacy().getName());
-            pharmacyDto.setOwnerName(order.getPharmacy().getOwnerName());
-            pharmacyDto.setLicenseNumber(order.getPharmacy().getLicenseNumber());
-            pharmacyDto.setPhoneNumber(order.getPharmacy().getPhoneNumber());
-            pharmacyDto.setEmail(order.getPharmacy().getEmail());
-            pharmacyDto.setAddress(order.getPharmacy().getAddress());
-            pharmacyDto.setDescription(order.getPharmacy().getDescription());
-            pharmacyDto.setLatitude(order.getPharmacy().getLatitude());
-            pharmacyDto.setLongitude(order.getPharmacy().getLongitude());
-            dto.setPharmacy(pharmacyDto);
-        }
-
-        // Convert prescription to DTO (excluding sensitive data)
-        if (order.getPrescription() != null) {
-            PrescriptionDto prescriptionDto = new PrescriptionDto();
-            prescriptionDto.setId(order.getPrescription().getId());
-            prescriptionDto.setPrescriptionNumber(order.getPrescription().getPrescriptionNumber());
-            prescriptionDto.setPrescribedDate(order.getPrescription().getIssuedDate());
-            prescriptionDto.setDiagnosis(order.getPrescription().getDiagnosis());
-            prescriptionDto.setNotes(order.getPrescription().getDoctorNotes());
-            prescriptionDto.setStatus(order.getPrescription().getStatus().toString());
-            dto.setPrescription(prescriptionDto);
-        }
-
-        // Convert order items to DTOs
-        if (order.getOrderItems() != null) {
-            List<OrderItemDto> orderItemDtos = order.getOrderItems().stream()
-                    .map(item -> {
-                        OrderItemDto itemDto = new OrderItemDto();
-                        itemDto.setId(item.getId());
-                        itemDto.setMedicineName(item.getMedicineName());
-                        itemDto.setDosage(item.getDosage());
-                        itemDto.setQuantity(item.getQuantityRequested());
-                        itemDto.setUnitPrice(item.getUnitPrice());
-                        itemDto.setTotalPrice(item.getTotalPrice());
-                        itemDto.setInstructions(item.getSubstitutionNote());
-                        return itemDto;
-                    })
-                    .collect(java.util.stream.Collectors.toList());
-            dto.setOrderItems(orderItemDtos);
-        }
-
-        // Convert delivery tracking to DTO
-        if (order.getDeliveryTracking() != null) {
-            DeliveryTrackingDto trackingDto = new DeliveryTrackingDto();
-            trackingDto.setId(order.getDeliveryTracking().getId());
-            trackingDto.setStatus(order.getDeliveryTracking().getDeliveryStatus().toString());
-            trackingDto.setCurrentLocation(order.getDeliveryTracking().getCurrentLatitude() + "," + order.getDeliveryTracking().getCurrentLongitude());
-            trackingDto.setEstimatedDeliveryTime(order.getDeliveryTracking().getEstimatedDeliveryTime().toString());
-            trackingDto.setLastUpdated(order.getDeliveryTracking().getUpdatedAt());
-            trackingDto.setDeliveryPartnerName(order.getDeliveryTracking().getDeliveryPartnerName());
-            trackingDto.setDeliveryPartnerPhone(order.getDeliveryTracking().getDeliveryPartnerPhone());
-            dto.setDeliveryTracking(trackingDto);
-        }
-
-        // Convert payment to DTO
-        if (order.getPayment() != null) {
-            OrderPaymentDto paymentDto = new OrderPaymentDto();
-            paymentDto.setId(order.getPayment().getId());
-            paymentDto.setPaymentMethod(order.getPayment().getPaymentMethod().toString());
-            paymentDto.setTransactionId(order.getPayment().getTransactionId());
-            paymentDto.setAmount(order.getPayment().getAmount());
-            paymentDto.setStatus(order.getPayment().getPaymentStatus().toString());
-            paymentDto.setPaymentDate(order.getPayment().getPaidAt());
-            dto.setPayment(paymentDto);
-        }
-
-        return dto;
+        return medicineOrderDtoMapper.toDto(order);
     }
 }
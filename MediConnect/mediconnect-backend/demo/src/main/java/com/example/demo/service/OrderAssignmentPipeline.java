@@ -0,0 +1,300 @@
+package com.example.demo.service;
+
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.OrderEvent;
+import com.example.demo.model.PharmacyStore;
+import com.example.demo.repository.MedicineOrderRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Assigns newly created and rejected orders to pharmacies off the request thread.
+ *
+ * Work runs on a bounded pool. A failed attempt is recorded on the order and retried
+ * with exponential backoff; once {@code assignment.async.max-attempts} is reached the
+ * order is parked in {@link MedicineOrder.OrderStatus#ASSIGNMENT_FAILED} until someone
+ * retries it by hand. When the queue is full the order is simply left in PENDING and
+ * the batch sweep in {@link PharmacyAssignmentEngine} picks it up later.
+ */
+@Service
+public class OrderAssignmentPipeline implements OrderEventListener {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private static final List<String> UNASSIGNED_STATUS_NAMES = PharmacyAssignmentEngine.UNASSIGNED_STATUSES.stream()
+            .map(Enum::name)
+            .toList();
+
+    @Autowired
+    private MedicineOrderRepository medicineOrderRepository;
+
+    @Autowired
+    private PharmacyAssignmentEngine pharmacyAssignmentEngine;
+
+    @Autowired
+    private OrderOutbox orderOutbox;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${assignment.async.workers:4}")
+    private int workers;
+
+    @Value("${assignment.async.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${assignment.async.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${assignment.async.initial-backoff-ms:1000}")
+    private long initialBackoffMs;
+
+    @Value("${assignment.async.max-backoff-ms:60000}")
+    private long maxBackoffMs;
+
+    private ThreadPoolExecutor executor;
+    private ScheduledExecutorService retryScheduler;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong assigned = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private final AtomicInteger waitingRetries = new AtomicInteger();
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "order-assign-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-assign-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        retryScheduler.shutdownNow();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queue an order for assignment. Inside a transaction the work is queued once it commits,
+     * so workers never read an order that is not visible yet.
+     */
+    public void submit(Long orderId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(orderId, 1);
+                }
+            });
+        } else {
+            enqueue(orderId, 1);
+        }
+    }
+
+    /**
+     * New and rejected orders need a pharmacy. Redelivery is harmless since assignment
+     * skips orders that already have one.
+     */
+    @Override
+    public void onOrderEvent(OrderEvent event) {
+        if (event.getType() == OrderEvent.Type.CREATED || event.getType() == OrderEvent.Type.REJECTED) {
+            submit(event.getOrderId());
+        }
+    }
+
+    /**
+     * Move a dead-lettered order back to PENDING and queue it again
+     * @return true if the order was in ASSIGNMENT_FAILED
+     */
+    public boolean retry(Long orderId) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Boolean requeued = transaction.execute(status -> {
+            int updated = medicineOrderRepository.requeueFailedAssignment(orderId,
+                    MedicineOrder.OrderStatus.ASSIGNMENT_FAILED, MedicineOrder.OrderStatus.PENDING, LocalDateTime.now());
+            if (updated == 0) {
+                return false;
+            }
+            orderOutbox.record(OrderEvent.of(OrderEvent.Type.STATUS_CHANGED, orderId, null,
+                    MedicineOrder.OrderStatus.ASSIGNMENT_FAILED, MedicineOrder.OrderStatus.PENDING));
+            submit(orderId);
+            return true;
+        });
+        return Boolean.TRUE.equals(requeued);
+    }
+
+    /**
+     * Assignment progress for an order as shown to the client
+     */
+    public Map<String, Object> getAssignmentStatus(Long orderId) {
+        Optional<MedicineOrder> orderOpt = medicineOrderRepository.findById(orderId);
+        if (!orderOpt.isPresent()) {
+            throw new RuntimeException("Order not found with id: " + orderId);
+        }
+
+        MedicineOrder order = orderOpt.get();
+        Map<String, Object> status = new HashMap<>();
+        status.put("orderId", order.getId());
+        status.put("orderNumber", order.getOrderNumber());
+        status.put("status", order.getStatus());
+        status.put("assignmentState", assignmentState(order));
+        status.put("attempts", order.getAssignmentAttempts() == null ? 0 : order.getAssignmentAttempts());
+        status.put("lastError", order.getAssignmentError());
+        if (order.getPharmacy() != null) {
+            status.put("pharmacyId", order.getPharmacy().getId());
+            status.put("pharmacyName", order.getPharmacy().getName());
+        }
+        return status;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("submitted", submitted.get());
+        metrics.put("assigned", assigned.get());
+        metrics.put("skipped", skipped.get());
+        metrics.put("retried", retried.get());
+        metrics.put("deadLettered", deadLettered.get());
+        metrics.put("overflowed", overflowed.get());
+        metrics.put("waitingRetries", waitingRetries.get());
+        metrics.put("queueSize", executor.getQueue().size());
+        metrics.put("activeWorkers", executor.getActiveCount());
+        metrics.put("workers", workers);
+        return metrics;
+    }
+
+    private void enqueue(Long orderId, int attempt) {
+        if (attempt == 1) {
+            submitted.incrementAndGet();
+        }
+        try {
+            executor.execute(() -> attempt(orderId, attempt));
+        } catch (RejectedExecutionException e) {
+            // Order stays unassigned; the periodic sweep will get to it
+            overflowed.incrementAndGet();
+            System.err.println("Assignment queue full, leaving order " + orderId + " for the sweeper");
+        }
+    }
+
+    private void attempt(Long orderId, int attempt) {
+        try {
+            Optional<MedicineOrder> orderOpt = medicineOrderRepository.findById(orderId);
+            if (!orderOpt.isPresent()) {
+                skipped.incrementAndGet();
+                return;
+            }
+            PharmacyStore pharmacy = pharmacyAssignmentEngine.assignOrder(orderOpt.get());
+            if (pharmacy == null) {
+                // Already assigned, cancelled or picked up by the sweeper
+                skipped.incrementAndGet();
+                return;
+            }
+            assigned.incrementAndGet();
+            System.out.println("Assigned order " + orderId + " to pharmacy: " + pharmacy.getName());
+        } catch (Exception e) {
+            handleFailure(orderId, attempt, e);
+        }
+    }
+
+    private void handleFailure(Long orderId, int attempt, Exception e) {
+        String error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        if (error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            medicineOrderRepository.recordAssignmentFailure(orderId, error, now);
+            if (attempt >= maxAttempts) {
+                if (park(orderId, now)) {
+                    deadLettered.incrementAndGet();
+                }
+                System.err.println("Giving up on assigning order " + orderId + " after " + attempt + " attempts: " + error);
+                return;
+            }
+        } catch (Exception recordError) {
+            System.err.println("Failed to record assignment failure for order " + orderId + ": " + recordError.getMessage());
+        }
+
+        long delay = backoffMillis(attempt);
+        retried.incrementAndGet();
+        waitingRetries.incrementAndGet();
+        System.err.println("Assignment attempt " + attempt + " for order " + orderId + " failed, retrying in " + delay + " ms: " + error);
+        try {
+            retryScheduler.schedule(() -> {
+                waitingRetries.decrementAndGet();
+                enqueue(orderId, attempt + 1);
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException shuttingDown) {
+            waitingRetries.decrementAndGet();
+        }
+    }
+
+    private boolean park(Long orderId, LocalDateTime now) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Boolean parked = transaction.execute(status -> {
+            List<String> previous = medicineOrderRepository.markAssignmentFailed(orderId,
+                    MedicineOrder.OrderStatus.ASSIGNMENT_FAILED.name(), UNASSIGNED_STATUS_NAMES, now);
+            if (previous.isEmpty()) {
+                return false;
+            }
+            orderOutbox.record(OrderEvent.of(OrderEvent.Type.STATUS_CHANGED, orderId, null,
+                    MedicineOrder.OrderStatus.valueOf(previous.get(0)), MedicineOrder.OrderStatus.ASSIGNMENT_FAILED));
+            return true;
+        });
+        return Boolean.TRUE.equals(parked);
+    }
+
+    long backoffMillis(int attempt) {
+        long delay = initialBackoffMs << Math.min(attempt - 1, 20);
+        return Math.min(delay, maxBackoffMs);
+    }
+
+    private static String assignmentState(MedicineOrder order) {
+        if (order.getPharmacy() != null) {
+            return "ASSIGNED";
+        }
+        if (order.getStatus() == MedicineOrder.OrderStatus.ASSIGNMENT_FAILED) {
+            return "FAILED";
+        }
+        if (order.getStatus() == MedicineOrder.OrderStatus.PENDING || order.getStatus() == MedicineOrder.OrderStatus.REJECTED) {
+            return order.getAssignmentError() == null ? "QUEUED" : "RETRYING";
+        }
+        return "NOT_APPLICABLE";
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.demo.service;
+
+import com.example.demo.model.OrderEvent;
+
+/**
+ * In-process consumer of order lifecycle events, fed by {@link OrderOutboxDispatcher}.
+ *
+ * Delivery is at least once and in order per order, so implementations must tolerate
+ * seeing the same event again. Throwing makes the dispatcher retry the event later.
+ */
+public interface OrderEventListener {
+
+    void onOrderEvent(OrderEvent event);
+}
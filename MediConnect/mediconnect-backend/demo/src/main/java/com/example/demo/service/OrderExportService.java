@@ -0,0 +1,267 @@
+package com.example.demo.service;
+
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.PharmacyStore;
+import com.example.demo.repository.PharmacyStoreRepository;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Streams orders out as NDJSON or CSV.
+ *
+ * Rows are read through a forward-only cursor that fetches {@code orders.export.fetch-size}
+ * rows at a time (PostgreSQL only uses a cursor inside a transaction, hence the read-only
+ * one around it) and each row is written to the output as soon as it is read, so memory use
+ * does not depend on how many orders are exported.
+ */
+@Service
+public class OrderExportService {
+
+    // Names double as the CSV header and the NDJSON keys; the order matches SELECT_ORDERS
+    static final String[] COLUMNS = {
+            "id", "orderNumber", "status", "createdAt", "acceptedAt", "deliveredAt",
+            "pharmacyId", "pharmacyName", "patientName", "patientPhoneNumber",
+            "deliveryPincode", "deliveryAddress", "totalAmount", "deliveryFee", "finalAmount"
+    };
+
+    private static final String SELECT_ORDERS =
+            "SELECT o.id, o.order_number, o.status, o.created_at, o.accepted_at, o.delivered_at, " +
+            "o.pharmacy_id, ph.name, CONCAT_WS(' ', pa.first_name, pa.last_name), o.patient_phone_number, " +
+            "o.delivery_pincode, o.delivery_address, o.total_amount, o.delivery_fee, o.final_amount " +
+            "FROM medicine_orders o JOIN patient pa ON pa.id = o.patient_id LEFT JOIN pharmacy ph ON ph.id = o.pharmacy_id ";
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() { return contentType; }
+        public String getExtension() { return extension; }
+
+        public static Format parse(String format) {
+            if (format == null || format.isBlank()) {
+                return NDJSON;
+            }
+            try {
+                return valueOf(format.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Unsupported export format: " + format);
+            }
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private PharmacyStoreRepository pharmacyStoreRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${orders.export.fetch-size:500}")
+    private int fetchSize;
+
+    @Value("${orders.export.max-days:400}")
+    private long maxDays;
+
+    /**
+     * Orders in the given statuses, oldest first
+     * @param statuses Defaults to PENDING, like the pending orders page
+     * @return Number of orders written
+     */
+    public long exportPendingOrders(List<MedicineOrder.OrderStatus> statuses, Format format, OutputStream out) {
+        List<MedicineOrder.OrderStatus> filter = statuses == null || statuses.isEmpty()
+                ? List.of(MedicineOrder.OrderStatus.PENDING) : statuses;
+        List<Object> args = new ArrayList<>(filter.size());
+        for (MedicineOrder.OrderStatus status : filter) {
+            args.add(status.name());
+        }
+        String where = "WHERE o.status IN (" + String.join(", ", Collections.nCopies(filter.size(), "?")) + ") ";
+        return stream(where, args.toArray(), format, out);
+    }
+
+    /**
+     * Orders of a pharmacy created in a date range, both ends included, oldest first
+     * @return Number of orders written
+     */
+    public long exportPharmacyOrders(Long pharmacyId, LocalDate from, LocalDate to, Format format, OutputStream out) {
+        String where = "WHERE o.pharmacy_id = ? AND o.created_at >= ? AND o.created_at < ? ";
+        return stream(where, new Object[]{pharmacyId, Timestamp.valueOf(from.atStartOfDay()),
+                Timestamp.valueOf(to.plusDays(1).atStartOfDay())}, format, out);
+    }
+
+    /**
+     * Check an export request before anything is written, so a bad one can still get an error response
+     * @return Id of the pharmacy owned by the user
+     */
+    public Long validatePharmacyExport(Long pharmacyUserId, LocalDate from, LocalDate to) {
+        if (from == null || to == null || to.isBefore(from)) {
+            throw new RuntimeException("A date range with from on or before to is required");
+        }
+        if (to.toEpochDay() - from.toEpochDay() >= maxDays) {
+            throw new RuntimeException("At most " + maxDays + " days can be exported at once");
+        }
+        Optional<PharmacyStore> pharmacyOpt = pharmacyStoreRepository.findByUserId(pharmacyUserId);
+        if (!pharmacyOpt.isPresent()) {
+            throw new RuntimeException("Pharmacy not found for user id: " + pharmacyUserId);
+        }
+        return pharmacyOpt.get().getId();
+    }
+
+    private long stream(String where, Object[] args, Format format, OutputStream out) {
+        String sql = SELECT_ORDERS + where + "ORDER BY o.created_at, o.id";
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        Long written = transaction.execute(status -> {
+            try (RowWriter writer = format == Format.CSV ? new CsvRowWriter(out) : new NdjsonRowWriter(objectMapper.getFactory(), out)) {
+                long[] count = {0};
+                jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    statement.setFetchSize(fetchSize);
+                    new ArgumentPreparedStatementSetter(args).setValues(statement);
+                    return statement;
+                }, (RowCallbackHandler) rs -> {
+                    writer.write(rs);
+                    count[0]++;
+                });
+                return count[0];
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return written == null ? 0 : written;
+    }
+
+    // JDBC values as export values: timestamps as ISO local date-times, everything else as is
+    private static Object valueAt(ResultSet rs, int column) throws SQLException {
+        Object value = rs.getObject(column);
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime().toString();
+        }
+        return value;
+    }
+
+    /**
+     * CSV field with RFC 4180 quoting. Text that a spreadsheet would run as a formula is
+     * prefixed with a quote mark.
+     */
+    static String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+        if (value instanceof String && !text.isEmpty() && "=+-@".indexOf(text.charAt(0)) >= 0) {
+            text = "'" + text;
+        }
+        if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+        return text;
+    }
+
+    private interface RowWriter extends AutoCloseable {
+        void write(ResultSet rs) throws SQLException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        private CsvRowWriter(OutputStream out) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write(String.join(",", COLUMNS));
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException {
+            try {
+                for (int i = 0; i < COLUMNS.length; i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+                    writer.write(csvField(valueAt(rs, i + 1)));
+                }
+                writer.write("\r\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Flushes without closing the response stream
+        @Override
+        public void close() throws IOException {
+            writer.flush();
+        }
+    }
+
+    private static final class NdjsonRowWriter implements RowWriter {
+        private final JsonGenerator generator;
+
+        private NdjsonRowWriter(JsonFactory factory, OutputStream out) throws IOException {
+            this.generator = factory.createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException {
+            try {
+                generator.writeStartObject();
+                for (int i = 0; i < COLUMNS.length; i++) {
+                    generator.writeObjectField(COLUMNS[i], valueAt(rs, i + 1));
+                }
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+    }
+}
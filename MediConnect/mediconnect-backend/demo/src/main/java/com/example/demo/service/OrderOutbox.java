@@ -0,0 +1,25 @@
+package com.example.demo.service;
+
+import com.example.demo.model.OrderEvent;
+import com.example.demo.model.OrderOutboxEvent;
+import com.example.demo.repository.OrderOutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Write side of the order outbox. Every order state change records its event here in the
+ * same transaction, so the event exists exactly when the change does.
+ */
+@Service
+public class OrderOutbox {
+
+    @Autowired
+    private OrderOutboxRepository orderOutboxRepository;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(OrderEvent event) {
+        orderOutboxRepository.save(OrderOutboxEvent.from(event));
+    }
+}
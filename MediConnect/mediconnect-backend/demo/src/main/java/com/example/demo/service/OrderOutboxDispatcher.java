@@ -0,0 +1,182 @@
+package com.example.demo.service;
+
+import com.example.demo.model.OrderOutboxEvent;
+import com.example.demo.repository.OrderOutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the order outbox and hands each event to every {@link OrderEventListener}.
+ *
+ * Batches are claimed with SKIP LOCKED and marked in one transaction, so an event is only
+ * marked delivered after all listeners took it. Each event is delivered in a transaction of its
+ * own: a listener whose database work fails rolls back that event's work only, and the event is
+ * recorded as failed in the claim transaction instead of taking the batch down with it. A
+ * failing event is retried with exponential backoff and holds back later events of the same
+ * order until it goes through or is given up on after {@code outbox.max-attempts}.
+ */
+@Service
+public class OrderOutboxDispatcher {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    @Autowired
+    private OrderOutboxRepository orderOutboxRepository;
+
+    @Autowired
+    private List<OrderEventListener> listeners;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${outbox.max-batches-per-poll:20}")
+    private int maxBatchesPerPoll;
+
+    @Value("${outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${outbox.initial-backoff-ms:1000}")
+    private long initialBackoffMs;
+
+    @Value("${outbox.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+
+    @Value("${outbox.retention-hours:72}")
+    private long retentionHours;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @Scheduled(fixedDelayString = "${outbox.poll-interval-ms:500}", initialDelayString = "${outbox.initial-delay-ms:5000}")
+    public void poll() {
+        try {
+            // A batch holds at most one event per order, so keep going while there is work
+            int batches = 0;
+            while (batches < maxBatchesPerPoll && drainBatch() > 0) {
+                batches++;
+            }
+        } catch (Exception e) {
+            System.err.println("Order outbox dispatch failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Claim and deliver one batch
+     * @return Number of events claimed
+     */
+    public int drainBatch() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Integer claimed = transaction.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<OrderOutboxEvent> batch = orderOutboxRepository.claimDue(now, batchSize);
+            List<Long> deliveredIds = new ArrayList<>();
+            for (OrderOutboxEvent row : batch) {
+                String error = deliverInOwnTransaction(row);
+                if (error == null) {
+                    deliveredIds.add(row.getId());
+                } else {
+                    recordFailure(row, error, now);
+                }
+            }
+            if (!deliveredIds.isEmpty()) {
+                orderOutboxRepository.markDelivered(deliveredIds, now);
+                delivered.addAndGet(deliveredIds.size());
+            }
+            return batch.size();
+        });
+        return claimed == null ? 0 : claimed;
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.cleanup-interval-ms:3600000}", initialDelayString = "${outbox.cleanup-initial-delay-ms:60000}")
+    public void cleanup() {
+        try {
+            int removed = orderOutboxRepository.deleteDeliveredBefore(LocalDateTime.now().minusHours(retentionHours));
+            if (removed > 0) {
+                System.out.println("Removed " + removed + " delivered order outbox events");
+            }
+        } catch (Exception e) {
+            System.err.println("Order outbox cleanup failed: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("pending", orderOutboxRepository.countByDeliveryState(OrderOutboxEvent.DeliveryState.PENDING));
+        metrics.put("failed", orderOutboxRepository.countByDeliveryState(OrderOutboxEvent.DeliveryState.FAILED));
+        metrics.put("delivered", delivered.get());
+        metrics.put("retried", retried.get());
+        metrics.put("givenUp", failed.get());
+        metrics.put("listeners", listeners.size());
+        return metrics;
+    }
+
+    // Listeners join this transaction, so one that fails cannot mark the claim transaction rollback-only
+    private String deliverInOwnTransaction(OrderOutboxEvent row) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            return transaction.execute(status -> {
+                String error = deliver(row);
+                if (error != null) {
+                    status.setRollbackOnly(); // The event is retried as a whole
+                }
+                return error;
+            });
+        } catch (Exception e) {
+            // e.g. a listener swallowed the failure of a transactional call that marked the transaction rollback-only
+            return "Listener transaction failed: " + e.getMessage();
+        }
+    }
+
+    // Every listener sees the event even if an earlier one throws; any failure means the whole event is retried
+    private String deliver(OrderOutboxEvent row) {
+        String error = null;
+        for (OrderEventListener listener : listeners) {
+            try {
+                listener.onOrderEvent(row.toEvent());
+            } catch (Exception e) {
+                if (error == null) {
+                    error = listener.getClass().getSimpleName() + ": " + e.getMessage();
+                }
+            }
+        }
+        return error;
+    }
+
+    private void recordFailure(OrderOutboxEvent row, String error, LocalDateTime now) {
+        int attempts = row.getAttempts() + 1;
+        row.setAttempts(attempts);
+        row.setLastError(error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+        if (attempts >= maxAttempts) {
+            row.setDeliveryState(OrderOutboxEvent.DeliveryState.FAILED);
+            row.setProcessedAt(now);
+            failed.incrementAndGet();
+            System.err.println("Giving up on order outbox event " + row.getId() + " for order " + row.getOrderId() + ": " + error);
+        } else {
+            row.setNextAttemptAt(now.plus(Duration.ofMillis(backoffMillis(attempts))));
+            retried.incrementAndGet();
+        }
+    }
+
+    long backoffMillis(int attempt) {
+        long delay = initialBackoffMs << Math.min(attempt - 1, 20);
+        return Math.min(delay, maxBackoffMs);
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.demo.service;
+
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.OrderEvent;
+import com.example.demo.repository.MedicineOrderRepository;
+import com.example.demo.utils.HashedTimingWheel;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Acceptance and preparation deadlines of open orders, kept in a {@link HashedTimingWheel}.
+ *
+ * An order assigned to a pharmacy must be accepted within {@code sla.accept-minutes} or it is
+ * taken back, its stock holds given back, and offered to another pharmacy, or escalated once
+ * {@code sla.max-accept-timeouts} pharmacies have let it sit; an accepted order must be ready within
+ * {@code sla.prepare-minutes} or it is flagged and an ESCALATED event goes out. Timers follow
+ * the order events and are reloaded from the database at startup. A timer only triggers a
+ * guarded update, so one left over on a node that missed a later event does nothing.
+ */
+@Service
+public class OrderSlaService implements OrderEventListener {
+
+    private static final List<MedicineOrder.OrderStatus> TIMED_STATUSES = List.of(
+            MedicineOrder.OrderStatus.PHARMACY_ASSIGNED,
+            MedicineOrder.OrderStatus.ACCEPTED,
+            MedicineOrder.OrderStatus.PREPARING);
+
+    @Autowired
+    private MedicineOrderRepository medicineOrderRepository;
+
+    @Autowired
+    private MedicineOrderService medicineOrderService;
+
+    @Value("${sla.accept-minutes:${reservations.hold-minutes:15}}")
+    private long acceptMinutes;
+
+    @Value("${sla.prepare-minutes:60}")
+    private long prepareMinutes;
+
+    @Value("${sla.tick-ms:1000}")
+    private long tickMillis;
+
+    @Value("${sla.wheel-size:4096}")
+    private int wheelSize;
+
+    @Value("${sla.max-breaches-per-tick:200}")
+    private int maxBreachesPerTick;
+
+    @Value("${sla.retry-delay-ms:60000}")
+    private long retryDelayMillis;
+
+    @Value("${sla.rebuild-page-size:1000}")
+    private int rebuildPageSize;
+
+    private HashedTimingWheel<Deadline> wheel;
+    private final ArrayDeque<Breach> due = new ArrayDeque<>(); // Only touched by the tick
+
+    private final AtomicLong reassigned = new AtomicLong();
+    private final AtomicLong escalated = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @PostConstruct
+    public void rebuild() {
+        wheel = new HashedTimingWheel<>(tickMillis, wheelSize, System.currentTimeMillis());
+        long afterId = 0L;
+        int loaded = 0;
+        while (true) {
+            List<Object[]> rows = medicineOrderRepository.findDeadlinesAfter(TIMED_STATUSES, afterId,
+                    PageRequest.of(0, rebuildPageSize));
+            for (Object[] row : rows) {
+                Long orderId = (Long) row[0];
+                MedicineOrder.OrderStatus status = (MedicineOrder.OrderStatus) row[2];
+                LocalDateTime updatedAt = (LocalDateTime) row[3];
+                LocalDateTime acceptedAt = (LocalDateTime) row[4];
+                if (status == MedicineOrder.OrderStatus.PHARMACY_ASSIGNED) {
+                    startAcceptTimer(orderId, (Long) row[1], updatedAt);
+                } else {
+                    startPrepareTimer(orderId, (Long) row[1], acceptedAt != null ? acceptedAt : updatedAt);
+                }
+                afterId = orderId;
+            }
+            loaded += rows.size();
+            if (rows.size() < rebuildPageSize) {
+                break;
+            }
+        }
+        System.out.println("Loaded deadlines of " + loaded + " open orders");
+    }
+
+    /**
+     * Start, move or stop an order's timer. Redelivered events just set the same deadline again.
+     */
+    @Override
+    public void onOrderEvent(OrderEvent event) {
+        switch (event.getType()) {
+            case ASSIGNED -> startAcceptTimer(event.getOrderId(), event.getPharmacyId(), event.getOccurredAt());
+            case ACCEPTED -> startPrepareTimer(event.getOrderId(), event.getPharmacyId(), event.getOccurredAt());
+            case STATUS_CHANGED -> {
+                if (event.getStatus() == MedicineOrder.OrderStatus.ACCEPTED) {
+                    startPrepareTimer(event.getOrderId(), event.getPharmacyId(), event.getOccurredAt());
+                } else if (event.getStatus() != MedicineOrder.OrderStatus.PREPARING) {
+                    wheel.cancel(event.getOrderId());
+                }
+            }
+            case REJECTED -> wheel.cancel(event.getOrderId());
+            default -> {
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${sla.tick-ms:1000}", initialDelayString = "${sla.tick-ms:1000}")
+    public void tick() {
+        try {
+            wheel.advance(System.currentTimeMillis(), (orderId, deadline) -> due.add(new Breach(orderId, deadline)));
+            // A burst of breaches, e.g. after downtime, is worked off over several ticks
+            for (int i = 0; i < maxBreachesPerTick && !due.isEmpty(); i++) {
+                handle(due.poll());
+            }
+        } catch (Exception e) {
+            System.err.println("SLA timer tick failed: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("pendingTimers", wheel.size());
+        metrics.put("reassigned", reassigned.get());
+        metrics.put("escalated", escalated.get());
+        metrics.put("stale", stale.get());
+        metrics.put("failed", failed.get());
+        metrics.put("acceptMinutes", acceptMinutes);
+        metrics.put("prepareMinutes", prepareMinutes);
+        return metrics;
+    }
+
+    private void startAcceptTimer(Long orderId, Long pharmacyId, LocalDateTime from) {
+        if (orderId != null && pharmacyId != null) {
+            wheel.schedule(orderId, deadlineMillis(from, acceptMinutes), new Deadline(Deadline.Kind.ACCEPT, pharmacyId));
+        }
+    }
+
+    private void startPrepareTimer(Long orderId, Long pharmacyId, LocalDateTime from) {
+        if (orderId != null && pharmacyId != null) {
+            wheel.schedule(orderId, deadlineMillis(from, prepareMinutes), new Deadline(Deadline.Kind.PREPARE, pharmacyId));
+        }
+    }
+
+    private void handle(Breach breach) {
+        Deadline deadline = breach.deadline;
+        try {
+            boolean applied = deadline.kind == Deadline.Kind.ACCEPT
+                    ? medicineOrderService.expireAssignment(breach.orderId, deadline.pharmacyId)
+                    : medicineOrderService.escalateOrder(breach.orderId, deadline.pharmacyId);
+            if (!applied) {
+                stale.incrementAndGet();
+            } else if (deadline.kind == Deadline.Kind.ACCEPT) {
+                reassigned.incrementAndGet();
+            } else {
+                escalated.incrementAndGet();
+            }
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            System.err.println("Failed to act on missed deadline of order " + breach.orderId + ": " + e.getMessage());
+            // Try again later unless an event has set a new deadline in the meantime
+            if (wheel.get(breach.orderId) == null) {
+                wheel.schedule(breach.orderId, System.currentTimeMillis() + retryDelayMillis, deadline);
+            }
+        }
+    }
+
+    private static long deadlineMillis(LocalDateTime from, long minutes) {
+        LocalDateTime start = from != null ? from : LocalDateTime.now();
+        return start.plusMinutes(minutes).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    static final class Deadline {
+        enum Kind { ACCEPT, PREPARE }
+
+        private final Kind kind;
+        private final Long pharmacyId;
+
+        Deadline(Kind kind, Long pharmacyId) {
+            this.kind = kind;
+            this.pharmacyId = pharmacyId;
+        }
+    }
+
+    private static final class Breach {
+        private final long orderId;
+        private final Deadline deadline;
+
+        private Breach(long orderId, Deadline deadline) {
+            this.orderId = orderId;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.demo.service;
+
+import com.example.demo.model.MedicineOrder;
+
+/**
+ * Thrown when an order status change is not allowed from the order's current status,
+ * usually because another request changed the order first.
+ */
+public class OrderStateConflictException extends RuntimeException {
+
+    private final Long orderId;
+    private final MedicineOrder.OrderStatus currentStatus;
+    private final MedicineOrder.OrderStatus requestedStatus;
+
+    public OrderStateConflictException(Long orderId, MedicineOrder.OrderStatus currentStatus,
+                                       MedicineOrder.OrderStatus requestedStatus) {
+        this(orderId, currentStatus, requestedStatus,
+                "Order " + orderId + " cannot move from " + currentStatus + " to " + requestedStatus);
+    }
+
+    public OrderStateConflictException(Long orderId, MedicineOrder.OrderStatus currentStatus,
+                                       MedicineOrder.OrderStatus requestedStatus, String message) {
+        super(message);
+        this.orderId = orderId;
+        this.currentStatus = currentStatus;
+        this.requestedStatus = requestedStatus;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public MedicineOrder.OrderStatus getCurrentStatus() {
+        return currentStatus;
+    }
+
+    public MedicineOrder.OrderStatus getRequestedStatus() {
+        return requestedStatus;
+    }
+}
@@ -0,0 +1,426 @@
+package com.example.demo.service;
+
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.OrderEvent;
+import com.example.demo.model.PharmacyStore;
+import com.example.demo.model.StockReservation;
+import com.example.demo.repository.MedicineOrderRepository;
+import com.example.demo.repository.OrderPharmacyRefusalRepository;
+import com.example.demo.repository.PharmacyStoreRepository;
+import com.example.demo.utils.GeoGridIndex;
+import com.example.demo.utils.MedicineStockIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Assigns unassigned orders to pharmacies in batches.
+ * Each batch shares one snapshot of per-pharmacy open-order load, and every
+ * candidate is scored as distance plus a load penalty, so orders that have no
+ * store nearby are spread out instead of all landing on the same pharmacy.
+ * Pharmacies that have every line of the order in stock are preferred; only when
+ * none is in range does the order go to the best store regardless of stock.
+ * Pharmacies that already gave the order back are never offered it again.
+ */
+@Service
+public class PharmacyAssignmentEngine {
+
+    static final List<MedicineOrder.OrderStatus> UNASSIGNED_STATUSES = List.of(
+            MedicineOrder.OrderStatus.PENDING,
+            MedicineOrder.OrderStatus.REJECTED);
+
+    static final List<MedicineOrder.OrderStatus> OPEN_STATUSES = List.of(
+            MedicineOrder.OrderStatus.PHARMACY_ASSIGNED,
+            MedicineOrder.OrderStatus.ACCEPTED,
+            MedicineOrder.OrderStatus.PREPARING,
+            MedicineOrder.OrderStatus.READY_FOR_PICKUP);
+
+    @Autowired
+    private MedicineOrderRepository medicineOrderRepository;
+
+    @Autowired
+    private PharmacyStoreRepository pharmacyStoreRepository;
+
+    @Autowired
+    private OrderPharmacyRefusalRepository orderPharmacyRefusalRepository;
+
+    @Autowired
+    private PharmacySpatialIndex pharmacySpatialIndex;
+
+    @Autowired
+    private GeocodingService geocodingService;
+
+    @Autowired
+    private PharmacyInventoryService pharmacyInventoryService;
+
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    @Autowired
+    private PharmacyOrderStatsService pharmacyOrderStatsService;
+
+    @Autowired
+    private OrderOutbox orderOutbox;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${assignment.batch-size:200}")
+    private int batchSize;
+
+    @Value("${assignment.search-radius-km:10.0}")
+    private double searchRadiusKm;
+
+    @Value("${assignment.fallback-radius-km:50.0}")
+    private double fallbackRadiusKm;
+
+    @Value("${assignment.candidates:8}")
+    private int candidateCount;
+
+    @Value("${assignment.load-penalty-km:2.0}")
+    private double loadPenaltyKm; // Each open order counts as this much extra distance
+
+    @Value("${assignment.stock-attempts:3}")
+    private int stockAttempts; // Pharmacies tried per order when stock runs out while it is being held
+
+    @Value("${assignment.sweep-grace-ms:60000}")
+    private long sweepGraceMs; // Leave recently touched orders to the async pipeline
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong batchesRun = new AtomicLong();
+    private final AtomicLong ordersProcessed = new AtomicLong();
+    private final AtomicLong ordersAssigned = new AtomicLong();
+    private final AtomicLong ordersFailed = new AtomicLong();
+    private final AtomicLong ordersSkipped = new AtomicLong();
+    private final AtomicLong ordersMatchedOnStock = new AtomicLong();
+    private final AtomicLong ordersOutOfStock = new AtomicLong(); // Stock gone by the time it was held
+    private volatile long lastRunMillis;
+    private volatile double lastRunOrdersPerSecond;
+    private volatile long queueDepth = -1;
+    private volatile LocalDateTime lastRunAt;
+
+    @Scheduled(fixedDelayString = "${assignment.interval-ms:30000}", initialDelayString = "${assignment.initial-delay-ms:15000}")
+    public void scheduledRun() {
+        try {
+            processBacklog();
+        } catch (Exception e) {
+            System.err.println("Pharmacy assignment run failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drain the unassigned-order backlog in batches
+     * @return Number of orders assigned, or -1 if a run was already in progress
+     */
+    public int processBacklog() {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+        long started = System.nanoTime();
+        int processed = 0;
+        int assigned = 0;
+        try {
+            long afterId = 0L;
+            LocalDateTime updatedBefore = LocalDateTime.now().minusNanos(sweepGraceMs * 1_000_000);
+            while (true) {
+                List<MedicineOrder> batch = medicineOrderRepository.findUnassignedOrdersAfter(
+                        UNASSIGNED_STATUSES, afterId, updatedBefore, PageRequest.of(0, batchSize));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                assigned += assignBatch(batch);
+                processed += batch.size();
+                afterId = batch.get(batch.size() - 1).getId();
+                if (batch.size() < batchSize) {
+                    break;
+                }
+            }
+        } finally {
+            long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+            lastRunMillis = elapsedMillis;
+            lastRunOrdersPerSecond = elapsedMillis == 0 ? processed : processed * 1000.0 / elapsedMillis;
+            lastRunAt = LocalDateTime.now();
+            running.set(false);
+            // Only a gauge; a failed count must not fail the run or leave it marked as running
+            try {
+                queueDepth = medicineOrderRepository.countUnassignedOrders(UNASSIGNED_STATUSES);
+            } catch (Exception e) {
+                System.err.println("Failed to count unassigned orders: " + e.getMessage());
+            }
+        }
+        if (processed > 0) {
+            System.out.println("Assignment run: " + assigned + "/" + processed + " orders assigned in " + lastRunMillis + " ms");
+        }
+        return assigned;
+    }
+
+    /**
+     * Assign one batch of orders against a shared load snapshot
+     * @return Number of orders assigned
+     */
+    public int assignBatch(List<MedicineOrder> orders) {
+        batchesRun.incrementAndGet();
+        Map<Long, Long> loads = loadSnapshot();
+        List<Long> orderIds = new ArrayList<>(orders.size());
+        for (MedicineOrder order : orders) {
+            orderIds.add(order.getId());
+        }
+        Map<Long, List<MedicineStockIndex.Requirement>> requirements = pharmacyInventoryService.requirementsFor(orderIds);
+        Map<Long, Set<Long>> refusals = refusalsFor(orderIds);
+
+        // Decide everything against the shared snapshot first, then write each order on its own
+        Map<Long, PharmacyStore> decisions = new LinkedHashMap<>();
+        Map<Long, MedicineOrder> byId = new HashMap<>();
+        for (MedicineOrder order : orders) {
+            ordersProcessed.incrementAndGet();
+            try {
+                PharmacyStore pharmacy = selectPharmacy(order.getDeliveryPincode(),
+                        requirements.getOrDefault(order.getId(), List.of()), refusals.getOrDefault(order.getId(), Set.of()), loads);
+                if (pharmacy == null) {
+                    ordersFailed.incrementAndGet();
+                    continue;
+                }
+                decisions.put(order.getId(), pharmacy);
+                byId.put(order.getId(), order);
+                loads.merge(pharmacy.getId(), 1L, Long::sum);
+            } catch (Exception e) {
+                ordersFailed.incrementAndGet();
+                System.err.println("Failed to match order " + order.getId() + ": " + e.getMessage());
+            }
+        }
+
+        // One transaction per order: each takes only its own stock row locks, in stock line order,
+        // so batches and the single-order path cannot deadlock on each other
+        int assigned = 0;
+        for (Map.Entry<Long, PharmacyStore> decision : decisions.entrySet()) {
+            MedicineOrder order = byId.get(decision.getKey());
+            try {
+                PharmacyStore pharmacy = assign(order, decision.getValue(), requirements.getOrDefault(order.getId(), List.of()),
+                        refusals.getOrDefault(order.getId(), Set.of()), loads);
+                if (pharmacy != null) {
+                    assigned++;
+                } else {
+                    ordersSkipped.incrementAndGet();
+                }
+            } catch (Exception e) {
+                ordersFailed.incrementAndGet();
+                System.err.println("Failed to assign order " + order.getId() + ": " + e.getMessage());
+            }
+        }
+        return assigned;
+    }
+
+    /**
+     * Assign a single order if it is still waiting for a pharmacy
+     * @return The pharmacy the order was given to, or null if it no longer needed one
+     */
+    public PharmacyStore assignOrder(MedicineOrder order) {
+        if (order.getPharmacy() != null || !UNASSIGNED_STATUSES.contains(order.getStatus())) {
+            return null;
+        }
+        List<MedicineStockIndex.Requirement> requirements = pharmacyInventoryService.requirementsFor(List.of(order.getId()))
+                .getOrDefault(order.getId(), List.of());
+        Set<Long> refused = refusalsFor(List.of(order.getId())).getOrDefault(order.getId(), Set.of());
+        Map<Long, Long> loads = loadSnapshot();
+        PharmacyStore pharmacy = selectPharmacy(order.getDeliveryPincode(), requirements, refused, loads);
+        if (pharmacy == null) {
+            throw new RuntimeException("No pharmacy available for this order");
+        }
+        return assign(order, pharmacy, requirements, refused, loads);
+    }
+
+    /**
+     * Write an assignment. When the chosen pharmacy's stock is gone by the time it is held, the
+     * order goes to the next best pharmacy, up to {@code assignment.stock-attempts} pharmacies.
+     * @return The pharmacy the order was given to, or null if it was assigned elsewhere meanwhile
+     */
+    private PharmacyStore assign(MedicineOrder order, PharmacyStore first, List<MedicineStockIndex.Requirement> requirements,
+                                 Set<Long> refused, Map<Long, Long> loads) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Set<Long> excluded = new HashSet<>(refused);
+        PharmacyStore pharmacy = first;
+        for (int attempt = 1; ; attempt++) {
+            PharmacyStore target = pharmacy;
+            Outcome outcome = transaction.execute(status -> applyAssignment(order.getId(), target, requirements, LocalDateTime.now()));
+            if (outcome == Outcome.ASSIGNED) {
+                ordersAssigned.incrementAndGet();
+                return pharmacy;
+            }
+            if (outcome != Outcome.OUT_OF_STOCK) {
+                return null;
+            }
+            loads.merge(pharmacy.getId(), -1L, Long::sum);
+            excluded.add(pharmacy.getId());
+            pharmacy = attempt < stockAttempts ? selectPharmacy(order.getDeliveryPincode(), requirements, excluded, loads) : null;
+            if (pharmacy == null) {
+                // Thrown rather than returned so the pipeline retries the order with backoff
+                throw new RuntimeException("Stock ran out at every pharmacy tried for this order");
+            }
+            loads.merge(pharmacy.getId(), 1L, Long::sum);
+        }
+    }
+
+    // Must run inside a transaction so the status counters and stock holds move with the order
+    private Outcome applyAssignment(Long orderId, PharmacyStore pharmacy, List<MedicineStockIndex.Requirement> requirements,
+                                    LocalDateTime now) {
+        // Stock is held only when the pharmacy was picked for having it, not on the stock-blind fallback
+        List<StockReservation> holds = List.of();
+        if (!requirements.isEmpty() && pharmacyInventoryService.match(requirements).canFill(pharmacy.getId())) {
+            holds = stockReservationService.reserve(orderId, pharmacy.getId(), requirements);
+            if (holds == null) {
+                ordersOutOfStock.incrementAndGet();
+                return Outcome.OUT_OF_STOCK;
+            }
+        }
+        // Guarded update: orders assigned elsewhere since they were read are left alone
+        int updated = medicineOrderRepository.assignPharmacyIfUnassigned(orderId, pharmacy,
+                MedicineOrder.OrderStatus.PHARMACY_ASSIGNED, UNASSIGNED_STATUSES, now);
+        if (updated == 0) {
+            stockReservationService.releaseHolds(holds, StockReservation.State.RELEASED);
+            return Outcome.TAKEN;
+        }
+        pharmacyOrderStatsService.recordTransition(null, null, pharmacy.getId(), MedicineOrder.OrderStatus.PHARMACY_ASSIGNED);
+        orderOutbox.record(OrderEvent.of(OrderEvent.Type.ASSIGNED, orderId, pharmacy.getId(),
+                null, MedicineOrder.OrderStatus.PHARMACY_ASSIGNED));
+        return Outcome.ASSIGNED;
+    }
+
+    /**
+     * Pick a pharmacy for a single delivery pincode using current loads.
+     */
+    public PharmacyStore selectPharmacy(String pincode) {
+        return selectPharmacy(pincode, List.of(), Set.of(), loadSnapshot());
+    }
+
+    /**
+     * @param requirements Order lines; with none the order goes to the best store regardless of stock
+     * @param excluded Pharmacies that must not get the order
+     * @return The pharmacy to use, or null if every pharmacy is excluded
+     */
+    PharmacyStore selectPharmacy(String pincode, List<MedicineStockIndex.Requirement> requirements, Set<Long> excluded,
+                                 Map<Long, Long> loads) {
+        if (pincode != null && !pincode.isBlank()) {
+            double[] coordinates = geocodingService.getCoordinates(pincode);
+            if (!requirements.isEmpty()) {
+                MedicineStockIndex.Match stocked = pharmacyInventoryService.match(requirements);
+                if (!stocked.isEmpty()) {
+                    PharmacyStore best = bestCandidate(coordinates[0], coordinates[1], searchRadiusKm, stocked, excluded, loads);
+                    if (best == null) {
+                        best = bestCandidate(coordinates[0], coordinates[1], fallbackRadiusKm, stocked, excluded, loads);
+                    }
+                    if (best != null) {
+                        ordersMatchedOnStock.incrementAndGet();
+                        return best;
+                    }
+                }
+            }
+            PharmacyStore best = bestCandidate(coordinates[0], coordinates[1], searchRadiusKm, null, excluded, loads);
+            if (best == null) {
+                best = bestCandidate(coordinates[0], coordinates[1], fallbackRadiusKm, null, excluded, loads);
+            }
+            if (best != null) {
+                return best;
+            }
+        }
+        return leastLoaded(excluded, loads);
+    }
+
+    // Scores the nearest few stores that pass the stock filter; a null filter takes every store
+    private PharmacyStore bestCandidate(double latitude, double longitude, double radiusKm,
+                                        MedicineStockIndex.Match stocked, Set<Long> excluded, Map<Long, Long> loads) {
+        List<GeoGridIndex.Hit<PharmacyStore>> candidates = new ArrayList<>(candidateCount);
+        pharmacySpatialIndex.forEachNearest(latitude, longitude, radiusKm, hit -> {
+            if (!excluded.contains(hit.getId()) && (stocked == null || stocked.canFill(hit.getId()))) {
+                candidates.add(hit);
+            }
+            return candidates.size() >= candidateCount;
+        });
+
+        PharmacyStore best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (GeoGridIndex.Hit<PharmacyStore> hit : candidates) {
+            double score = hit.getDistanceKm() + loadPenaltyKm * loads.getOrDefault(hit.getId(), 0L);
+            if (score < bestScore) {
+                bestScore = score;
+                best = hit.getValue();
+            }
+        }
+        return best;
+    }
+
+    private PharmacyStore leastLoaded(Set<Long> excluded, Map<Long, Long> loads) {
+        Collection<PharmacyStore> stores = pharmacySpatialIndex.getAll();
+        if (stores.isEmpty()) {
+            stores = pharmacyStoreRepository.findAll();
+        }
+        PharmacyStore best = null;
+        long bestLoad = Long.MAX_VALUE;
+        for (PharmacyStore store : stores) {
+            if (excluded.contains(store.getId())) {
+                continue;
+            }
+            long load = loads.getOrDefault(store.getId(), 0L);
+            if (load < bestLoad) {
+                bestLoad = load;
+                best = store;
+            }
+        }
+        return best;
+    }
+
+    private Map<Long, Set<Long>> refusalsFor(List<Long> orderIds) {
+        Map<Long, Set<Long>> refusals = new HashMap<>();
+        for (Object[] row : orderPharmacyRefusalRepository.findPharmacyIdsByOrderIds(orderIds)) {
+            refusals.computeIfAbsent((Long) row[0], k -> new HashSet<>()).add((Long) row[1]);
+        }
+        return refusals;
+    }
+
+    private Map<Long, Long> loadSnapshot() {
+        Map<Long, Long> loads = new HashMap<>();
+        for (Object[] row : medicineOrderRepository.countOrdersPerPharmacy(OPEN_STATUSES)) {
+            loads.put((Long) row[0], (Long) row[1]);
+        }
+        return loads;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("running", running.get());
+        metrics.put("batchesRun", batchesRun.get());
+        metrics.put("ordersProcessed", ordersProcessed.get());
+        metrics.put("ordersAssigned", ordersAssigned.get());
+        metrics.put("ordersFailed", ordersFailed.get());
+        metrics.put("ordersSkipped", ordersSkipped.get());
+        metrics.put("ordersMatchedOnStock", ordersMatchedOnStock.get());
+        metrics.put("ordersOutOfStock", ordersOutOfStock.get());
+        metrics.put("lastRunMillis", lastRunMillis);
+        metrics.put("lastRunOrdersPerSecond", lastRunOrdersPerSecond);
+        metrics.put("lastRunAt", lastRunAt);
+        metrics.put("queueDepth", queueDepth);
+        metrics.put("batchSize", batchSize);
+        return metrics;
+    }
+
+    private enum Outcome {
+        ASSIGNED,
+        TAKEN,          // Assigned elsewhere since it was read
+        OUT_OF_STOCK    // The pharmacy's stock could not be held
+    }
+}
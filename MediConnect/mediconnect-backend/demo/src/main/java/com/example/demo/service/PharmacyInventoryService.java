@@ -0,0 +1,204 @@
+package com.example.demo.service;
+
+import com.example.demo.model.PharmacyInventoryItem;
+import com.example.demo.model.PharmacyStore;
+import com.example.demo.repository.OrderItemRepository;
+import com.example.demo.repository.PharmacyInventoryRepository;
+import com.example.demo.repository.PharmacyStoreRepository;
+import com.example.demo.utils.MedicineStockIndex;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Pharmacy stock levels and the in-memory {@link MedicineStockIndex} used to send orders
+ * to pharmacies that can supply them. The index counts stock not held for orders; it is
+ * loaded at startup, updated after every committed stock change and rebuilt periodically
+ * to pick up writes from other nodes. The database stays the authority: the index only
+ * lets orders skip pharmacies and stock lines that are known to be short.
+ */
+@Service
+public class PharmacyInventoryService {
+
+    @Autowired
+    private PharmacyInventoryRepository inventoryRepository;
+
+    @Autowired
+    private PharmacyStoreRepository pharmacyStoreRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private volatile MedicineStockIndex index = new MedicineStockIndex();
+
+    @PostConstruct
+    public void rebuild() {
+        MedicineStockIndex fresh = new MedicineStockIndex();
+        for (Object[] row : inventoryRepository.findStockLevels()) {
+            fresh.setQuantity((Long) row[0], (String) row[1], (Integer) row[2]);
+        }
+        index = fresh;
+        System.out.println("Indexed stock of " + fresh.medicineCount() + " medicines across " + fresh.pharmacyCount() + " pharmacies");
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.index.rebuild-interval-ms:600000}", initialDelayString = "${inventory.index.rebuild-interval-ms:600000}")
+    public void scheduledRebuild() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            System.err.println("Stock index rebuild failed: " + e.getMessage());
+        }
+    }
+
+    public List<PharmacyInventoryItem> getInventoryByUserId(Long pharmacyUserId) {
+        return inventoryRepository.findByPharmacyId(pharmacyFor(pharmacyUserId).getId());
+    }
+
+    /**
+     * Add or update stock lines of the pharmacy owned by a user. Lines are matched on the
+     * normalised medicine name; a later line for the same medicine wins.
+     * @param lines Medicine name, quantity and optional unit price of each line
+     * @return The saved lines
+     */
+    public List<PharmacyInventoryItem> updateInventoryByUserId(Long pharmacyUserId, List<PharmacyInventoryItem> lines) {
+        PharmacyStore pharmacy = pharmacyFor(pharmacyUserId);
+        Map<String, PharmacyInventoryItem> byKey = new LinkedHashMap<>();
+        for (PharmacyInventoryItem line : lines) {
+            String key = MedicineStockIndex.normalize(line.getMedicineName());
+            if (key == null || key.isEmpty()) {
+                throw new RuntimeException("Medicine name is required");
+            }
+            if (line.getQuantity() == null || line.getQuantity() < 0) {
+                throw new RuntimeException("Quantity must be zero or more for " + line.getMedicineName());
+            }
+            byKey.put(key, line);
+        }
+        if (byKey.isEmpty()) {
+            return List.of();
+        }
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        List<PharmacyInventoryItem> saved = transaction.execute(status -> {
+            Map<String, PharmacyInventoryItem> existing = new HashMap<>();
+            for (PharmacyInventoryItem item : inventoryRepository.findByPharmacyIdAndMedicineKeyIn(pharmacy.getId(), byKey.keySet())) {
+                existing.put(item.getMedicineKey(), item);
+            }
+            List<PharmacyInventoryItem> items = new ArrayList<>(byKey.size());
+            for (Map.Entry<String, PharmacyInventoryItem> entry : byKey.entrySet()) {
+                PharmacyInventoryItem item = existing.get(entry.getKey());
+                if (item == null) {
+                    item = new PharmacyInventoryItem();
+                    item.setPharmacy(pharmacy);
+                    item.setMedicineKey(entry.getKey());
+                }
+                item.setMedicineName(entry.getValue().getMedicineName().trim());
+                item.setQuantity(entry.getValue().getQuantity());
+                item.setUnitPrice(entry.getValue().getUnitPrice());
+                items.add(item);
+            }
+            return inventoryRepository.saveAll(items);
+        });
+
+        // Only committed stock goes into the index
+        for (PharmacyInventoryItem item : saved) {
+            index.setQuantity(pharmacy.getId(), item.getMedicineKey(), item.getQuantity() - item.getReservedQuantity());
+        }
+        return saved;
+    }
+
+    public void removeItemByUserId(Long pharmacyUserId, Long itemId) {
+        PharmacyStore pharmacy = pharmacyFor(pharmacyUserId);
+        Optional<PharmacyInventoryItem> itemOpt = inventoryRepository.findById(itemId);
+        if (!itemOpt.isPresent() || !pharmacy.getId().equals(itemOpt.get().getPharmacy().getId())) {
+            throw new RuntimeException("Inventory item not found with id: " + itemId);
+        }
+        if (itemOpt.get().getReservedQuantity() > 0) {
+            throw new RuntimeException("Stock of " + itemOpt.get().getMedicineName() + " is held for orders; set its quantity instead");
+        }
+        inventoryRepository.delete(itemOpt.get());
+        index.setQuantity(pharmacy.getId(), itemOpt.get().getMedicineKey(), 0);
+    }
+
+    /**
+     * What each order needs, one requirement per order line. A line can be filled by its
+     * prescribed name or its generic name. Orders without lines are left out.
+     */
+    public Map<Long, List<MedicineStockIndex.Requirement>> requirementsFor(Collection<Long> orderIds) {
+        Map<Long, List<MedicineStockIndex.Requirement>> requirements = new HashMap<>();
+        if (orderIds.isEmpty()) {
+            return requirements;
+        }
+        for (Object[] row : orderItemRepository.findRequirementsByOrderIdIn(orderIds)) {
+            Integer quantity = (Integer) row[3];
+            requirements.computeIfAbsent((Long) row[0], id -> new ArrayList<>())
+                    .add(MedicineStockIndex.Requirement.of(quantity == null ? 1 : quantity, (String) row[1], (String) row[2]));
+        }
+        return requirements;
+    }
+
+    /**
+     * Pharmacies that can supply all of the requirements
+     */
+    public MedicineStockIndex.Match match(List<MedicineStockIndex.Requirement> requirements) {
+        return index.match(requirements);
+    }
+
+    /**
+     * Take stock from the in-memory count ahead of holding it in the database. When the count
+     * says there is not enough it is refreshed from the database once, since another node
+     * may have given stock back.
+     */
+    public boolean takeAvailable(Long pharmacyId, String medicineKey, int quantity) {
+        if (index.tryTake(pharmacyId, medicineKey, quantity)) {
+            return true;
+        }
+        resync(pharmacyId, medicineKey);
+        return index.tryTake(pharmacyId, medicineKey, quantity);
+    }
+
+    public void returnAvailable(Long pharmacyId, String medicineKey, int quantity) {
+        index.giveBack(pharmacyId, medicineKey, quantity);
+    }
+
+    public int getAvailable(Long pharmacyId, String medicineKey) {
+        return index.getQuantity(pharmacyId, medicineKey);
+    }
+
+    /**
+     * Reset the in-memory count of a stock line to what the database has committed
+     */
+    public void resync(Long pharmacyId, String medicineKey) {
+        Integer available = inventoryRepository.findAvailable(pharmacyId, medicineKey);
+        index.setQuantity(pharmacyId, medicineKey, available == null ? 0 : available);
+    }
+
+    public Map<String, Object> getIndexStats() {
+        MedicineStockIndex current = index;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pharmacies", current.pharmacyCount());
+        stats.put("medicines", current.medicineCount());
+        return stats;
+    }
+
+    private PharmacyStore pharmacyFor(Long pharmacyUserId) {
+        Optional<PharmacyStore> pharmacyOpt = pharmacyStoreRepository.findByUserId(pharmacyUserId);
+        if (!pharmacyOpt.isPresent()) {
+            throw new RuntimeException("Pharmacy not found for user id: " + pharmacyUserId);
+        }
+        return pharmacyOpt.get();
+    }
+}
@@ -2,6 +2,8 @@ package com.example.demo.service;
 
 import com.example.demo.model.PharmacyStore;
 import com.example.demo.repository.PharmacyStoreRepository;
+import com.example.demo.utils.GeoGridIndex;
+import com.example.demo.utils.GeoUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -17,60 +19,42 @@ public class PharmacyMatchingService {
     @Autowired
     private GeocodingService geocodingService;
 
+    @Autowired
+    private PharmacySpatialIndex pharmacySpatialIndex;
+
     public List<PharmacyStore> findNearbyPharmacies(String pincode, double radiusKm) {
         // Get coordinates for the pincode
         double[] coordinates = geocodingService.getCoordinates(pincode);
-        double targetLat = coordinates[0];
-        double targetLng = coordinates[1];
-
-        // Get all pharmacies and filter by distance
-        List<PharmacyStore> allPharmacies = pharmacyStoreRepository.findAll();
-        
-        return allPharmacies.stream()
-            .filter(pharmacy -> pharmacy.getLatitude() != null && pharmacy.getLongitude() != null)
-            .filter(pharmacy -> {
-                double distance = calculateDistance(
-                    targetLat, targetLng, 
-                    pharmacy.getLatitude(), pharmacy.getLongitude()
-                );
-                return distance <= radiusKm;
-            })
-            .sorted((p1, p2) -> {
-                double dist1 = calculateDistance(targetLat, targetLng, p1.getLatitude(), p1.getLongitude());
-                double dist2 = calculateDistance(targetLat, targetLng, p2.getLatitude(), p2.getLongitude());
-                return Double.compare(dist1, dist2);
-            })
-            .collect(Collectors.toList());
+        return findNearbyPharmacies(coordinates[0], coordinates[1], radiusKm);
     }
 
     public List<PharmacyStore> findNearbyPharmacies(double latitude, double longitude, double radiusKm) {
-        List<PharmacyStore> allPharmacies = pharmacyStoreRepository.findAll();
-        
-        return allPharmacies.stream()
-            .filter(pharmacy -> pharmacy.getLatitude() != null && pharmacy.getLongitude() != null)
-            .filter(pharmacy -> {
-                double distance = calculateDistance(
-                    latitude, longitude, 
-                    pharmacy.getLatitude(), pharmacy.getLongitude()
-                );
-                return distance <= radiusKm;
-            })
-            .sorted((p1, p2) -> {
-                double dist1 = calculateDistance(latitude, longitude, p1.getLatitude(), p1.getLongitude());
-                double dist2 = calculateDistance(latitude, longitude, p2.getLatitude(), p2.getLongitude());
-                return Double.compare(dist1, dist2);
-            })
+        // Only the grid cells overlapping the radius are scanned; results come back nearest first
+        return pharmacySpatialIndex.withinRadius(latitude, longitude, radiusKm).stream()
+            .map(GeoGridIndex.Hit::getValue)
             .collect(Collectors.toList());
     }
 
+    /**
+     * Find the k nearest pharmacies within a radius, with their distances
+     * @param latitude Latitude of the delivery location
+     * @param longitude Longitude of the delivery location
+     * @param k Maximum number of pharmacies to return
+     * @param radiusKm Search radius in kilometers
+     * @return Matches sorted by distance
+     */
+    public List<GeoGridIndex.Hit<PharmacyStore>> findNearestPharmacies(double latitude, double longitude, int k, double radiusKm) {
+        return pharmacySpatialIndex.nearest(latitude, longitude, k, radiusKm);
+    }
+
     public PharmacyStore findNearestPharmacy(String pincode) {
-        List<PharmacyStore> nearbyPharmacies = findNearbyPharmacies(pincode, 50.0); // 50km radius
-        return nearbyPharmacies.isEmpty() ? null : nearbyPharmacies.get(0);
+        double[] coordinates = geocodingService.getCoordinates(pincode);
+        return findNearestPharmacy(coordinates[0], coordinates[1]);
     }
 
     public PharmacyStore findNearestPharmacy(double latitude, double longitude) {
-        List<PharmacyStore> nearbyPharmacies = findNearbyPharmacies(latitude, longitude, 50.0); // 50km radius
-        return nearbyPharmacies.isEmpty() ? null : nearbyPharmacies.get(0);
+        List<GeoGridIndex.Hit<PharmacyStore>> nearest = findNearestPharmacies(latitude, longitude, 1, 50.0); // 50km radius
+        return nearest.isEmpty() ? null : nearest.get(0).getValue();
     }
 
     public double getDistanceToPharmacy(String pincode, Long pharmacyId) {
@@ -78,44 +62,26 @@ public class PharmacyMatchingService {
         double targetLat = coordinates[0];
         double targetLng = coordinates[1];
 
-        PharmacyStore pharmacy = pharmacyStoreRepository.findById(pharmacyId).orElse(null);
+        PharmacyStore pharmacy = findPharmacy(pharmacyId);
         if (pharmacy == null || pharmacy.getLatitude() == null || pharmacy.getLongitude() == null) {
             return -1; // Invalid pharmacy or coordinates
         }
 
-        return calculateDistance(targetLat, targetLng, pharmacy.getLatitude(), pharmacy.getLongitude());
+        return GeoUtils.distanceKm(targetLat, targetLng, pharmacy.getLatitude(), pharmacy.getLongitude());
     }
 
     public double getDistanceToPharmacy(double latitude, double longitude, Long pharmacyId) {
-        PharmacyStore pharmacy = pharmacyStoreRepository.findById(pharmacyId).orElse(null);
+        PharmacyStore pharmacy = findPharmacy(pharmacyId);
         if (pharmacy == null || pharmacy.getLatitude() == null || pharmacy.getLongitude() == null) {
             return -1; // Invalid pharmacy or coordinates
         }
 
-        return calculateDistance(latitude, longitude, pharmacy.getLatitude(), pharmacy.getLongitude());
+        return GeoUtils.distanceKm(latitude, longitude, pharmacy.getLatitude(), pharmacy.getLongitude());
     }
 
-    /**
-     * Calculate distance between two points using Haversine formula
-     * @param lat1 Latitude of first point
-     * @param lng1 Longitude of first point
-     * @param lat2 Latitude of second point
-     * @param lng2 Longitude of second point
-     * @return Distance in kilometers
-     */
-    private double calculateDistance(double lat1, double lng1, double lat2, double lng2) {
-        final int EARTH_RADIUS = 6371; // Earth's radius in kilometers
-
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lngDistance = Math.toRadians(lng2 - lng1);
-        
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(lngDistance / 2) * Math.sin(lngDistance / 2);
-        
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        
-        return EARTH_RADIUS * c;
+    private PharmacyStore findPharmacy(Long pharmacyId) {
+        PharmacyStore indexed = pharmacySpatialIndex.get(pharmacyId);
+        return indexed != null ? indexed : pharmacyStoreRepository.findById(pharmacyId).orElse(null);
     }
 
     /**
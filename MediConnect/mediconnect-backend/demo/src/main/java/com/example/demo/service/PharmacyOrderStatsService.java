@@ -0,0 +1,163 @@
+package com.example.demo.service;
+
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.PharmacyOrderStatusCount;
+import com.example.demo.repository.MedicineOrderRepository;
+import com.example.demo.repository.PharmacyOrderStatusCountRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Per-pharmacy order counts by status.
+ *
+ * Every change of an order's pharmacy or status is applied as a -1/+1 delta to
+ * pharmacy_order_status_counts in the same transaction as the order update, so the
+ * dashboard reads one row per status. A periodic reconcile against a GROUP BY over
+ * medicine_orders corrects any drift from writes that bypass the services. It goes one
+ * pharmacy per transaction and only locks that pharmacy's counters, so transitions at
+ * other pharmacies never wait for it.
+ */
+@Service
+public class PharmacyOrderStatsService {
+
+    @Autowired
+    private PharmacyOrderStatusCountRepository statusCountRepository;
+
+    @Autowired
+    private MedicineOrderRepository medicineOrderRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Account for an order moving between (pharmacy, status) pairs. Either side may have no pharmacy.
+     */
+    @Transactional
+    public void recordTransition(Long fromPharmacyId, MedicineOrder.OrderStatus fromStatus,
+                                 Long toPharmacyId, MedicineOrder.OrderStatus toStatus) {
+        if (Objects.equals(fromPharmacyId, toPharmacyId) && fromStatus == toStatus) {
+            return;
+        }
+        if (fromPharmacyId != null && fromStatus != null) {
+            statusCountRepository.addToCount(fromPharmacyId, fromStatus.name(), -1);
+        }
+        if (toPharmacyId != null && toStatus != null) {
+            statusCountRepository.addToCount(toPharmacyId, toStatus.name(), 1);
+        }
+    }
+
+    /**
+     * Apply net per-status changes for one pharmacy, e.g. from a bulk status update.
+     * One upsert per status with a non-zero delta rather than two per order.
+     */
+    @Transactional
+    public void recordTransitions(Long pharmacyId, Map<MedicineOrder.OrderStatus, Long> deltas) {
+        if (pharmacyId == null) {
+            return;
+        }
+        for (Map.Entry<MedicineOrder.OrderStatus, Long> delta : deltas.entrySet()) {
+            if (delta.getValue() != 0) {
+                statusCountRepository.addToCount(pharmacyId, delta.getKey().name(), delta.getValue());
+            }
+        }
+    }
+
+    /**
+     * Order counts for a pharmacy from the counter table. Statuses with no orders are reported as 0.
+     */
+    public Map<MedicineOrder.OrderStatus, Long> getStatusCounts(Long pharmacyId) {
+        Map<MedicineOrder.OrderStatus, Long> counts = emptyCounts();
+        for (PharmacyOrderStatusCount row : statusCountRepository.findByPharmacyId(pharmacyId)) {
+            counts.put(row.getStatus(), row.getOrderCount());
+        }
+        return counts;
+    }
+
+    /**
+     * Order counts computed straight from medicine_orders with a single GROUP BY status.
+     */
+    public Map<MedicineOrder.OrderStatus, Long> getLiveStatusCounts(Long pharmacyId) {
+        Map<MedicineOrder.OrderStatus, Long> counts = emptyCounts();
+        for (Object[] row : medicineOrderRepository.countByStatusForPharmacy(pharmacyId)) {
+            counts.put((MedicineOrder.OrderStatus) row[0], (Long) row[1]);
+        }
+        return counts;
+    }
+
+    @Scheduled(fixedDelayString = "${stats.reconcile-interval-ms:3600000}", initialDelayString = "${stats.reconcile-initial-delay-ms:10000}")
+    public void scheduledReconcile() {
+        try {
+            int rows = reconcile();
+            System.out.println("Reconciled pharmacy order status counts (" + rows + " rows corrected)");
+        } catch (Exception e) {
+            System.err.println("Pharmacy order status count reconcile failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bring the counter table in line with medicine_orders, one pharmacy per transaction.
+     * A pharmacy that fails, e.g. on a deadlock with a transition, is retried on the next run.
+     * @return Number of (pharmacy, status) rows corrected
+     */
+    public int reconcile() {
+        int corrected = 0;
+        for (Long pharmacyId : statusCountRepository.findCountedPharmacyIds()) {
+            try {
+                corrected += reconcile(pharmacyId);
+            } catch (Exception e) {
+                System.err.println("Failed to reconcile order status counts of pharmacy " + pharmacyId + ": " + e.getMessage());
+            }
+        }
+        return corrected;
+    }
+
+    /**
+     * Correct one pharmacy's counters. Every status gets a row first so that locking the rows
+     * covers all of them; an order change committed before the lock is in the GROUP BY, and
+     * one still in flight applies its delta after the corrected value.
+     * @return Number of status rows corrected
+     */
+    public int reconcile(Long pharmacyId) {
+        EnumSet<MedicineOrder.OrderStatus> existing = EnumSet.noneOf(MedicineOrder.OrderStatus.class);
+        for (PharmacyOrderStatusCount row : statusCountRepository.findByPharmacyId(pharmacyId)) {
+            existing.add(row.getStatus());
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Integer rows = transaction.execute(status -> {
+            for (MedicineOrder.OrderStatus missing : EnumSet.complementOf(existing)) {
+                statusCountRepository.openCount(pharmacyId, missing.name());
+            }
+            Map<String, Long> stored = new HashMap<>();
+            for (Object[] row : statusCountRepository.lockCounts(pharmacyId)) {
+                stored.put((String) row[0], ((Number) row[1]).longValue());
+            }
+            int changed = 0;
+            for (Map.Entry<MedicineOrder.OrderStatus, Long> live : getLiveStatusCounts(pharmacyId).entrySet()) {
+                String name = live.getKey().name();
+                if (!live.getValue().equals(stored.get(name))) {
+                    changed += statusCountRepository.setCount(pharmacyId, name, live.getValue());
+                }
+            }
+            return changed;
+        });
+        return rows == null ? 0 : rows;
+    }
+
+    private static Map<MedicineOrder.OrderStatus, Long> emptyCounts() {
+        Map<MedicineOrder.OrderStatus, Long> counts = new EnumMap<>(MedicineOrder.OrderStatus.class);
+        for (MedicineOrder.OrderStatus status : MedicineOrder.OrderStatus.values()) {
+            counts.put(status, 0L);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.demo.service;
+
+import com.example.demo.model.OrderEvent;
+import com.example.demo.model.PharmacyStore;
+import com.example.demo.repository.PharmacyStoreRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes order lifecycle events to pharmacy dashboards over server-sent events.
+ *
+ * Each open stream is an {@link SseEmitter} parked on an async request, so idle
+ * connections hold no request thread. Events arrive from the order outbox and are
+ * fanned out from a small sender pool so a slow client never holds up the dispatcher,
+ * and a periodic comment keeps proxies from closing quiet connections. Clients
+ * reconnect when a stream times out and reload the inbox once to catch anything
+ * missed while disconnected.
+ */
+@Service
+public class PharmacyOrderStreamService implements OrderEventListener {
+
+    @Autowired
+    private PharmacyStoreRepository pharmacyStoreRepository;
+
+    @Value("${orders.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${orders.stream.heartbeat-ms:25000}")
+    private long heartbeatMs;
+
+    @Value("${orders.stream.max-connections:5000}")
+    private int maxConnections;
+
+    @Value("${orders.stream.senders:2}")
+    private int senders;
+
+    @Value("${orders.stream.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private final Map<Long, Set<SseEmitter>> emitters = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private ThreadPoolExecutor sender;
+    private ScheduledExecutorService heartbeat;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        sender = new ThreadPoolExecutor(senders, senders, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "order-stream-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-stream-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::sendHeartbeats, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        heartbeat.shutdownNow();
+        sender.shutdownNow();
+        emitters.values().forEach(set -> set.forEach(SseEmitter::complete));
+        emitters.clear();
+    }
+
+    /**
+     * Open a stream for the pharmacy owned by a user
+     * @throws RuntimeException when the pharmacy does not exist or the node is already serving the maximum number of streams
+     */
+    public SseEmitter subscribeByUserId(Long pharmacyUserId) {
+        Optional<PharmacyStore> pharmacyOpt = pharmacyStoreRepository.findByUserId(pharmacyUserId);
+        if (!pharmacyOpt.isPresent()) {
+            throw new RuntimeException("Pharmacy not found for user id: " + pharmacyUserId);
+        }
+        return subscribe(pharmacyOpt.get().getId());
+    }
+
+    public SseEmitter subscribe(Long pharmacyId) {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            throw new RuntimeException("Too many open order streams, try again later");
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        emitters.compute(pharmacyId, (id, targets) -> {
+            Set<SseEmitter> set = targets == null ? ConcurrentHashMap.newKeySet() : targets;
+            set.add(emitter);
+            return set;
+        });
+        emitter.onCompletion(() -> remove(pharmacyId, emitter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> remove(pharmacyId, emitter));
+
+        try {
+            emitter.send(SseEmitter.event().name("connected").data(Map.of("pharmacyId", pharmacyId)));
+        } catch (IOException e) {
+            remove(pharmacyId, emitter);
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    /**
+     * Send an event to the order's pharmacy. Events come from the outbox, so they only
+     * describe committed changes.
+     */
+    @Override
+    public void onOrderEvent(OrderEvent event) {
+        if (event.getPharmacyId() != null) {
+            dispatch(event);
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("openStreams", connections.get());
+        metrics.put("pharmacies", emitters.size());
+        metrics.put("eventsPublished", published.get());
+        metrics.put("eventsDelivered", delivered.get());
+        metrics.put("eventsDropped", dropped.get());
+        metrics.put("queueDepth", sender.getQueue().size());
+        return metrics;
+    }
+
+    private void dispatch(OrderEvent event) {
+        published.incrementAndGet();
+        Set<SseEmitter> targets = emitters.get(event.getPharmacyId());
+        if (targets == null || targets.isEmpty()) {
+            return;
+        }
+        try {
+            sender.execute(() -> {
+                for (SseEmitter emitter : targets) {
+                    if (send(event.getPharmacyId(), emitter, SseEmitter.event()
+                            .name("order")
+                            .data(event, MediaType.APPLICATION_JSON))) {
+                        delivered.incrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Dashboards resync on reconnect; better to drop than to block the committing thread
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void sendHeartbeats() {
+        emitters.forEach((pharmacyId, targets) -> {
+            for (SseEmitter emitter : targets) {
+                send(pharmacyId, emitter, SseEmitter.event().comment("heartbeat"));
+            }
+        });
+    }
+
+    private boolean send(Long pharmacyId, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // Client went away; drop the stream so it stops costing anything
+            remove(pharmacyId, emitter);
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    // Add and remove both go through compute so an emptied set is never dropped while a new stream joins it
+    private void remove(Long pharmacyId, SseEmitter emitter) {
+        boolean[] removed = new boolean[1];
+        emitters.computeIfPresent(pharmacyId, (id, targets) -> {
+            removed[0] = targets.remove(emitter);
+            return targets.isEmpty() ? null : targets;
+        });
+        if (removed[0]) {
+            connections.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.demo.service;
+
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.PharmacyDailyRollup;
+import com.example.demo.repository.MedicineOrderRepository;
+import com.example.demo.repository.PharmacyDailyRollupRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Per-pharmacy daily revenue and order outcomes.
+ *
+ * Orders are bucketed by the day they were created, the same range the raw revenue query
+ * filters on. When an order reaches DELIVERED, CANCELLED or REFUNDED its amounts are added
+ * to pharmacy_daily_rollups in the same transaction as the status change, so a report over
+ * any date range sums at most one row per day. A chunked rebuild from medicine_orders fills
+ * the table the first time and corrects recent days periodically.
+ */
+@Service
+public class PharmacyRevenueRollupService {
+
+    @Autowired
+    private PharmacyDailyRollupRepository rollupRepository;
+
+    @Autowired
+    private MedicineOrderRepository medicineOrderRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${rollups.backfill-chunk-days:7}")
+    private int chunkDays;
+
+    @Value("${rollups.reconcile-days:3}")
+    private int reconcileDays;
+
+    /**
+     * Account for one order moving between statuses. Transitions that do not touch
+     * DELIVERED, CANCELLED or REFUNDED change nothing.
+     */
+    @Transactional
+    public void recordTransition(Long pharmacyId, MedicineOrder.OrderStatus fromStatus, MedicineOrder.OrderStatus toStatus,
+                                 LocalDateTime createdAt, BigDecimal finalAmount, LocalDateTime deliveredAt) {
+        Changes changes = new Changes();
+        changes.add(fromStatus, toStatus, createdAt, finalAmount, deliveredAt);
+        record(pharmacyId, changes);
+    }
+
+    /**
+     * Apply the changes of many orders of one pharmacy, one upsert per day in date order
+     * so concurrent batches lock rollup rows in the same order.
+     */
+    @Transactional
+    public void record(Long pharmacyId, Changes changes) {
+        if (pharmacyId == null) {
+            return;
+        }
+        for (Map.Entry<LocalDate, Delta> entry : changes.byDay.entrySet()) {
+            Delta delta = entry.getValue();
+            if (!delta.isEmpty()) {
+                rollupRepository.addToRollup(pharmacyId, entry.getKey(), delta.revenue, delta.delivered, delta.cancelled,
+                        delta.refunded, delta.refundedAmount, delta.fulfilmentSeconds, delta.fulfilled);
+            }
+        }
+    }
+
+    /**
+     * Revenue and order outcomes for orders created between two days, both inclusive
+     */
+    public Map<String, Object> getRevenue(Long pharmacyId, LocalDate from, LocalDate to) {
+        if (from == null || to == null || from.isAfter(to)) {
+            throw new RuntimeException("Invalid date range");
+        }
+        List<Object[]> rows = rollupRepository.sumByPharmacyAndDateRange(pharmacyId, from, to);
+        Object[] totals = rows.isEmpty() ? new Object[]{BigDecimal.ZERO, 0L, 0L, 0L, BigDecimal.ZERO, 0L, 0L} : rows.get(0);
+
+        long fulfilmentSeconds = ((Number) totals[5]).longValue();
+        long fulfilled = ((Number) totals[6]).longValue();
+
+        Map<String, Object> revenue = new HashMap<>();
+        revenue.put("pharmacyId", pharmacyId);
+        revenue.put("from", from);
+        revenue.put("to", to);
+        revenue.put("revenue", toBigDecimal(totals[0]));
+        revenue.put("deliveredOrders", ((Number) totals[1]).longValue());
+        revenue.put("cancelledOrders", ((Number) totals[2]).longValue());
+        revenue.put("refundedOrders", ((Number) totals[3]).longValue());
+        revenue.put("refundedAmount", toBigDecimal(totals[4]));
+        revenue.put("averageFulfilmentMinutes", fulfilled == 0 ? null : fulfilmentSeconds / 60.0 / fulfilled);
+        return revenue;
+    }
+
+    public List<PharmacyDailyRollup> getDailyRollups(Long pharmacyId, LocalDate from, LocalDate to) {
+        return rollupRepository.findByPharmacyIdAndRollupDateBetweenOrderByRollupDate(pharmacyId, from, to);
+    }
+
+    /**
+     * Fill an empty table from the whole order history, otherwise rebuild the last few days
+     */
+    @Scheduled(fixedDelayString = "${rollups.reconcile-interval-ms:3600000}", initialDelayString = "${rollups.reconcile-initial-delay-ms:20000}")
+    public void scheduledReconcile() {
+        try {
+            LocalDate today = LocalDate.now();
+            LocalDate from = today.minusDays(reconcileDays);
+            if (rollupRepository.count() == 0) {
+                LocalDateTime earliest = medicineOrderRepository.findEarliestCreatedAt();
+                if (earliest == null) {
+                    return;
+                }
+                from = earliest.toLocalDate();
+            }
+            int rows = rebuild(from, today);
+            System.out.println("Rebuilt pharmacy daily rollups from " + from + " (" + rows + " rows)");
+        } catch (Exception e) {
+            System.err.println("Pharmacy daily rollup rebuild failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Recompute the rollups of orders created between two days, both inclusive, a chunk of
+     * days per transaction. Each chunk holds the rollup table lock only while it is rewritten.
+     * @return Number of rollup rows written
+     */
+    public int rebuild(LocalDate from, LocalDate to) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int written = 0;
+        for (LocalDate start = from; !start.isAfter(to); start = start.plusDays(chunkDays)) {
+            LocalDate chunkStart = start;
+            LocalDate chunkEnd = start.plusDays(chunkDays).isAfter(to) ? to.plusDays(1) : start.plusDays(chunkDays);
+            Integer rows = transaction.execute(status -> {
+                rollupRepository.lockForRebuild();
+                rollupRepository.deleteRange(chunkStart, chunkEnd);
+                return rollupRepository.insertFromOrders(chunkStart.atStartOfDay(), chunkEnd.atStartOfDay());
+            });
+            written += rows == null ? 0 : rows;
+        }
+        return written;
+    }
+
+    /**
+     * Native queries hand back timestamps as java.sql.Timestamp
+     */
+    static LocalDateTime toDateTime(Object column) {
+        if (column == null) {
+            return null;
+        }
+        if (column instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return (LocalDateTime) column;
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+        return value instanceof BigDecimal decimal ? decimal : new BigDecimal(value.toString());
+    }
+
+    /**
+     * Rollup changes of a set of orders, summed per creation day
+     */
+    public static final class Changes {
+
+        private final SortedMap<LocalDate, Delta> byDay = new TreeMap<>();
+
+        public void add(MedicineOrder.OrderStatus fromStatus, MedicineOrder.OrderStatus toStatus,
+                        LocalDateTime createdAt, BigDecimal finalAmount, LocalDateTime deliveredAt) {
+            if (createdAt == null || !(isTerminal(fromStatus) || isTerminal(toStatus))) {
+                return;
+            }
+            BigDecimal amount = finalAmount == null ? BigDecimal.ZERO : finalAmount;
+            Delta delta = byDay.computeIfAbsent(createdAt.toLocalDate(), day -> new Delta());
+            delta.apply(fromStatus, amount, -1);
+            delta.apply(toStatus, amount, 1);
+            // Fulfilment time stays counted if a delivered order is later refunded
+            if (toStatus == MedicineOrder.OrderStatus.DELIVERED && deliveredAt != null) {
+                delta.fulfilmentSeconds += Duration.between(createdAt, deliveredAt).getSeconds();
+                delta.fulfilled++;
+            }
+        }
+
+        public boolean isEmpty() {
+            return byDay.isEmpty();
+        }
+
+        Delta get(LocalDate day) {
+            return byDay.get(day);
+        }
+
+        private static boolean isTerminal(MedicineOrder.OrderStatus status) {
+            return status == MedicineOrder.OrderStatus.DELIVERED
+                    || status == MedicineOrder.OrderStatus.CANCELLED
+                    || status == MedicineOrder.OrderStatus.REFUNDED;
+        }
+    }
+
+    static final class Delta {
+        BigDecimal revenue = BigDecimal.ZERO;
+        long delivered;
+        long cancelled;
+        long refunded;
+        BigDecimal refundedAmount = BigDecimal.ZERO;
+        long fulfilmentSeconds;
+        long fulfilled;
+
+        // Add (sign 1) or remove (sign -1) an order in the given status
+        void apply(MedicineOrder.OrderStatus status, BigDecimal amount, int sign) {
+            if (status == null) {
+                return;
+            }
+            BigDecimal signedAmount = sign > 0 ? amount : amount.negate();
+            switch (status) {
+                case DELIVERED -> {
+                    revenue = revenue.add(signedAmount);
+                    delivered += sign;
+                }
+                case CANCELLED -> cancelled += sign;
+                case REFUNDED -> {
+                    refunded += sign;
+                    refundedAmount = refundedAmount.add(signedAmount);
+                }
+                default -> {
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return revenue.signum() == 0 && delivered == 0 && cancelled == 0 && refunded == 0
+                    && refundedAmount.signum() == 0 && fulfilmentSeconds == 0 && fulfilled == 0;
+        }
+    }
+}
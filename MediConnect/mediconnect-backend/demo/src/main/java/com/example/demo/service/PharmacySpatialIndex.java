@@ -0,0 +1,91 @@
+package com.example.demo.service;
+
+import com.example.demo.model.PharmacyStore;
+import com.example.demo.repository.PharmacyStoreRepository;
+import com.example.demo.utils.GeoGridIndex;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * In-memory grid index of pharmacy locations used for matching orders to stores.
+ * Loaded once at startup and kept current by {@link PharmacyStoreService}.
+ */
+@Service
+public class PharmacySpatialIndex {
+
+    @Autowired
+    private PharmacyStoreRepository pharmacyStoreRepository;
+
+    @Value("${pharmacy.index.cell-size-deg:0.05}")
+    private double cellSizeDeg;
+
+    private volatile GeoGridIndex<PharmacyStore> index;
+
+    @PostConstruct
+    public void rebuild() {
+        GeoGridIndex<PharmacyStore> fresh = new GeoGridIndex<>(cellSizeDeg);
+        for (PharmacyStore store : pharmacyStoreRepository.findAll()) {
+            if (store.getLatitude() != null && store.getLongitude() != null) {
+                fresh.put(store.getId(), store.getLatitude(), store.getLongitude(), store);
+            }
+        }
+        index = fresh;
+        System.out.println("Indexed " + fresh.size() + " pharmacy locations");
+    }
+
+    /**
+     * Add or move a store after it has been saved. Stores without coordinates are dropped from the index.
+     */
+    public void index(PharmacyStore store) {
+        if (store == null || store.getId() == null) {
+            return;
+        }
+        if (store.getLatitude() == null || store.getLongitude() == null) {
+            index.remove(store.getId());
+            return;
+        }
+        index.put(store.getId(), store.getLatitude(), store.getLongitude(), store);
+    }
+
+    public void remove(Long pharmacyId) {
+        if (pharmacyId != null) {
+            index.remove(pharmacyId);
+        }
+    }
+
+    public PharmacyStore get(Long pharmacyId) {
+        return pharmacyId == null ? null : index.get(pharmacyId);
+    }
+
+    public Collection<PharmacyStore> getAll() {
+        return index.values();
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public List<GeoGridIndex.Hit<PharmacyStore>> withinRadius(double latitude, double longitude, double radiusKm) {
+        return index.withinRadius(latitude, longitude, radiusKm);
+    }
+
+    public List<GeoGridIndex.Hit<PharmacyStore>> nearest(double latitude, double longitude, int k, double maxRadiusKm) {
+        return index.nearest(latitude, longitude, k, maxRadiusKm);
+    }
+
+    public GeoGridIndex.Hit<PharmacyStore> nearestMatching(double latitude, double longitude, double maxRadiusKm,
+                                                           Predicate<PharmacyStore> filter) {
+        return index.nearestMatching(latitude, longitude, maxRadiusKm, filter);
+    }
+
+    public void forEachNearest(double latitude, double longitude, double maxRadiusKm,
+                               Predicate<GeoGridIndex.Hit<PharmacyStore>> visitor) {
+        index.forEachNearest(latitude, longitude, maxRadiusKm, visitor);
+    }
+}
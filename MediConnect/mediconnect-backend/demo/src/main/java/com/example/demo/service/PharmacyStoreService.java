@@ -19,6 +19,8 @@ public class PharmacyStoreService {
     private GeocodingService geocodingService;
     @Autowired
     private UserService userService;
+    @Autowired
+    private PharmacySpatialIndex pharmacySpatialIndex;
 
     public PharmacyStore createPharmacyStore(PharmacyStoreDto dto) {
         System.out.println("=== CREATING PHARMACY STORE ===");
@@ -55,6 +57,7 @@ public class PharmacyStoreService {
 
         System.out.println("Saving pharmacy store...");
         PharmacyStore savedStore = repository.save(store);
+        pharmacySpatialIndex.index(savedStore);
         System.out.println("Pharmacy store saved with ID: " + savedStore.getId());
         return savedStore;
     }
@@ -93,7 +96,9 @@ public class PharmacyStoreService {
             store.setLatitude(coordinates[0]);
             store.setLongitude(coordinates[1]);
 
-            return repository.save(store);
+            PharmacyStore savedStore = repository.save(store);
+            pharmacySpatialIndex.index(savedStore);
+            return savedStore;
         }
         throw new RuntimeException("Pharmacy store not found with id: " + id);
     }
@@ -0,0 +1,193 @@
+package com.example.demo.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline pincode geocoder backed by a memory-mapped reference file.
+ *
+ * File layout (big-endian): int magic "PIN1", int record count, then one
+ * 12-byte record per pincode sorted ascending: int pincode, float latitude,
+ * float longitude. Lookups are a binary search over the mapped records, so
+ * nothing is copied onto the heap and no network call is made.
+ */
+@Service
+public class PincodeGeocoder {
+
+    static final int MAGIC = 0x50494E31; // "PIN1"
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_BYTES = 12;
+
+    @Value("${geocoding.pincode.file:data/pincodes.bin}")
+    private String pincodeFile;
+
+    private volatile ByteBuffer records;
+    private volatile int count;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        Path path = Paths.get(pincodeFile);
+        if (!Files.isRegularFile(path)) {
+            System.out.println("Pincode reference file not found at " + path.toAbsolutePath() + ", offline geocoding disabled");
+            return;
+        }
+        try {
+            open(path);
+            System.out.println("Loaded " + count + " pincode centroids from " + path);
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Failed to load pincode reference file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Map a reference file and start serving lookups from it.
+     */
+    public void open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.BIG_ENDIAN);
+            if (mapped.limit() < HEADER_BYTES || mapped.getInt(0) != MAGIC) {
+                throw new IllegalStateException("Not a pincode reference file: " + path);
+            }
+            int recordCount = mapped.getInt(4);
+            if (mapped.limit() < HEADER_BYTES + (long) recordCount * RECORD_BYTES) {
+                throw new IllegalStateException("Truncated pincode reference file: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            this.records = mapped.position(HEADER_BYTES).slice().order(ByteOrder.BIG_ENDIAN);
+            this.count = recordCount;
+        }
+    }
+
+    public boolean isAvailable() {
+        return records != null;
+    }
+
+    /**
+     * Resolve a six digit pincode to its centroid
+     * @param pincode Pincode, spaces allowed
+     * @return {latitude, longitude}, or null when the pincode is unknown or the file is not loaded
+     */
+    public double[] lookup(String pincode) {
+        ByteBuffer buffer = records;
+        if (buffer == null || pincode == null) {
+            return null;
+        }
+        String digits = pincode.replace(" ", "");
+        if (digits.length() != 6) {
+            return null;
+        }
+        int target;
+        try {
+            target = Integer.parseInt(digits);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = mid * RECORD_BYTES;
+            int value = buffer.getInt(offset);
+            if (value < target) {
+                low = mid + 1;
+            } else if (value > target) {
+                high = mid - 1;
+            } else {
+                hits.incrementAndGet();
+                return new double[]{buffer.getFloat(offset + 4), buffer.getFloat(offset + 8)};
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        return records == null ? 0 : count;
+    }
+
+    /**
+     * Build a reference file from a CSV of {@code pincode,latitude,longitude} rows.
+     * Pincodes listed more than once (one row per post office) are averaged into a single centroid.
+     * A header row and malformed rows are skipped.
+     * @return Number of pincodes written
+     */
+    public static int writeIndex(Path csv, Path out) throws IOException {
+        Map<Integer, double[]> sums = new TreeMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length < 3) {
+                    continue;
+                }
+                try {
+                    int pincode = Integer.parseInt(parts[0].trim());
+                    double lat = Double.parseDouble(parts[1].trim());
+                    double lng = Double.parseDouble(parts[2].trim());
+                    double[] sum = sums.computeIfAbsent(pincode, k -> new double[3]);
+                    sum[0] += lat;
+                    sum[1] += lng;
+                    sum[2]++;
+                } catch (NumberFormatException e) {
+                    // Header or malformed row
+                }
+            }
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(out)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(sums.size());
+            for (Map.Entry<Integer, double[]> entry : sums.entrySet()) {
+                double[] sum = entry.getValue();
+                output.writeInt(entry.getKey());
+                output.writeFloat((float) (sum[0] / sum[2]));
+                output.writeFloat((float) (sum[1] / sum[2]));
+            }
+        }
+        return sums.size();
+    }
+
+    /**
+     * Convert a CSV export into the binary reference file:
+     * {@code java ... PincodeGeocoder pincodes.csv data/pincodes.bin}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: PincodeGeocoder <input.csv> <output.bin>");
+            return;
+        }
+        int written = writeIndex(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("Wrote " + written + " pincodes to " + args[1]);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gives back stock holds that outlived their order's stay at the pharmacy, e.g. after a
+ * write that moved the order on without resolving them. It never moves orders: taking an
+ * order back from a pharmacy that did not accept it in time is up to {@link OrderSlaService},
+ * which releases the holds in the same transaction. Each order's holds are given back in
+ * their own transaction.
+ */
+@Service
+public class StockReservationExpiryJob {
+
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${reservations.expiry-batch-size:100}")
+    private int batchSize;
+
+    private final AtomicLong holdsReleased = new AtomicLong();
+
+    @Scheduled(fixedDelayString = "${reservations.expiry-poll-ms:15000}", initialDelayString = "${reservations.expiry-poll-ms:15000}")
+    public void expireHolds() {
+        try {
+            List<Object[]> expired = stockReservationService.findExpiredOrders(batchSize);
+            for (Object[] row : expired) {
+                expire((Long) row[0], (Long) row[1]);
+            }
+        } catch (Exception e) {
+            System.err.println("Stock hold expiry failed: " + e.getMessage());
+        }
+    }
+
+    private void expire(Long orderId, Long pharmacyId) {
+        try {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            Integer released = transaction.execute(status -> stockReservationService.releaseExpired(orderId, pharmacyId));
+            holdsReleased.addAndGet(released == null ? 0 : released);
+        } catch (Exception e) {
+            System.err.println("Failed to expire stock holds of order " + orderId + ": " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("holdsReleased", holdsReleased.get());
+        return metrics;
+    }
+}
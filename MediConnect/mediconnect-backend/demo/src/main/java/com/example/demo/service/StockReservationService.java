@@ -0,0 +1,234 @@
+package com.example.demo.service;
+
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.StockReservation;
+import com.example.demo.repository.PharmacyInventoryRepository;
+import com.example.demo.repository.StockReservationRepository;
+import com.example.demo.utils.MedicineStockIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds pharmacy stock for orders from assignment until the pharmacy accepts them.
+ *
+ * A hold first takes the quantity from the in-memory stock count with CAS, so orders for a
+ * line that is already short are turned away without touching the database. It is then made
+ * durable with a conditional UPDATE of the stock line's reserved quantity, which only locks
+ * that one row until the assignment commits, and a {@link StockReservation} row per line.
+ * Holds are resolved with their order; {@link StockReservationExpiryJob} gives back the ones
+ * left behind by orders that moved on without resolving them.
+ */
+@Service
+public class StockReservationService {
+
+    @Autowired
+    private StockReservationRepository reservationRepository;
+
+    @Autowired
+    private PharmacyInventoryRepository inventoryRepository;
+
+    @Autowired
+    private PharmacyInventoryService pharmacyInventoryService;
+
+    @Value("${reservations.hold-minutes:15}")
+    private long holdMinutes;
+
+    private final AtomicLong held = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+
+    /**
+     * Hold stock for every line of an order at a pharmacy, or for none of them
+     * @param requirements Order lines; each is held under the first of its names with enough stock
+     * @return The holds, or null when some line could not be held
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<StockReservation> reserve(Long orderId, Long pharmacyId, List<MedicineStockIndex.Requirement> requirements) {
+        // Sorted by stock line so two orders holding the same lines lock them in the same order
+        Map<String, Integer> lines = new TreeMap<>();
+        for (MedicineStockIndex.Requirement requirement : requirements) {
+            String key = chooseLine(pharmacyId, requirement);
+            if (key == null) {
+                refused.incrementAndGet();
+                return null;
+            }
+            lines.merge(key, requirement.getQuantity(), Integer::sum);
+        }
+
+        Map<String, Integer> taken = new HashMap<>();
+        for (Map.Entry<String, Integer> line : lines.entrySet()) {
+            String key = line.getKey();
+            int quantity = line.getValue();
+            boolean ok = pharmacyInventoryService.takeAvailable(pharmacyId, key, quantity);
+            if (ok) {
+                taken.put(key, quantity);
+                ok = inventoryRepository.reserve(pharmacyId, key, quantity) > 0;
+                if (!ok) {
+                    // The count was ahead of the database (another node holds the stock)
+                    taken.remove(key);
+                    pharmacyInventoryService.resync(pharmacyId, key);
+                }
+            }
+            if (!ok) {
+                for (Map.Entry<String, Integer> undo : taken.entrySet()) {
+                    inventoryRepository.unreserve(pharmacyId, undo.getKey(), undo.getValue());
+                    pharmacyInventoryService.returnAvailable(pharmacyId, undo.getKey(), undo.getValue());
+                }
+                refused.incrementAndGet();
+                return null;
+            }
+        }
+
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(holdMinutes);
+        List<StockReservation> reservations = new ArrayList<>(lines.size());
+        for (Map.Entry<String, Integer> line : lines.entrySet()) {
+            StockReservation reservation = new StockReservation();
+            reservation.setOrderId(orderId);
+            reservation.setPharmacyId(pharmacyId);
+            reservation.setMedicineKey(line.getKey());
+            reservation.setQuantity(line.getValue());
+            reservation.setExpiresAt(expiresAt);
+            reservations.add(reservation);
+        }
+        reservationRepository.saveAll(reservations);
+        afterRollback(reservations);
+        held.addAndGet(reservations.size());
+        return reservations;
+    }
+
+    /**
+     * The orders were accepted: their held stock leaves the shelf
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void confirm(Collection<Long> orderIds) {
+        List<StockReservation> holds = reservationRepository.lockByOrderIdsAndState(orderIds, StockReservation.State.HELD);
+        if (holds.isEmpty()) {
+            return;
+        }
+        for (StockReservation hold : holds) {
+            inventoryRepository.consumeReserved(hold.getPharmacyId(), hold.getMedicineKey(), hold.getQuantity());
+        }
+        reservationRepository.resolve(ids(holds), StockReservation.State.CONFIRMED, LocalDateTime.now());
+    }
+
+    /**
+     * Give back the stock still held for the orders
+     * @param state RELEASED or EXPIRED
+     * @return Number of holds given back
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int release(Collection<Long> orderIds, StockReservation.State state) {
+        List<StockReservation> holds = reservationRepository.lockByOrderIdsAndState(orderIds, StockReservation.State.HELD);
+        return releaseHolds(holds, state);
+    }
+
+    /**
+     * Give back holds just returned by {@link #reserve}, e.g. when the assignment they were for lost a race
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int releaseHolds(List<StockReservation> holds, StockReservation.State state) {
+        if (holds == null || holds.isEmpty()) {
+            return 0;
+        }
+        for (StockReservation hold : holds) {
+            inventoryRepository.unreserve(hold.getPharmacyId(), hold.getMedicineKey(), hold.getQuantity());
+        }
+        reservationRepository.resolve(ids(holds), state, LocalDateTime.now());
+        afterCommit(holds);
+        return holds.size();
+    }
+
+    /**
+     * Give back an order's holds at a pharmacy that are past their deadline. Holds taken
+     * since, e.g. by a new assignment, are kept.
+     * @return Number of holds given back
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int releaseExpired(Long orderId, Long pharmacyId) {
+        LocalDateTime now = LocalDateTime.now();
+        List<StockReservation> expired = new ArrayList<>();
+        for (StockReservation hold : reservationRepository.lockByOrderIdsAndState(List.of(orderId), StockReservation.State.HELD)) {
+            if (hold.getPharmacyId().equals(pharmacyId) && hold.getExpiresAt().isBefore(now)) {
+                expired.add(hold);
+            }
+        }
+        return releaseHolds(expired, StockReservation.State.EXPIRED);
+    }
+
+    /**
+     * Orders holding stock past their deadline, as {order id, pharmacy id}. Orders still waiting
+     * for their pharmacy to accept are left out: their deadline belongs to {@link OrderSlaService}.
+     */
+    public List<Object[]> findExpiredOrders(int limit) {
+        return reservationRepository.findExpiredOrders(StockReservation.State.HELD, LocalDateTime.now(),
+                MedicineOrder.OrderStatus.PHARMACY_ASSIGNED, PageRequest.of(0, limit));
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("held", reservationRepository.countByState(StockReservation.State.HELD));
+        metrics.put("linesHeld", held.get());
+        metrics.put("ordersRefused", refused.get());
+        metrics.put("holdMinutes", holdMinutes);
+        return metrics;
+    }
+
+    private String chooseLine(Long pharmacyId, MedicineStockIndex.Requirement requirement) {
+        for (String key : requirement.getMedicineKeys()) {
+            if (pharmacyInventoryService.getAvailable(pharmacyId, key) >= requirement.getQuantity()) {
+                return key;
+            }
+        }
+        return requirement.getMedicineKeys().isEmpty() ? null : requirement.getMedicineKeys().get(0);
+    }
+
+    // Stock taken from the in-memory count for holds that never committed goes back
+    private void afterRollback(List<StockReservation> holds) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    giveBack(holds);
+                }
+            }
+        });
+    }
+
+    // Released stock only becomes available to other orders once the release is committed
+    private void afterCommit(List<StockReservation> holds) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                giveBack(holds);
+            }
+        });
+    }
+
+    private void giveBack(List<StockReservation> holds) {
+        for (StockReservation hold : holds) {
+            pharmacyInventoryService.returnAvailable(hold.getPharmacyId(), hold.getMedicineKey(), hold.getQuantity());
+        }
+    }
+
+    private static List<Long> ids(List<StockReservation> holds) {
+        List<Long> ids = new ArrayList<>(holds.size());
+        for (StockReservation hold : holds) {
+            ids.add(hold.getId());
+        }
+        return ids;
+    }
+}
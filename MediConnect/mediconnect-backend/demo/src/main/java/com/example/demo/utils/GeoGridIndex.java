@@ -0,0 +1,303 @@
+package com.example.demo.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * In-memory grid index over latitude/longitude points.
+ * The globe is split into square cells of a fixed size in degrees; radius and
+ * nearest-neighbour queries only visit the cells that can contain a match and
+ * compute each candidate's distance exactly once.
+ * Reads are lock-free and may run concurrently with updates.
+ */
+public class GeoGridIndex<T> {
+
+    private static final double KM_PER_DEGREE_LAT = 111.32;
+
+    private final double cellSizeDeg;
+    private final Map<Long, Map<Long, Entry<T>>> cells = new ConcurrentHashMap<>();
+    private final Map<Long, Entry<T>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param cellSizeDeg Cell edge length in degrees (0.1 is roughly 11 km)
+     */
+    public GeoGridIndex(double cellSizeDeg) {
+        if (cellSizeDeg <= 0 || cellSizeDeg > 10) {
+            throw new IllegalArgumentException("Cell size must be in (0, 10] degrees");
+        }
+        this.cellSizeDeg = cellSizeDeg;
+    }
+
+    /**
+     * Adds or moves a point. Re-putting an existing id replaces its position and value.
+     */
+    public void put(long id, double latitude, double longitude, T value) {
+        Entry<T> entry = new Entry<>(id, latitude, longitude, value, cellKey(latitude, longitude));
+        Entry<T> previous = entries.put(id, entry);
+        if (previous != null && previous.cellKey != entry.cellKey) {
+            removeFromCell(previous);
+        }
+        // Inserted inside compute so a concurrent removeFromCell cannot drop the cell from under it
+        cells.compute(entry.cellKey, (k, cell) -> {
+            Map<Long, Entry<T>> target = cell == null ? new ConcurrentHashMap<>() : cell;
+            target.put(id, entry);
+            return target;
+        });
+    }
+
+    public boolean remove(long id) {
+        Entry<T> previous = entries.remove(id);
+        if (previous == null) {
+            return false;
+        }
+        removeFromCell(previous);
+        return true;
+    }
+
+    public T get(long id) {
+        Entry<T> entry = entries.get(id);
+        return entry == null ? null : entry.value;
+    }
+
+    public boolean contains(long id) {
+        return entries.containsKey(id);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        cells.clear();
+    }
+
+    public Collection<T> values() {
+        List<T> values = new ArrayList<>(entries.size());
+        for (Entry<T> entry : entries.values()) {
+            values.add(entry.value);
+        }
+        return values;
+    }
+
+    /**
+     * Find every point within the radius, nearest first.
+     * @param latitude Query latitude
+     * @param longitude Query longitude
+     * @param radiusKm Search radius in kilometers
+     * @return Matches sorted by distance
+     */
+    public List<Hit<T>> withinRadius(double latitude, double longitude, double radiusKm) {
+        List<Hit<T>> hits = new ArrayList<>();
+        int latSpan = (int) Math.ceil(radiusKm / cellLatKm());
+        int lngSpan = (int) Math.ceil(radiusKm / lngBoundKm(latitude, radiusKm));
+        if (cellsCovered(Math.max(latSpan, lngSpan)) > scanThreshold()) {
+            for (Entry<T> entry : entries.values()) {
+                double distance = GeoUtils.distanceKm(latitude, longitude, entry.latitude, entry.longitude);
+                if (distance <= radiusKm) {
+                    hits.add(new Hit<>(entry.id, entry.value, distance));
+                }
+            }
+            hits.sort(Comparator.comparingDouble(Hit::getDistanceKm));
+            return hits;
+        }
+        int centerLat = latIndex(latitude);
+        int centerLng = lngIndex(longitude);
+
+        for (int dLat = -latSpan; dLat <= latSpan; dLat++) {
+            for (int dLng = -lngSpan; dLng <= lngSpan; dLng++) {
+                Map<Long, Entry<T>> cell = cells.get(key(centerLat + dLat, centerLng + dLng));
+                if (cell == null) {
+                    continue;
+                }
+                for (Entry<T> entry : cell.values()) {
+                    double distance = GeoUtils.distanceKm(latitude, longitude, entry.latitude, entry.longitude);
+                    if (distance <= radiusKm) {
+                        hits.add(new Hit<>(entry.id, entry.value, distance));
+                    }
+                }
+            }
+        }
+        hits.sort(Comparator.comparingDouble(Hit::getDistanceKm));
+        return hits;
+    }
+
+    /**
+     * Find up to {@code k} nearest points within {@code maxRadiusKm}, nearest first.
+     */
+    public List<Hit<T>> nearest(double latitude, double longitude, int k, double maxRadiusKm) {
+        List<Hit<T>> hits = new ArrayList<>(Math.max(0, Math.min(k, 64)));
+        if (k <= 0) {
+            return hits;
+        }
+        forEachNearest(latitude, longitude, maxRadiusKm, hit -> {
+            hits.add(hit);
+            return hits.size() >= k;
+        });
+        return hits;
+    }
+
+    /**
+     * Find the nearest point within {@code maxRadiusKm} that satisfies the filter.
+     * @return The match, or null when nothing in range qualifies
+     */
+    public Hit<T> nearestMatching(double latitude, double longitude, double maxRadiusKm, Predicate<T> filter) {
+        List<Hit<T>> found = new ArrayList<>(1);
+        forEachNearest(latitude, longitude, maxRadiusKm, hit -> {
+            if (filter.test(hit.getValue())) {
+                found.add(hit);
+                return true;
+            }
+            return false;
+        });
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Visit points in increasing distance order, expanding one ring of cells at a time.
+     * The visitor returns true to stop the walk.
+     */
+    public void forEachNearest(double latitude, double longitude, double maxRadiusKm, Predicate<Hit<T>> visitor) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        double ringKm = Math.min(cellLatKm(), lngBoundKm(latitude, maxRadiusKm));
+        int maxRing = (int) Math.ceil(maxRadiusKm / ringKm) + 1;
+        if (cellsCovered(maxRing) > scanThreshold()) {
+            List<Hit<T>> all = withinRadius(latitude, longitude, maxRadiusKm);
+            for (Hit<T> hit : all) {
+                if (visitor.test(hit)) {
+                    return;
+                }
+            }
+            return;
+        }
+
+        PriorityQueue<Hit<T>> pending = new PriorityQueue<>(Comparator.comparingDouble(Hit::getDistanceKm));
+        int centerLat = latIndex(latitude);
+        int centerLng = lngIndex(longitude);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            collectRing(centerLat, centerLng, ring, latitude, longitude, maxRadiusKm, pending);
+
+            // Anything in a farther ring is at least this far away, so closer candidates are final
+            double settled = ring * ringKm;
+            while (!pending.isEmpty() && (pending.peek().getDistanceKm() <= settled || ring == maxRing)) {
+                if (visitor.test(pending.poll())) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void collectRing(int centerLat, int centerLng, int ring, double latitude, double longitude,
+                             double maxRadiusKm, PriorityQueue<Hit<T>> pending) {
+        for (int dLat = -ring; dLat <= ring; dLat++) {
+            boolean edgeRow = dLat == -ring || dLat == ring;
+            int step = edgeRow ? 1 : Math.max(1, 2 * ring);
+            for (int dLng = -ring; dLng <= ring; dLng += step) {
+                Map<Long, Entry<T>> cell = cells.get(key(centerLat + dLat, centerLng + dLng));
+                if (cell == null) {
+                    continue;
+                }
+                for (Entry<T> entry : cell.values()) {
+                    double distance = GeoUtils.distanceKm(latitude, longitude, entry.latitude, entry.longitude);
+                    if (distance <= maxRadiusKm) {
+                        pending.add(new Hit<>(entry.id, entry.value, distance));
+                    }
+                }
+            }
+        }
+    }
+
+    private void removeFromCell(Entry<T> entry) {
+        cells.computeIfPresent(entry.cellKey, (k, cell) -> {
+            cell.remove(entry.id, entry);
+            return cell.isEmpty() ? null : cell;
+        });
+    }
+
+    /**
+     * Narrowest east-west cell width a match within the radius can sit in.
+     */
+    private double lngBoundKm(double latitude, double radiusKm) {
+        return cellLngKm(Math.abs(latitude) + radiusKm / KM_PER_DEGREE_LAT + cellSizeDeg);
+    }
+
+    private static long cellsCovered(int span) {
+        long side = 2L * span + 1;
+        return side * side;
+    }
+
+    /**
+     * Past this many cells a straight scan of all entries is cheaper than walking the grid.
+     */
+    private long scanThreshold() {
+        return 4L * entries.size() + 256;
+    }
+
+    private double cellLatKm() {
+        return cellSizeDeg * KM_PER_DEGREE_LAT;
+    }
+
+    private double cellLngKm(double absLatitude) {
+        double lat = Math.min(absLatitude, 89.0);
+        return Math.max(cellSizeDeg * KM_PER_DEGREE_LAT * Math.cos(Math.toRadians(lat)), 1e-3);
+    }
+
+    private int latIndex(double latitude) {
+        return (int) Math.floor(latitude / cellSizeDeg);
+    }
+
+    private int lngIndex(double longitude) {
+        return (int) Math.floor(longitude / cellSizeDeg);
+    }
+
+    private long cellKey(double latitude, double longitude) {
+        return key(latIndex(latitude), lngIndex(longitude));
+    }
+
+    private static long key(int latIdx, int lngIdx) {
+        return ((long) latIdx << 32) | (lngIdx & 0xffffffffL);
+    }
+
+    private static final class Entry<T> {
+        final long id;
+        final double latitude;
+        final double longitude;
+        final T value;
+        final long cellKey;
+
+        Entry(long id, double latitude, double longitude, T value, long cellKey) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.value = value;
+            this.cellKey = cellKey;
+        }
+    }
+
+    /**
+     * A query match together with its distance from the query point.
+     */
+    public static final class Hit<T> {
+        private final long id;
+        private final T value;
+        private final double distanceKm;
+
+        public Hit(long id, T value, double distanceKm) {
+            this.id = id;
+            this.value = value;
+            this.distanceKm = distanceKm;
+        }
+
+        public long getId() { return id; }
+        public T getValue() { return value; }
+        public double getDistanceKm() { return distanceKm; }
+    }
+}
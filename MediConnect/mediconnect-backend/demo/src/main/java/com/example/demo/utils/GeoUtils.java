@@ -0,0 +1,33 @@
+package com.example.demo.utils;
+
+/**
+ * Shared geographic helpers.
+ */
+public final class GeoUtils {
+
+    public static final double EARTH_RADIUS_KM = 6371.0;
+
+    private GeoUtils() {
+    }
+
+    /**
+     * Calculate distance between two points using Haversine formula
+     * @param lat1 Latitude of first point
+     * @param lng1 Longitude of first point
+     * @param lat2 Latitude of second point
+     * @param lng2 Longitude of second point
+     * @return Distance in kilometers
+     */
+    public static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double latDistance = Math.toRadians(lat2 - lat1);
+        double lngDistance = Math.toRadians(lng2 - lng1);
+
+        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(lngDistance / 2) * Math.sin(lngDistance / 2);
+
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+
+        return EARTH_RADIUS_KM * c;
+    }
+}
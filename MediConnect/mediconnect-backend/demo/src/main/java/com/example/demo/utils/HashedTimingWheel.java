@@ -0,0 +1,147 @@
+package com.example.demo.utils;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timing wheel: one-shot timers keyed by id, with O(1) scheduling and cancelling.
+ *
+ * Time is cut into ticks and a timer goes into the bucket of the first tick at or after its
+ * deadline, modulo the wheel size, with the number of full turns still to wait. Advancing the wheel
+ * visits only the buckets of the ticks that have passed, so its cost is the timers in those
+ * buckets rather than all timers.
+ *
+ * Any thread may schedule and cancel; new timers wait in a queue and cancelled ones are only
+ * flagged, and both are dealt with by the single thread calling {@link #advance}. A timer
+ * never fires early, and at most one tick late when the wheel is advanced every tick.
+ * Scheduling an id again replaces its timer.
+ */
+public class HashedTimingWheel<T> {
+
+    private final long tickMillis;
+    private final int mask;
+    private final ArrayDeque<Timer<T>>[] buckets;
+    private final Queue<Timer<T>> added = new ConcurrentLinkedQueue<>();
+    private final Map<Long, Timer<T>> timers = new ConcurrentHashMap<>();
+    private final long startMillis;
+    private long tick; // Next tick to process; only touched by the advancing thread
+
+    /**
+     * @param tickMillis Resolution of the wheel
+     * @param wheelSize Buckets per turn, rounded up to a power of two
+     * @param startMillis Time of tick zero
+     */
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive");
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 20)) {
+            throw new IllegalArgumentException("Wheel size must be in (0, 2^20]");
+        }
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.buckets = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Fire a timer for the id at the deadline, replacing any timer it already has
+     */
+    public void schedule(long id, long deadlineMillis, T value) {
+        Timer<T> timer = new Timer<>(id, deadlineMillis, value);
+        Timer<T> previous = timers.put(id, timer);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        added.add(timer);
+    }
+
+    /**
+     * @return false if the id had no pending timer
+     */
+    public boolean cancel(long id) {
+        Timer<T> timer = timers.remove(id);
+        if (timer == null) {
+            return false;
+        }
+        timer.cancelled = true;
+        return true;
+    }
+
+    public T get(long id) {
+        Timer<T> timer = timers.get(id);
+        return timer == null ? null : timer.value;
+    }
+
+    public int size() {
+        return timers.size();
+    }
+
+    /**
+     * Process every tick up to the given time and hand out the timers that are due.
+     * Must only be called from one thread at a time.
+     */
+    public void advance(long nowMillis, Expiry<T> expiry) {
+        long lastTick = (nowMillis - startMillis) / tickMillis;
+        placeAdded();
+        while (tick <= lastTick) {
+            ArrayDeque<Timer<T>> bucket = buckets[(int) (tick & mask)];
+            for (int i = bucket.size(); i > 0; i--) {
+                Timer<T> timer = bucket.poll();
+                if (timer.cancelled) {
+                    continue;
+                }
+                if (timer.rounds > 0) {
+                    timer.rounds--;
+                    bucket.add(timer);
+                } else if (timers.remove(timer.id, timer)) {
+                    expiry.expired(timer.id, timer.value);
+                }
+            }
+            tick++;
+        }
+    }
+
+    private void placeAdded() {
+        Timer<T> timer;
+        while ((timer = added.poll()) != null) {
+            if (timer.cancelled) {
+                continue;
+            }
+            // Deadlines already passed go into the next tick to process
+            long due = Math.max(Math.floorDiv(timer.deadlineMillis - startMillis + tickMillis - 1, tickMillis), tick);
+            timer.rounds = (due - tick) >> Integer.numberOfTrailingZeros(mask + 1);
+            buckets[(int) (due & mask)].add(timer);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Expiry<T> {
+        void expired(long id, T value);
+    }
+
+    private static final class Timer<T> {
+        private final long id;
+        private final long deadlineMillis;
+        private final T value;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timer(long id, long deadlineMillis, T value) {
+            this.id = id;
+            this.deadlineMillis = deadlineMillis;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.demo.utils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory index from medicine to the pharmacies that have it in stock.
+ *
+ * Each pharmacy gets a small dense slot number and each medicine a bitset over those
+ * slots, so the pharmacies able to supply every line of an order come from a handful of
+ * OR/AND operations on a few machine words per medicine. Quantities are kept per pharmacy
+ * and checked exactly for the candidates the bitsets let through.
+ *
+ * Quantities are atomic counters, so stock can be taken and given back with CAS from
+ * any number of threads without locking. Bitsets are copied on write and never changed
+ * once published, so reads are lock-free and may run concurrently with updates.
+ */
+public class MedicineStockIndex {
+
+    private final Map<Long, Integer> slots = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final Map<String, BitSet> carriers = new ConcurrentHashMap<>();
+    private final Map<Long, Map<String, AtomicInteger>> stock = new ConcurrentHashMap<>();
+
+    /**
+     * Set a pharmacy's quantity of a medicine. Zero or less removes it from stock.
+     * @param medicineKey Normalised medicine name, see {@link #normalize(String)}
+     */
+    public void setQuantity(long pharmacyId, String medicineKey, int quantity) {
+        if (medicineKey == null || medicineKey.isEmpty()) {
+            return;
+        }
+        AtomicInteger counter = counterOf(pharmacyId, medicineKey);
+        counter.set(Math.max(quantity, 0));
+        syncCarrier(medicineKey, slotOf(pharmacyId), counter);
+    }
+
+    public int getQuantity(long pharmacyId, String medicineKey) {
+        Map<String, AtomicInteger> lines = stock.get(pharmacyId);
+        AtomicInteger counter = lines == null ? null : lines.get(medicineKey);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Take stock if at least {@code quantity} is left
+     * @return false, leaving the count alone, when there is not enough
+     */
+    public boolean tryTake(long pharmacyId, String medicineKey, int quantity) {
+        Map<String, AtomicInteger> lines = stock.get(pharmacyId);
+        AtomicInteger counter = lines == null ? null : lines.get(medicineKey);
+        if (counter == null) {
+            return false;
+        }
+        while (true) {
+            int current = counter.get();
+            if (current < quantity) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current - quantity)) {
+                if (current == quantity) {
+                    syncCarrier(medicineKey, slotOf(pharmacyId), counter);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Return stock taken with {@link #tryTake}
+     */
+    public void giveBack(long pharmacyId, String medicineKey, int quantity) {
+        if (medicineKey == null || medicineKey.isEmpty() || quantity <= 0) {
+            return;
+        }
+        AtomicInteger counter = counterOf(pharmacyId, medicineKey);
+        if (counter.getAndAdd(quantity) <= 0) {
+            syncCarrier(medicineKey, slotOf(pharmacyId), counter);
+        }
+    }
+
+    public void removePharmacy(long pharmacyId) {
+        Map<String, AtomicInteger> lines = stock.remove(pharmacyId);
+        Integer slot = slots.get(pharmacyId);
+        if (lines == null || slot == null) {
+            return;
+        }
+        for (String medicineKey : lines.keySet()) {
+            setCarrier(medicineKey, slot, false);
+        }
+    }
+
+    /**
+     * Pharmacies that have every required medicine in the required quantity.
+     * An empty requirement list matches nothing.
+     */
+    public Match match(List<Requirement> requirements) {
+        BitSet candidates = null;
+        for (Requirement requirement : requirements) {
+            BitSet any = new BitSet();
+            for (String key : requirement.getMedicineKeys()) {
+                BitSet bits = carriers.get(key);
+                if (bits != null) {
+                    any.or(bits);
+                }
+            }
+            if (candidates == null) {
+                candidates = any;
+            } else {
+                candidates.and(any);
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+        return new Match(candidates == null ? new BitSet() : candidates, requirements);
+    }
+
+    public int pharmacyCount() {
+        return stock.size();
+    }
+
+    public int medicineCount() {
+        return carriers.size();
+    }
+
+    /**
+     * Key a medicine name is indexed under: trimmed, lower case, runs of whitespace collapsed
+     */
+    public static String normalize(String medicineName) {
+        if (medicineName == null) {
+            return null;
+        }
+        return medicineName.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private int slotOf(long pharmacyId) {
+        return slots.computeIfAbsent(pharmacyId, id -> nextSlot.getAndIncrement());
+    }
+
+    private AtomicInteger counterOf(long pharmacyId, String medicineKey) {
+        return stock.computeIfAbsent(pharmacyId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(medicineKey, key -> new AtomicInteger());
+    }
+
+    // A concurrent take or give back may flip the count while the bit is written; repeat until they agree
+    private void syncCarrier(String medicineKey, int slot, AtomicInteger counter) {
+        boolean inStock;
+        do {
+            inStock = counter.get() > 0;
+            setCarrier(medicineKey, slot, inStock);
+        } while ((counter.get() > 0) != inStock);
+    }
+
+    private void setCarrier(String medicineKey, int slot, boolean inStock) {
+        carriers.compute(medicineKey, (key, bits) -> {
+            if (bits != null && bits.get(slot) == inStock) {
+                return bits;
+            }
+            if (bits == null && !inStock) {
+                return null;
+            }
+            BitSet copy = bits == null ? new BitSet(slot + 1) : (BitSet) bits.clone();
+            copy.set(slot, inStock);
+            return copy.isEmpty() ? null : copy;
+        });
+    }
+
+    /**
+     * One order line: any of the listed medicines, in at least the given quantity
+     */
+    public static final class Requirement {
+        private final List<String> medicineKeys;
+        private final int quantity;
+
+        private Requirement(List<String> medicineKeys, int quantity) {
+            this.medicineKeys = medicineKeys;
+            this.quantity = quantity;
+        }
+
+        /**
+         * @param names Interchangeable names for the line, e.g. brand and generic; blanks are skipped
+         */
+        public static Requirement of(int quantity, String... names) {
+            List<String> keys = new ArrayList<>(names.length);
+            for (String name : names) {
+                String key = normalize(name);
+                if (key != null && !key.isEmpty() && !keys.contains(key)) {
+                    keys.add(key);
+                }
+            }
+            return new Requirement(Collections.unmodifiableList(keys), Math.max(quantity, 1));
+        }
+
+        public List<String> getMedicineKeys() { return medicineKeys; }
+        public int getQuantity() { return quantity; }
+    }
+
+    /**
+     * Result of {@link #match(List)}: the bitset narrows the candidates, quantities are checked per pharmacy
+     */
+    public final class Match {
+        private final BitSet candidates;
+        private final List<Requirement> requirements;
+
+        private Match(BitSet candidates, List<Requirement> requirements) {
+            this.candidates = candidates;
+            this.requirements = requirements;
+        }
+
+        public boolean isEmpty() {
+            return candidates.isEmpty();
+        }
+
+        public int candidateCount() {
+            return candidates.cardinality();
+        }
+
+        public boolean canFill(long pharmacyId) {
+            Integer slot = slots.get(pharmacyId);
+            if (slot == null || !candidates.get(slot)) {
+                return false;
+            }
+            Map<String, AtomicInteger> lines = stock.get(pharmacyId);
+            if (lines == null) {
+                return false;
+            }
+            for (Requirement requirement : requirements) {
+                if (!hasEnough(lines, requirement)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean hasEnough(Map<String, AtomicInteger> lines, Requirement requirement) {
+            for (String key : requirement.getMedicineKeys()) {
+                AtomicInteger quantity = lines.get(key);
+                if (quantity != null && quantity.get() >= requirement.getQuantity()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.demo.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Groups delivery stops leaving from one origin into courier runs.
+ *
+ * A run starts with the most urgent stop left and is extended with the nearest stop that can
+ * still be reached before its deadline, until the run is full or nothing else fits. Each run is
+ * then shortened with 2-opt and by moving single stops, keeping only changes under which every
+ * stop still meets its deadline. Runs are open paths: the courier does not return to the origin. A stop that cannot
+ * meet its deadline even on its own still gets a run, flagged late.
+ */
+public final class RoutePlanner {
+
+    private final double speedKmh;
+    private final double roadFactor; // Road distance over straight-line distance
+    private final double serviceMinutes; // Time spent handing over at each stop
+    private final int capacity;
+    private final double maxRunMinutes;
+
+    public RoutePlanner(double speedKmh, double roadFactor, double serviceMinutes, int capacity, double maxRunMinutes) {
+        if (speedKmh <= 0 || roadFactor < 1 || serviceMinutes < 0 || capacity < 1 || maxRunMinutes <= 0) {
+            throw new IllegalArgumentException("Invalid route planner settings");
+        }
+        this.speedKmh = speedKmh;
+        this.roadFactor = roadFactor;
+        this.serviceMinutes = serviceMinutes;
+        this.capacity = capacity;
+        this.maxRunMinutes = maxRunMinutes;
+    }
+
+    /**
+     * Plan runs for all stops
+     * @return Runs with stops in delivery order; every stop appears in exactly one run
+     */
+    public List<Run> plan(double originLat, double originLng, List<Stop> stops) {
+        List<Stop> remaining = new ArrayList<>(stops);
+        // Most urgent last, so seeds are taken from the end of the list
+        remaining.sort(Comparator.comparingDouble((Stop stop) -> stop.deadlineMinutes).reversed());
+        List<Run> runs = new ArrayList<>();
+
+        while (!remaining.isEmpty()) {
+            List<Stop> route = new ArrayList<>();
+            Stop seed = remaining.remove(remaining.size() - 1);
+            route.add(seed);
+            double clock = travelMinutes(originLat, originLng, seed.latitude, seed.longitude) + serviceMinutes;
+            Stop current = seed;
+
+            while (route.size() < capacity) {
+                int best = -1;
+                double bestMinutes = Double.MAX_VALUE;
+                for (int i = 0; i < remaining.size(); i++) {
+                    Stop candidate = remaining.get(i);
+                    double minutes = travelMinutes(current.latitude, current.longitude, candidate.latitude, candidate.longitude);
+                    double arrival = clock + minutes;
+                    if (minutes < bestMinutes && arrival <= candidate.deadlineMinutes && arrival <= maxRunMinutes) {
+                        best = i;
+                        bestMinutes = minutes;
+                    }
+                }
+                if (best < 0) {
+                    break;
+                }
+                // Removing keeps the list sorted, so the next seed is still the most urgent stop
+                Stop next = remaining.remove(best);
+                route.add(next);
+                clock += bestMinutes + serviceMinutes;
+                current = next;
+            }
+
+            improve(originLat, originLng, route);
+            runs.add(toRun(originLat, originLng, route));
+        }
+        return runs;
+    }
+
+    // 2-opt and single stop moves over an open path starting at the origin
+    private void improve(double originLat, double originLng, List<Stop> route) {
+        int n = route.size();
+        if (n < 3) {
+            return;
+        }
+        double[][] km = new double[n + 1][n + 1]; // Index 0 is the origin
+        for (int a = 0; a <= n; a++) {
+            for (int b = a + 1; b <= n; b++) {
+                double lat1 = a == 0 ? originLat : route.get(a - 1).latitude;
+                double lng1 = a == 0 ? originLng : route.get(a - 1).longitude;
+                double lat2 = route.get(b - 1).latitude;
+                double lng2 = route.get(b - 1).longitude;
+                km[a][b] = km[b][a] = GeoUtils.distanceKm(lat1, lng1, lat2, lng2);
+            }
+        }
+        int[] order = new int[n + 1]; // Position in the route to index in km
+        for (int i = 0; i <= n; i++) {
+            order[i] = i;
+        }
+        // A stop already late in the planned order may not get any later; the others must stay on time
+        double[] latest = new double[n + 1];
+        double clock = 0;
+        for (int i = 1; i <= n; i++) {
+            clock += km[i - 1][i] * roadFactor / speedKmh * 60;
+            latest[i] = Math.max(route.get(i - 1).deadlineMinutes, clock);
+            clock += serviceMinutes;
+        }
+
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 1; i < n; i++) {
+                for (int j = i + 1; j <= n; j++) {
+                    // Reverse positions i..j: edges (i-1, i) and (j, j+1) become (i-1, j) and (i, j+1)
+                    double before = km[order[i - 1]][order[i]] + (j < n ? km[order[j]][order[j + 1]] : 0);
+                    double after = km[order[i - 1]][order[j]] + (j < n ? km[order[i]][order[j + 1]] : 0);
+                    if (after < before - 1e-9) {
+                        reverse(order, i, j);
+                        if (meetsDeadlines(order, km, latest)) {
+                            improved = true;
+                        } else {
+                            reverse(order, i, j);
+                        }
+                    }
+                }
+            }
+            // Reversals cannot take the first stop into the middle of an open path; moving it can
+            for (int i = 1; i <= n; i++) {
+                for (int j = 1; j <= n; j++) {
+                    if (i == j) {
+                        continue;
+                    }
+                    double before = length(order, km);
+                    move(order, i, j);
+                    if (length(order, km) < before - 1e-9 && meetsDeadlines(order, km, latest)) {
+                        improved = true;
+                    } else {
+                        move(order, j, i);
+                    }
+                }
+            }
+        }
+
+        List<Stop> reordered = new ArrayList<>(n);
+        for (int i = 1; i <= n; i++) {
+            reordered.add(route.get(order[i] - 1));
+        }
+        Collections.copy(route, reordered);
+    }
+
+    private static double length(int[] order, double[][] km) {
+        double total = 0;
+        for (int i = 1; i < order.length; i++) {
+            total += km[order[i - 1]][order[i]];
+        }
+        return total;
+    }
+
+    private boolean meetsDeadlines(int[] order, double[][] km, double[] latest) {
+        double clock = 0;
+        for (int i = 1; i < order.length; i++) {
+            clock += km[order[i - 1]][order[i]] * roadFactor / speedKmh * 60;
+            if (clock > latest[order[i]] + 1e-9) {
+                return false;
+            }
+            clock += serviceMinutes;
+        }
+        return true;
+    }
+
+    private Run toRun(double originLat, double originLng, List<Stop> route) {
+        double[] arrivals = new double[route.size()];
+        double[] distances = new double[route.size()];
+        double clock = 0;
+        double distance = 0;
+        double lat = originLat;
+        double lng = originLng;
+        boolean late = false;
+        for (int i = 0; i < route.size(); i++) {
+            Stop stop = route.get(i);
+            double km = GeoUtils.distanceKm(lat, lng, stop.latitude, stop.longitude) * roadFactor;
+            distance += km;
+            clock += km / speedKmh * 60;
+            arrivals[i] = clock;
+            distances[i] = distance;
+            late |= clock > stop.deadlineMinutes;
+            clock += serviceMinutes;
+            lat = stop.latitude;
+            lng = stop.longitude;
+        }
+        return new Run(List.copyOf(route), arrivals, distances, late);
+    }
+
+    private double travelMinutes(double lat1, double lng1, double lat2, double lng2) {
+        return GeoUtils.distanceKm(lat1, lng1, lat2, lng2) * roadFactor / speedKmh * 60;
+    }
+
+    // Take the entry at position from out and put it back at position to
+    private static void move(int[] order, int from, int to) {
+        int moving = order[from];
+        if (from < to) {
+            System.arraycopy(order, from + 1, order, from, to - from);
+        } else {
+            System.arraycopy(order, to, order, to + 1, from - to);
+        }
+        order[to] = moving;
+    }
+
+    private static void reverse(int[] order, int from, int to) {
+        while (from < to) {
+            int swap = order[from];
+            order[from++] = order[to];
+            order[to--] = swap;
+        }
+    }
+
+    public static final class Stop {
+        private final long id;
+        private final double latitude;
+        private final double longitude;
+        private final double deadlineMinutes; // Latest arrival, in minutes after departure
+
+        public Stop(long id, double latitude, double longitude, double deadlineMinutes) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.deadlineMinutes = deadlineMinutes;
+        }
+
+        public long getId() {
+            return id;
+        }
+    }
+
+    public static final class Run {
+        private final List<Stop> stops;
+        private final double[] arrivalMinutes;
+        private final double[] distanceKm; // Road distance from the origin to each stop
+        private final boolean late;
+
+        private Run(List<Stop> stops, double[] arrivalMinutes, double[] distanceKm, boolean late) {
+            this.stops = stops;
+            this.arrivalMinutes = arrivalMinutes;
+            this.distanceKm = distanceKm;
+            this.late = late;
+        }
+
+        public List<Stop> getStops() {
+            return stops;
+        }
+
+        public double getArrivalMinutes(int index) {
+            return arrivalMinutes[index];
+        }
+
+        public double getDistanceKm(int index) {
+            return distanceKm[index];
+        }
+
+        public double getTotalKm() {
+            return distanceKm.length == 0 ? 0 : distanceKm[distanceKm.length - 1];
+        }
+
+        public double getTotalMinutes() {
+            return arrivalMinutes.length == 0 ? 0 : arrivalMinutes[arrivalMinutes.length - 1];
+        }
+
+        public boolean isLate() {
+            return late;
+        }
+    }
+}
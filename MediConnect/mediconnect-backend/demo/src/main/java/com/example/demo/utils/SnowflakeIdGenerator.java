@@ -0,0 +1,120 @@
+package com.example.demo.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Snowflake-style unique ids: 41 bits of milliseconds since 2024-01-01, 10 bits of node id
+ * and 12 bits of per-millisecond sequence, so ids from different nodes never collide and
+ * sort roughly by creation time.
+ *
+ * The last (timestamp, sequence) pair lives in one AtomicLong and is advanced with CAS, so
+ * callers never block. When the 4096 ids of a millisecond are used up, or the clock steps
+ * back, the generator keeps counting into the next millisecond instead of waiting; ids stay
+ * unique and increasing and the borrowed time is paid back once the clock catches up.
+ *
+ * Entities create their business numbers in @PrePersist, so a process-wide instance is
+ * exposed through {@link #nextNumber(String)}; {@code IdGeneratorConfig} sets its node id.
+ */
+public final class SnowflakeIdGenerator {
+
+    public static final long EPOCH_MILLIS = 1704067200000L; // 2024-01-01T00:00:00Z
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    // Base 36 of Long.MAX_VALUE is 13 characters; padding keeps string order equal to numeric order
+    private static final int ENCODED_LENGTH = 13;
+
+    private static volatile SnowflakeIdGenerator shared = new SnowflakeIdGenerator(0);
+
+    private final long nodeId;
+    private final LongSupplier clock;
+    private final AtomicLong lastState = new AtomicLong(); // (millis since epoch << SEQUENCE_BITS) | sequence
+
+    public SnowflakeIdGenerator(long nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    SnowflakeIdGenerator(long nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    public long nextId() {
+        while (true) {
+            long previous = lastState.get();
+            long now = clock.getAsLong() - EPOCH_MILLIS;
+            long previousMillis = previous >>> SEQUENCE_BITS;
+
+            long next;
+            if (now > previousMillis) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                // Same millisecond or the clock went back: take the next sequence, rolling into the next millisecond
+                next = previous + 1;
+            }
+            if (lastState.compareAndSet(previous, next)) {
+                long millis = next >>> SEQUENCE_BITS;
+                return (millis << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * A new id as fixed-width upper-case base 36 behind a prefix, e.g. "ORD0A1B2C3D4E5F6"
+     */
+    public String nextString(String prefix) {
+        return prefix + encode(nextId());
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public static String encode(long id) {
+        String digits = Long.toString(id, 36).toUpperCase();
+        if (digits.length() >= ENCODED_LENGTH) {
+            return digits;
+        }
+        StringBuilder padded = new StringBuilder(ENCODED_LENGTH);
+        for (int i = digits.length(); i < ENCODED_LENGTH; i++) {
+            padded.append('0');
+        }
+        return padded.append(digits).toString();
+    }
+
+    /**
+     * Milliseconds since the Unix epoch at which an id was generated
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    public static long nodeIdOf(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_NODE_ID;
+    }
+
+    /**
+     * Next id from the process-wide generator, as a prefixed string
+     */
+    public static String nextNumber(String prefix) {
+        return shared.nextString(prefix);
+    }
+
+    /**
+     * Replace the process-wide generator; called once at startup with this node's id
+     */
+    public static void configureShared(long nodeId) {
+        shared = new SnowflakeIdGenerator(nodeId);
+    }
+
+    public static SnowflakeIdGenerator shared() {
+        return shared;
+    }
+}
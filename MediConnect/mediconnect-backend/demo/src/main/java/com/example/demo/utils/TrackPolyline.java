@@ -0,0 +1,171 @@
+package com.example.demo.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact storage of a GPS track.
+ *
+ * {@link #simplify} is Douglas-Peucker using the synchronized distance: a point is measured
+ * against where the courier would have been at that moment moving steadily along the kept
+ * segment, not against the segment itself. Waiting in one place therefore keeps the points
+ * around the stop, and replaying the simplified track at its timestamps stays within the
+ * tolerance of the original. {@link #encode} writes the result in the encoded polyline
+ * format (1e-5 degree precision) with seconds since the previous point as a third value.
+ */
+public final class TrackPolyline {
+
+    private static final double METERS_PER_DEGREE_LAT = 110_540.0;
+    private static final double METERS_PER_DEGREE_LNG = 111_320.0; // At the equator
+    private static final double SCALE = 1e5;
+
+    private TrackPolyline() {
+    }
+
+    /**
+     * Points of a track that have to be kept for it to stay within the tolerance
+     * @param points Track in time order
+     * @param toleranceMeters Largest allowed distance between a dropped point and the simplified track
+     * @return The kept points, first and last always included
+     */
+    public static List<Point> simplify(List<Point> points, double toleranceMeters) {
+        int n = points.size();
+        if (n < 3) {
+            return new ArrayList<>(points);
+        }
+        double cosLat = Math.cos(Math.toRadians(points.get(0).latitude));
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+
+        // Ranges still to split; explicit so a long track cannot overflow the call stack
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            int farthest = -1;
+            double farthestMeters = toleranceMeters;
+            for (int i = first + 1; i < last; i++) {
+                double meters = synchronizedDistance(points.get(first), points.get(last), points.get(i), cosLat);
+                if (meters > farthestMeters) {
+                    farthest = i;
+                    farthestMeters = meters;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        List<Point> kept = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                kept.add(points.get(i));
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Encode a track. Time goes in as an offset from {@code startEpochSecond}, which the caller stores separately.
+     */
+    public static String encode(List<Point> points, long startEpochSecond) {
+        StringBuilder out = new StringBuilder(points.size() * 10);
+        long previousLat = 0;
+        long previousLng = 0;
+        long previousTime = startEpochSecond;
+        for (Point point : points) {
+            long lat = Math.round(point.latitude * SCALE);
+            long lng = Math.round(point.longitude * SCALE);
+            writeValue(out, lat - previousLat);
+            writeValue(out, lng - previousLng);
+            writeValue(out, point.epochSecond - previousTime);
+            previousLat = lat;
+            previousLng = lng;
+            previousTime = point.epochSecond;
+        }
+        return out.toString();
+    }
+
+    public static List<Point> decode(String encoded, long startEpochSecond) {
+        List<Point> points = new ArrayList<>();
+        int[] index = {0};
+        long lat = 0;
+        long lng = 0;
+        long time = startEpochSecond;
+        while (index[0] < encoded.length()) {
+            lat += readValue(encoded, index);
+            lng += readValue(encoded, index);
+            time += readValue(encoded, index);
+            points.add(new Point(lat / SCALE, lng / SCALE, time));
+        }
+        return points;
+    }
+
+    // Distance from p to the position interpolated between a and b at p's time, on a local flat projection
+    private static double synchronizedDistance(Point a, Point b, Point p, double cosLat) {
+        long span = b.epochSecond - a.epochSecond;
+        double ratio = span <= 0 ? 0 : (double) (p.epochSecond - a.epochSecond) / span;
+        double lat = a.latitude + (b.latitude - a.latitude) * ratio;
+        double lng = a.longitude + (b.longitude - a.longitude) * ratio;
+        double dy = (p.latitude - lat) * METERS_PER_DEGREE_LAT;
+        double dx = (p.longitude - lng) * METERS_PER_DEGREE_LNG * cosLat;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // Zig-zag the sign into the low bit, then emit 5 bits per character from the low end
+    private static void writeValue(StringBuilder out, long value) {
+        long bits = value < 0 ? ~(value << 1) : value << 1;
+        while (bits >= 0x20) {
+            out.append((char) ((0x20 | (bits & 0x1f)) + 63));
+            bits >>>= 5;
+        }
+        out.append((char) (bits + 63));
+    }
+
+    private static long readValue(String encoded, int[] index) {
+        long result = 0;
+        int shift = 0;
+        int chunk;
+        do {
+            if (index[0] >= encoded.length()) {
+                throw new IllegalArgumentException("Truncated track polyline");
+            }
+            chunk = encoded.charAt(index[0]++) - 63;
+            result |= (long) (chunk & 0x1f) << shift;
+            shift += 5;
+        } while (chunk >= 0x20);
+        return (result & 1) != 0 ? ~(result >>> 1) : result >>> 1;
+    }
+
+    public static final class Point {
+        private final double latitude;
+        private final double longitude;
+        private final long epochSecond;
+
+        public Point(double latitude, double longitude, long epochSecond) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.epochSecond = epochSecond;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public long getEpochSecond() {
+            return epochSecond;
+        }
+    }
+}
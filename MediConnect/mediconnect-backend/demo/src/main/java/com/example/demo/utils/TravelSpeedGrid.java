@@ -0,0 +1,117 @@
+package com.example.demo.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Typical travel speed by area and hour of day, learnt from past courier movement.
+ * The map is split into square cells of a fixed size in degrees, each holding the mean
+ * observed speed for every hour of the day. A grid is filled once through a
+ * {@link Builder} and never changes afterwards, so lookups need no locking and a
+ * rebuilt grid is published by swapping the reference.
+ */
+public final class TravelSpeedGrid {
+
+    private static final int HOURS = 24;
+
+    private final double cellSizeDeg;
+    private final int minSamples;
+    private final Map<Long, float[]> speeds; // Mean km/h per hour, NaN where too few samples
+    private final long samples;
+
+    private TravelSpeedGrid(double cellSizeDeg, int minSamples, Map<Long, float[]> speeds, long samples) {
+        this.cellSizeDeg = cellSizeDeg;
+        this.minSamples = minSamples;
+        this.speeds = speeds;
+        this.samples = samples;
+    }
+
+    /**
+     * A grid that knows nothing; every lookup misses
+     */
+    public static TravelSpeedGrid empty(double cellSizeDeg) {
+        return new TravelSpeedGrid(cellSizeDeg, 1, Map.of(), 0);
+    }
+
+    /**
+     * @param cellSizeDeg Cell edge length in degrees (0.01 is roughly 1 km)
+     * @param minSamples Observations a cell-hour needs before its mean is trusted
+     */
+    public static Builder builder(double cellSizeDeg, int minSamples) {
+        if (cellSizeDeg <= 0 || cellSizeDeg > 10) {
+            throw new IllegalArgumentException("Cell size must be in (0, 10] degrees");
+        }
+        return new Builder(cellSizeDeg, Math.max(1, minSamples));
+    }
+
+    /**
+     * Typical speed at a point in the given hour of day
+     * @return Speed in km/h, or NaN when the area has too little history
+     */
+    public double speedAt(double latitude, double longitude, int hourOfDay) {
+        float[] hours = speeds.get(cellKey(cellSizeDeg, latitude, longitude));
+        return hours == null ? Double.NaN : hours[hourOfDay];
+    }
+
+    public int cells() {
+        return speeds.size();
+    }
+
+    public long samples() {
+        return samples;
+    }
+
+    public double cellSizeDeg() {
+        return cellSizeDeg;
+    }
+
+    private static long cellKey(double cellSizeDeg, double latitude, double longitude) {
+        int latIdx = (int) Math.floor(latitude / cellSizeDeg);
+        int lngIdx = (int) Math.floor(longitude / cellSizeDeg);
+        return ((long) latIdx << 32) | (lngIdx & 0xffffffffL);
+    }
+
+    /**
+     * Accumulates observations; not thread safe
+     */
+    public static final class Builder {
+        private final double cellSizeDeg;
+        private final int minSamples;
+        private final Map<Long, double[]> sums = new HashMap<>(); // Per cell: 24 speed sums then 24 counts
+        private long samples;
+
+        private Builder(double cellSizeDeg, int minSamples) {
+            this.cellSizeDeg = cellSizeDeg;
+            this.minSamples = minSamples;
+        }
+
+        public Builder add(double latitude, double longitude, int hourOfDay, double speedKmh) {
+            if (hourOfDay < 0 || hourOfDay >= HOURS || !(speedKmh > 0)) {
+                return this;
+            }
+            double[] cell = sums.computeIfAbsent(cellKey(cellSizeDeg, latitude, longitude), k -> new double[HOURS * 2]);
+            cell[hourOfDay] += speedKmh;
+            cell[HOURS + hourOfDay]++;
+            samples++;
+            return this;
+        }
+
+        public TravelSpeedGrid build() {
+            Map<Long, float[]> speeds = new HashMap<>();
+            for (Map.Entry<Long, double[]> entry : sums.entrySet()) {
+                double[] cell = entry.getValue();
+                float[] hours = new float[HOURS];
+                boolean known = false;
+                for (int hour = 0; hour < HOURS; hour++) {
+                    double count = cell[HOURS + hour];
+                    hours[hour] = count >= minSamples ? (float) (cell[hour] / count) : Float.NaN;
+                    known |= count >= minSamples;
+                }
+                if (known) {
+                    speeds.put(entry.getKey(), hours);
+                }
+            }
+            return new TravelSpeedGrid(cellSizeDeg, minSamples, speeds, samples);
+        }
+    }
+}
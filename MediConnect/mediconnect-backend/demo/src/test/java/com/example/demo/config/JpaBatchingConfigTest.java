@@ -0,0 +1,123 @@
+package com.example.demo.config;
+
+import com.example.demo.model.*;
+import com.example.demo.utils.Role;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.show-sql=false",
+        "ids.sequence.allocation-size=50"
+})
+@Import(JpaBatchingConfig.class)
+class JpaBatchingConfigTest {
+
+    private static final int MEDICINES = 30;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Doctor doctor;
+    private Patient patient;
+    private Appointment appointment;
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        doctor = new Doctor();
+        doctor.setFirstName("Asha");
+        doctor.setLastName("Rao");
+        doctor.setSpecialization("General");
+        doctor.setLicenseNumber("DOC-1");
+        doctor.setPhoneNumber("9000000001");
+        doctor.setEmail("asha@example.com");
+        doctor.setExperience(10);
+        doctor.setEducation("MBBS");
+        doctor.setHospital("City Hospital");
+        doctor.setAddress("1 Hospital Rd");
+        doctor.setUser(user("doctor"));
+        entityManager.persist(doctor);
+
+        patient = new Patient();
+        patient.setFirstName("Ravi");
+        patient.setLastName("Kumar");
+        patient.setPhoneNumber("9000000002");
+        patient.setEmail("ravi@example.com");
+        patient.setDateOfBirth("1990-01-01");
+        patient.setGender("M");
+        patient.setAddress("2 Main St");
+        patient.setUser(user("patient"));
+        entityManager.persist(patient);
+
+        appointment = new Appointment();
+        appointment.setPatient(patient);
+        appointment.setDoctor(doctor);
+        entityManager.persist(appointment);
+
+        entityManager.flush();
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    @DisplayName("A prescription and its medicines are inserted with batched statements")
+    void persistPrescription_BatchesChildInserts() {
+        Prescription prescription = new Prescription();
+        prescription.setAppointment(appointment);
+        prescription.setDoctor(doctor);
+        prescription.setPatient(patient);
+        List<PrescriptionMedicine> medicines = new ArrayList<>();
+        for (int i = 0; i < MEDICINES; i++) {
+            PrescriptionMedicine medicine = new PrescriptionMedicine();
+            medicine.setPrescription(prescription);
+            medicine.setMedicineName("Medicine " + i);
+            medicine.setGenericName("Generic " + i);
+            medicine.setDosage("500mg");
+            medicine.setFrequency("Twice daily");
+            medicine.setDuration("5 days");
+            medicine.setQuantity(10);
+            medicine.setInstructions("After meals");
+            medicines.add(medicine);
+        }
+        prescription.setMedicines(medicines);
+
+        entityManager.persist(prescription);
+        entityManager.flush();
+
+        // One statement per table plus sequence calls, instead of one insert per medicine
+        assertTrue(statistics.getPrepareStatementCount() <= 6,
+                "expected batched inserts, got " + statistics.getPrepareStatementCount() + " statements");
+        assertEquals(MEDICINES + 1, statistics.getEntityInsertCount());
+
+        Set<Long> ids = new HashSet<>();
+        medicines.forEach(medicine -> ids.add(medicine.getId()));
+        assertEquals(MEDICINES, ids.size());
+    }
+
+    private User user(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPassword("secret");
+        user.setRole(Role.PATIENT);
+        entityManager.persist(user);
+        return user;
+    }
+}
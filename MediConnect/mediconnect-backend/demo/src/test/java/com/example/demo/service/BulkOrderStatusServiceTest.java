@@ -0,0 +1,132 @@
+package com.example.demo.service;
+
+import com.example.demo.model.BulkOrderStatusResult;
+import com.example.demo.model.BulkOrderStatusResult.Outcome;
+import com.example.demo.model.DeliveryTracking.DeliveryStatus;
+import com.example.demo.model.MedicineOrder.OrderStatus;
+import com.example.demo.repository.DeliveryTrackingRepository;
+import com.example.demo.repository.MedicineOrderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BulkOrderStatusServiceTest {
+
+    private static final Timestamp CREATED_AT = Timestamp.valueOf("2026-01-05 09:00:00");
+
+    @Mock
+    private MedicineOrderRepository medicineOrderRepository;
+
+    @Mock
+    private PharmacyOrderStatsService pharmacyOrderStatsService;
+
+    @Mock
+    private PharmacyRevenueRollupService pharmacyRevenueRollupService;
+
+    @Mock
+    private OrderOutbox orderOutbox;
+
+    @Mock
+    private StockReservationService stockReservationService;
+
+    @Mock
+    private DeliveryTrackingRepository deliveryTrackingRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private BulkOrderStatusService bulkOrderStatusService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(bulkOrderStatusService, "maxBatchSize", 5);
+    }
+
+    @Test
+    @DisplayName("Allowed orders are written in one batch and the rest are reported per order")
+    void updateStatuses_MixedResults() {
+        when(medicineOrderRepository.lockStatusesForUpdate(any())).thenReturn(Arrays.asList(
+                new Object[]{1L, "ACCEPTED", 3L, CREATED_AT, BigDecimal.TEN},
+                new Object[]{2L, "PREPARING", 3L, CREATED_AT, BigDecimal.TEN},
+                new Object[]{3L, "DELIVERED", 3L, CREATED_AT, BigDecimal.TEN},
+                new Object[]{4L, "ACCEPTED", 9L, CREATED_AT, BigDecimal.TEN}));
+
+        List<BulkOrderStatusResult> results = bulkOrderStatusService.updateStatuses(3L,
+                Arrays.asList(1L, 2L, 3L, 4L, 5L, 1L), OrderStatus.READY_FOR_PICKUP);
+
+        assertEquals(5, results.size());
+        assertEquals(Outcome.UPDATED, results.get(0).getOutcome());
+        assertEquals(Outcome.UPDATED, results.get(1).getOutcome());
+        assertEquals(Outcome.CONFLICT, results.get(2).getOutcome());
+        assertEquals(OrderStatus.DELIVERED, results.get(2).getStatus());
+        assertEquals(Outcome.NOT_AUTHORIZED, results.get(3).getOutcome());
+        assertEquals(Outcome.NOT_FOUND, results.get(4).getOutcome());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> batch = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), batch.capture());
+        assertEquals(2, batch.getValue().size());
+        assertEquals(1L, batch.getValue().get(0)[2]);
+        assertEquals(2L, batch.getValue().get(1)[2]);
+
+        verify(pharmacyOrderStatsService).recordTransitions(3L, Map.of(
+                OrderStatus.ACCEPTED, -1L,
+                OrderStatus.PREPARING, -1L,
+                OrderStatus.READY_FOR_PICKUP, 2L));
+        verifyNoInteractions(deliveryTrackingRepository);
+    }
+
+    @Test
+    @DisplayName("Delivered orders close their open deliveries in the same transaction")
+    void updateStatuses_ClosesDeliveries() {
+        when(medicineOrderRepository.lockStatusesForUpdate(any())).thenReturn(Arrays.asList(
+                new Object[]{1L, "OUT_FOR_DELIVERY", 3L, CREATED_AT, BigDecimal.TEN},
+                new Object[]{2L, "OUT_FOR_DELIVERY", 3L, CREATED_AT, BigDecimal.TEN},
+                new Object[]{3L, "PENDING", 3L, CREATED_AT, BigDecimal.TEN}));
+
+        bulkOrderStatusService.updateStatuses(3L, List.of(1L, 2L, 3L), OrderStatus.DELIVERED);
+
+        verify(deliveryTrackingRepository).closeForOrders(eq(List.of(1L, 2L)), eq(DeliveryStatus.active()),
+                eq(DeliveryStatus.DELIVERED), notNull(), any());
+    }
+
+    @Test
+    @DisplayName("Nothing is written when no order can make the transition")
+    void updateStatuses_NoAllowedOrders() {
+        when(medicineOrderRepository.lockStatusesForUpdate(any())).thenReturn(List.<Object[]>of(new Object[]{1L, "PENDING", null, CREATED_AT, BigDecimal.TEN}));
+
+        List<BulkOrderStatusResult> results = bulkOrderStatusService.updateStatuses(3L, List.of(1L), OrderStatus.ACCEPTED);
+
+        assertFalse(results.get(0).isSuccess());
+        verifyNoInteractions(jdbcTemplate, pharmacyOrderStatsService, orderOutbox);
+    }
+
+    @Test
+    @DisplayName("Oversized batches and rejections are refused up front")
+    void updateStatuses_ValidatesRequest() {
+        assertThrows(RuntimeException.class, () -> bulkOrderStatusService.updateStatuses(3L,
+                Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L), OrderStatus.PREPARING));
+        assertThrows(RuntimeException.class, () -> bulkOrderStatusService.updateStatuses(3L,
+                List.of(1L), OrderStatus.REJECTED));
+        verifyNoInteractions(medicineOrderRepository);
+    }
+}
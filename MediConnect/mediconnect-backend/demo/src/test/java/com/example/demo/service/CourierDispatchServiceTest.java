@@ -0,0 +1,198 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Courier;
+import com.example.demo.model.DeliveryTracking.DeliveryStatus;
+import com.example.demo.model.MedicineOrder.OrderStatus;
+import com.example.demo.repository.CourierRepository;
+import com.example.demo.repository.DeliveryTrackingRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CourierDispatchServiceTest {
+
+    @Mock
+    private CourierRepository courierRepository;
+
+    @Mock
+    private DeliveryTrackingRepository deliveryTrackingRepository;
+
+    @Mock
+    private PharmacySpatialIndex pharmacySpatialIndex;
+
+    @Mock
+    private BulkOrderStatusService bulkOrderStatusService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private CourierDispatchService courierDispatchService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(courierDispatchService, "cellSizeDeg", 0.02);
+        ReflectionTestUtils.setField(courierDispatchService, "maxPickupKm", 15.0);
+        ReflectionTestUtils.setField(courierDispatchService, "staleSeconds", 120L);
+        ReflectionTestUtils.setField(courierDispatchService, "maxClaimAttempts", 5);
+        courierDispatchService.start();
+        lenient().when(courierRepository.findById(anyLong())).thenAnswer(invocation -> {
+            Courier courier = new Courier();
+            courier.setId(invocation.getArgument(0));
+            courier.setName("Courier " + courier.getId());
+            courier.setPhone("90000" + courier.getId());
+            return Optional.of(courier);
+        });
+        lenient().when(deliveryTrackingRepository.assignRun(anyString(), anyLong(), any(), any(), any(), any(), any(), any())).thenReturn(1);
+    }
+
+    @Test
+    @DisplayName("A run goes to the nearest free courier, and that courier is not offered again")
+    void dispatchRun_PicksNearest() {
+        when(courierRepository.claimForRun(anyLong(), anyString(), any(), any(), any())).thenReturn(1);
+        when(courierRepository.releaseFromRun(eq(2L), eq("RUN-1"), any(), any(), any(), any())).thenReturn(1);
+        courierDispatchService.updateLocation(1L, 12.99, 77.59); // About 2 km north
+        courierDispatchService.updateLocation(2L, 12.975, 77.59); // About 0.5 km north
+        courierDispatchService.updateLocation(3L, 13.5, 77.59); // Out of reach
+
+        assertEquals(2L, courierDispatchService.dispatchRun("RUN-1", 12.97, 77.59));
+        assertEquals(1L, courierDispatchService.dispatchRun("RUN-2", 12.97, 77.59));
+        assertNull(courierDispatchService.dispatchRun("RUN-3", 12.97, 77.59));
+
+        courierDispatchService.completeRun(2L);
+        assertEquals(2L, courierDispatchService.dispatchRun("RUN-3", 12.97, 77.59));
+        assertThrows(RuntimeException.class, () -> courierDispatchService.goOffline(1L));
+    }
+
+    @Test
+    @DisplayName("Concurrent dispatches never give one courier two runs")
+    void dispatchRun_ConcurrentClaimsAreExclusive() throws Exception {
+        int couriers = 2000;
+        int runs = 3000;
+        int threads = 8;
+        // Stands in for the guarded update: a second claim of a busy courier would be rejected there
+        Set<Long> busy = ConcurrentHashMap.newKeySet();
+        Set<Long> doubleClaims = ConcurrentHashMap.newKeySet();
+        when(courierRepository.claimForRun(anyLong(), anyString(), any(), any(), any())).thenAnswer(invocation -> {
+            Long courierId = invocation.getArgument(0);
+            if (!busy.add(courierId)) {
+                doubleClaims.add(courierId);
+                return 0;
+            }
+            return 1;
+        });
+        for (long id = 1; id <= couriers; id++) {
+            // Spread over about 10 x 10 km around the pharmacies
+            courierDispatchService.updateLocation(id, 12.92 + (id % 50) * 0.002, 77.54 + (id / 50) * 0.0025);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                List<Long> assigned = new ArrayList<>();
+                for (int i = thread; i < runs; i += threads) {
+                    Long courierId = courierDispatchService.dispatchRun("RUN-" + i, 12.97 + (i % 7) * 0.001, 77.59);
+                    if (courierId != null) {
+                        assigned.add(courierId);
+                    }
+                }
+                return assigned;
+            }));
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        Set<Long> seen = new HashSet<>();
+        int dispatched = 0;
+        for (Future<List<Long>> future : futures) {
+            for (Long courierId : future.get(60, TimeUnit.SECONDS)) {
+                assertTrue(seen.add(courierId), "Courier " + courierId + " got two runs");
+                dispatched++;
+            }
+        }
+        long elapsedMicros = (System.nanoTime() - started) / 1000;
+        executor.shutdown();
+
+        Map<String, Object> metrics = courierDispatchService.getMetrics();
+        System.out.printf("Dispatched %d runs to %d couriers on %d threads in %d ms (%.0f dispatches/s), %s claim conflicts%n",
+                dispatched, couriers, threads, elapsedMicros / 1000, runs * 1e6 / elapsedMicros, metrics.get("claimConflicts"));
+        assertTrue(doubleClaims.isEmpty());
+        assertEquals(couriers, dispatched);
+        assertEquals(0, metrics.get("freeCouriers"));
+    }
+
+    @Test
+    @DisplayName("Taking a run sends its orders out for delivery and completing it delivers them with the courier's release")
+    void completeRun_ClosesStops() {
+        when(deliveryTrackingRepository.findOrdersOfRun("RUN-1")).thenReturn(List.of(new Object[]{10L, 3L}, new Object[]{11L, 3L}));
+        when(courierRepository.claimForRun(anyLong(), anyString(), any(), any(), any())).thenReturn(1);
+        when(courierRepository.releaseFromRun(eq(1L), eq("RUN-1"), eq(Courier.CourierStatus.IDLE), any(), any(), any())).thenReturn(1);
+        courierDispatchService.updateLocation(1L, 12.975, 77.59);
+        assertEquals(1L, courierDispatchService.dispatchRun("RUN-1", 12.97, 77.59));
+
+        courierDispatchService.completeRun(1L);
+
+        verify(deliveryTrackingRepository).finishRun(eq("RUN-1"), eq(1L), eq(DeliveryStatus.active()), eq(DeliveryStatus.DELIVERED), any());
+        InOrder lifecycle = inOrder(bulkOrderStatusService);
+        lifecycle.verify(bulkOrderStatusService).updateStatuses(3L, List.of(10L, 11L), OrderStatus.OUT_FOR_DELIVERY);
+        lifecycle.verify(bulkOrderStatusService).updateStatuses(3L, List.of(10L, 11L), OrderStatus.DELIVERED);
+        assertEquals(1L, courierDispatchService.dispatchRun("RUN-2", 12.97, 77.59));
+    }
+
+    @Test
+    @DisplayName("A courier the database no longer has on the run is not freed and its stops stay open")
+    void completeRun_LostRelease() {
+        when(courierRepository.claimForRun(anyLong(), anyString(), any(), any(), any())).thenReturn(1);
+        when(courierRepository.releaseFromRun(anyLong(), anyString(), any(), any(), any(), any())).thenReturn(0);
+        courierDispatchService.updateLocation(1L, 12.975, 77.59);
+        assertEquals(1L, courierDispatchService.dispatchRun("RUN-1", 12.97, 77.59));
+
+        assertThrows(RuntimeException.class, () -> courierDispatchService.completeRun(1L));
+
+        verify(deliveryTrackingRepository, never()).finishRun(any(), any(), any(), any(), any());
+        verify(bulkOrderStatusService, never()).updateStatuses(any(), any(), eq(OrderStatus.DELIVERED));
+        assertNull(courierDispatchService.dispatchRun("RUN-2", 12.97, 77.59));
+    }
+
+    @Test
+    @DisplayName("A claim that fails to store gives the courier back for the next run")
+    void dispatchRun_UndoesClaimWhenStoreFails() {
+        when(courierRepository.claimForRun(eq(1L), eq("RUN-1"), any(), any(), any())).thenThrow(new RuntimeException("Lock timeout"));
+        when(courierRepository.claimForRun(eq(1L), eq("RUN-2"), any(), any(), any())).thenReturn(1);
+        courierDispatchService.updateLocation(1L, 12.975, 77.59);
+
+        assertNull(courierDispatchService.dispatchRun("RUN-1", 12.97, 77.59));
+        assertEquals(1L, courierDispatchService.getMetrics().get("claimFailures"));
+        assertEquals(1, courierDispatchService.getMetrics().get("freeCouriers"));
+
+        assertEquals(1L, courierDispatchService.dispatchRun("RUN-2", 12.97, 77.59));
+    }
+}
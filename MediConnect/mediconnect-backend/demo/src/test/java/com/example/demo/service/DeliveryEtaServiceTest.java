@@ -0,0 +1,122 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CourierPosition;
+import com.example.demo.model.DeliveryEta;
+import com.example.demo.utils.GeoUtils;
+import com.example.demo.utils.TravelSpeedGrid;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeliveryEtaServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2026, 5, 1, 10, 0);
+
+    @Mock
+    private GeocodingService geocodingService;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private DeliveryEtaService deliveryEtaService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(deliveryEtaService, "roadFactor", 1.0);
+        ReflectionTestUtils.setField(deliveryEtaService, "defaultSpeedKmh", 20.0);
+        ReflectionTestUtils.setField(deliveryEtaService, "minSpeedKmh", 5.0);
+        ReflectionTestUtils.setField(deliveryEtaService, "maxSpeedKmh", 60.0);
+        ReflectionTestUtils.setField(deliveryEtaService, "smoothingSeconds", 60.0);
+        ReflectionTestUtils.setField(deliveryEtaService, "courierWeight", 0.5);
+        ReflectionTestUtils.setField(deliveryEtaService, "minCourierSamples", 2);
+        lenient().when(geocodingService.getCoordinates("560001")).thenReturn(new double[]{12.9716, 77.5946});
+    }
+
+    @Test
+    @DisplayName("Typical speed of the area is used until the courier has its own speed samples")
+    void update_BlendsGridAndCourierSpeed() {
+        deliveryEtaService.setGrid(TravelSpeedGrid.builder(0.01, 1).add(12.905, 77.595, 10, 30.0).build());
+
+        DeliveryEta first = deliveryEtaService.update("560001", position(12.905, 77.595, 40.0, T0));
+        double distanceKm = GeoUtils.distanceKm(12.905, 77.595, 12.9716, 77.5946);
+        assertEquals(distanceKm, first.getDistanceKm(), 1e-9);
+        assertEquals(30.0, first.getSpeedKmh(), 1e-9);
+        assertEquals((int) Math.ceil(distanceKm / 30.0 * 60), first.getMinutes());
+        assertEquals(T0.plusMinutes(first.getMinutes()), first.getEstimatedArrival());
+
+        DeliveryEta second = deliveryEtaService.update("560001", position(12.9052, 77.5953, 40.0, T0.plusSeconds(10)));
+        assertEquals(35.0, second.getSpeedKmh(), 1e-9);
+        verify(geocodingService, times(1)).getCoordinates("560001");
+    }
+
+    @Test
+    @DisplayName("A position older than the last one leaves the estimate alone")
+    void update_IgnoresOutOfOrderPositions() {
+        DeliveryEta latest = deliveryEtaService.update("560001", position(12.95, 77.59, null, T0.plusSeconds(30)));
+        DeliveryEta late = deliveryEtaService.update("560001", position(12.80, 77.59, null, T0));
+
+        assertSame(latest, late);
+        assertSame(latest, deliveryEtaService.getEta("TRK-1"));
+        assertEquals(20.0, latest.getSpeedKmh(), 1e-9);
+    }
+
+    private static CourierPosition position(double lat, double lng, Double speedKmh, LocalDateTime at) {
+        return new CourierPosition("TRK-1", 7L, lat, lng, speedKmh, null, at, at);
+    }
+
+    @Test
+    @DisplayName("The grid is rebuilt from a forward-only cursor inside a read-only transaction")
+    void rebuildGrid_StreamsHistory() throws Exception {
+        ReflectionTestUtils.setField(deliveryEtaService, "gridCellDeg", 0.01);
+        ReflectionTestUtils.setField(deliveryEtaService, "gridMinSamples", 1);
+        ReflectionTestUtils.setField(deliveryEtaService, "gridDays", 28);
+        ReflectionTestUtils.setField(deliveryEtaService, "gridFetchSize", 5000);
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString(), eq(ResultSet.TYPE_FORWARD_ONLY), eq(ResultSet.CONCUR_READ_ONLY)))
+                .thenReturn(statement);
+        ResultSet rs = mock(ResultSet.class);
+        // One leg of about 0.22 km in 30 seconds
+        when(rs.getTimestamp(3)).thenReturn(Timestamp.valueOf(T0.plusSeconds(30)));
+        when(rs.getTimestamp(6)).thenReturn(Timestamp.valueOf(T0));
+        when(rs.getDouble(1)).thenReturn(12.902);
+        when(rs.getDouble(2)).thenReturn(77.595);
+        when(rs.getDouble(4)).thenReturn(12.900);
+        when(rs.getDouble(5)).thenReturn(77.595);
+        doAnswer(invocation -> {
+            assertSame(statement, invocation.<PreparedStatementCreator>getArgument(0).createPreparedStatement(connection));
+            invocation.<RowCallbackHandler>getArgument(1).processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        deliveryEtaService.rebuildGrid();
+
+        verify(statement).setFetchSize(5000);
+        verify(transactionManager).getTransaction(argThat(definition -> definition.isReadOnly()));
+        assertEquals(1L, ((Number) deliveryEtaService.getMetrics().get("gridSamples")).longValue());
+    }
+}
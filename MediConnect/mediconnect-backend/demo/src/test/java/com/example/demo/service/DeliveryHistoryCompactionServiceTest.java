@@ -0,0 +1,158 @@
+package com.example.demo.service;
+
+import com.example.demo.model.DeliveryTrackArchive;
+import com.example.demo.repository.DeliveryTrackArchiveRepository;
+import com.example.demo.repository.DeliveryTrackingRepository;
+import com.example.demo.utils.TrackPolyline;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeliveryHistoryCompactionServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2026, 3, 1, 10, 0);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DeliveryTrackArchiveRepository deliveryTrackArchiveRepository;
+
+    @Mock
+    private DeliveryTrackingRepository deliveryTrackingRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private DeliveryHistoryCompactionService compactionService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(compactionService, "toleranceMeters", 10.0);
+        ReflectionTestUtils.setField(compactionService, "minAgeDays", 30L);
+        ReflectionTestUtils.setField(compactionService, "batchSize", 50);
+        ReflectionTestUtils.setField(compactionService, "deleteChunk", 2);
+    }
+
+    @Test
+    @DisplayName("A finished delivery is archived before its raw rows are deleted in chunks up to the last id read")
+    void compactFinished_ArchivesThenDeletes() throws Exception {
+        when(jdbcTemplate.queryForList(argThat((String sql) -> sql.contains("'DELIVERED'") && sql.contains("'CANCELLED'")
+                && !sql.contains("'IN_TRANSIT'")), eq(Long.class), any(), eq("LOCATION_UPDATE"), eq(50))).thenReturn(List.of(42L));
+        // Out of id order: the row with the highest id is not the latest
+        rawRows(row(12.9700, 77.5900, T0, 101), row(12.9720, 77.5900, T0.plusSeconds(30), 105),
+                row(12.9740, 77.5900, T0.plusSeconds(60), 103), row(12.9760, 77.5920, T0.plusSeconds(90), 102),
+                row(12.9780, 77.5940, T0.plusSeconds(120), 104));
+        when(deliveryTrackArchiveRepository.findById(42L)).thenReturn(Optional.empty());
+        when(jdbcTemplate.update(startsWith("DELETE FROM delivery_updates"), eq(42L), eq("LOCATION_UPDATE"), eq(105L), eq(2)))
+                .thenReturn(2, 2, 1);
+
+        compactionService.compactFinished();
+
+        ArgumentCaptor<DeliveryTrackArchive> saved = ArgumentCaptor.forClass(DeliveryTrackArchive.class);
+        InOrder order = inOrder(deliveryTrackArchiveRepository, jdbcTemplate);
+        order.verify(deliveryTrackArchiveRepository).save(saved.capture());
+        order.verify(jdbcTemplate, times(3)).update(startsWith("DELETE FROM delivery_updates"), eq(42L), eq("LOCATION_UPDATE"), eq(105L), eq(2));
+
+        DeliveryTrackArchive archive = saved.getValue();
+        assertEquals(42L, archive.getDeliveryTrackingId());
+        assertEquals(5, archive.getRawPoints());
+        assertEquals(T0, archive.getStartedAt());
+        assertEquals(T0.plusSeconds(120), archive.getEndedAt());
+        List<TrackPolyline.Point> decoded = TrackPolyline.decode(archive.getPolyline(), T0.toEpochSecond(ZoneOffset.UTC));
+        assertEquals(archive.getKeptPoints(), decoded.size());
+        assertTrue(decoded.size() < 5); // The straight stretch at the start is simplified away
+        assertEquals(5L, compactionService.getMetrics().get("rowsDeleted"));
+        assertEquals(0L, compactionService.getMetrics().get("failures"));
+    }
+
+    @Test
+    @DisplayName("Rows left over by an earlier pass are folded into the existing archive")
+    void compact_FoldsIntoExistingArchive() throws Exception {
+        List<TrackPolyline.Point> archived = List.of(
+                new TrackPolyline.Point(12.9700, 77.5900, T0.toEpochSecond(ZoneOffset.UTC)),
+                new TrackPolyline.Point(12.9760, 77.5920, T0.plusSeconds(90).toEpochSecond(ZoneOffset.UTC)));
+        DeliveryTrackArchive existing = new DeliveryTrackArchive();
+        existing.setDeliveryTrackingId(42L);
+        existing.setPolyline(TrackPolyline.encode(archived, T0.toEpochSecond(ZoneOffset.UTC)));
+        existing.setStartedAt(T0);
+        existing.setEndedAt(T0.plusSeconds(90));
+        existing.setRawPoints(4);
+        existing.setKeptPoints(2);
+        when(deliveryTrackArchiveRepository.findById(42L)).thenReturn(Optional.of(existing));
+        rawRows(row(12.9780, 77.5960, T0.plusSeconds(120), 210), row(12.9800, 77.5990, T0.plusSeconds(150), 211));
+        when(jdbcTemplate.update(startsWith("DELETE FROM delivery_updates"), eq(42L), eq("LOCATION_UPDATE"), eq(211L), eq(2)))
+                .thenReturn(2, 0);
+
+        assertEquals(2, compactionService.compact(42L));
+
+        ArgumentCaptor<DeliveryTrackArchive> saved = ArgumentCaptor.forClass(DeliveryTrackArchive.class);
+        verify(deliveryTrackArchiveRepository).save(saved.capture());
+        DeliveryTrackArchive archive = saved.getValue();
+        assertSame(existing, archive);
+        assertEquals(6, archive.getRawPoints());
+        assertEquals(T0, archive.getStartedAt());
+        assertEquals(T0.plusSeconds(150), archive.getEndedAt());
+        List<TrackPolyline.Point> decoded = TrackPolyline.decode(archive.getPolyline(), T0.toEpochSecond(ZoneOffset.UTC));
+        assertEquals(4, decoded.size());
+        assertEquals(12.9700, decoded.get(0).getLatitude(), 1e-5);
+        assertEquals(12.9800, decoded.get(3).getLatitude(), 1e-5);
+    }
+
+    @Test
+    @DisplayName("A delivery with no raw rows left is not touched")
+    void compact_NothingToDo() {
+        rawRows();
+
+        assertEquals(0, compactionService.compact(42L));
+
+        verifyNoInteractions(deliveryTrackArchiveRepository, transactionManager);
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rawRows(ResultSet... rows) {
+        when(jdbcTemplate.query(startsWith("SELECT latitude, longitude, timestamp, id"), any(RowMapper.class), eq(42L), eq("LOCATION_UPDATE")))
+                .thenAnswer(invocation -> {
+                    RowMapper<TrackPolyline.Point> mapper = invocation.getArgument(1);
+                    List<TrackPolyline.Point> points = new ArrayList<>();
+                    for (int i = 0; i < rows.length; i++) {
+                        points.add(mapper.mapRow(rows[i], i));
+                    }
+                    return points;
+                });
+    }
+
+    private static ResultSet row(double latitude, double longitude, LocalDateTime at, long id) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getDouble(1)).thenReturn(latitude);
+        when(rs.getDouble(2)).thenReturn(longitude);
+        when(rs.getTimestamp(3)).thenReturn(Timestamp.valueOf(at));
+        when(rs.getLong(4)).thenReturn(id);
+        return rs;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CourierPosition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeliveryLocationStreamServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.now().minusMinutes(5);
+
+    @Mock
+    private DeliveryTrackingService deliveryTrackingService;
+
+    @Mock
+    private DeliveryEtaService deliveryEtaService;
+
+    @InjectMocks
+    private DeliveryLocationStreamService deliveryLocationStreamService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(deliveryLocationStreamService, "timeoutMs", 60000L);
+        ReflectionTestUtils.setField(deliveryLocationStreamService, "tickMs", 3600000L); // Ticks are driven by the test
+        ReflectionTestUtils.setField(deliveryLocationStreamService, "minIntervalMs", 60000L);
+        ReflectionTestUtils.setField(deliveryLocationStreamService, "heartbeatMs", 600000L);
+        ReflectionTestUtils.setField(deliveryLocationStreamService, "maxConnections", 1);
+        ReflectionTestUtils.setField(deliveryLocationStreamService, "senders", 1);
+        ReflectionTestUtils.setField(deliveryLocationStreamService, "queueCapacity", 10);
+        deliveryLocationStreamService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        deliveryLocationStreamService.stop();
+    }
+
+    @Test
+    @DisplayName("The first update carries every field, later ones only what changed")
+    void delta_OnlyChangedFields() {
+        CourierPosition first = new CourierPosition("TRK-1", 7L, 12.97, 77.59, 20.0, 90.0, T0, T0);
+        CourierPosition moved = new CourierPosition("TRK-1", 7L, 12.98, 77.59, 20.0, 95.0, T0.plusSeconds(5), T0.plusSeconds(5));
+
+        Map<String, Object> full = DeliveryLocationStreamService.delta(null, first);
+        assertEquals(5, full.size());
+
+        Map<String, Object> delta = DeliveryLocationStreamService.delta(first, moved);
+        assertEquals(12.98, delta.get("latitude"));
+        assertEquals(77.59, delta.get("longitude"));
+        assertEquals(95.0, delta.get("heading"));
+        assertFalse(delta.containsKey("speedKmh"));
+        assertEquals(T0.plusSeconds(5), delta.get("recordedAt"));
+    }
+
+    @Test
+    @DisplayName("Moves inside a watcher's interval are held back and streams are capped per node")
+    void tick_CoalescesWithinInterval() {
+        when(deliveryTrackingService.isTracked("TRK-1")).thenReturn(true);
+        when(deliveryTrackingService.getCurrentPosition("TRK-1"))
+                .thenReturn(new CourierPosition("TRK-1", 7L, 12.97, 77.59, null, null, T0, T0))
+                .thenReturn(new CourierPosition("TRK-1", 7L, 12.98, 77.60, null, null, T0.plusSeconds(1), T0.plusSeconds(1)));
+
+        assertNotNull(deliveryLocationStreamService.subscribe("TRK-1", null));
+        deliveryLocationStreamService.tick();
+
+        Map<String, Object> metrics = deliveryLocationStreamService.getMetrics();
+        assertEquals(1, metrics.get("openStreams"));
+        assertEquals(1L, metrics.get("updatesCoalesced"));
+        assertThrows(RuntimeException.class, () -> deliveryLocationStreamService.subscribe("TRK-1", null));
+    }
+
+    @Test
+    @DisplayName("Unknown tracking numbers cannot be watched")
+    void subscribe_RejectsUnknownDelivery() {
+        when(deliveryTrackingService.isTracked("TRK-X")).thenReturn(false);
+
+        assertThrows(RuntimeException.class, () -> deliveryLocationStreamService.subscribe("TRK-X", null));
+        assertEquals(0, deliveryLocationStreamService.getMetrics().get("openStreams"));
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.demo.service;
+
+import com.example.demo.model.DeliveryTracking;
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.MedicineOrder.OrderStatus;
+import com.example.demo.model.OrderEvent;
+import com.example.demo.model.PharmacyStore;
+import com.example.demo.repository.DeliveryTrackingRepository;
+import com.example.demo.repository.MedicineOrderRepository;
+import com.example.demo.repository.PharmacyStoreRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeliveryRunServiceTest {
+
+    @Mock
+    private MedicineOrderRepository medicineOrderRepository;
+
+    @Mock
+    private PharmacyStoreRepository pharmacyStoreRepository;
+
+    @Mock
+    private DeliveryTrackingRepository deliveryTrackingRepository;
+
+    @Mock
+    private GeocodingService geocodingService;
+
+    @Mock
+    private CourierDispatchService courierDispatchService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private DeliveryRunService deliveryRunService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(deliveryRunService, "maxStops", 6);
+        ReflectionTestUtils.setField(deliveryRunService, "maxRunMinutes", 120.0);
+        ReflectionTestUtils.setField(deliveryRunService, "serviceMinutes", 4.0);
+        ReflectionTestUtils.setField(deliveryRunService, "deliveryMinutes", 120L);
+        ReflectionTestUtils.setField(deliveryRunService, "batchWindowMinutes", 0L);
+        ReflectionTestUtils.setField(deliveryRunService, "maxOrders", 1000);
+        ReflectionTestUtils.setField(deliveryRunService, "queueCapacity", 10);
+        ReflectionTestUtils.setField(deliveryRunService, "unlocatedRetryMinutes", 60L);
+        ReflectionTestUtils.setField(deliveryRunService, "speedKmh", 20.0);
+        ReflectionTestUtils.setField(deliveryRunService, "roadFactor", 1.3);
+        deliveryRunService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        deliveryRunService.stop();
+    }
+
+    @Test
+    @DisplayName("An order that became ready is planned after the outbox transaction commits, not inside it")
+    void onOrderEvent_PlansAfterCommit() {
+        PharmacyStore pharmacy = new PharmacyStore();
+        pharmacy.setId(3L);
+        pharmacy.setLatitude(12.97);
+        pharmacy.setLongitude(77.59);
+        MedicineOrder order = new MedicineOrder();
+        order.setId(10L);
+        order.setDeliveryPincode("560001");
+        order.setUpdatedAt(LocalDateTime.now());
+        when(pharmacyStoreRepository.findById(3L)).thenReturn(Optional.of(pharmacy));
+        when(medicineOrderRepository.findUnroutedOrders(eq(3L), eq(OrderStatus.READY_FOR_PICKUP), any(), any(), any()))
+                .thenReturn(List.of(order));
+        when(medicineOrderRepository.lockForRouting(Set.of(10L), "READY_FOR_PICKUP")).thenReturn(List.of(10L));
+        when(geocodingService.getCoordinates("560001")).thenReturn(new double[]{12.98, 77.60});
+
+        TransactionSynchronizationManager.initSynchronization();
+        deliveryRunService.onOrderEvent(OrderEvent.of(OrderEvent.Type.STATUS_CHANGED, 10L, 3L,
+                OrderStatus.PREPARING, OrderStatus.READY_FOR_PICKUP));
+
+        verifyNoInteractions(pharmacyStoreRepository, geocodingService, courierDispatchService, transactionManager);
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+        deliveryRunService.stop();
+
+        verify(pharmacyStoreRepository).findById(3L);
+        verify(deliveryTrackingRepository).saveAll(argThat(trackings -> trackings.iterator().hasNext()));
+        verify(courierDispatchService).dispatchRun(startsWith("RUN"), eq(12.97), eq(77.59));
+        assertEquals(1L, deliveryRunService.getMetrics().get("runsPlanned"));
+    }
+
+    @Test
+    @DisplayName("A planning failure stays on the planner thread and nothing is planned for a rolled back transaction")
+    void onOrderEvent_FailureDoesNotReachCaller() {
+        when(pharmacyStoreRepository.findById(3L)).thenThrow(new RuntimeException("Database unavailable"));
+
+        TransactionSynchronizationManager.initSynchronization();
+        deliveryRunService.onOrderEvent(OrderEvent.of(OrderEvent.Type.STATUS_CHANGED, 10L, 4L,
+                OrderStatus.PREPARING, OrderStatus.READY_FOR_PICKUP));
+        List<TransactionSynchronization> rolledBack = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        rolledBack.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertDoesNotThrow(() -> deliveryRunService.onOrderEvent(OrderEvent.of(OrderEvent.Type.STATUS_CHANGED, 11L, 3L,
+                OrderStatus.PREPARING, OrderStatus.READY_FOR_PICKUP)));
+        deliveryRunService.stop();
+
+        verify(pharmacyStoreRepository, never()).findById(4L);
+        assertEquals(1L, deliveryRunService.getMetrics().get("planFailures"));
+        verifyNoInteractions(courierDispatchService);
+    }
+
+    @Test
+    @DisplayName("Orders whose pincode cannot be located are looked up once and flagged instead of routed")
+    void planRuns_FlagsUnlocatedOrders() {
+        when(pharmacyStoreRepository.findByUserId(30L)).thenReturn(Optional.of(pharmacy()));
+        when(medicineOrderRepository.findUnroutedOrders(eq(3L), eq(OrderStatus.READY_FOR_PICKUP), any(), any(), any()))
+                .thenReturn(List.of(order(10L, "000000"), order(11L, "000000")));
+        when(geocodingService.getCoordinates("000000")).thenReturn(null);
+
+        Map<String, Object> result = deliveryRunService.planRunsForUser(30L);
+
+        verify(geocodingService, times(1)).getCoordinates("000000");
+        verify(medicineOrderRepository).markDeliveryUnlocated(eq(List.of(10L, 11L)), any());
+        verify(medicineOrderRepository, never()).lockForRouting(any(), any());
+        verifyNoInteractions(courierDispatchService);
+        assertEquals(2, result.get("ordersUnlocated"));
+        assertEquals(0, result.get("ordersRouted"));
+    }
+
+    @Test
+    @DisplayName("Orders another planner holds or has already put on a run are left out of the new runs")
+    void planRuns_SkipsOrdersTakenElsewhere() {
+        when(pharmacyStoreRepository.findByUserId(30L)).thenReturn(Optional.of(pharmacy()));
+        when(medicineOrderRepository.findUnroutedOrders(eq(3L), eq(OrderStatus.READY_FOR_PICKUP), any(), any(), any()))
+                .thenReturn(List.of(order(10L, "560001"), order(11L, "560001"), order(12L, "560001")));
+        when(geocodingService.getCoordinates("560001")).thenReturn(new double[]{12.98, 77.60});
+        // 12 is locked by another node; 11 was routed by one that committed after this pass read it
+        when(medicineOrderRepository.lockForRouting(Set.of(10L, 11L, 12L), "READY_FOR_PICKUP")).thenReturn(List.of(10L, 11L));
+        when(deliveryTrackingRepository.findTrackedOrderIds(argThat(ids -> ids.containsAll(List.of(10L, 11L)) && ids.size() == 2)))
+                .thenReturn(List.of(11L));
+
+        Map<String, Object> result = deliveryRunService.planRunsForUser(30L);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<DeliveryTracking>> saved = ArgumentCaptor.forClass(List.class);
+        verify(deliveryTrackingRepository).saveAll(saved.capture());
+        assertEquals(List.of(10L), saved.getValue().stream().map(tracking -> tracking.getOrder().getId()).toList());
+        assertEquals(1, result.get("ordersRouted"));
+        verify(medicineOrderRepository, never()).markDeliveryUnlocated(any(), any());
+    }
+
+    private static PharmacyStore pharmacy() {
+        PharmacyStore pharmacy = new PharmacyStore();
+        pharmacy.setId(3L);
+        pharmacy.setLatitude(12.97);
+        pharmacy.setLongitude(77.59);
+        return pharmacy;
+    }
+
+    private static MedicineOrder order(Long id, String pincode) {
+        MedicineOrder order = new MedicineOrder();
+        order.setId(id);
+        order.setDeliveryPincode(pincode);
+        order.setUpdatedAt(LocalDateTime.now());
+        return order;
+    }
+}
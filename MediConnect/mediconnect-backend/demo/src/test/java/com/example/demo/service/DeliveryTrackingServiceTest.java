@@ -0,0 +1,135 @@
+package com.example.demo.service;
+
+import com.example.demo.model.DeliveryPing;
+import com.example.demo.model.DeliveryTracking.DeliveryStatus;
+import com.example.demo.repository.DeliveryTrackingRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeliveryTrackingServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.now().minusMinutes(5);
+
+    @Mock
+    private DeliveryTrackingRepository deliveryTrackingRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DeliveryEtaService deliveryEtaService;
+
+    @InjectMocks
+    private DeliveryTrackingService deliveryTrackingService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(deliveryTrackingService, "maxPingsPerRequest", 500);
+        ReflectionTestUtils.setField(deliveryTrackingService, "queueCapacity", 100);
+        ReflectionTestUtils.setField(deliveryTrackingService, "flushBatchSize", 100);
+        deliveryTrackingService.start();
+    }
+
+    @Test
+    @DisplayName("Pings update the position in memory; an older fix arriving late does not move it back")
+    void ingest_KeepsNewestPosition() {
+        List<Object[]> ref = new ArrayList<>();
+        ref.add(new Object[]{11L, 7L, DeliveryStatus.IN_TRANSIT, "560001"});
+        when(deliveryTrackingRepository.findRefByTrackingNumber("TRK-1")).thenReturn(ref);
+
+        Map<String, Object> result = deliveryTrackingService.ingest(List.of(
+                new DeliveryPing("TRK-1", 12.97, 77.59, T0.plusSeconds(10), 20.0, 90.0),
+                new DeliveryPing("TRK-1", 12.96, 77.58, T0, 18.0, 90.0),
+                new DeliveryPing("TRK-1", 95.0, 77.58, T0, null, null)));
+
+        assertEquals(2, result.get("accepted"));
+        assertEquals(1, result.get("rejected"));
+        assertEquals(12.97, deliveryTrackingService.getCurrentPosition("TRK-1").getLatitude());
+        assertEquals(7L, deliveryTrackingService.getCurrentPosition("TRK-1").getOrderId());
+        verify(deliveryTrackingRepository, times(1)).findRefByTrackingNumber("TRK-1");
+    }
+
+    @Test
+    @DisplayName("Pings for unknown or finished deliveries are rejected")
+    void ingest_RejectsInactiveDeliveries() {
+        List<Object[]> ref = new ArrayList<>();
+        ref.add(new Object[]{12L, 8L, DeliveryStatus.DELIVERED, "560002"});
+        when(deliveryTrackingRepository.findRefByTrackingNumber("TRK-2")).thenReturn(ref);
+        when(deliveryTrackingRepository.findRefByTrackingNumber("TRK-X")).thenReturn(List.of());
+
+        Map<String, Object> result = deliveryTrackingService.ingest(List.of(
+                new DeliveryPing("TRK-2", 12.97, 77.59, T0, null, null),
+                new DeliveryPing("TRK-X", 12.97, 77.59, T0, null, null)));
+
+        assertEquals(0, result.get("accepted"));
+        assertNull(deliveryTrackingService.getCurrentPosition("TRK-2"));
+    }
+
+    @Test
+    @DisplayName("A flush writes every ping as history and each moved delivery's position once")
+    @SuppressWarnings("unchecked")
+    void flush_BatchesHistoryAndPositions() {
+        List<Object[]> ref = new ArrayList<>();
+        ref.add(new Object[]{11L, 7L, DeliveryStatus.IN_TRANSIT, "560001"});
+        when(deliveryTrackingRepository.findRefByTrackingNumber("TRK-1")).thenReturn(ref);
+        deliveryTrackingService.ingest(List.of(
+                new DeliveryPing("TRK-1", 12.97, 77.59, T0, null, null),
+                new DeliveryPing("TRK-1", 12.98, 77.60, T0.plusSeconds(5), null, null),
+                new DeliveryPing("TRK-1", 12.99, 77.61, T0.plusSeconds(10), null, null)));
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE delivery_tracking"), anyList())).thenReturn(new int[]{1});
+
+        deliveryTrackingService.flush();
+
+        ArgumentCaptor<List<Object[]>> history = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO delivery_updates"), history.capture());
+        assertEquals(3, history.getValue().size());
+        ArgumentCaptor<List<Object[]>> positions = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("UPDATE delivery_tracking"), positions.capture());
+        assertEquals(1, positions.getValue().size());
+        assertEquals(12.99, positions.getValue().get(0)[0]);
+
+        deliveryTrackingService.flush();
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("A delivery finished after its first ping stops taking pings once a flush finds it finished")
+    @SuppressWarnings("unchecked")
+    void flush_StopsTrackingFinishedDelivery() {
+        List<Object[]> ref = new ArrayList<>();
+        ref.add(new Object[]{11L, 7L, DeliveryStatus.IN_TRANSIT, "560001"});
+        when(deliveryTrackingRepository.findRefByTrackingNumber("TRK-1")).thenReturn(ref);
+        deliveryTrackingService.ingest(List.of(new DeliveryPing("TRK-1", 12.97, 77.59, T0, null, null)));
+        // Delivered meanwhile, so the guarded position update matches no row
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE delivery_tracking"), anyList())).thenReturn(new int[]{0});
+
+        deliveryTrackingService.flush();
+
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("INSERT INTO delivery_updates"), anyList());
+        Map<String, Object> result = deliveryTrackingService.ingest(List.of(new DeliveryPing("TRK-1", 12.98, 77.60, T0.plusSeconds(5), null, null)));
+        assertEquals(0, result.get("accepted"));
+        assertEquals(1L, deliveryTrackingService.getMetrics().get("finishedDeliveries"));
+        verify(deliveryTrackingRepository, times(1)).findRefByTrackingNumber("TRK-1");
+
+        deliveryTrackingService.flush();
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("UPDATE delivery_tracking"), anyList());
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.demo.service;
+
+import com.example.demo.model.GeocodeCacheEntry;
+import com.example.demo.repository.GeocodeCacheRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GeocodingServiceTest {
+
+    private static final String ANSWER = "{\"results\":[{\"geometry\":{\"lat\":12.97,\"lng\":77.59}}]}";
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    @Mock
+    private GeocodeCacheRepository geocodeCacheRepository;
+
+    @Mock
+    private PincodeGeocoder pincodeGeocoder;
+
+    @InjectMocks
+    private GeocodingService geocodingService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(geocodingService, "apiKey", "test");
+        ReflectionTestUtils.setField(geocodingService, "maxEntries", 2);
+        ReflectionTestUtils.setField(geocodingService, "ttlHours", 24L);
+    }
+
+    @Test
+    @DisplayName("Expired entries are looked up again")
+    void getCoordinates_RefetchesAfterTtl() {
+        when(restTemplate.getForEntity(anyString(), eq(String.class))).thenReturn(ResponseEntity.ok(ANSWER));
+
+        geocodingService.getCoordinates("MG Road, Bengaluru");
+        geocodingService.getCoordinates("mg road,  bengaluru");
+        verify(restTemplate, times(1)).getForEntity(anyString(), eq(String.class));
+
+        ArgumentCaptor<GeocodeCacheEntry> saved = ArgumentCaptor.forClass(GeocodeCacheEntry.class);
+        verify(geocodeCacheRepository).save(saved.capture());
+        saved.getValue().setResolvedAt(LocalDateTime.now().minusHours(25));
+
+        geocodingService.getCoordinates("MG Road, Bengaluru");
+        verify(restTemplate, times(2)).getForEntity(anyString(), eq(String.class));
+    }
+
+    @Test
+    @DisplayName("The least recently used entry is evicted when the cache is full")
+    void getCoordinates_EvictsLeastRecentlyUsed() {
+        when(restTemplate.getForEntity(anyString(), eq(String.class))).thenReturn(ResponseEntity.ok(ANSWER));
+
+        geocodingService.getCoordinates("A street");
+        geocodingService.getCoordinates("B street");
+        geocodingService.getCoordinates("A street"); // B is now least recently used
+        geocodingService.getCoordinates("C street");
+        verify(restTemplate, times(3)).getForEntity(anyString(), eq(String.class));
+
+        geocodingService.getCoordinates("A street");
+        verify(restTemplate, times(3)).getForEntity(anyString(), eq(String.class));
+        geocodingService.getCoordinates("B street");
+        verify(restTemplate, times(4)).getForEntity(anyString(), eq(String.class));
+    }
+
+    @Test
+    @DisplayName("Concurrent misses for one address share a single upstream call")
+    void getCoordinates_CoalescesConcurrentMisses() throws Exception {
+        int threads = 8;
+        CountDownLatch release = new CountDownLatch(1);
+        when(restTemplate.getForEntity(anyString(), eq(String.class))).thenAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return ResponseEntity.ok(ANSWER);
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<double[]>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> geocodingService.getCoordinates("Indiranagar, Bengaluru")));
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((Long) geocodingService.getCacheStats().get("coalescedMisses") < threads - 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Future<double[]> future : futures) {
+            assertEquals(12.97, future.get(10, TimeUnit.SECONDS)[0], 1e-9);
+        }
+        executor.shutdown();
+
+        assertEquals(threads - 1L, geocodingService.getCacheStats().get("coalescedMisses"));
+        verify(restTemplate, times(1)).getForEntity(anyString(), eq(String.class));
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.demo.service;
+
+import com.example.demo.model.*;
+import com.example.demo.repository.MedicineOrderRepository;
+import com.example.demo.utils.OrderCursor;
+import com.example.demo.utils.Role;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.show-sql=false"
+})
+@Import(MedicineOrderDtoMapper.class)
+class MedicineOrderDtoMapperTest {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private MedicineOrderRepository medicineOrderRepository;
+
+    @Autowired
+    private MedicineOrderDtoMapper medicineOrderDtoMapper;
+
+    private Patient patient;
+    private Prescription prescription;
+    private PharmacyStore pharmacy;
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        Doctor doctor = new Doctor();
+        doctor.setFirstName("Asha");
+        doctor.setLastName("Rao");
+        doctor.setSpecialization("General");
+        doctor.setLicenseNumber("DOC-1");
+        doctor.setPhoneNumber("9000000001");
+        doctor.setEmail("asha@example.com");
+        doctor.setExperience(10);
+        doctor.setEducation("MBBS");
+        doctor.setHospital("City Hospital");
+        doctor.setAddress("1 Hospital Rd");
+        doctor.setUser(user("doctor"));
+        entityManager.persist(doctor);
+
+        patient = new Patient();
+        patient.setFirstName("Ravi");
+        patient.setLastName("Kumar");
+        patient.setPhoneNumber("9000000002");
+        patient.setEmail("ravi@example.com");
+        patient.setDateOfBirth("1990-01-01");
+        patient.setGender("M");
+        patient.setAddress("2 Main St");
+        patient.setUser(user("patient"));
+        entityManager.persist(patient);
+
+        pharmacy = new PharmacyStore();
+        pharmacy.setName("Corner Pharmacy");
+        pharmacy.setOwnerName("Meera");
+        pharmacy.setLicenseNumber("PH-1");
+        pharmacy.setPhoneNumber("9000000003");
+        pharmacy.setEmail("corner@example.com");
+        pharmacy.setAddress("3 Market St");
+        pharmacy.setUser(user("pharmacy"));
+        entityManager.persist(pharmacy);
+
+        Appointment appointment = new Appointment();
+        appointment.setPatient(patient);
+        appointment.setDoctor(doctor);
+        entityManager.persist(appointment);
+
+        prescription = new Prescription();
+        prescription.setAppointment(appointment);
+        prescription.setDoctor(doctor);
+        prescription.setPatient(patient);
+        entityManager.persist(prescription);
+
+        entityManager.flush();
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    @DisplayName("Converting a page of orders takes two statements regardless of page size")
+    void toDtos_UsesConstantStatementCount() {
+        createOrders(3);
+        assertEquals(2, statementsToLoadPage(3));
+
+        createOrders(9);
+        assertEquals(2, statementsToLoadPage(12));
+    }
+
+    @Test
+    @DisplayName("Batch conversion keeps each order's items, tracking and payment")
+    void toDtos_MapsAssociations() {
+        createOrders(4);
+        entityManager.clear();
+
+        List<MedicineOrderDto> dtos = medicineOrderDtoMapper.toDtos(loadPage());
+
+        assertEquals(4, dtos.size());
+        for (MedicineOrderDto dto : dtos) {
+            assertEquals(2, dto.getOrderItems().size());
+            assertEquals("Corner Pharmacy", dto.getPharmacy().getName());
+            assertEquals("Ravi", dto.getPatient().getFirstName());
+        }
+        assertEquals(2, dtos.stream().filter(dto -> dto.getDeliveryTracking() != null).count());
+        assertEquals(2, dtos.stream().filter(dto -> dto.getPayment() != null).count());
+    }
+
+    private long statementsToLoadPage(int expectedOrders) {
+        entityManager.clear();
+        statistics.clear();
+
+        List<MedicineOrderDto> dtos = medicineOrderDtoMapper.toDtos(loadPage());
+
+        assertEquals(expectedOrders, dtos.size());
+        return statistics.getPrepareStatementCount();
+    }
+
+    private List<MedicineOrder> loadPage() {
+        OrderCursor start = OrderCursor.NEWEST;
+        return medicineOrderRepository.findPatientOrdersBefore(entityManager.getReference(Patient.class, patient.getId()),
+                Arrays.asList(MedicineOrder.OrderStatus.values()), start.getCreatedAt(), start.getId(), PageRequest.of(0, 50));
+    }
+
+    private void createOrders(int count) {
+        for (int i = 0; i < count; i++) {
+            MedicineOrder order = new MedicineOrder();
+            order.setPrescription(prescription);
+            order.setPatient(patient);
+            order.setPharmacy(pharmacy);
+            order.setStatus(MedicineOrder.OrderStatus.ACCEPTED);
+            order.setDeliveryAddress("2 Main St");
+
+            List<OrderItem> items = new ArrayList<>();
+            for (int j = 0; j < 2; j++) {
+                OrderItem item = new OrderItem();
+                item.setOrder(order);
+                item.setPrescriptionMedicine(medicine());
+                item.setMedicineName("Medicine " + j);
+                item.setDosage("500mg");
+                item.setQuantityRequested(10);
+                items.add(item);
+            }
+            order.setOrderItems(items);
+
+            if (i % 2 == 0) {
+                DeliveryTracking tracking = new DeliveryTracking();
+                tracking.setOrder(order);
+                order.setDeliveryTracking(tracking);
+
+                OrderPayment payment = new OrderPayment();
+                payment.setOrder(order);
+                payment.setPaymentMethod(OrderPayment.PaymentMethod.UPI);
+                payment.setAmount(new BigDecimal("150.00"));
+                order.setPayment(payment);
+            }
+            entityManager.persist(order);
+        }
+        entityManager.flush();
+    }
+
+    private PrescriptionMedicine medicine() {
+        PrescriptionMedicine medicine = new PrescriptionMedicine();
+        medicine.setPrescription(prescription);
+        medicine.setMedicineName("Paracetamol");
+        medicine.setGenericName("Paracetamol");
+        medicine.setDosage("500mg");
+        medicine.setFrequency("Twice daily");
+        medicine.setDuration("5 days");
+        medicine.setQuantity(10);
+        medicine.setInstructions("After meals");
+        entityManager.persist(medicine);
+        return medicine;
+    }
+
+    private User user(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPassword("secret");
+        user.setRole(Role.PATIENT);
+        entityManager.persist(user);
+        return user;
+    }
+}
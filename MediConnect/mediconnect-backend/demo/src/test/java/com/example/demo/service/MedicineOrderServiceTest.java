@@ -0,0 +1,214 @@
+package com.example.demo.service;
+
+import com.example.demo.model.DeliveryTracking.DeliveryStatus;
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.MedicineOrder.OrderStatus;
+import com.example.demo.model.OrderEvent;
+import com.example.demo.model.OrderPharmacyRefusal;
+import com.example.demo.model.PharmacyStore;
+import com.example.demo.repository.DeliveryTrackingRepository;
+import com.example.demo.repository.MedicineOrderRepository;
+import com.example.demo.repository.OrderPharmacyRefusalRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MedicineOrderServiceTest {
+
+    @Mock
+    private MedicineOrderRepository medicineOrderRepository;
+
+    @Mock
+    private PharmacyOrderStatsService pharmacyOrderStatsService;
+
+    @Mock
+    private PharmacyRevenueRollupService pharmacyRevenueRollupService;
+
+    @Mock
+    private OrderOutbox orderOutbox;
+
+    @Mock
+    private StockReservationService stockReservationService;
+
+    @Mock
+    private OrderPharmacyRefusalRepository orderPharmacyRefusalRepository;
+
+    @Mock
+    private DeliveryTrackingRepository deliveryTrackingRepository;
+
+    @InjectMocks
+    private MedicineOrderService medicineOrderService;
+
+    private MedicineOrder order;
+
+    @BeforeEach
+    void setUp() {
+        PharmacyStore pharmacy = new PharmacyStore();
+        pharmacy.setId(3L);
+
+        order = new MedicineOrder();
+        order.setId(10L);
+        order.setPharmacy(pharmacy);
+        order.setStatus(OrderStatus.PHARMACY_ASSIGNED);
+        ReflectionTestUtils.setField(medicineOrderService, "maxAcceptTimeouts", 3);
+    }
+
+    @Test
+    @DisplayName("Transition table allows the normal flow and blocks jumps backwards")
+    void orderStatus_TransitionTable() {
+        assertTrue(OrderStatus.PHARMACY_ASSIGNED.canTransitionTo(OrderStatus.ACCEPTED));
+        assertTrue(OrderStatus.READY_FOR_PICKUP.canTransitionTo(OrderStatus.OUT_FOR_DELIVERY));
+        assertFalse(OrderStatus.DELIVERED.canTransitionTo(OrderStatus.PENDING));
+        assertFalse(OrderStatus.REFUNDED.canTransitionTo(OrderStatus.CANCELLED));
+        assertEquals(List.of(OrderStatus.PHARMACY_ASSIGNED), OrderStatus.sourcesOf(OrderStatus.ACCEPTED));
+    }
+
+    @Test
+    @DisplayName("Accepting an order another request already moved on is a conflict")
+    void acceptOrder_ConflictWhenAlreadyAccepted() {
+        order.setStatus(OrderStatus.ACCEPTED);
+        when(medicineOrderRepository.acceptIfAssigned(eq(10L), eq(3L), eq(OrderStatus.ACCEPTED), anyList(), any(), any()))
+                .thenReturn(0);
+        when(medicineOrderRepository.findById(10L)).thenReturn(Optional.of(order));
+
+        OrderStateConflictException conflict = assertThrows(OrderStateConflictException.class,
+                () -> medicineOrderService.acceptOrder(10L, 3L));
+
+        assertEquals(OrderStatus.ACCEPTED, conflict.getCurrentStatus());
+        verifyNoInteractions(pharmacyOrderStatsService);
+    }
+
+    @Test
+    @DisplayName("A different pharmacy cannot accept the order")
+    void acceptOrder_RejectsOtherPharmacy() {
+        when(medicineOrderRepository.acceptIfAssigned(eq(10L), eq(7L), any(), anyList(), any(), any())).thenReturn(0);
+        when(medicineOrderRepository.findById(10L)).thenReturn(Optional.of(order));
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> medicineOrderService.acceptOrder(10L, 7L));
+
+        assertFalse(error instanceof OrderStateConflictException);
+        assertEquals("Pharmacy not authorized to accept this order", error.getMessage());
+    }
+
+    @Test
+    @DisplayName("Status update uses the previous state returned by the conditional update")
+    void updateOrderStatus_RecordsPreviousState() {
+        List<Object[]> previous = Collections.singletonList(new Object[]{"ACCEPTED", 3L, Timestamp.valueOf("2026-01-05 09:00:00"), BigDecimal.TEN, null});
+        when(medicineOrderRepository.transitionStatus(eq(10L), anyList(), eq("PREPARING"), any())).thenReturn(previous);
+        when(medicineOrderRepository.findByIdWithPatientAndPrescription(10L)).thenReturn(Optional.of(order));
+
+        medicineOrderService.updateOrderStatus(10L, OrderStatus.PREPARING);
+
+        verify(pharmacyOrderStatsService).recordTransition(3L, OrderStatus.ACCEPTED, 3L, OrderStatus.PREPARING);
+        verify(medicineOrderRepository, never()).save(any());
+        verifyNoInteractions(deliveryTrackingRepository);
+    }
+
+    @Test
+    @DisplayName("Delivering or cancelling an order closes its open delivery")
+    void updateOrderStatus_ClosesDelivery() {
+        List<Object[]> outForDelivery = Collections.singletonList(new Object[]{"OUT_FOR_DELIVERY", 3L, Timestamp.valueOf("2026-01-05 09:00:00"), BigDecimal.TEN, null});
+        List<Object[]> preparing = Collections.singletonList(new Object[]{"PREPARING", 3L, Timestamp.valueOf("2026-01-05 09:00:00"), BigDecimal.TEN, null});
+        when(medicineOrderRepository.transitionStatus(eq(10L), anyList(), eq("DELIVERED"), any())).thenReturn(outForDelivery);
+        when(medicineOrderRepository.transitionStatus(eq(11L), anyList(), eq("CANCELLED"), any())).thenReturn(preparing);
+        when(medicineOrderRepository.findByIdWithPatientAndPrescription(anyLong())).thenReturn(Optional.of(order));
+
+        medicineOrderService.updateOrderStatus(10L, OrderStatus.DELIVERED);
+        medicineOrderService.updateOrderStatus(11L, OrderStatus.CANCELLED);
+
+        verify(deliveryTrackingRepository).closeForOrders(eq(List.of(10L)), eq(DeliveryStatus.active()),
+                eq(DeliveryStatus.DELIVERED), notNull(), any());
+        verify(deliveryTrackingRepository).closeForOrders(eq(List.of(11L)), eq(DeliveryStatus.active()),
+                eq(DeliveryStatus.CANCELLED), isNull(), any());
+    }
+
+    @Test
+    @DisplayName("Assignment, acceptance and rejection cannot be reached through a plain status update")
+    void updateOrderStatus_RefusesDedicatedTargets() {
+        when(medicineOrderRepository.findById(10L)).thenReturn(Optional.of(order));
+
+        for (OrderStatus target : List.of(OrderStatus.PHARMACY_ASSIGNED, OrderStatus.ACCEPTED,
+                OrderStatus.REJECTED, OrderStatus.ASSIGNMENT_FAILED)) {
+            OrderStateConflictException conflict = assertThrows(OrderStateConflictException.class,
+                    () -> medicineOrderService.updateOrderStatus(10L, target));
+            assertEquals(OrderStatus.PHARMACY_ASSIGNED, conflict.getCurrentStatus());
+            assertEquals(target, conflict.getRequestedStatus());
+        }
+        verify(medicineOrderRepository, never()).transitionStatus(any(), anyList(), any(), any());
+        verifyNoInteractions(pharmacyOrderStatsService, orderOutbox, stockReservationService);
+    }
+
+    @Test
+    @DisplayName("Rejection clears the pharmacy in one update and records the event that drives reassignment")
+    void rejectOrder_QueuesReassignment() {
+        when(medicineOrderRepository.rejectIfAssigned(eq(10L), eq(3L), eq(OrderStatus.REJECTED), anyList(), eq("Out of stock"), any()))
+                .thenReturn(1);
+        when(medicineOrderRepository.findByIdWithPatientAndPrescription(10L)).thenReturn(Optional.of(order));
+
+        medicineOrderService.rejectOrder(10L, 3L, "Out of stock");
+
+        verify(pharmacyOrderStatsService).recordTransition(3L, OrderStatus.PHARMACY_ASSIGNED, null, OrderStatus.REJECTED);
+        verify(orderPharmacyRefusalRepository).save(argThat(refusal -> refusal.getOrderId().equals(10L)
+                && refusal.getPharmacyId().equals(3L) && refusal.getReason() == OrderPharmacyRefusal.Reason.REJECTED));
+        verify(orderOutbox).record(argThat(event -> event.getType() == OrderEvent.Type.REJECTED
+                && event.getPharmacyId().equals(3L) && event.getOrderId().equals(10L)));
+    }
+
+    @Test
+    @DisplayName("An order not accepted in time is reassigned, and the pharmacy that let it sit is remembered")
+    void expireAssignment_RecordsTimeout() {
+        when(orderPharmacyRefusalRepository.countByOrderIdAndReason(10L, OrderPharmacyRefusal.Reason.TIMED_OUT)).thenReturn(1L);
+        when(medicineOrderRepository.rejectIfAssigned(eq(10L), eq(3L), eq(OrderStatus.REJECTED), anyList(), any(), any()))
+                .thenReturn(1);
+
+        assertTrue(medicineOrderService.expireAssignment(10L, 3L));
+
+        verify(orderPharmacyRefusalRepository).save(argThat(refusal -> refusal.getOrderId().equals(10L)
+                && refusal.getPharmacyId().equals(3L) && refusal.getReason() == OrderPharmacyRefusal.Reason.TIMED_OUT));
+        verify(pharmacyOrderStatsService).recordTransition(3L, OrderStatus.PHARMACY_ASSIGNED, null, OrderStatus.REJECTED);
+        verify(orderOutbox).record(argThat(event -> event.getType() == OrderEvent.Type.REJECTED && event.getOrderId().equals(10L)));
+        verify(orderOutbox, never()).record(argThat(event -> event.getType() == OrderEvent.Type.ESCALATED));
+    }
+
+    @Test
+    @DisplayName("After the last allowed timeout the order is parked and escalated instead of reassigned")
+    void expireAssignment_EscalatesAfterRepeatedTimeouts() {
+        when(orderPharmacyRefusalRepository.countByOrderIdAndReason(10L, OrderPharmacyRefusal.Reason.TIMED_OUT)).thenReturn(2L);
+        when(medicineOrderRepository.rejectIfAssigned(eq(10L), eq(3L), eq(OrderStatus.ASSIGNMENT_FAILED), anyList(), any(), any()))
+                .thenReturn(1);
+
+        assertTrue(medicineOrderService.expireAssignment(10L, 3L));
+
+        verify(orderPharmacyRefusalRepository).save(argThat(refusal -> refusal.getReason() == OrderPharmacyRefusal.Reason.TIMED_OUT));
+        verify(pharmacyOrderStatsService).recordTransition(3L, OrderStatus.PHARMACY_ASSIGNED, null, OrderStatus.ASSIGNMENT_FAILED);
+        verify(orderOutbox).record(argThat(event -> event.getType() == OrderEvent.Type.ESCALATED && event.getOrderId().equals(10L)));
+        verify(orderOutbox, never()).record(argThat(event -> event.getType() == OrderEvent.Type.REJECTED));
+    }
+
+    @Test
+    @DisplayName("A timeout for an order that has moved on changes nothing")
+    void expireAssignment_StaleTimeout() {
+        when(medicineOrderRepository.rejectIfAssigned(eq(10L), eq(3L), any(), anyList(), any(), any())).thenReturn(0);
+
+        assertFalse(medicineOrderService.expireAssignment(10L, 3L));
+
+        verify(orderPharmacyRefusalRepository, never()).save(any());
+        verifyNoInteractions(orderOutbox, stockReservationService, pharmacyOrderStatsService);
+    }
+}
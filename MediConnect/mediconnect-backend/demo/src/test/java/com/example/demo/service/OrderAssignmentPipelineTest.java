@@ -0,0 +1,107 @@
+package com.example.demo.service;
+
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.PharmacyStore;
+import com.example.demo.repository.MedicineOrderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OrderAssignmentPipelineTest {
+
+    @Mock
+    private MedicineOrderRepository medicineOrderRepository;
+
+    @Mock
+    private PharmacyAssignmentEngine pharmacyAssignmentEngine;
+
+    @Mock
+    private OrderOutbox orderOutbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private OrderAssignmentPipeline pipeline;
+
+    private MedicineOrder order;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(pipeline, "workers", 2);
+        ReflectionTestUtils.setField(pipeline, "queueCapacity", 10);
+        ReflectionTestUtils.setField(pipeline, "maxAttempts", 3);
+        ReflectionTestUtils.setField(pipeline, "initialBackoffMs", 5L);
+        ReflectionTestUtils.setField(pipeline, "maxBackoffMs", 20L);
+        pipeline.start();
+
+        order = new MedicineOrder();
+        order.setId(7L);
+        order.setStatus(MedicineOrder.OrderStatus.PENDING);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.stop();
+    }
+
+    @Test
+    @DisplayName("Backoff doubles per attempt up to the configured cap")
+    void backoff_DoublesAndCaps() {
+        assertEquals(5L, pipeline.backoffMillis(1));
+        assertEquals(10L, pipeline.backoffMillis(2));
+        assertEquals(20L, pipeline.backoffMillis(3));
+        assertEquals(20L, pipeline.backoffMillis(30));
+    }
+
+    @Test
+    @DisplayName("Order is dead-lettered after the last failed attempt")
+    void submit_DeadLettersAfterMaxAttempts() {
+        when(medicineOrderRepository.findById(7L)).thenReturn(Optional.of(order));
+        when(pharmacyAssignmentEngine.assignOrder(order)).thenThrow(new RuntimeException("Geocoder down"));
+        when(medicineOrderRepository.markAssignmentFailed(eq(7L), eq("ASSIGNMENT_FAILED"), eq(List.of("PENDING", "REJECTED")), any()))
+                .thenReturn(List.of("REJECTED"));
+
+        pipeline.submit(7L);
+
+        verify(medicineOrderRepository, timeout(2000)).markAssignmentFailed(eq(7L), eq("ASSIGNMENT_FAILED"), anyList(), any());
+        verify(pharmacyAssignmentEngine, times(3)).assignOrder(order);
+        verify(medicineOrderRepository, times(3)).recordAssignmentFailure(eq(7L), eq("Geocoder down"), any());
+        verify(orderOutbox, timeout(2000)).record(argThat(event -> event.getStatus() == MedicineOrder.OrderStatus.ASSIGNMENT_FAILED
+                && event.getPreviousStatus() == MedicineOrder.OrderStatus.REJECTED));
+    }
+
+    @Test
+    @DisplayName("A transient failure is retried until assignment succeeds")
+    void submit_RetriesTransientFailure() {
+        when(medicineOrderRepository.findById(7L)).thenReturn(Optional.of(order));
+        when(pharmacyAssignmentEngine.assignOrder(order))
+                .thenThrow(new RuntimeException("Timeout"))
+                .thenReturn(new PharmacyStore());
+
+        pipeline.submit(7L);
+
+        verify(pharmacyAssignmentEngine, timeout(2000).times(2)).assignOrder(order);
+        verify(medicineOrderRepository, never()).markAssignmentFailed(any(), any(), anyList(), any());
+        verify(medicineOrderRepository, times(1)).recordAssignmentFailure(eq(7L), anyString(), any());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OrderExportServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private OrderExportService orderExportService;
+
+    @Test
+    @DisplayName("Each row is written as one JSON line as it is read")
+    void exportPendingOrders_Ndjson() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getObject(anyInt())).thenAnswer(invocation -> switch ((int) invocation.getArgument(0)) {
+            case 1 -> 42L;
+            case 3 -> "PENDING";
+            case 4 -> Timestamp.valueOf(LocalDateTime.of(2026, 5, 1, 9, 30));
+            case 15 -> new BigDecimal("150.00");
+            default -> null;
+        });
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(rs);
+            handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = orderExportService.exportPendingOrders(List.of(), OrderExportService.Format.NDJSON, out);
+
+        assertEquals(2, written);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"id\":42,\"orderNumber\":null,\"status\":\"PENDING\",\"createdAt\":\"2026-05-01T09:30\""), lines[0]);
+        assertTrue(lines[0].endsWith("\"finalAmount\":150.00}"), lines[0]);
+    }
+
+    @Test
+    @DisplayName("CSV fields are quoted when needed and formulas are defused")
+    void csvField_Escapes() {
+        assertEquals("", OrderExportService.csvField(null));
+        assertEquals("12.50", OrderExportService.csvField(new BigDecimal("12.50")));
+        assertEquals("\"12, MG Road\"", OrderExportService.csvField("12, MG Road"));
+        assertEquals("\"Say \"\"hi\"\"\"", OrderExportService.csvField("Say \"hi\""));
+        assertEquals("'=SUM(A1)", OrderExportService.csvField("=SUM(A1)"));
+        assertEquals("-5", OrderExportService.csvField(-5L));
+    }
+}
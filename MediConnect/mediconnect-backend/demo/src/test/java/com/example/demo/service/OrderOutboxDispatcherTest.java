@@ -0,0 +1,171 @@
+package com.example.demo.service;
+
+import com.example.demo.model.MedicineOrder.OrderStatus;
+import com.example.demo.model.OrderEvent;
+import com.example.demo.model.OrderOutboxEvent;
+import com.example.demo.repository.OrderOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.UnexpectedRollbackException;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OrderOutboxDispatcherTest {
+
+    @Mock
+    private OrderOutboxRepository orderOutboxRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private OrderEventListener firstListener;
+
+    @Mock
+    private OrderEventListener secondListener;
+
+    private OrderOutboxDispatcher dispatcher;
+
+    private final TransactionStatus claimTransaction = new SimpleTransactionStatus();
+    private final TransactionStatus eventTransaction = new SimpleTransactionStatus();
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new OrderOutboxDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "orderOutboxRepository", orderOutboxRepository);
+        ReflectionTestUtils.setField(dispatcher, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(dispatcher, "listeners", List.of(firstListener, secondListener));
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 10);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(dispatcher, "initialBackoffMs", 1000L);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffMs", 4000L);
+        lenient().when(transactionManager.getTransaction(any())).thenAnswer(invocation -> {
+            TransactionDefinition definition = invocation.getArgument(0);
+            return definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW
+                    ? eventTransaction : claimTransaction;
+        });
+    }
+
+    @Test
+    @DisplayName("Events every listener accepted are marked delivered in one update")
+    void drainBatch_MarksDeliveredEvents() {
+        OrderOutboxEvent accepted = row(1L, 10L);
+        OrderOutboxEvent assigned = row(2L, 11L);
+        when(orderOutboxRepository.claimDue(any(), eq(10))).thenReturn(List.of(accepted, assigned));
+
+        assertEquals(2, dispatcher.drainBatch());
+
+        verify(firstListener, times(2)).onOrderEvent(any());
+        verify(secondListener, times(2)).onOrderEvent(any());
+        verify(orderOutboxRepository).markDelivered(eq(List.of(1L, 2L)), any());
+    }
+
+    @Test
+    @DisplayName("Listeners get the event back from the outbox with its statuses the way round they were recorded")
+    void drainBatch_KeepsStatusOrder() {
+        when(orderOutboxRepository.claimDue(any(), eq(10))).thenReturn(List.of(row(1L, 10L)));
+
+        dispatcher.drainBatch();
+
+        ArgumentCaptor<OrderEvent> delivered = ArgumentCaptor.forClass(OrderEvent.class);
+        verify(firstListener).onOrderEvent(delivered.capture());
+        assertEquals(OrderStatus.PHARMACY_ASSIGNED, delivered.getValue().getPreviousStatus());
+        assertEquals(OrderStatus.ACCEPTED, delivered.getValue().getStatus());
+    }
+
+    @Test
+    @DisplayName("A listener failure schedules a retry and still lets the other listeners run")
+    void drainBatch_RetriesFailedEvent() {
+        OrderOutboxEvent event = row(1L, 10L);
+        when(orderOutboxRepository.claimDue(any(), anyInt())).thenReturn(List.of(event));
+        doThrow(new RuntimeException("queue full")).when(firstListener).onOrderEvent(any());
+
+        dispatcher.drainBatch();
+
+        verify(secondListener).onOrderEvent(any());
+        verify(orderOutboxRepository, never()).markDelivered(any(), any());
+        assertEquals(1, event.getAttempts());
+        assertEquals(OrderOutboxEvent.DeliveryState.PENDING, event.getDeliveryState());
+        assertTrue(event.getNextAttemptAt().isAfter(LocalDateTime.now()));
+        assertTrue(event.getLastError().contains("queue full"));
+    }
+
+    @Test
+    @DisplayName("An event is given up on after the last attempt")
+    void drainBatch_GivesUpAfterMaxAttempts() {
+        OrderOutboxEvent event = row(1L, 10L);
+        event.setAttempts(2);
+        when(orderOutboxRepository.claimDue(any(), anyInt())).thenReturn(List.of(event));
+        doThrow(new RuntimeException("boom")).when(secondListener).onOrderEvent(any());
+
+        dispatcher.drainBatch();
+
+        assertEquals(OrderOutboxEvent.DeliveryState.FAILED, event.getDeliveryState());
+        assertNotNull(event.getProcessedAt());
+    }
+
+    @Test
+    @DisplayName("An event whose listener transaction cannot commit is retried alone and the rest of the batch goes through")
+    void drainBatch_IsolatesRolledBackEvent() {
+        OrderOutboxEvent poisoned = row(1L, 10L);
+        OrderOutboxEvent healthy = row(2L, 11L);
+        when(orderOutboxRepository.claimDue(any(), anyInt())).thenReturn(List.of(poisoned, healthy));
+        // A listener swallowed a failed transactional call, so only the commit notices
+        doThrow(new UnexpectedRollbackException("Transaction silently rolled back because it has been marked as rollback-only"))
+                .doNothing().when(transactionManager).commit(eventTransaction);
+
+        assertEquals(2, dispatcher.drainBatch());
+
+        verify(transactionManager, times(2)).getTransaction(argThat(definition -> definition != null
+                && definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        verify(transactionManager).commit(claimTransaction);
+        verify(orderOutboxRepository).markDelivered(eq(List.of(2L)), any());
+        assertEquals(1, poisoned.getAttempts());
+        assertTrue(poisoned.getLastError().contains("rolled back"));
+    }
+
+    @Test
+    @DisplayName("A failed event's own transaction is rolled back, not the claim transaction")
+    void drainBatch_RollsBackOnlyFailedEvent() {
+        OrderOutboxEvent event = row(1L, 10L);
+        when(orderOutboxRepository.claimDue(any(), anyInt())).thenReturn(List.of(event));
+        doThrow(new RuntimeException("boom")).when(firstListener).onOrderEvent(any());
+
+        dispatcher.drainBatch();
+
+        assertTrue(eventTransaction.isRollbackOnly());
+        assertFalse(claimTransaction.isRollbackOnly());
+        verify(transactionManager).commit(claimTransaction);
+    }
+
+    @Test
+    @DisplayName("Backoff doubles per attempt up to the configured cap")
+    void backoff_DoublesAndCaps() {
+        assertEquals(1000L, dispatcher.backoffMillis(1));
+        assertEquals(2000L, dispatcher.backoffMillis(2));
+        assertEquals(4000L, dispatcher.backoffMillis(5));
+    }
+
+    private static OrderOutboxEvent row(Long id, Long orderId) {
+        OrderOutboxEvent row = OrderOutboxEvent.from(OrderEvent.of(OrderEvent.Type.ACCEPTED, orderId, 3L,
+                OrderStatus.PHARMACY_ASSIGNED, OrderStatus.ACCEPTED));
+        row.setId(id);
+        return row;
+    }
+}
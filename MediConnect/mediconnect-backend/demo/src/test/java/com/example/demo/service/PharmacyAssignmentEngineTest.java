@@ -0,0 +1,254 @@
+package com.example.demo.service;
+
+import com.example.demo.model.MedicineOrder;
+import com.example.demo.model.MedicineOrder.OrderStatus;
+import com.example.demo.model.PharmacyStore;
+import com.example.demo.model.StockReservation;
+import com.example.demo.repository.MedicineOrderRepository;
+import com.example.demo.repository.OrderPharmacyRefusalRepository;
+import com.example.demo.repository.PharmacyStoreRepository;
+import com.example.demo.utils.GeoGridIndex;
+import com.example.demo.utils.MedicineStockIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PharmacyAssignmentEngineTest {
+
+    // Delivery pincode resolves here; 0.009 degrees of latitude is about 1 km
+    private static final double LAT = 12.97;
+    private static final double LNG = 77.59;
+
+    @Mock
+    private MedicineOrderRepository medicineOrderRepository;
+
+    @Mock
+    private PharmacyStoreRepository pharmacyStoreRepository;
+
+    @Mock
+    private OrderPharmacyRefusalRepository orderPharmacyRefusalRepository;
+
+    @Mock
+    private PharmacySpatialIndex pharmacySpatialIndex;
+
+    @Mock
+    private GeocodingService geocodingService;
+
+    @Mock
+    private PharmacyInventoryService pharmacyInventoryService;
+
+    @Mock
+    private StockReservationService stockReservationService;
+
+    @Mock
+    private PharmacyOrderStatsService pharmacyOrderStatsService;
+
+    @Mock
+    private OrderOutbox orderOutbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private PharmacyAssignmentEngine pharmacyAssignmentEngine;
+
+    private final GeoGridIndex<PharmacyStore> stores = new GeoGridIndex<>(0.05);
+    private final MedicineStockIndex stock = new MedicineStockIndex();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ReflectionTestUtils.setField(pharmacyAssignmentEngine, "searchRadiusKm", 10.0);
+        ReflectionTestUtils.setField(pharmacyAssignmentEngine, "fallbackRadiusKm", 50.0);
+        ReflectionTestUtils.setField(pharmacyAssignmentEngine, "candidateCount", 8);
+        ReflectionTestUtils.setField(pharmacyAssignmentEngine, "loadPenaltyKm", 2.0);
+        ReflectionTestUtils.setField(pharmacyAssignmentEngine, "stockAttempts", 3);
+        lenient().when(geocodingService.getCoordinates("560001")).thenReturn(new double[]{LAT, LNG});
+        lenient().doAnswer(invocation -> {
+            stores.forEachNearest(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2),
+                    (Predicate<GeoGridIndex.Hit<PharmacyStore>>) invocation.getArgument(3));
+            return null;
+        }).when(pharmacySpatialIndex).forEachNearest(anyDouble(), anyDouble(), anyDouble(), any());
+        lenient().when(pharmacySpatialIndex.getAll()).thenAnswer(invocation -> stores.values());
+        lenient().when(pharmacyInventoryService.match(anyList())).thenAnswer(invocation -> stock.match(invocation.getArgument(0)));
+    }
+
+    @Test
+    @DisplayName("A busy nearby pharmacy loses to an idle one a little further away")
+    void selectPharmacy_WeighsLoadAgainstDistance() {
+        PharmacyStore near = store(1L, 1);
+        PharmacyStore far = store(2L, 3);
+
+        assertEquals(near, pharmacyAssignmentEngine.selectPharmacy("560001", List.of(), Set.of(), loads(1L, 0L)));
+        // Three open orders cost 6 km, more than the 2 km extra to the idle store
+        assertEquals(far, pharmacyAssignmentEngine.selectPharmacy("560001", List.of(), Set.of(), loads(1L, 3L)));
+    }
+
+    @Test
+    @DisplayName("With nothing in the search radius the fallback radius is searched")
+    void selectPharmacy_UsesFallbackRadius() {
+        PharmacyStore distant = store(1L, 20);
+        store(2L, 80);
+
+        assertEquals(distant, pharmacyAssignmentEngine.selectPharmacy("560001", List.of(), Set.of(), new HashMap<>()));
+        verify(pharmacySpatialIndex, never()).getAll();
+    }
+
+    @Test
+    @DisplayName("Out of range or without a pincode, the least loaded pharmacy anywhere gets the order")
+    void selectPharmacy_FallsBackToLeastLoaded() {
+        store(1L, 100);
+        PharmacyStore idle = store(2L, 120);
+
+        assertEquals(idle, pharmacyAssignmentEngine.selectPharmacy("560001", List.of(), Set.of(), loads(1L, 2L)));
+        assertEquals(idle, pharmacyAssignmentEngine.selectPharmacy(null, List.of(), Set.of(), loads(1L, 2L)));
+    }
+
+    @Test
+    @DisplayName("A pharmacy stocking every line wins over nearer stores that do not")
+    void selectPharmacy_PrefersStockedPharmacy() {
+        store(1L, 1);
+        PharmacyStore stocked = store(2L, 30); // Only found through the fallback radius
+        stock.setQuantity(2L, MedicineStockIndex.normalize("Paracetamol"), 20);
+        stock.setQuantity(1L, MedicineStockIndex.normalize("Paracetamol"), 2);
+
+        List<MedicineStockIndex.Requirement> lines = List.of(MedicineStockIndex.Requirement.of(10, "Paracetamol"));
+        assertEquals(stocked, pharmacyAssignmentEngine.selectPharmacy("560001", lines, Set.of(), new HashMap<>()));
+        assertEquals(1L, pharmacyAssignmentEngine.getMetrics().get("ordersMatchedOnStock"));
+    }
+
+    @Test
+    @DisplayName("When no pharmacy in range has the stock, the order goes to the best store regardless")
+    void selectPharmacy_FallsBackWithoutStock() {
+        PharmacyStore near = store(1L, 1);
+        store(2L, 3);
+        stock.setQuantity(3L, MedicineStockIndex.normalize("Insulin"), 5); // Stocked, but not a known store
+
+        List<MedicineStockIndex.Requirement> lines = List.of(MedicineStockIndex.Requirement.of(1, "Insulin"));
+        assertEquals(near, pharmacyAssignmentEngine.selectPharmacy("560001", lines, Set.of(), new HashMap<>()));
+        assertEquals(0L, pharmacyAssignmentEngine.getMetrics().get("ordersMatchedOnStock"));
+    }
+
+    @Test
+    @DisplayName("A pharmacy that gave the order back is not offered it again, even when it is the only one with stock")
+    void selectPharmacy_SkipsRefusingPharmacies() {
+        store(1L, 1);
+        PharmacyStore other = store(2L, 3);
+        stock.setQuantity(1L, MedicineStockIndex.normalize("Paracetamol"), 20);
+
+        List<MedicineStockIndex.Requirement> lines = List.of(MedicineStockIndex.Requirement.of(10, "Paracetamol"));
+        assertEquals(other, pharmacyAssignmentEngine.selectPharmacy("560001", lines, Set.of(1L), new HashMap<>()));
+        assertEquals(other, pharmacyAssignmentEngine.selectPharmacy(null, List.of(), Set.of(1L), loads(2L, 5L)));
+        assertNull(pharmacyAssignmentEngine.selectPharmacy(null, List.of(), Set.of(1L, 2L), new HashMap<>()));
+    }
+
+    @Test
+    @DisplayName("An order assigned elsewhere meanwhile is left alone and nothing is recorded")
+    void assignOrder_LosesGuardedUpdate() {
+        PharmacyStore near = store(1L, 1);
+        MedicineOrder order = new MedicineOrder();
+        order.setId(10L);
+        order.setStatus(OrderStatus.PENDING);
+        order.setDeliveryPincode("560001");
+        when(pharmacyInventoryService.requirementsFor(List.of(10L))).thenReturn(Map.of());
+        when(medicineOrderRepository.countOrdersPerPharmacy(anyList())).thenReturn(List.of());
+        when(medicineOrderRepository.assignPharmacyIfUnassigned(eq(10L), eq(near), eq(OrderStatus.PHARMACY_ASSIGNED), anyList(), any()))
+                .thenReturn(0);
+
+        assertNull(pharmacyAssignmentEngine.assignOrder(order));
+
+        verify(pharmacyOrderStatsService, never()).recordTransition(any(), any(), any(), any());
+        verify(orderOutbox, never()).record(any());
+        assertEquals(0L, pharmacyAssignmentEngine.getMetrics().get("ordersAssigned"));
+    }
+
+    @Test
+    @DisplayName("When the chosen pharmacy's stock is gone at hold time, the next stocked pharmacy gets the order")
+    void assignOrder_MovesOnWhenStockRunsOut() {
+        PharmacyStore near = store(1L, 1);
+        PharmacyStore next = store(2L, 3);
+        stock.setQuantity(1L, MedicineStockIndex.normalize("Paracetamol"), 20);
+        stock.setQuantity(2L, MedicineStockIndex.normalize("Paracetamol"), 20);
+        List<MedicineStockIndex.Requirement> lines = List.of(MedicineStockIndex.Requirement.of(10, "Paracetamol"));
+        MedicineOrder order = pendingOrder(10L);
+        when(pharmacyInventoryService.requirementsFor(List.of(10L))).thenReturn(Map.of(10L, lines));
+        when(stockReservationService.reserve(10L, 1L, lines)).thenReturn(null); // Sold out elsewhere meanwhile
+        when(stockReservationService.reserve(10L, 2L, lines)).thenReturn(List.of(new StockReservation()));
+        when(medicineOrderRepository.assignPharmacyIfUnassigned(eq(10L), eq(next), eq(OrderStatus.PHARMACY_ASSIGNED), anyList(), any()))
+                .thenReturn(1);
+
+        assertEquals(next, pharmacyAssignmentEngine.assignOrder(order));
+        verify(medicineOrderRepository, never()).assignPharmacyIfUnassigned(eq(10L), eq(near), any(), anyList(), any());
+        assertEquals(1L, pharmacyAssignmentEngine.getMetrics().get("ordersOutOfStock"));
+    }
+
+    @Test
+    @DisplayName("Each order in a batch is written in its own transaction, so one failure does not undo the others")
+    void assignBatch_CommitsPerOrder() {
+        PharmacyStore near = store(1L, 1);
+        MedicineOrder failing = pendingOrder(10L);
+        MedicineOrder fine = pendingOrder(11L);
+        when(pharmacyInventoryService.requirementsFor(anyList())).thenReturn(Map.of());
+        when(medicineOrderRepository.countOrdersPerPharmacy(anyList())).thenReturn(List.of());
+        when(medicineOrderRepository.assignPharmacyIfUnassigned(eq(10L), eq(near), any(), anyList(), any()))
+                .thenThrow(new RuntimeException("Deadlock detected"));
+        when(medicineOrderRepository.assignPharmacyIfUnassigned(eq(11L), eq(near), any(), anyList(), any())).thenReturn(1);
+
+        assertEquals(1, pharmacyAssignmentEngine.assignBatch(List.of(failing, fine)));
+        verify(transactionManager, times(2)).getTransaction(any());
+        verify(transactionManager).rollback(any());
+        assertEquals(1L, pharmacyAssignmentEngine.getMetrics().get("ordersFailed"));
+    }
+
+    @Test
+    @DisplayName("A failing queue depth count does not leave the backlog run marked as running")
+    void processBacklog_SurvivesFailedCount() {
+        ReflectionTestUtils.setField(pharmacyAssignmentEngine, "batchSize", 100);
+        when(medicineOrderRepository.findUnassignedOrdersAfter(anyList(), anyLong(), any(), any())).thenReturn(List.of());
+        when(medicineOrderRepository.countUnassignedOrders(anyList())).thenThrow(new RuntimeException("Connection pool timeout"));
+
+        assertEquals(0, pharmacyAssignmentEngine.processBacklog());
+        assertEquals(0, pharmacyAssignmentEngine.processBacklog());
+        verify(medicineOrderRepository, times(2)).findUnassignedOrdersAfter(anyList(), anyLong(), any(), any());
+    }
+
+    private static MedicineOrder pendingOrder(Long id) {
+        MedicineOrder order = new MedicineOrder();
+        order.setId(id);
+        order.setStatus(OrderStatus.PENDING);
+        order.setDeliveryPincode("560001");
+        return order;
+    }
+
+    private PharmacyStore store(Long id, double kmNorth) {
+        PharmacyStore store = new PharmacyStore();
+        store.setId(id);
+        store.setLatitude(LAT + kmNorth * 0.009);
+        store.setLongitude(LNG);
+        stores.put(id, store.getLatitude(), store.getLongitude(), store);
+        return store;
+    }
+
+    private static Map<Long, Long> loads(Long pharmacyId, Long openOrders) {
+        Map<Long, Long> loads = new HashMap<>();
+        loads.put(pharmacyId, openOrders);
+        return loads;
+    }
+}
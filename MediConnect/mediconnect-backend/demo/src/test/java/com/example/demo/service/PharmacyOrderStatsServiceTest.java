@@ -0,0 +1,94 @@
+package com.example.demo.service;
+
+import com.example.demo.model.MedicineOrder.OrderStatus;
+import com.example.demo.model.PharmacyOrderStatusCount;
+import com.example.demo.repository.MedicineOrderRepository;
+import com.example.demo.repository.PharmacyOrderStatusCountRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PharmacyOrderStatsServiceTest {
+
+    @Mock
+    private PharmacyOrderStatusCountRepository statusCountRepository;
+
+    @Mock
+    private MedicineOrderRepository medicineOrderRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private PharmacyOrderStatsService statsService;
+
+    @Test
+    @DisplayName("A transition moves one order from the old bucket to the new one")
+    void recordTransition_AppliesDeltas() {
+        statsService.recordTransition(3L, OrderStatus.PHARMACY_ASSIGNED, 3L, OrderStatus.ACCEPTED);
+
+        verify(statusCountRepository).addToCount(3L, "PHARMACY_ASSIGNED", -1);
+        verify(statusCountRepository).addToCount(3L, "ACCEPTED", 1);
+    }
+
+    @Test
+    @DisplayName("Unassigned sides and unchanged orders are not counted")
+    void recordTransition_SkipsUnassignedAndNoOps() {
+        statsService.recordTransition(3L, OrderStatus.ACCEPTED, 3L, OrderStatus.ACCEPTED);
+        statsService.recordTransition(5L, OrderStatus.PHARMACY_ASSIGNED, null, OrderStatus.REJECTED);
+
+        verify(statusCountRepository).addToCount(5L, "PHARMACY_ASSIGNED", -1);
+        verify(statusCountRepository, never()).addToCount(anyLong(), anyString(), eq(1L));
+    }
+
+    @Test
+    @DisplayName("Counts include every status, with zero for missing rows")
+    void getStatusCounts_FillsMissingStatuses() {
+        when(statusCountRepository.findByPharmacyId(3L)).thenReturn(List.of(
+                new PharmacyOrderStatusCount(3L, OrderStatus.DELIVERED, 12L)));
+
+        Map<OrderStatus, Long> counts = statsService.getStatusCounts(3L);
+
+        assertEquals(OrderStatus.values().length, counts.size());
+        assertEquals(12L, counts.get(OrderStatus.DELIVERED));
+        assertEquals(0L, counts.get(OrderStatus.PENDING));
+    }
+
+    @Test
+    @DisplayName("Reconcile goes pharmacy by pharmacy and rewrites only the counters that drifted")
+    void reconcile_CorrectsOnlyDriftPerPharmacy() {
+        when(statusCountRepository.findCountedPharmacyIds()).thenReturn(List.of(2L, 3L));
+        when(statusCountRepository.findByPharmacyId(2L)).thenThrow(new RuntimeException("Deadlock detected"));
+        when(statusCountRepository.findByPharmacyId(3L)).thenReturn(List.of(
+                new PharmacyOrderStatusCount(3L, OrderStatus.DELIVERED, 12L)));
+        List<Object[]> stored = new ArrayList<>();
+        for (OrderStatus status : OrderStatus.values()) {
+            stored.add(new Object[]{status.name(), status == OrderStatus.DELIVERED ? 12L : 0L});
+        }
+        when(statusCountRepository.lockCounts(3L)).thenReturn(stored);
+        when(medicineOrderRepository.countByStatusForPharmacy(3L)).thenReturn(List.of(
+                new Object[]{OrderStatus.DELIVERED, 12L}, new Object[]{OrderStatus.ACCEPTED, 2L}));
+        when(statusCountRepository.setCount(3L, "ACCEPTED", 2L)).thenReturn(1);
+
+        assertEquals(1, statsService.reconcile());
+
+        verify(statusCountRepository, times(OrderStatus.values().length - 1)).openCount(eq(3L), anyString());
+        verify(statusCountRepository, never()).openCount(3L, "DELIVERED");
+        verify(statusCountRepository).setCount(3L, "ACCEPTED", 2L);
+        verify(statusCountRepository, never()).setCount(eq(3L), eq("DELIVERED"), anyLong());
+        verify(statusCountRepository, never()).lockCounts(2L);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.demo.service;
+
+import com.example.demo.model.MedicineOrder.OrderStatus;
+import com.example.demo.model.OrderEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PharmacyOrderStreamServiceTest {
+
+    private PharmacyOrderStreamService streamService;
+
+    @BeforeEach
+    void setUp() {
+        streamService = new PharmacyOrderStreamService();
+        ReflectionTestUtils.setField(streamService, "timeoutMs", 60000L);
+        ReflectionTestUtils.setField(streamService, "heartbeatMs", 60000L);
+        ReflectionTestUtils.setField(streamService, "maxConnections", 2);
+        ReflectionTestUtils.setField(streamService, "senders", 1);
+        ReflectionTestUtils.setField(streamService, "queueCapacity", 10);
+        streamService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        streamService.stop();
+    }
+
+    @Test
+    @DisplayName("Streams beyond the per-node limit are refused")
+    void subscribe_EnforcesConnectionLimit() {
+        streamService.subscribe(1L);
+        streamService.subscribe(2L);
+
+        assertThrows(RuntimeException.class, () -> streamService.subscribe(3L));
+        assertEquals(2, streamService.getMetrics().get("openStreams"));
+        assertEquals(2, streamService.getMetrics().get("pharmacies"));
+    }
+
+    @Test
+    @DisplayName("Events for the pharmacy's orders are dispatched")
+    void onOrderEvent_DispatchesPharmacyEvents() {
+        streamService.onOrderEvent(OrderEvent.of(OrderEvent.Type.ACCEPTED, 10L, 1L, OrderStatus.PHARMACY_ASSIGNED, OrderStatus.ACCEPTED));
+
+        assertEquals(1L, streamService.getMetrics().get("eventsPublished"));
+    }
+
+    @Test
+    @DisplayName("Events for orders without a pharmacy are ignored")
+    void onOrderEvent_IgnoresUnassignedOrders() {
+        streamService.onOrderEvent(OrderEvent.of(OrderEvent.Type.CREATED, 10L, null, null, OrderStatus.PENDING));
+
+        assertEquals(0L, streamService.getMetrics().get("eventsPublished"));
+    }
+}
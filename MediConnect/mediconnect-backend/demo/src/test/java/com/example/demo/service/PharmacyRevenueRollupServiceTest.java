@@ -0,0 +1,91 @@
+package com.example.demo.service;
+
+import com.example.demo.model.MedicineOrder.OrderStatus;
+import com.example.demo.repository.PharmacyDailyRollupRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PharmacyRevenueRollupServiceTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2026, 3, 2, 10, 0);
+    private static final LocalDate DAY = CREATED_AT.toLocalDate();
+
+    @Mock
+    private PharmacyDailyRollupRepository rollupRepository;
+
+    @InjectMocks
+    private PharmacyRevenueRollupService rollupService;
+
+    @Test
+    @DisplayName("Delivery adds revenue and fulfilment time to the day the order was created")
+    void recordTransition_Delivered() {
+        rollupService.recordTransition(3L, OrderStatus.OUT_FOR_DELIVERY, OrderStatus.DELIVERED,
+                CREATED_AT, new BigDecimal("250.00"), CREATED_AT.plusMinutes(90));
+
+        verify(rollupRepository).addToRollup(3L, DAY, new BigDecimal("250.00"), 1, 0, 0, BigDecimal.ZERO, 5400, 1);
+    }
+
+    @Test
+    @DisplayName("Refunding a delivered order moves its amount from revenue to refunds")
+    void recordTransition_RefundAfterDelivery() {
+        rollupService.recordTransition(3L, OrderStatus.DELIVERED, OrderStatus.REFUNDED,
+                CREATED_AT, new BigDecimal("250.00"), CREATED_AT.plusMinutes(90));
+
+        verify(rollupRepository).addToRollup(3L, DAY, new BigDecimal("-250.00"), -1, 0, 1, new BigDecimal("250.00"), 0, 0);
+    }
+
+    @Test
+    @DisplayName("Non-terminal transitions and orders without a pharmacy leave the rollups alone")
+    void recordTransition_IgnoresOtherChanges() {
+        rollupService.recordTransition(3L, OrderStatus.ACCEPTED, OrderStatus.PREPARING, CREATED_AT, BigDecimal.TEN, null);
+        rollupService.recordTransition(null, OrderStatus.PENDING, OrderStatus.CANCELLED, CREATED_AT, BigDecimal.TEN, null);
+
+        verifyNoInteractions(rollupRepository);
+    }
+
+    @Test
+    @DisplayName("Batched changes are written once per day in date order")
+    void record_OneUpsertPerDay() {
+        PharmacyRevenueRollupService.Changes changes = new PharmacyRevenueRollupService.Changes();
+        changes.add(OrderStatus.READY_FOR_PICKUP, OrderStatus.CANCELLED, CREATED_AT.plusDays(1), BigDecimal.TEN, null);
+        changes.add(OrderStatus.PREPARING, OrderStatus.CANCELLED, CREATED_AT, BigDecimal.TEN, null);
+        changes.add(OrderStatus.ACCEPTED, OrderStatus.CANCELLED, CREATED_AT.plusHours(3), BigDecimal.TEN, null);
+
+        rollupService.record(3L, changes);
+
+        InOrder inOrder = inOrder(rollupRepository);
+        inOrder.verify(rollupRepository).addToRollup(3L, DAY, BigDecimal.ZERO, 0, 2, 0, BigDecimal.ZERO, 0, 0);
+        inOrder.verify(rollupRepository).addToRollup(3L, DAY.plusDays(1), BigDecimal.ZERO, 0, 1, 0, BigDecimal.ZERO, 0, 0);
+        verifyNoMoreInteractions(rollupRepository);
+    }
+
+    @Test
+    @DisplayName("Revenue report sums the rollups and averages fulfilment time")
+    void getRevenue_SumsRollups() {
+        when(rollupRepository.sumByPharmacyAndDateRange(3L, DAY, DAY.plusDays(30))).thenReturn(Collections.singletonList(
+                new Object[]{new BigDecimal("1200.00"), 4L, 1L, 1L, new BigDecimal("300.00"), 21600L, 5L}));
+
+        Map<String, Object> revenue = rollupService.getRevenue(3L, DAY, DAY.plusDays(30));
+
+        assertEquals(new BigDecimal("1200.00"), revenue.get("revenue"));
+        assertEquals(4L, revenue.get("deliveredOrders"));
+        assertEquals(72.0, (Double) revenue.get("averageFulfilmentMinutes"), 0.001);
+        assertThrows(RuntimeException.class, () -> rollupService.getRevenue(3L, DAY.plusDays(1), DAY));
+    }
+}
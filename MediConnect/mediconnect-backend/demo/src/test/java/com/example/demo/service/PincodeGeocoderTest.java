@@ -0,0 +1,62 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PincodeGeocoderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Should resolve pincodes from a generated reference file")
+    void lookup_ResolvesFromMappedFile() throws Exception {
+        Path csv = tempDir.resolve("pincodes.csv");
+        Files.writeString(csv, String.join("\n",
+                "pincode,latitude,longitude",
+                "560001,12.9716,77.5946",
+                "110001,28.6300,77.2200",
+                "110001,28.6400,77.2400",
+                "400001,18.9388,72.8354",
+                "not-a-row"));
+        Path bin = tempDir.resolve("pincodes.bin");
+
+        assertEquals(3, PincodeGeocoder.writeIndex(csv, bin));
+
+        PincodeGeocoder geocoder = new PincodeGeocoder();
+        geocoder.open(bin);
+
+        assertTrue(geocoder.isAvailable());
+        assertEquals(3, geocoder.size());
+
+        double[] bengaluru = geocoder.lookup("560001");
+        assertNotNull(bengaluru);
+        assertEquals(12.9716, bengaluru[0], 1e-4);
+        assertEquals(77.5946, bengaluru[1], 1e-4);
+
+        // Duplicate rows are averaged into one centroid
+        double[] delhi = geocoder.lookup("110 001");
+        assertEquals(28.635, delhi[0], 1e-4);
+        assertEquals(77.23, delhi[1], 1e-4);
+
+        assertNull(geocoder.lookup("999999"));
+        assertNull(geocoder.lookup("12345"));
+        assertEquals(2, geocoder.getHits());
+        assertEquals(1, geocoder.getMisses());
+    }
+
+    @Test
+    @DisplayName("Should report unavailable until a file is opened")
+    void lookup_WithoutFile_ReturnsNull() {
+        PincodeGeocoder geocoder = new PincodeGeocoder();
+
+        assertFalse(geocoder.isAvailable());
+        assertNull(geocoder.lookup("560001"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.demo.service;
+
+import com.example.demo.model.StockReservation;
+import com.example.demo.repository.PharmacyInventoryRepository;
+import com.example.demo.repository.StockReservationRepository;
+import com.example.demo.utils.MedicineStockIndex.Requirement;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockReservationServiceTest {
+
+    @Mock
+    private StockReservationRepository reservationRepository;
+
+    @Mock
+    private PharmacyInventoryRepository inventoryRepository;
+
+    @Mock
+    private PharmacyInventoryService pharmacyInventoryService;
+
+    @InjectMocks
+    private StockReservationService stockReservationService;
+
+    @Test
+    @DisplayName("A line the database cannot hold undoes the lines already held")
+    void reserve_UndoesEarlierLinesWhenDatabaseIsShort() {
+        when(pharmacyInventoryService.getAvailable(eq(4L), anyString())).thenReturn(10);
+        when(pharmacyInventoryService.takeAvailable(eq(4L), anyString(), anyInt())).thenReturn(true);
+        when(inventoryRepository.reserve(4L, "amoxicillin", 2)).thenReturn(1);
+        when(inventoryRepository.reserve(4L, "paracetamol", 5)).thenReturn(0);
+
+        List<StockReservation> holds = stockReservationService.reserve(7L, 4L,
+                List.of(Requirement.of(5, "Paracetamol"), Requirement.of(2, "Amoxicillin")));
+
+        assertNull(holds);
+        verify(inventoryRepository).unreserve(4L, "amoxicillin", 2);
+        verify(pharmacyInventoryService).returnAvailable(4L, "amoxicillin", 2);
+        verify(pharmacyInventoryService).resync(4L, "paracetamol");
+        verify(pharmacyInventoryService, never()).returnAvailable(eq(4L), eq("paracetamol"), anyInt());
+        verify(reservationRepository, never()).saveAll(any());
+    }
+
+    @Test
+    @DisplayName("An order for the same medicine under two names is held as one line")
+    void reserve_MergesLinesOfTheSameMedicine() {
+        when(pharmacyInventoryService.getAvailable(eq(4L), anyString())).thenReturn(0);
+        when(pharmacyInventoryService.getAvailable(4L, "paracetamol")).thenReturn(10);
+        when(pharmacyInventoryService.takeAvailable(4L, "paracetamol", 8)).thenReturn(false);
+
+        assertNull(stockReservationService.reserve(7L, 4L,
+                List.of(Requirement.of(5, "Crocin", "Paracetamol"), Requirement.of(3, "Paracetamol"))));
+        verify(pharmacyInventoryService).takeAvailable(4L, "paracetamol", 8);
+        verify(inventoryRepository, never()).reserve(anyLong(), anyString(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Expiry gives back only the pharmacy's holds that are past their deadline")
+    void releaseExpired_KeepsNewerHolds() {
+        StockReservation expired = hold(1L, 4L, LocalDateTime.now().minusMinutes(1));
+        StockReservation elsewhere = hold(2L, 5L, LocalDateTime.now().minusMinutes(1));
+        StockReservation renewed = hold(3L, 4L, LocalDateTime.now().plusMinutes(10));
+        when(reservationRepository.lockByOrderIdsAndState(List.of(7L), StockReservation.State.HELD))
+                .thenReturn(List.of(expired, elsewhere, renewed));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertEquals(1, stockReservationService.releaseExpired(7L, 4L));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(inventoryRepository).unreserve(4L, "paracetamol", 2);
+        verifyNoMoreInteractions(inventoryRepository);
+        verify(reservationRepository).resolve(eq(List.of(1L)), eq(StockReservation.State.EXPIRED), any());
+    }
+
+    private static StockReservation hold(Long id, Long pharmacyId, LocalDateTime expiresAt) {
+        StockReservation hold = new StockReservation();
+        hold.setId(id);
+        hold.setOrderId(7L);
+        hold.setPharmacyId(pharmacyId);
+        hold.setMedicineKey("paracetamol");
+        hold.setQuantity(2);
+        hold.setExpiresAt(expiresAt);
+        return hold;
+    }
+}
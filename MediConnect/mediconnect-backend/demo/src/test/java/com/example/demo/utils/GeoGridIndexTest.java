@@ -0,0 +1,130 @@
+package com.example.demo.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeoGridIndexTest {
+
+    private GeoGridIndex<String> index;
+    private List<double[]> points;
+
+    @BeforeEach
+    void setUp() {
+        index = new GeoGridIndex<>(0.05);
+        points = new ArrayList<>();
+        Random random = new Random(42);
+        // Scatter points around Bengaluru
+        for (int i = 0; i < 2000; i++) {
+            double lat = 12.97 + (random.nextDouble() - 0.5) * 1.0;
+            double lng = 77.59 + (random.nextDouble() - 0.5) * 1.0;
+            points.add(new double[]{lat, lng});
+            index.put(i, lat, lng, "store-" + i);
+        }
+    }
+
+    @Test
+    @DisplayName("Radius query matches a brute force scan, nearest first")
+    void withinRadius_MatchesBruteForce() {
+        double lat = 12.95, lng = 77.62, radius = 7.5;
+
+        List<Long> expected = bruteForce(lat, lng, radius);
+        List<Long> actual = index.withinRadius(lat, lng, radius).stream()
+                .map(GeoGridIndex.Hit::getId)
+                .collect(Collectors.toList());
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    @DisplayName("k-nearest returns the same order as a brute force scan")
+    void nearest_MatchesBruteForce() {
+        double lat = 13.10, lng = 77.50;
+
+        List<Long> expected = bruteForce(lat, lng, 50.0).subList(0, 10);
+        List<GeoGridIndex.Hit<String>> hits = index.nearest(lat, lng, 10, 50.0);
+
+        assertEquals(expected, hits.stream().map(GeoGridIndex.Hit::getId).collect(Collectors.toList()));
+        for (int i = 1; i < hits.size(); i++) {
+            assertTrue(hits.get(i - 1).getDistanceKm() <= hits.get(i).getDistanceKm());
+        }
+    }
+
+    @Test
+    @DisplayName("Moved and removed points are reflected in queries")
+    void putAndRemove_UpdateIndex() {
+        index.put(5000, 28.61, 77.20, "delhi");
+        assertEquals("delhi", index.nearest(28.61, 77.20, 1, 5.0).get(0).getValue());
+
+        index.put(5000, 19.07, 72.87, "mumbai");
+        assertTrue(index.withinRadius(28.61, 77.20, 5.0).isEmpty());
+        assertEquals(5000, index.nearest(19.07, 72.87, 1, 5.0).get(0).getId());
+
+        assertTrue(index.remove(5000));
+        assertTrue(index.withinRadius(19.07, 72.87, 5.0).isEmpty());
+        assertEquals(2000, index.size());
+    }
+
+    @Test
+    @DisplayName("Filtered nearest search skips points that do not qualify")
+    void nearestMatching_SkipsRejected() {
+        double lat = 12.97, lng = 77.59;
+        List<Long> ordered = bruteForce(lat, lng, 50.0);
+
+        GeoGridIndex.Hit<String> hit = index.nearestMatching(lat, lng, 50.0, v -> !v.equals("store-" + ordered.get(0)));
+
+        assertNotNull(hit);
+        assertEquals(ordered.get(1), hit.getId());
+    }
+
+    @Test
+    @DisplayName("A put racing the removal that empties its cell stays findable")
+    void put_SurvivesConcurrentCellRemoval() throws InterruptedException {
+        GeoGridIndex<String> grid = new GeoGridIndex<>(0.05);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread churn = new Thread(() -> {
+            while (!done.get()) {
+                grid.put(1, 10.0, 10.0, "churn");
+                grid.remove(1);
+            }
+        });
+        churn.start();
+        AtomicInteger lost = new AtomicInteger();
+        try {
+            for (int i = 0; i < 100_000; i++) {
+                grid.put(2, 10.001, 10.001, "probe");
+                if (grid.withinRadius(10.001, 10.001, 0.5).stream().noneMatch(hit -> hit.getId() == 2)) {
+                    lost.incrementAndGet();
+                }
+                grid.remove(2);
+            }
+        } finally {
+            done.set(true);
+            churn.join();
+        }
+        assertEquals(0, lost.get());
+    }
+
+    private List<Long> bruteForce(double lat, double lng, double radius) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < points.size(); i++) {
+            double[] p = points.get(i);
+            if (GeoUtils.distanceKm(lat, lng, p[0], p[1]) <= radius) {
+                ids.add((long) i);
+            }
+        }
+        ids.sort(Comparator.comparingDouble(id -> GeoUtils.distanceKm(lat, lng,
+                points.get(id.intValue())[0], points.get(id.intValue())[1])));
+        return ids;
+    }
+}
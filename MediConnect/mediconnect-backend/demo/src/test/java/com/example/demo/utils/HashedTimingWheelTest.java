@@ -0,0 +1,84 @@
+package com.example.demo.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashedTimingWheelTest {
+
+    private static final long START = 1_000_000L;
+
+    @Test
+    @DisplayName("Timers fire once their deadline has passed, including ones several turns away")
+    void advance_FiresOnDeadline() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(100, 8, START); // One turn is 800 ms
+        wheel.schedule(1L, START + 250, "soon");
+        wheel.schedule(2L, START + 2_550, "three turns");
+        List<Long> fired = new ArrayList<>();
+
+        wheel.advance(START + 299, (id, value) -> fired.add(id));
+        assertTrue(fired.isEmpty());
+        wheel.advance(START + 300, (id, value) -> fired.add(id));
+        assertEquals(List.of(1L), fired);
+
+        wheel.advance(START + 2_599, (id, value) -> fired.add(id));
+        assertEquals(List.of(1L), fired);
+        wheel.advance(START + 2_600, (id, value) -> fired.add(id));
+        assertEquals(List.of(1L, 2L), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("Cancelled and replaced timers do not fire; overdue ones fire on the next advance")
+    void cancelAndReschedule() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(100, 8, START);
+        wheel.schedule(1L, START + 300, "accept");
+        wheel.schedule(2L, START + 300, "accept");
+        wheel.schedule(1L, START + 900, "prepare");
+        assertTrue(wheel.cancel(2L));
+        assertFalse(wheel.cancel(2L));
+        Map<Long, String> fired = new HashMap<>();
+
+        wheel.advance(START + 500, fired::put);
+        assertTrue(fired.isEmpty());
+        assertEquals("prepare", wheel.get(1L));
+
+        wheel.schedule(3L, START - 5_000, "overdue");
+        wheel.advance(START + 1_000, fired::put);
+        assertEquals(Map.of(1L, "prepare", 3L, "overdue"), fired);
+    }
+
+    @Test
+    @DisplayName("Every one of many random timers fires once, never early and at most a tick late")
+    void advance_ManyTimers() {
+        HashedTimingWheel<Long> wheel = new HashedTimingWheel<>(10, 64, START);
+        Random random = new Random(11);
+        int count = 100_000;
+        for (long id = 0; id < count; id++) {
+            wheel.schedule(id, START + random.nextInt(20_000), START);
+        }
+        Map<Long, Long> firedAt = new HashMap<>();
+        Map<Long, Long> deadlines = new HashMap<>();
+        random = new Random(11);
+        for (long id = 0; id < count; id++) {
+            deadlines.put(id, START + random.nextInt(20_000));
+        }
+
+        for (long now = START; now <= START + 20_010; now += 10) {
+            long at = now;
+            wheel.advance(now, (id, value) -> assertNull(firedAt.put(id, at)));
+        }
+        assertEquals(count, firedAt.size());
+        for (Map.Entry<Long, Long> entry : firedAt.entrySet()) {
+            long deadline = deadlines.get(entry.getKey());
+            assertTrue(entry.getValue() >= deadline && entry.getValue() <= deadline + 10, "timer " + entry.getKey());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.demo.utils;
+
+import com.example.demo.utils.MedicineStockIndex.Requirement;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MedicineStockIndexTest {
+
+    private MedicineStockIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new MedicineStockIndex();
+        index.setQuantity(1L, "paracetamol", 100);
+        index.setQuantity(1L, "amoxicillin", 20);
+        index.setQuantity(2L, "paracetamol", 5);
+        index.setQuantity(2L, "amoxicillin", 50);
+        index.setQuantity(3L, "paracetamol", 40);
+        index.setQuantity(3L, "cetirizine", 10);
+    }
+
+    @Test
+    @DisplayName("Only pharmacies with every line in the requested quantity can fill the order")
+    void match_RequiresWholeOrderInStock() {
+        MedicineStockIndex.Match match = index.match(List.of(
+                Requirement.of(10, "Paracetamol"),
+                Requirement.of(10, "Amoxicillin")));
+
+        assertTrue(match.canFill(1L));
+        assertFalse(match.canFill(2L)); // Carries both but not enough paracetamol
+        assertFalse(match.canFill(3L)); // No amoxicillin
+        assertFalse(match.canFill(99L));
+        assertEquals(2, match.candidateCount());
+    }
+
+    @Test
+    @DisplayName("A line can be filled under its generic name, names are normalised")
+    void match_AcceptsGenericName() {
+        MedicineStockIndex.Match match = index.match(List.of(Requirement.of(5, "Zyrtec 10mg", "  CETIRIZINE ")));
+
+        assertTrue(match.canFill(3L));
+        assertFalse(match.canFill(1L));
+        assertEquals("cetirizine 10 mg", MedicineStockIndex.normalize(" Cetirizine\t10   MG"));
+    }
+
+    @Test
+    @DisplayName("Running out or removing a pharmacy takes it out of the candidates")
+    void setQuantity_ZeroRemovesCarrier() {
+        index.setQuantity(1L, "amoxicillin", 0);
+        assertTrue(index.match(List.of(Requirement.of(1, "amoxicillin"))).canFill(2L));
+        assertFalse(index.match(List.of(Requirement.of(1, "amoxicillin"))).canFill(1L));
+
+        index.removePharmacy(2L);
+        assertTrue(index.match(List.of(Requirement.of(1, "amoxicillin"))).isEmpty());
+        assertEquals(0, index.getQuantity(2L, "paracetamol"));
+    }
+
+    @Test
+    @DisplayName("Bitset matching agrees with checking every pharmacy's stock")
+    void match_AgreesWithBruteForce() {
+        MedicineStockIndex large = new MedicineStockIndex();
+        int[][] quantities = new int[3000][40];
+        Random random = new Random(7);
+        for (int pharmacy = 0; pharmacy < quantities.length; pharmacy++) {
+            for (int medicine = 0; medicine < 40; medicine++) {
+                if (random.nextInt(4) == 0) {
+                    quantities[pharmacy][medicine] = 1 + random.nextInt(30);
+                    large.setQuantity(pharmacy, "medicine " + medicine, quantities[pharmacy][medicine]);
+                }
+            }
+        }
+
+        List<Requirement> order = List.of(Requirement.of(5, "Medicine 3"), Requirement.of(2, "Medicine 17"));
+        MedicineStockIndex.Match match = large.match(order);
+        for (int pharmacy = 0; pharmacy < quantities.length; pharmacy++) {
+            boolean expected = quantities[pharmacy][3] >= 5 && quantities[pharmacy][17] >= 2;
+            assertEquals(expected, match.canFill(pharmacy), "pharmacy " + pharmacy);
+        }
+    }
+
+    @Test
+    @DisplayName("Concurrent takes never hand out more stock than there is")
+    void tryTake_ConcurrentTakesNeverOversell() throws Exception {
+        index.setQuantity(9L, "insulin", 100);
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger taken = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 50; i++) {
+                    if (index.tryTake(9L, "insulin", 1)) {
+                        taken.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(100, taken.get());
+        assertEquals(0, index.getQuantity(9L, "insulin"));
+        assertFalse(index.match(List.of(Requirement.of(1, "insulin"))).canFill(9L));
+
+        index.giveBack(9L, "insulin", 3);
+        assertTrue(index.match(List.of(Requirement.of(3, "insulin"))).canFill(9L));
+        assertFalse(index.tryTake(9L, "insulin", 4));
+    }
+}
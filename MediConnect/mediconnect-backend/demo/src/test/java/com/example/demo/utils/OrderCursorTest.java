@@ -0,0 +1,29 @@
+package com.example.demo.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderCursorTest {
+
+    @Test
+    @DisplayName("Encoded cursor decodes to the same position")
+    void encodeDecode_RoundTrip() {
+        LocalDateTime createdAt = LocalDateTime.of(2025, 3, 14, 9, 26, 53, 589_793_000);
+        OrderCursor cursor = OrderCursor.decode(new OrderCursor(createdAt, 4211L).encode(), OrderCursor.NEWEST);
+
+        assertEquals(createdAt, cursor.getCreatedAt());
+        assertEquals(4211L, cursor.getId());
+    }
+
+    @Test
+    @DisplayName("Missing cursor starts from the given position, garbage is rejected")
+    void decode_HandlesMissingAndInvalid() {
+        assertSame(OrderCursor.NEWEST, OrderCursor.decode(null, OrderCursor.NEWEST));
+        assertSame(OrderCursor.OLDEST, OrderCursor.decode(" ", OrderCursor.OLDEST));
+        assertThrows(IllegalArgumentException.class, () -> OrderCursor.decode("not-a-cursor", OrderCursor.NEWEST));
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.demo.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutePlannerTest {
+
+    private static final double ORIGIN_LAT = 12.9716;
+    private static final double ORIGIN_LNG = 77.5946;
+
+    @Test
+    @DisplayName("Nearby stops share a run in travel order; a far stop gets its own")
+    void plan_GroupsNearbyStops() {
+        RoutePlanner planner = new RoutePlanner(20, 1.0, 0, 3, 120);
+        List<RoutePlanner.Stop> stops = List.of(
+                new RoutePlanner.Stop(1, ORIGIN_LAT + 0.03, ORIGIN_LNG, 120),
+                new RoutePlanner.Stop(2, ORIGIN_LAT + 0.01, ORIGIN_LNG, 120),
+                new RoutePlanner.Stop(3, ORIGIN_LAT + 0.02, ORIGIN_LNG, 120),
+                new RoutePlanner.Stop(4, ORIGIN_LAT - 0.30, ORIGIN_LNG, 60));
+
+        List<RoutePlanner.Run> runs = planner.plan(ORIGIN_LAT, ORIGIN_LNG, stops);
+
+        assertEquals(2, runs.size());
+        assertEquals(List.of(4L), ids(runs.get(0)));
+        assertTrue(runs.get(0).isLate());
+        assertEquals(List.of(2L, 3L, 1L), ids(runs.get(1)));
+        assertFalse(runs.get(1).isLate());
+        assertEquals(GeoUtils.distanceKm(ORIGIN_LAT, ORIGIN_LNG, ORIGIN_LAT + 0.03, ORIGIN_LNG), runs.get(1).getTotalKm(), 1e-6);
+    }
+
+    @Test
+    @DisplayName("A stop is left out of a run it would reach after its deadline")
+    void plan_RespectsDeadlines() {
+        RoutePlanner planner = new RoutePlanner(20, 1.0, 0, 5, 120);
+        // Each about 3.3 km out on opposite sides: 10 minutes alone, 30 minutes after the other
+        List<RoutePlanner.Stop> stops = List.of(
+                new RoutePlanner.Stop(1, ORIGIN_LAT + 0.03, ORIGIN_LNG, 15),
+                new RoutePlanner.Stop(2, ORIGIN_LAT - 0.03, ORIGIN_LNG, 15));
+
+        List<RoutePlanner.Run> runs = planner.plan(ORIGIN_LAT, ORIGIN_LNG, stops);
+
+        assertEquals(2, runs.size());
+        assertFalse(runs.get(0).isLate());
+        assertFalse(runs.get(1).isLate());
+    }
+
+    @Test
+    @DisplayName("Planning latency for 1k ready orders")
+    void plan_Latency() {
+        Random random = new Random(42);
+        List<RoutePlanner.Stop> stops = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            // Within roughly 15 km of the pharmacy, deadlines between 30 minutes and 3 hours out
+            stops.add(new RoutePlanner.Stop(i, ORIGIN_LAT + (random.nextDouble() - 0.5) * 0.27,
+                    ORIGIN_LNG + (random.nextDouble() - 0.5) * 0.27, 30 + random.nextInt(150)));
+        }
+        RoutePlanner planner = new RoutePlanner(20, 1.3, 4, 6, 120);
+        for (int i = 0; i < 5; i++) {
+            planner.plan(ORIGIN_LAT, ORIGIN_LNG, stops);
+        }
+
+        int rounds = 20;
+        long began = System.nanoTime();
+        List<RoutePlanner.Run> runs = null;
+        for (int i = 0; i < rounds; i++) {
+            runs = planner.plan(ORIGIN_LAT, ORIGIN_LNG, stops);
+        }
+        long elapsedNanos = (System.nanoTime() - began) / rounds;
+
+        Set<Long> planned = new HashSet<>();
+        long late = 0;
+        for (RoutePlanner.Run run : runs) {
+            assertTrue(run.getStops().size() <= 6);
+            run.getStops().forEach(stop -> assertTrue(planned.add(stop.getId()), "stop planned twice"));
+            late += run.isLate() ? 1 : 0;
+        }
+        assertEquals(1000, planned.size());
+        System.out.printf("Planned 1000 orders into %d runs (%d late) in %.1f ms%n",
+                runs.size(), late, elapsedNanos / 1_000_000.0);
+        assertTrue(elapsedNanos < 2_000_000_000L, "planning 1k orders should take well under two seconds");
+    }
+
+    private static List<Long> ids(RoutePlanner.Run run) {
+        List<Long> ids = new ArrayList<>();
+        run.getStops().forEach(stop -> ids.add(stop.getId()));
+        return ids;
+    }
+}
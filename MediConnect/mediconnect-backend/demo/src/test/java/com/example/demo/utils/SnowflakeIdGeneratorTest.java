@@ -0,0 +1,151 @@
+package com.example.demo.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnowflakeIdGeneratorTest {
+
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 100_000;
+
+    @Test
+    @DisplayName("Concurrent callers on several nodes never get the same id")
+    void nextId_UniqueAcrossThreadsAndNodes() throws Exception {
+        SnowflakeIdGenerator nodeA = new SnowflakeIdGenerator(1);
+        SnowflakeIdGenerator nodeB = new SnowflakeIdGenerator(2);
+        Set<Long> seen = ConcurrentHashMap.newKeySet(THREADS * IDS_PER_THREAD * 2);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            SnowflakeIdGenerator generator = t % 2 == 0 ? nodeA : nodeB;
+            results.add(pool.submit(() -> {
+                start.await();
+                int duplicates = 0;
+                long previous = -1;
+                for (int i = 0; i < IDS_PER_THREAD; i++) {
+                    long id = generator.nextId();
+                    assertTrue(id > previous, "ids from one generator must increase for each caller");
+                    previous = id;
+                    if (!seen.add(id)) {
+                        duplicates++;
+                    }
+                }
+                return duplicates;
+            }));
+        }
+
+        long began = System.nanoTime();
+        start.countDown();
+        int duplicates = 0;
+        for (Future<Integer> result : results) {
+            duplicates += result.get(60, TimeUnit.SECONDS);
+        }
+        long elapsedNanos = System.nanoTime() - began;
+        pool.shutdown();
+
+        assertEquals(0, duplicates);
+        assertEquals(THREADS * IDS_PER_THREAD, seen.size());
+        System.out.printf("Generated %d ids on %d threads in %d ms (%.1f M ids/s)%n",
+                seen.size(), THREADS, elapsedNanos / 1_000_000, seen.size() * 1000.0 / elapsedNanos);
+    }
+
+    @Test
+    @DisplayName("Throughput: uncontended and contended generation")
+    void nextId_Throughput() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3);
+        int warmup = 200_000;
+        for (int i = 0; i < warmup; i++) {
+            generator.nextId();
+        }
+
+        int count = 2_000_000;
+        long began = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            generator.nextId();
+        }
+        long singleNanos = System.nanoTime() - began;
+
+        AtomicLong generated = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        began = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            pool.submit(() -> {
+                for (int i = 0; i < count / THREADS; i++) {
+                    generator.nextId();
+                }
+                generated.addAndGet(count / THREADS);
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+        long contendedNanos = System.nanoTime() - began;
+
+        assertEquals(count, generated.get());
+        System.out.printf("Single thread: %.1f M ids/s, %d threads: %.1f M ids/s%n",
+                count * 1000.0 / singleNanos, THREADS, count * 1000.0 / contendedNanos);
+    }
+
+    @Test
+    @DisplayName("Exhausting a millisecond's sequence rolls into the next millisecond")
+    void nextId_BorrowsNextMillisecondWhenSequenceRunsOut() {
+        long fixed = SnowflakeIdGenerator.EPOCH_MILLIS + 5_000;
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7, () -> fixed);
+
+        long previous = -1;
+        for (int i = 0; i < 5000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            assertEquals(7, SnowflakeIdGenerator.nodeIdOf(id));
+            previous = id;
+        }
+        assertEquals(fixed + 1, SnowflakeIdGenerator.timestampOf(previous));
+    }
+
+    @Test
+    @DisplayName("Ids keep increasing when the clock steps back")
+    void nextId_MonotonicWhenClockGoesBack() {
+        long[] now = {SnowflakeIdGenerator.EPOCH_MILLIS + 10_000};
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, () -> now[0]);
+
+        long before = generator.nextId();
+        now[0] -= 2_000;
+        long after = generator.nextId();
+
+        assertTrue(after > before);
+    }
+
+    @Test
+    @DisplayName("Encoded ids are fixed width so they sort like the numbers")
+    void encode_FixedWidthAndOrdered() {
+        String small = SnowflakeIdGenerator.encode(35);
+        String large = SnowflakeIdGenerator.encode(Long.MAX_VALUE);
+
+        assertEquals(13, small.length());
+        assertEquals("000000000000Z", small);
+        assertEquals(13, large.length());
+        assertTrue(small.compareTo(large) < 0);
+        assertTrue(new SnowflakeIdGenerator(0).nextString("ORD").startsWith("ORD"));
+    }
+
+    @Test
+    @DisplayName("Node ids outside ten bits are refused")
+    void constructor_RejectsInvalidNodeId() {
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(1024));
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(-1));
+    }
+}
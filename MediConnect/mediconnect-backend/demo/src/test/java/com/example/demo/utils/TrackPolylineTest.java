@@ -0,0 +1,96 @@
+package com.example.demo.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrackPolylineTest {
+
+    private static final long START = 1_777_600_000L;
+
+    @Test
+    @DisplayName("Encoding round-trips to 1e-5 degrees and exact seconds")
+    void encode_RoundTrips() {
+        List<TrackPolyline.Point> points = List.of(
+                new TrackPolyline.Point(12.97161, 77.59463, START),
+                new TrackPolyline.Point(12.97012, 77.60001, START + 7),
+                new TrackPolyline.Point(-33.86785, 151.20732, START + 3600));
+
+        String encoded = TrackPolyline.encode(points, START);
+        List<TrackPolyline.Point> decoded = TrackPolyline.decode(encoded, START);
+
+        assertEquals(points.size(), decoded.size());
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(points.get(i).getLatitude(), decoded.get(i).getLatitude(), 1e-5);
+            assertEquals(points.get(i).getLongitude(), decoded.get(i).getLongitude(), 1e-5);
+            assertEquals(points.get(i).getEpochSecond(), decoded.get(i).getEpochSecond());
+        }
+        assertThrows(IllegalArgumentException.class, () -> TrackPolyline.decode(encoded.substring(0, encoded.length() - 1) + "_", START));
+    }
+
+    @Test
+    @DisplayName("A stop on a straight road is kept, so replay timing stays within the tolerance")
+    void simplify_KeepsStops() {
+        List<TrackPolyline.Point> points = new ArrayList<>();
+        for (int i = 0; i <= 60; i++) {
+            points.add(new TrackPolyline.Point(12.97 + i * 0.0001, 77.59, START + i)); // Moving north
+        }
+        for (int i = 1; i <= 60; i++) {
+            points.add(new TrackPolyline.Point(12.976, 77.59, START + 60 + i)); // Waiting
+        }
+
+        List<TrackPolyline.Point> kept = TrackPolyline.simplify(points, 5);
+
+        assertEquals(3, kept.size());
+        assertEquals(START + 60, kept.get(1).getEpochSecond());
+    }
+
+    @Test
+    @DisplayName("A noisy one hour track shrinks by more than ten times and replays within the tolerance")
+    void simplify_ShrinksTrack() {
+        Random random = new Random(7);
+        List<TrackPolyline.Point> points = new ArrayList<>();
+        double lat = 12.97;
+        double lng = 77.59;
+        double heading = 0;
+        for (int i = 0; i < 3600; i++) {
+            if (i % 300 == 0) {
+                heading = random.nextDouble() * 2 * Math.PI; // A turn every five minutes
+            }
+            lat += Math.cos(heading) * 0.00005; // About 5.5 m/s
+            lng += Math.sin(heading) * 0.00005;
+            points.add(new TrackPolyline.Point(lat + random.nextGaussian() * 0.00001, lng + random.nextGaussian() * 0.00001, START + i));
+        }
+
+        double tolerance = 10;
+        List<TrackPolyline.Point> kept = TrackPolyline.simplify(points, tolerance);
+        String encoded = TrackPolyline.encode(kept, START);
+        List<TrackPolyline.Point> replayed = TrackPolyline.decode(encoded, START);
+
+        // A raw delivery_updates row is well over 100 bytes with its index entry
+        long rawBytes = points.size() * 100L;
+        System.out.printf("Kept %d of %d points, %d bytes encoded (%.0fx smaller than %d raw bytes)%n",
+                kept.size(), points.size(), encoded.length(), (double) rawBytes / encoded.length(), rawBytes);
+        assertTrue(kept.size() * 10 < points.size());
+        assertTrue(encoded.length() * 10L < rawBytes);
+
+        int next = 0;
+        for (TrackPolyline.Point point : points) {
+            while (replayed.get(next + 1).getEpochSecond() < point.getEpochSecond()) {
+                next++;
+            }
+            TrackPolyline.Point a = replayed.get(next);
+            TrackPolyline.Point b = replayed.get(next + 1);
+            double ratio = (double) (point.getEpochSecond() - a.getEpochSecond()) / (b.getEpochSecond() - a.getEpochSecond());
+            double replayLat = a.getLatitude() + (b.getLatitude() - a.getLatitude()) * ratio;
+            double replayLng = a.getLongitude() + (b.getLongitude() - a.getLongitude()) * ratio;
+            // Tolerance plus rounding to 1e-5 degrees
+            assertTrue(GeoUtils.distanceKm(point.getLatitude(), point.getLongitude(), replayLat, replayLng) * 1000 < tolerance + 2);
+        }
+    }
+}
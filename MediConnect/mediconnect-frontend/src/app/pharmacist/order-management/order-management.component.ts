@@ -34,6 +34,7 @@ export interface OrderItem {
 
 export enum OrderStatus {
   PENDING = 'PENDING',
+  ASSIGNMENT_FAILED = 'ASSIGNMENT_FAILED',
   PHARMACY_ASSIGNED = 'PHARMACY_ASSIGNED',
   ACCEPTED = 'ACCEPTED',
   REJECTED = 'REJECTED',
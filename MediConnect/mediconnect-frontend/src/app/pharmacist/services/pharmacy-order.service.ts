@@ -1,6 +1,7 @@
 import { Injectable } from '@angular/core';
 import { HttpClient } from '@angular/common/http';
-import { Observable } from 'rxjs';
+import { EMPTY, Observable } from 'rxjs';
+import { expand, map, reduce } from 'rxjs/operators';
 
 export interface MedicineOrder {
   id: number;
@@ -43,10 +44,17 @@ export class PharmacyOrderService {
   constructor(private http: HttpClient) {}
 
   /**
-   * Get all orders for a specific pharmacy
+   * Get all orders for a specific pharmacy, following the listing's pages to the end
    */
   getPharmacyOrders(pharmacyUserId: number): Observable<any> {
-    return this.http.get(`${this.API_URL}/pharmacy/${pharmacyUserId}`);
+    const page = (cursor?: string) => this.http.get<any>(`${this.API_URL}/pharmacy/${pharmacyUserId}`, {
+      params: cursor ? { limit: '100', cursor } : { limit: '100' }
+    });
+    return page().pipe(
+      expand(response => response.hasMore && response.nextCursor ? page(response.nextCursor) : EMPTY),
+      reduce((all: any, response: any) => ({ ...response, orders: [...all.orders, ...(response.orders || [])] }), { orders: [] }),
+      map((all: any) => ({ ...all, count: all.orders.length }))
+    );
   }
 
   /**
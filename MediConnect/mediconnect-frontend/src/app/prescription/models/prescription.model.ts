@@ -147,6 +147,7 @@ export enum MedicineType {
 
 export enum OrderStatus {
   PENDING = 'PENDING',
+  ASSIGNMENT_FAILED = 'ASSIGNMENT_FAILED',
   PHARMACY_ASSIGNED = 'PHARMACY_ASSIGNED',
   ACCEPTED = 'ACCEPTED',
   REJECTED = 'REJECTED',
@@ -1,7 +1,7 @@
 import { Injectable } from '@angular/core';
 import { HttpClient, HttpHeaders } from '@angular/common/http';
-import { Observable, BehaviorSubject } from 'rxjs';
-import { map, tap } from 'rxjs/operators';
+import { Observable, BehaviorSubject, EMPTY } from 'rxjs';
+import { expand, map, reduce, tap } from 'rxjs/operators';
 import { AuthService } from '../../auth/auth.service';
 import { 
   Prescription, 
@@ -120,21 +120,28 @@ export class PrescriptionService {
   }
 
   getPatientOrders(patientId: number): Observable<MedicineOrder[]> {
-    return this.http.get<any>(`${this.baseUrl}/medicine-orders/patient/${patientId}`, { headers: this.getAuthHeaders() })
-      .pipe(
-        map(response => response.orders || []),
-        tap(orders => this.ordersSubject.next(orders))
-      );
+    return this.getAllPages(`${this.baseUrl}/medicine-orders/patient/${patientId}`)
+      .pipe(tap(orders => this.ordersSubject.next(orders)));
   }
 
   getPharmacyOrders(pharmacyId: number): Observable<MedicineOrder[]> {
-    return this.http.get<any>(`${this.baseUrl}/medicine-orders/pharmacy/${pharmacyId}`, { headers: this.getAuthHeaders() })
-      .pipe(map(response => response.orders || []));
+    return this.getAllPages(`${this.baseUrl}/medicine-orders/pharmacy/${pharmacyId}`);
   }
 
   getPendingOrders(): Observable<MedicineOrder[]> {
-    return this.http.get<any>(`${this.baseUrl}/medicine-orders/pending`, { headers: this.getAuthHeaders() })
-      .pipe(map(response => response.orders || []));
+    return this.getAllPages(`${this.baseUrl}/medicine-orders/pending`);
+  }
+
+  // Order listings are paged; follow nextCursor until the last page
+  private getAllPages(url: string): Observable<MedicineOrder[]> {
+    const page = (cursor?: string) => this.http.get<any>(url, {
+      headers: this.getAuthHeaders(),
+      params: cursor ? { limit: '100', cursor } : { limit: '100' }
+    });
+    return page().pipe(
+      expand(response => response.hasMore && response.nextCursor ? page(response.nextCursor) : EMPTY),
+      reduce((orders: MedicineOrder[], response: any) => orders.concat(response.orders || []), [])
+    );
   }
 
   getOrderById(orderId: number): Observable<MedicineOrder> {